@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.ofbiz.base.concurrent;
 
+import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -51,6 +52,7 @@ public final class ExecutionPool {
             ExecutionForkJoinWorkerThreadFactory.getDefault(), null, false);
     private static final ExecutorService pulseExecutionPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ExecutionPoolThreadFactory(null, "Scipio-ExecutionPoolPulseWorker"));
     private static final Boolean logQueueSize= UtilProperties.getPropertyAsBoolean("cache", "cache.delayqeue.log.enable", false);
+    private static final Method virtualThreadBuilderMethod = getVirtualThreadBuilderMethod(); // SCIPIO
 
     protected static class ExecutionPoolThreadFactory implements ThreadFactory {
         private final ThreadGroup group;
@@ -71,6 +73,44 @@ public final class ExecutionPool {
         }
     }
 
+    /**
+     * Returns true if the JVM supports virtual threads (JDK 21+) (SCIPIO).
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return (virtualThreadBuilderMethod != null);
+    }
+
+    /**
+     * Returns a thread factory creating virtual threads named with the given prefix followed by a counter, or if the
+     * JVM does not support virtual threads (JDK 21+), daemon platform threads (SCIPIO).
+     * <p>
+     * Virtual threads are meant for tasks mostly blocked on I/O, one thread per task without pooling; like new platform
+     * threads, each starts with empty thread locals, except the <code>InheritableThreadLocal</code> values it inherits, and
+     * inherits the creating thread context class loader.</p>
+     */
+    public static ThreadFactory getVirtualThreadFactory(String namePrefix) {
+        if (virtualThreadBuilderMethod != null) {
+            try {
+                // Equivalent to: Thread.ofVirtual().name(namePrefix + "-", 1).factory() (JDK 21+)
+                Object builder = virtualThreadBuilderMethod.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-", 1L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                Debug.logError(e, "Could not create virtual thread factory [" + namePrefix + "]; using platform threads", module);
+            }
+        }
+        return new ExecutionPoolThreadFactory(null, namePrefix);
+    }
+
+    private static Method getVirtualThreadBuilderMethod() { // SCIPIO
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
     public static ScheduledExecutorService getScheduledExecutor(ThreadGroup group, String namePrefix, int threadCount, long keepAliveSeconds, boolean preStart) {
         ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threadCount, new ExecutionPoolThreadFactory(group, namePrefix));
         if (keepAliveSeconds > 0) {
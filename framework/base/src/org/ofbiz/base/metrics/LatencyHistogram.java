@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with count, total, min, max and percentiles over non-negative long values,
+ * usually milliseconds (SCIPIO).
+ * <p>
+ * Values below 16 are counted exactly; above that, each power of two is split into 16 linear sub-buckets, so a
+ * recorded value and the percentile reported for it differ by less than 1/16 (about 6%), as in an HDR histogram
+ * with one significant hex digit. Values of 2^33 and above are counted in an overflow bucket, reported as the max.
+ * The bucket array (under 4k) is allocated on the first recorded value, so unused histograms stay small.</p>
+ * <p>
+ * Recording only does atomic increments and is safe from any number of threads; readers see a snapshot that may be
+ * slightly behind concurrent writers.</p>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 32;
+    /** Exact buckets, sub-buckets of each exponent up to MAX_EXPONENT, and the overflow bucket */
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + 1;
+
+    private static final AtomicReferenceFieldUpdater<LatencyHistogram, AtomicLongArray> countsUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(LatencyHistogram.class, AtomicLongArray.class, "counts");
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+    private volatile AtomicLongArray counts;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        count.increment();
+        total.add(value);
+        if (value < min.get()) {
+            min.accumulateAndGet(value, Math::min);
+        }
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+        AtomicLongArray counts = this.counts;
+        if (counts == null) {
+            countsUpdater.compareAndSet(this, null, new AtomicLongArray(BUCKET_COUNT));
+            counts = this.counts;
+        }
+        counts.incrementAndGet(getBucketIndex(value));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the smallest recorded value, or Long.MAX_VALUE if none.
+     */
+    public long getMin() {
+        return min.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return (count > 0) ? ((double) getTotal()) / count : 0.0;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage (0-100) of recorded values fall, or 0 if none.
+     * <p>The result is the upper bound of the matching bucket, capped by {@link #getMax()}.</p>
+     */
+    public long getPercentile(double percentile) {
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Returns the values for each of the given percentages, reading the buckets once.
+     */
+    public long[] getPercentiles(double... percentiles) {
+        long[] values = new long[percentiles.length];
+        AtomicLongArray counts = this.counts;
+        if (counts == null) {
+            return values;
+        }
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return values;
+        }
+        long max = getMax();
+        for (int p = 0; p < percentiles.length; p++) {
+            double pct = Math.min(Math.max(percentiles[p], 0.0), 100.0);
+            long rank = Math.max(1, (long) Math.ceil(pct / 100.0 * count));
+            long seen = 0;
+            values[p] = max;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    values[p] = Math.min(getBucketUpperBound(i), max);
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        if (index == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.metrics.test;
+
+import org.ofbiz.base.metrics.LatencyHistogram;
+import org.ofbiz.base.test.GenericTestCaseBase;
+
+public class LatencyHistogramTests extends GenericTestCaseBase {
+
+    public LatencyHistogramTests(String name) {
+        super(name);
+    }
+
+    /**
+     * Returns the value reported for the bucket of the given value: the 50th percentile of it and a value in the
+     * overflow bucket, which is not capped by the max.
+     */
+    private static long bucketValue(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(Long.MAX_VALUE / 2);
+        return histogram.getPercentile(50);
+    }
+
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("count", 0, histogram.getCount());
+        assertEquals("min", Long.MAX_VALUE, histogram.getMin());
+        assertEquals("max", 0, histogram.getMax());
+        assertEquals("mean", 0.0, histogram.getMean(), 0.0);
+        assertEquals("p50", 0, histogram.getPercentile(50));
+    }
+
+    public void testExactBuckets() {
+        for (long value = 0; value < 16; value++) {
+            assertEquals("value " + value, value, bucketValue(value));
+        }
+    }
+
+    public void testExponentBoundaries() {
+        // 16-31: 16 sub-buckets of 1
+        assertEquals("16", 16, bucketValue(16));
+        assertEquals("17", 17, bucketValue(17));
+        assertEquals("31", 31, bucketValue(31));
+        // 32-63: sub-buckets of 2
+        assertEquals("32", 33, bucketValue(32));
+        assertEquals("33", 33, bucketValue(33));
+        assertEquals("34", 35, bucketValue(34));
+        assertEquals("63", 63, bucketValue(63));
+        // 64-127: sub-buckets of 4
+        assertEquals("64", 67, bucketValue(64));
+        assertEquals("127", 127, bucketValue(127));
+        assertEquals("1000", 1023, bucketValue(1000));
+        assertEquals("1024", 1087, bucketValue(1024));
+        // 2^32: sub-buckets of 2^28
+        assertEquals("2^32", (17L << 28) - 1, bucketValue(1L << 32));
+        assertEquals("2^32 + 2^28 - 1", (17L << 28) - 1, bucketValue((1L << 32) + (1L << 28) - 1));
+        assertEquals("2^32 + 2^28", (18L << 28) - 1, bucketValue((1L << 32) + (1L << 28)));
+        // the last sub-bucket before the overflow bucket
+        assertEquals("2^33 - 1", (1L << 33) - 1, bucketValue((1L << 33) - 1));
+        assertEquals("2^33 overflow", Long.MAX_VALUE / 2, bucketValue(1L << 33));
+    }
+
+    public void testRelativeError() {
+        for (int exponent = 4; exponent < 33; exponent++) {
+            for (long value : new long[] { (1L << exponent), (1L << exponent) + (1L << exponent) / 3, (1L << (exponent + 1)) - 1 }) {
+                long bucketValue = bucketValue(value);
+                assertTrue("bucket of " + value + " (" + bucketValue + ") not below it", bucketValue >= value);
+                assertTrue("bucket of " + value + " (" + bucketValue + ") within 1/16", bucketValue - value < (value >>> 4) + 1);
+            }
+        }
+    }
+
+    public void testOverflowBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1L << 40);
+        histogram.record(1L << 50);
+        // Both share the overflow bucket, whose value is the max
+        assertEquals("p50", 1L << 50, histogram.getPercentile(50));
+        assertEquals("p100", 1L << 50, histogram.getPercentile(100));
+        assertEquals("min", 1L << 40, histogram.getMin());
+        histogram.record(Long.MAX_VALUE);
+        assertEquals("max value", Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5); // counted as 0
+        assertEquals("count", 101, histogram.getCount());
+        assertEquals("total", 5050, histogram.getTotal());
+        assertEquals("min", 0, histogram.getMin());
+        assertEquals("max", 100, histogram.getMax());
+        assertEquals("mean", 50.0, histogram.getMean(), 0.001);
+        long[] percentiles = histogram.getPercentiles(0, 50, 90, 99, 100);
+        assertEquals("p0", 0, percentiles[0]);
+        // rank 51 of 101 is 50, in the 50-51 bucket
+        assertEquals("p50", 51, percentiles[1]);
+        // rank 91 is 90, in the 88-91 bucket
+        assertEquals("p90", 91, percentiles[2]);
+        // rank 100 is 99, in the 96-99 bucket
+        assertEquals("p99", 99, percentiles[3]);
+        // the 100-103 bucket, capped by the max
+        assertEquals("p100", 100, percentiles[4]);
+        assertEquals("p150 as p100", 100, histogram.getPercentile(150));
+    }
+}
@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.trace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A timed operation within a trace, such as a service call, ECA action or entity operation (SCIPIO).
+ * <p>
+ * Spans are created and ended on the same thread through {@link Tracer#startSpan(String, String)} and
+ * {@link Tracer#endSpan(TraceSpan)}; they are only read by other threads once ended.</p>
+ */
+public class TraceSpan {
+
+    public static final String TYPE_SERVICE = "service";
+    public static final String TYPE_ECA = "eca";
+    public static final String TYPE_ENTITY = "entity";
+
+    /** OpenTelemetry span kinds */
+    public static final int KIND_INTERNAL = 1;
+    public static final int KIND_CLIENT = 3;
+
+    private final TraceSpan parent;
+    private final String traceId;
+    private final String spanId;
+    private final String type;
+    private final String name;
+    private final boolean sampled;
+    private final String threadName;
+    private final long startTimeMillis;
+    private final long startNanos;
+    private long endNanos = -1;
+    private Map<String, Object> attributes;
+    private String errorMessage;
+    private boolean error;
+
+    TraceSpan(TraceSpan parent, String type, String name, boolean sampled) {
+        this.parent = parent;
+        this.traceId = (parent != null) ? parent.traceId : newId(true);
+        this.spanId = sampled ? newId(false) : null;
+        this.type = type;
+        this.name = name;
+        this.sampled = sampled;
+        this.threadName = sampled ? Thread.currentThread().getName() : null;
+        this.startTimeMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    public TraceSpan getParent() {
+        return parent;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns true if the span is recorded; false for the root of a trace left out by sampling.
+     */
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public boolean isRoot() {
+        return parent == null;
+    }
+
+    public boolean isEnded() {
+        return endNanos >= 0;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getStartTimeUnixNanos() {
+        return startTimeMillis * 1000000L;
+    }
+
+    public long getEndTimeUnixNanos() {
+        return getStartTimeUnixNanos() + getDurationNanos();
+    }
+
+    /**
+     * Returns the duration, or the time elapsed so far if not ended.
+     */
+    public long getDurationNanos() {
+        return ((endNanos >= 0) ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public TraceSpan setAttribute(String key, Object value) {
+        if (attributes == null) {
+            attributes = new LinkedHashMap<>();
+        }
+        attributes.put(key, value);
+        return this;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public TraceSpan setError(String errorMessage) {
+        this.error = true;
+        this.errorMessage = errorMessage;
+        return this;
+    }
+
+    public TraceSpan setError(Throwable t) {
+        return setError(t.getClass().getName() + ": " + t.getMessage());
+    }
+
+    void end() {
+        this.endNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the span in the OTLP/JSON span format.
+     */
+    public Map<String, Object> toOtlpMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("traceId", traceId);
+        map.put("spanId", spanId);
+        if (parent != null) {
+            map.put("parentSpanId", parent.spanId);
+        }
+        map.put("name", name);
+        map.put("kind", TYPE_ENTITY.equals(type) ? KIND_CLIENT : KIND_INTERNAL);
+        // OTLP/JSON encodes 64-bit integers as strings
+        map.put("startTimeUnixNano", Long.toString(getStartTimeUnixNanos()));
+        map.put("endTimeUnixNano", Long.toString(getEndTimeUnixNanos()));
+        List<Map<String, Object>> attributeList = new ArrayList<>();
+        attributeList.add(toOtlpAttribute("scipio.span.type", type));
+        attributeList.add(toOtlpAttribute("thread.name", threadName));
+        if (attributes != null) {
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                attributeList.add(toOtlpAttribute(entry.getKey(), entry.getValue()));
+            }
+        }
+        map.put("attributes", attributeList);
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("code", error ? 2 : 1);
+        if (errorMessage != null) {
+            status.put("message", errorMessage);
+        }
+        map.put("status", status);
+        return map;
+    }
+
+    /**
+     * Returns the span as a plain map, for display.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("traceId", traceId);
+        map.put("spanId", spanId);
+        map.put("parentSpanId", (parent != null) ? parent.spanId : null);
+        map.put("type", type);
+        map.put("name", name);
+        map.put("threadName", threadName);
+        map.put("startTime", startTimeMillis);
+        map.put("durationMs", getDurationNanos() / 1000000.0);
+        map.put("error", error);
+        map.put("errorMessage", errorMessage);
+        map.put("attributes", attributes);
+        return map;
+    }
+
+    static Map<String, Object> toOtlpAttribute(String key, Object value) {
+        Map<String, Object> typedValue = new LinkedHashMap<>();
+        if (value instanceof Boolean) {
+            typedValue.put("boolValue", value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+            typedValue.put("intValue", value.toString());
+        } else if (value instanceof Number) {
+            typedValue.put("doubleValue", ((Number) value).doubleValue());
+        } else {
+            typedValue.put("stringValue", (value != null) ? value.toString() : "");
+        }
+        Map<String, Object> attribute = new LinkedHashMap<>();
+        attribute.put("key", key);
+        attribute.put("value", typedValue);
+        return attribute;
+    }
+
+    private static String newId(boolean traceId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder(traceId ? 32 : 16);
+        appendHex(sb, random.nextLong());
+        if (traceId) {
+            appendHex(sb, random.nextLong());
+        }
+        return sb.toString();
+    }
+
+    private static void appendHex(StringBuilder sb, long value) {
+        String hex = Long.toHexString(value);
+        for (int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        sb.append(hex);
+    }
+
+    @Override
+    public String toString() {
+        return "TraceSpan{type=" + type + ", name=" + name + ", traceId=" + traceId + ", spanId=" + spanId + "}";
+    }
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.trace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.ofbiz.base.concurrent.ExecutionPool;
+import org.ofbiz.base.lang.JSON;
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilProperties;
+
+/**
+ * Service call tracing: records a tree of {@link TraceSpan}s per service call, with nested service calls, ECA
+ * actions and entity operations as child spans, configured in <code>trace.properties</code> (SCIPIO).
+ * <p>
+ * Ended spans go to a fixed-size ring buffer, overwriting the oldest, from which they can be read and exported in
+ * the OpenTelemetry OTLP/JSON format (webtools TraceSpans screen); they can also be appended to a local file, one
+ * OTLP/JSON document per line, by a background flusher. Sampling is decided once per trace, at its root span.</p>
+ * <p>
+ * When disabled, {@link #startSpan(String, String)} returns null after a single volatile read, and callers skip
+ * everything else, so the instrumented code paths should always check for null:
+ * <pre>{@code
+ * TraceSpan span = Tracer.startSpan(TraceSpan.TYPE_SERVICE, name);
+ * try {
+ *     ...
+ * } finally {
+ *     Tracer.endSpan(span);
+ * }
+ * }</pre></p>
+ */
+public final class Tracer {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    private static final String RESOURCE = "trace";
+    private static final String SCOPE_NAME = "org.ofbiz.base.trace";
+
+    private static final ThreadLocal<TraceSpan> currentSpan = new ThreadLocal<>();
+
+    private static volatile boolean enabled = UtilProperties.getPropertyAsBoolean(RESOURCE, "trace.enabled", false);
+    private static volatile double sampleRate = UtilProperties.getPropertyAsDouble(RESOURCE, "trace.sampleRate", 1.0);
+    private static final boolean ecaEnabled = UtilProperties.getPropertyAsBoolean(RESOURCE, "trace.eca.enabled", true);
+    private static final boolean entityEnabled = UtilProperties.getPropertyAsBoolean(RESOURCE, "trace.entity.enabled", true);
+    private static final String serviceName = UtilProperties.getPropertyValue(RESOURCE, "trace.serviceName", "scipio");
+
+    private static final SpanBuffer buffer = new SpanBuffer(UtilProperties.getPropertyAsInteger(RESOURCE, "trace.bufferSize", 4096));
+    private static final FileSink fileSink = UtilProperties.getPropertyAsBoolean(RESOURCE, "trace.file.enabled", false) ? new FileSink(
+            UtilProperties.getPropertyValue(RESOURCE, "trace.file.path", "runtime/logs/trace-spans.jsonl"),
+            UtilProperties.getPropertyAsLong(RESOURCE, "trace.file.flushInterval", 5000),
+            UtilProperties.getPropertyAsInteger(RESOURCE, "trace.file.maxQueued", 10000)) : null;
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables tracing at runtime; spans started before disabling are still ended and recorded.
+     */
+    public static void setEnabled(boolean enabled) {
+        Tracer.enabled = enabled;
+        Debug.logInfo("Service call tracing " + (enabled ? "enabled" : "disabled") + " (sampleRate: " + sampleRate + ")", module);
+    }
+
+    public static double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the fraction of traces recorded, from 0.0 to 1.0.
+     */
+    public static void setSampleRate(double sampleRate) {
+        Tracer.sampleRate = Math.max(0.0, Math.min(1.0, sampleRate));
+    }
+
+    /**
+     * Starts a span as child of the current span of the thread, or as the root of a new trace, and makes it the current span.
+     * <p>
+     * Returns null if tracing is disabled, the parent trace is not sampled or, for ECA and entity spans, if there is
+     * no current trace (these do not start traces on their own); otherwise the span must be passed to
+     * {@link #endSpan(TraceSpan)} on the same thread.</p>
+     */
+    public static TraceSpan startSpan(String type, String name) {
+        if (!enabled) {
+            return null;
+        }
+        TraceSpan parent = currentSpan.get();
+        TraceSpan span;
+        if (parent != null) {
+            if (!parent.isSampled() || (TraceSpan.TYPE_ENTITY.equals(type) && !entityEnabled) || (TraceSpan.TYPE_ECA.equals(type) && !ecaEnabled)) {
+                return null;
+            }
+            span = new TraceSpan(parent, type, name, true);
+        } else {
+            if (!TraceSpan.TYPE_SERVICE.equals(type)) {
+                return null;
+            }
+            double rate = sampleRate;
+            span = new TraceSpan(null, type, name, rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate));
+        }
+        currentSpan.set(span);
+        return span;
+    }
+
+    /**
+     * Ends the span, records it if sampled and makes its parent the current span of the thread. Does nothing if null.
+     */
+    public static void endSpan(TraceSpan span) {
+        if (span == null) {
+            return;
+        }
+        span.end();
+        if (span.getParent() != null) {
+            currentSpan.set(span.getParent());
+        } else {
+            currentSpan.remove();
+        }
+        if (span.isSampled()) {
+            buffer.add(span);
+            if (fileSink != null) {
+                fileSink.add(span);
+            }
+        }
+    }
+
+    /**
+     * Returns the current span of the thread, or null.
+     */
+    public static TraceSpan getCurrentSpan() {
+        return enabled ? currentSpan.get() : null;
+    }
+
+    /**
+     * Returns the recorded spans still in the buffer, by start time.
+     */
+    public static List<TraceSpan> getSpans() {
+        return buffer.getSpans(null);
+    }
+
+    /**
+     * Returns the recorded spans of the given trace still in the buffer, by start time.
+     */
+    public static List<TraceSpan> getSpans(String traceId) {
+        return buffer.getSpans(traceId);
+    }
+
+    /**
+     * Returns the recorded root spans (one per trace) still in the buffer, most recent first, up to maxCount.
+     */
+    public static List<TraceSpan> getRootSpans(int maxCount) {
+        List<TraceSpan> spans = buffer.getSpans(null);
+        List<TraceSpan> rootSpans = new ArrayList<>();
+        for (int i = spans.size() - 1; i >= 0 && rootSpans.size() < maxCount; i--) {
+            if (spans.get(i).isRoot()) {
+                rootSpans.add(spans.get(i));
+            }
+        }
+        return rootSpans;
+    }
+
+    public static void clear() {
+        buffer.clear();
+    }
+
+    /**
+     * Returns the spans as an OTLP/JSON <code>ExportTraceServiceRequest</code>, as accepted by OpenTelemetry
+     * collectors (<code>otlpjsonfile</code> receiver, or HTTP <code>/v1/traces</code>).
+     */
+    public static Map<String, Object> toOtlp(Collection<TraceSpan> spans) {
+        List<Map<String, Object>> spanList = new ArrayList<>(spans.size());
+        for (TraceSpan span : spans) {
+            spanList.add(span.toOtlpMap());
+        }
+        Map<String, Object> scope = new LinkedHashMap<>();
+        scope.put("name", SCOPE_NAME);
+        Map<String, Object> scopeSpans = new LinkedHashMap<>();
+        scopeSpans.put("scope", scope);
+        scopeSpans.put("spans", spanList);
+        Map<String, Object> resource = new LinkedHashMap<>();
+        resource.put("attributes", Collections.singletonList(TraceSpan.toOtlpAttribute("service.name", serviceName)));
+        Map<String, Object> resourceSpans = new LinkedHashMap<>();
+        resourceSpans.put("resource", resource);
+        resourceSpans.put("scopeSpans", Collections.singletonList(scopeSpans));
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("resourceSpans", Collections.singletonList(resourceSpans));
+        return request;
+    }
+
+    public static String toOtlpJson(Collection<TraceSpan> spans) throws IOException {
+        return JSON.from(toOtlp(spans)).toString();
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sampleRate", sampleRate);
+        stats.put("bufferSize", buffer.spans.length());
+        stats.put("recordedCount", buffer.count.get());
+        stats.put("fileSink", (fileSink != null) ? fileSink.file.getPath() : null);
+        stats.put("fileDroppedCount", (fileSink != null) ? fileSink.droppedCount.get() : 0);
+        return stats;
+    }
+
+    /**
+     * Lock-free ring buffer of ended spans; writers claim a slot with one atomic increment.
+     */
+    private static class SpanBuffer {
+        final AtomicReferenceArray<TraceSpan> spans;
+        final int mask;
+        final AtomicLong count = new AtomicLong();
+
+        SpanBuffer(int size) {
+            int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1; // next power of two
+            this.spans = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        void add(TraceSpan span) {
+            spans.lazySet((int) (count.getAndIncrement() & mask), span);
+        }
+
+        List<TraceSpan> getSpans(String traceId) {
+            List<TraceSpan> result = new ArrayList<>();
+            for (int i = 0; i < spans.length(); i++) {
+                TraceSpan span = spans.get(i);
+                if (span != null && (traceId == null || traceId.equals(span.getTraceId()))) {
+                    result.add(span);
+                }
+            }
+            result.sort(Comparator.comparingLong(TraceSpan::getStartTimeMillis));
+            return result;
+        }
+
+        void clear() {
+            for (int i = 0; i < spans.length(); i++) {
+                spans.set(i, null);
+            }
+        }
+    }
+
+    /**
+     * Appends ended spans to a file from a background thread, as one OTLP/JSON document per flush and line.
+     */
+    private static class FileSink implements Runnable {
+        final File file;
+        final int maxQueued;
+        final ConcurrentLinkedQueue<TraceSpan> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicLong droppedCount = new AtomicLong();
+        final ScheduledExecutorService executor;
+
+        FileSink(String path, long flushInterval, int maxQueued) {
+            File file = new File(path);
+            if (!file.isAbsolute() && System.getProperty("ofbiz.home") != null) {
+                file = new File(System.getProperty("ofbiz.home"), path);
+            }
+            this.file = file;
+            this.maxQueued = maxQueued;
+            this.executor = ExecutionPool.getScheduledExecutor(null, "Scipio-trace-file", 1, 0, false);
+            this.executor.scheduleWithFixedDelay(this, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+
+        void add(TraceSpan span) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                droppedCount.incrementAndGet();
+                return;
+            }
+            queue.offer(span);
+        }
+
+        @Override
+        public void run() {
+            if (queue.isEmpty()) {
+                return;
+            }
+            List<TraceSpan> spans = new ArrayList<>();
+            TraceSpan span;
+            while ((span = queue.poll()) != null) {
+                spans.add(span);
+            }
+            queued.addAndGet(-spans.size());
+            try {
+                File dir = file.getParentFile();
+                if (dir != null && !dir.exists()) {
+                    dir.mkdirs();
+                }
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                    writer.write(toOtlpJson(spans));
+                    writer.write('\n');
+                }
+            } catch (Exception e) {
+                Debug.logError(e, "Could not write " + spans.size() + " trace spans to [" + file + "]", module);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.trace.test;
+
+import java.util.List;
+import java.util.Map;
+
+import org.ofbiz.base.lang.JSON;
+import org.ofbiz.base.test.GenericTestCaseBase;
+import org.ofbiz.base.trace.TraceSpan;
+import org.ofbiz.base.trace.Tracer;
+import org.ofbiz.base.util.UtilGenerics;
+
+/**
+ * Tests the Tracer span recording, sampling and OTLP/JSON export (SCIPIO).
+ */
+public class TracerTests extends GenericTestCaseBase {
+
+    private boolean wasEnabled;
+    private double oldSampleRate;
+
+    public TracerTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        wasEnabled = Tracer.isEnabled();
+        oldSampleRate = Tracer.getSampleRate();
+        Tracer.setEnabled(true);
+        Tracer.setSampleRate(1.0);
+        Tracer.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Tracer.clear();
+        Tracer.setSampleRate(oldSampleRate);
+        Tracer.setEnabled(wasEnabled);
+        super.tearDown();
+    }
+
+    private static TraceSpan recordTrace(String name) {
+        TraceSpan root = Tracer.startSpan(TraceSpan.TYPE_SERVICE, name);
+        TraceSpan child = Tracer.startSpan(TraceSpan.TYPE_ENTITY, name + ".find");
+        Tracer.endSpan(child);
+        Tracer.endSpan(root);
+        return root;
+    }
+
+    public void testSpanNesting() {
+        assertNull("no ECA span without a trace", Tracer.startSpan(TraceSpan.TYPE_ECA, "testEca"));
+        TraceSpan root = Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testRoot");
+        assertSame("root is current", root, Tracer.getCurrentSpan());
+        TraceSpan child = Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testChild");
+        assertSame("child parent", root, child.getParent());
+        assertEquals("child trace", root.getTraceId(), child.getTraceId());
+        Tracer.endSpan(child);
+        assertSame("parent is current again", root, Tracer.getCurrentSpan());
+        Tracer.endSpan(root);
+        assertNull("no current span", Tracer.getCurrentSpan());
+        List<TraceSpan> spans = Tracer.getSpans(root.getTraceId());
+        assertEquals("recorded spans", 2, spans.size());
+        assertTrue("root span listed", Tracer.getRootSpans(10).contains(root));
+    }
+
+    public void testRingBuffer() {
+        int bufferSize = ((Number) Tracer.getStats().get("bufferSize")).intValue();
+        TraceSpan first = recordTrace("testFirst");
+        for (int i = 0; i < bufferSize; i++) {
+            Tracer.endSpan(Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testFill"));
+        }
+        List<TraceSpan> spans = Tracer.getSpans();
+        assertEquals("buffer holds at most its size", bufferSize, spans.size());
+        assertTrue("oldest trace overwritten", Tracer.getSpans(first.getTraceId()).isEmpty());
+        for (int i = 1; i < spans.size(); i++) {
+            assertTrue("spans by start time", spans.get(i - 1).getStartTimeMillis() <= spans.get(i).getStartTimeMillis());
+        }
+        Tracer.clear();
+        assertTrue("cleared", Tracer.getSpans().isEmpty());
+    }
+
+    public void testSampling() {
+        Tracer.setSampleRate(0.0);
+        TraceSpan root = Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testUnsampled");
+        assertNotNull("unsampled root still tracked", root);
+        assertFalse("root not sampled", root.isSampled());
+        assertNull("no child span of an unsampled trace", Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testUnsampledChild"));
+        Tracer.endSpan(root);
+        assertTrue("unsampled trace not recorded", Tracer.getSpans(root.getTraceId()).isEmpty());
+
+        Tracer.setSampleRate(0.5);
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            TraceSpan span = Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testHalf");
+            if (span.isSampled()) {
+                sampled++;
+            }
+            Tracer.endSpan(span);
+        }
+        assertTrue("about half sampled: " + sampled, sampled > 350 && sampled < 650);
+
+        Tracer.setSampleRate(2.0);
+        assertEquals("sample rate capped", 1.0, Tracer.getSampleRate(), 0.0);
+        Tracer.setEnabled(false);
+        assertNull("no span when disabled", Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testDisabled"));
+    }
+
+    public void testOtlpExport() throws Exception {
+        TraceSpan root = Tracer.startSpan(TraceSpan.TYPE_SERVICE, "testExport");
+        root.setAttribute("testKey", "testValue");
+        TraceSpan child = Tracer.startSpan(TraceSpan.TYPE_ENTITY, "testExport.find");
+        child.setError("test error");
+        Tracer.endSpan(child);
+        Tracer.endSpan(root);
+
+        Map<String, Object> request = JSON.from(Tracer.toOtlpJson(Tracer.getSpans(root.getTraceId()))).toObject(Map.class);
+        List<Map<String, Object>> resourceSpans = UtilGenerics.cast(request.get("resourceSpans"));
+        assertEquals("resourceSpans", 1, resourceSpans.size());
+        List<Map<String, Object>> scopeSpans = UtilGenerics.cast(resourceSpans.get(0).get("scopeSpans"));
+        List<Map<String, Object>> spans = UtilGenerics.cast(scopeSpans.get(0).get("spans"));
+        assertEquals("spans", 2, spans.size());
+        Map<String, Object> rootMap = spans.get(0);
+        Map<String, Object> childMap = spans.get(1);
+        if (!"testExport".equals(rootMap.get("name"))) {
+            rootMap = spans.get(1);
+            childMap = spans.get(0);
+        }
+        assertEquals("traceId", root.getTraceId(), rootMap.get("traceId"));
+        assertNull("root has no parent", rootMap.get("parentSpanId"));
+        assertEquals("child parentSpanId", root.getSpanId(), childMap.get("parentSpanId"));
+        assertEquals("entity span is a client span", TraceSpan.KIND_CLIENT, ((Number) childMap.get("kind")).intValue());
+        assertTrue("timestamps as strings", rootMap.get("startTimeUnixNano") instanceof String);
+        Map<String, Object> childStatus = UtilGenerics.cast(childMap.get("status"));
+        assertEquals("error status", 2, ((Number) childStatus.get("code")).intValue());
+        assertEquals("error message", "test error", childStatus.get("message"));
+        List<Map<String, Object>> attributes = UtilGenerics.cast(rootMap.get("attributes"));
+        boolean found = false;
+        for (Map<String, Object> attribute : attributes) {
+            if ("testKey".equals(attribute.get("key"))) {
+                Map<String, Object> value = UtilGenerics.cast(attribute.get("value"));
+                assertEquals("attribute value", "testValue", value.get("stringValue"));
+                found = true;
+            }
+        }
+        assertTrue("attribute exported", found);
+    }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.util.cache;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilGenerics;
+import org.ofbiz.base.util.UtilObject;
+
+/**
+ * Cache line whose value is kept serialized in an {@link OffHeapCacheStore} (SCIPIO).
+ * <p>Each {@link #getValue()} returns a new deserialized copy, or null once the store recycled the value.</p>
+ */
+public abstract class OffHeapCacheLine<V> extends CacheLine<V> {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    public final OffHeapCacheStore.Ref ref;
+
+    public OffHeapCacheLine(OffHeapCacheStore.Ref ref, long loadTimeNanos, long expireTimeNanos) {
+        super(loadTimeNanos, expireTimeNanos);
+        this.ref = ref;
+    }
+
+    @Override
+    void cancel() {
+        ref.release();
+    }
+
+    @Override
+    public V getValue() {
+        byte[] data = ref.read();
+        if (data == null) {
+            return null;
+        }
+        try {
+            return UtilGenerics.cast(UtilObject.getObjectException(data));
+        } catch (Exception e) {
+            Debug.logError("Could not deserialize off-heap cache line value: " + e.toString(), module);
+            return null;
+        }
+    }
+
+    public long getSizeInBytes() {
+        return ref.getLength();
+    }
+}
@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import org.ofbiz.base.util.Debug;
+
+/**
+ * Off-heap byte store for serialized cache line values (SCIPIO).
+ * <p>
+ * The store is a ring of fixed-size segments, each a direct <code>ByteBuffer</code> or, if mapped, a memory-mapped
+ * temporary file. Values are appended to the current segment; when the ring is full the oldest segment is recycled,
+ * which invalidates every value it held. Readers detect this through the segment generation and get null, which
+ * {@link UtilCache} counts as an eviction.</p>
+ * <p>
+ * Segments are allocated lazily, so an unused store costs nothing.</p>
+ */
+public class OffHeapCacheStore {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    private final String name;
+    private final int segmentSize;
+    private final Segment[] segments;
+    private final File mappedDir;
+    private int currentIndex = -1;
+    private final AtomicLong usedBytes = new AtomicLong(0);
+    private final AtomicLong recycledSegmentCount = new AtomicLong(0);
+
+    /**
+     * Creates a store.
+     * @param name The store name, used for logging and mapped file names
+     * @param maxSize The maximum total size in bytes
+     * @param segmentSize The segment size in bytes; also the largest value that can be stored
+     * @param mappedDir If not null, segments are memory-mapped files created in this directory; otherwise direct buffers
+     */
+    public OffHeapCacheStore(String name, long maxSize, int segmentSize, File mappedDir) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Off-heap cache store segment size must be greater than zero");
+        }
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.segments = new Segment[(int) Math.max(2, Math.min(Integer.MAX_VALUE, maxSize / segmentSize))];
+        this.mappedDir = mappedDir;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isMapped() {
+        return mappedDir != null;
+    }
+
+    /** Returns the maximum total size in bytes. */
+    public long getMaxSize() {
+        return (long) segments.length * segmentSize;
+    }
+
+    /** Returns the number of bytes held by values that have not been released or recycled. */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /** Returns the number of times a full segment was recycled, dropping the values it held. */
+    public long getRecycledSegmentCount() {
+        return recycledSegmentCount.get();
+    }
+
+    /**
+     * Copies the data into the store and returns a reference to it, or null if it is larger than a segment
+     * or the segment could not be allocated.
+     */
+    public synchronized Ref put(byte[] data) {
+        if (data.length > segmentSize) {
+            return null;
+        }
+        Segment segment = (currentIndex >= 0) ? segments[currentIndex] : null;
+        if (segment == null || segment.position + data.length > segmentSize) {
+            segment = nextSegment();
+            if (segment == null) {
+                return null;
+            }
+        }
+        int offset = segment.position;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        ((Buffer) buffer).position(offset); // Buffer method: ByteBuffer.position(int) does not exist on Java 8
+        buffer.put(data);
+        segment.position += data.length;
+        segment.liveBytes += data.length;
+        usedBytes.addAndGet(data.length);
+        return new Ref(segment, segment.generation, offset, data.length);
+    }
+
+    private Segment nextSegment() {
+        int nextIndex = (currentIndex + 1) % segments.length;
+        Segment segment = segments[nextIndex];
+        if (segment == null) {
+            try {
+                segment = new Segment(allocate(nextIndex));
+            } catch (IOException | OutOfMemoryError e) {
+                Debug.logWarning("Could not allocate off-heap segment " + nextIndex + " for cache store [" + name + "]: " + e.toString(), module);
+                return null;
+            }
+            segments[nextIndex] = segment;
+        } else {
+            recycle(segment);
+            recycledSegmentCount.incrementAndGet();
+        }
+        currentIndex = nextIndex;
+        return segment;
+    }
+
+    private ByteBuffer allocate(int index) throws IOException {
+        if (mappedDir == null) {
+            return ByteBuffer.allocateDirect(segmentSize);
+        }
+        if (!mappedDir.exists() && !mappedDir.mkdirs()) {
+            throw new IOException("Could not create directory " + mappedDir);
+        }
+        File file = File.createTempFile(name.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + index + "-", ".seg", mappedDir);
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            // The mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private void recycle(Segment segment) {
+        long stamp = segment.lock.writeLock();
+        try {
+            segment.generation++;
+            segment.position = 0;
+            usedBytes.addAndGet(-segment.liveBytes);
+            segment.liveBytes = 0;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Invalidates all stored values; allocated segments are kept for reuse.
+     */
+    public synchronized void clear() {
+        for (Segment segment : segments) {
+            if (segment != null) {
+                recycle(segment);
+            }
+        }
+        currentIndex = -1;
+    }
+
+    /**
+     * Reference to a stored value. Reads return null once the segment holding the value was recycled.
+     */
+    public final class Ref {
+        private final Segment segment;
+        private final long generation;
+        private final int offset;
+        private final int length;
+        private boolean released = false;
+
+        private Ref(Segment segment, long generation, int offset, int length) {
+            this.segment = segment;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /** Returns a copy of the stored bytes, or null if the value was recycled. */
+        public byte[] read() {
+            byte[] data = new byte[length];
+            long stamp = segment.lock.tryOptimisticRead();
+            if (segment.generation != generation) {
+                return null;
+            }
+            copy(data);
+            if (!segment.lock.validate(stamp)) {
+                stamp = segment.lock.readLock();
+                try {
+                    if (segment.generation != generation) {
+                        return null;
+                    }
+                    copy(data);
+                } finally {
+                    segment.lock.unlockRead(stamp);
+                }
+            }
+            return data;
+        }
+
+        private void copy(byte[] data) {
+            ByteBuffer buffer = segment.buffer.duplicate();
+            ((Buffer) buffer).position(offset);
+            buffer.get(data);
+        }
+
+        /** Releases the value for accounting purposes; the space is reclaimed when its segment is recycled. */
+        public void release() {
+            synchronized (OffHeapCacheStore.this) {
+                if (!released && segment.generation == generation) {
+                    released = true;
+                    segment.liveBytes -= length;
+                    usedBytes.addAndGet(-length);
+                }
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final ByteBuffer buffer;
+        private final StampedLock lock = new StampedLock();
+        private volatile long generation = 0;
+        private int position = 0;
+        private long liveBytes = 0;
+
+        Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
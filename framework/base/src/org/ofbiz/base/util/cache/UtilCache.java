@@ -18,6 +18,8 @@
  *******************************************************************************/
 package org.ofbiz.base.util.cache;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.NotSerializableException;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -33,9 +35,12 @@ import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -99,6 +104,16 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     /** A count of the number of cache misses on removes */
     protected AtomicLong removeMissCount = new AtomicLong(0);
 
+    /** SCIPIO: A count of the number of lines evicted to make room, by the in-memory LRU limit or the off-heap store */
+    protected AtomicLong evictionCount = new AtomicLong(0);
+
+    /** SCIPIO: A count of the number of loader calls made by {@link #getOrLoad}, including refresh-ahead */
+    protected AtomicLong loadCount = new AtomicLong(0);
+    /** SCIPIO: A count of the number of {@link #getOrLoad} calls that waited for another thread's load of the same key */
+    protected AtomicLong loadWaitCount = new AtomicLong(0);
+    /** SCIPIO: A count of the number of background refresh-ahead loads started by {@link #getOrLoad} */
+    protected AtomicLong refreshAheadCount = new AtomicLong(0);
+
     /** The maximum number of elements in the cache.
      * If set to 0, there will be no limit on the number of elements in the cache.
      */
@@ -118,6 +133,25 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     protected ConcurrentMap<Object, CacheLine<V>> memoryTable = null;
 
+    /** SCIPIO: Where line values are kept: "heap" (default) or "offheap"; set using the "storeType" cache property. */
+    protected String storeType = STORE_TYPE_HEAP;
+    /** SCIPIO: Maximum off-heap store size in bytes; "offHeapMaxSize" cache property. */
+    protected long offHeapMaxSize = 256L * 1024 * 1024;
+    /** SCIPIO: Off-heap store segment size in bytes, also the largest value stored off-heap; "offHeapSegmentSize" cache property. */
+    protected int offHeapSegmentSize = 16 * 1024 * 1024;
+    /** SCIPIO: If set, off-heap segments are memory-mapped files in this directory; "offHeapMappedDir" cache property. */
+    protected String offHeapMappedDir = null;
+    /** SCIPIO: Off-heap store for line values, or null if storeType is heap. */
+    protected transient OffHeapCacheStore offHeapStore = null;
+
+    /** SCIPIO: Time before expiry at which {@link #getOrLoad} reloads a line in the background; 0 to disable; "refreshAheadTime" cache property. */
+    protected long refreshAheadTimeNanos = 0;
+    /** SCIPIO: In-flight {@link #getOrLoad} loads, by key, for single-flight population. */
+    protected ConcurrentMap<Object, Load<V>> loadTable = new ConcurrentHashMap<>();
+
+    public static final String STORE_TYPE_HEAP = "heap"; // SCIPIO
+    public static final String STORE_TYPE_OFFHEAP = "offheap"; // SCIPIO
+
     /** Constructor which specifies the cacheName as well as the sizeLimit, expireTime and useSoftReference.
      * The passed sizeLimit, expireTime and useSoftReference will be overridden by values from cache.properties if found.
      * @param sizeLimit The sizeLimit member is set to this value
@@ -145,6 +179,10 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             .listener(this)
             .build();
         }
+        if (STORE_TYPE_OFFHEAP.equals(storeType)) {
+            offHeapStore = new OffHeapCacheStore(cacheName, offHeapMaxSize, offHeapSegmentSize,
+                    UtilValidate.isNotEmpty(offHeapMappedDir) ? new File(offHeapMappedDir) : null);
+        }
     }
 
     private static String getNextDefaultIndex(String cacheName) {
@@ -207,6 +245,31 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             if (value != null) {
                 enabled = !"false".equals(value);
             }
+            // SCIPIO: off-heap storage tier
+            value = getPropertyParam(res, propNames, "storeType");
+            if (UtilValidate.isNotEmpty(value)) {
+                if (STORE_TYPE_HEAP.equals(value) || STORE_TYPE_OFFHEAP.equals(value)) {
+                    storeType = value;
+                } else {
+                    Debug.logWarning("Invalid storeType [" + value + "] for cache [" + name + "]; using " + STORE_TYPE_HEAP, module);
+                }
+            }
+            value = getPropertyParam(res, propNames, "offHeapMaxSize");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.offHeapMaxSize = Long.parseLong(value);
+            }
+            value = getPropertyParam(res, propNames, "offHeapSegmentSize");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.offHeapSegmentSize = Integer.parseInt(value);
+            }
+            value = getPropertyParam(res, propNames, "offHeapMappedDir");
+            if (value != null) {
+                this.offHeapMappedDir = value;
+            }
+            value = getPropertyParam(res, propNames, "refreshAheadTime");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.refreshAheadTimeNanos = TimeUnit.NANOSECONDS.convert(Long.parseLong(value), TimeUnit.MILLISECONDS);
+            }
         }
     }
 
@@ -244,6 +307,160 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return (cachedValue != null? cachedValue: value);
     }
 
+    /**
+     * Gets the value for the key, or on a miss computes it using the loader and puts it in the cache (SCIPIO).
+     * <p>
+     * Population is single-flight: while one thread runs the loader for a key, other threads asking for the same key
+     * wait for its result instead of running the loader too. If the loader throws, the exception is rethrown to all
+     * of them. A null result is returned but not cached. If the key is removed or the cache cleared while loading,
+     * the result is still returned but not cached.</p>
+     * <p>
+     * If a refresh-ahead time is set (see {@link #setRefreshAheadTime(long)}), a hit on a line that expires within
+     * that time returns the current value and reloads it in the background, so that hot keys never expire for
+     * their callers. The loader then runs in another thread, outside of any caller transaction or thread-local
+     * context, so it must not depend on them.</p>
+     * <p>
+     * The loader must not call getOrLoad for the same key on the same cache.</p>
+     */
+    public V getOrLoad(K key, Function<? super K, ? extends V> loader) {
+        if (!enabled) {
+            loadCount.incrementAndGet();
+            return loader.apply(key);
+        }
+        V value = get(key);
+        if (value != null) {
+            if (refreshAheadTimeNanos > 0) {
+                checkRefreshAhead(key, loader);
+            }
+            return value;
+        }
+        Object nulledKey = fromKey(key);
+        Load<V> load = new Load<>(Thread.currentThread());
+        Load<V> currentLoad = loadTable.putIfAbsent(nulledKey, load);
+        if (currentLoad != null) {
+            return awaitLoad(key, currentLoad);
+        }
+        try {
+            // Another thread may have completed a load between the get and the putIfAbsent
+            CacheLine<V> line = memoryTable.get(nulledKey);
+            value = (line != null) ? line.getValue() : null;
+            if (value == null) {
+                loadCount.incrementAndGet();
+                value = loader.apply(key);
+                putLoaded(key, value, load);
+            }
+            load.future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadTable.remove(nulledKey, load);
+        }
+    }
+
+    private V awaitLoad(K key, Load<V> load) {
+        if (load.thread == Thread.currentThread()) {
+            throw new IllegalStateException("Recursive getOrLoad call for key '" + key + "' in cache " + getName());
+        }
+        loadWaitCount.incrementAndGet();
+        try {
+            return load.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for key '" + key + "' to load in cache " + getName(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Could not load key '" + key + "' in cache " + getName(), cause);
+        }
+    }
+
+    private void checkRefreshAhead(final K key, final Function<? super K, ? extends V> loader) {
+        final Object nulledKey = fromKey(key);
+        CacheLine<V> line = memoryTable.get(nulledKey);
+        if (line == null || line.getLoadTimeNanos() <= 0 || System.nanoTime() < line.getExpireTimeNanos() - refreshAheadTimeNanos) {
+            return;
+        }
+        final Load<V> load = new Load<>(null);
+        if (loadTable.putIfAbsent(nulledKey, load) != null) {
+            return;
+        }
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            ExecutionPool.GLOBAL_BATCH.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Thread thread = Thread.currentThread();
+                    ClassLoader prevClassLoader = thread.getContextClassLoader();
+                    thread.setContextClassLoader(contextClassLoader);
+                    try {
+                        loadCount.incrementAndGet();
+                        V value = loader.apply(key);
+                        putLoaded(key, value, load);
+                        load.future.complete(value);
+                    } catch (Throwable t) {
+                        Debug.logWarning(t, "Refresh-ahead load failed for key '" + key + "' in cache " + getName(), module);
+                        load.future.completeExceptionally(t);
+                    } finally {
+                        loadTable.remove(nulledKey, load);
+                        thread.setContextClassLoader(prevClassLoader);
+                    }
+                }
+            });
+            refreshAheadCount.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            loadTable.remove(nulledKey, load);
+        }
+    }
+
+    /**
+     * Caches a loaded value unless its load was invalidated by a removal (SCIPIO).
+     * <p>A removal landing between the check and the put would miss the new line, so the load is checked again
+     * after the put; removals mark the loads before removing lines, so any later one removes the line itself.</p>
+     */
+    private void putLoaded(K key, V value, Load<V> load) {
+        if (value == null || load.invalidated) {
+            return;
+        }
+        put(key, value);
+        if (load.invalidated) {
+            remove(key);
+        }
+    }
+
+    /** Marks in-flight loads so their results are not put in the cache after a removal (SCIPIO). */
+    private void invalidateLoad(Object key) {
+        if (loadTable.isEmpty()) {
+            return;
+        }
+        if (key == null) {
+            for (Load<V> load : loadTable.values()) {
+                load.invalidated = true;
+            }
+        } else {
+            Load<V> load = loadTable.get(key);
+            if (load != null) {
+                load.invalidated = true;
+            }
+        }
+    }
+
+    /** An in-flight {@link #getOrLoad} load (SCIPIO). */
+    protected static class Load<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final Thread thread;
+        volatile boolean invalidated = false;
+
+        Load(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
     /**
      * Creates soft-ref cache line.
      * <p>SCIPIO: 2.1.0: Now omits registering pulses, which is left to callers to do after adding to memortyTable
@@ -294,6 +511,45 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         };
     }
 
+    /**
+     * Creates off-heap cache line (SCIPIO).
+     * <p>Pulses are registered by callers as for the other line types.</p>
+     */
+    CacheLine<V> createOffHeapCacheLine(final Object key, OffHeapCacheStore.Ref ref, long loadTimeNanos, long expireTimeNanos) {
+        return new OffHeapCacheLine<V>(ref, loadTimeNanos, expireTimeNanos) {
+            @Override
+            CacheLine<V> changeLine(boolean useSoftReference, long expireTimeNanos) {
+                if (!differentExpireTime(expireTimeNanos)) {
+                    return this;
+                }
+                return createOffHeapCacheLine(key, ref, loadTimeNanos, expireTimeNanos);
+            }
+
+            @Override
+            void remove() {
+                removeInternal(key, this);
+            }
+        };
+    }
+
+    /**
+     * Serializes the value into the off-heap store, returning null if it can't be stored there,
+     * in which case the line is kept on-heap (SCIPIO).
+     */
+    private OffHeapCacheStore.Ref storeOffHeap(Object key, V value) {
+        if (!(value instanceof Serializable)) {
+            return null;
+        }
+        try {
+            return offHeapStore.put(UtilObject.getBytesOrEx(value));
+        } catch (IOException e) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Could not serialize value for key '" + key + "' in off-heap cache " + getName() + "; keeping it on-heap: " + e.toString(), module);
+            }
+            return null;
+        }
+    }
+
     /**
      * Registers the cache line as execution pulse for delayed removal if enabled.
      * <p>SCIPIO: 2.1.0: Removed loadTimeNanos parameter since already recorded in cache line.</p>
@@ -314,6 +570,12 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
      */
     private CacheLine<V> createCacheLine(K key, V value, long expireTimeNanos) {
         long loadTimeNanos = expireTimeNanos > 0 ? System.nanoTime() : 0;
+        if (offHeapStore != null) {
+            OffHeapCacheStore.Ref ref = storeOffHeap(key, value);
+            if (ref != null) {
+                return createOffHeapCacheLine(key, ref, loadTimeNanos, expireTimeNanos);
+            }
+        }
         if (useSoftReference) {
             return createSoftRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
         }
@@ -377,6 +639,9 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             oldValue = oldCacheLine.getValue();
             // SCIPIO: 2.1.0: As above, there is no longer need to cancel the cache line since it was never registered.
             //cancel(newCacheLine);
+            if (newCacheLine instanceof OffHeapCacheLine) {
+                newCacheLine.cancel(); // SCIPIO: releases the off-heap space accounting of the unused line
+            }
         }
         if (oldValue == null) {
             noteAddition(key, value);
@@ -396,12 +661,20 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         CacheLine<V> line = memoryTable.get(nulledKey);
         if (line == null) {
             missCountNotFound.incrementAndGet();
-        } else {
-            if (countGet) {
-                hitCount.incrementAndGet();
-            }
+            return null;
+        }
+        V value = line.getValue();
+        if (value == null && line instanceof OffHeapCacheLine) {
+            // SCIPIO: The off-heap segment holding the value was recycled
+            removeInternal(key, line);
+            evictionCount.incrementAndGet();
+            missCountNotFound.incrementAndGet();
+            return null;
+        }
+        if (countGet) {
+            hitCount.incrementAndGet();
         }
-        return line != null ? line.getValue() : null;
+        return value;
     }
 
     public Collection<V> values() {
@@ -443,6 +716,14 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         }
     }
 
+    /** SCIPIO: Returns the serialized size of the line value; off-heap lines already know it. */
+    private long findLineSizeInBytes(CacheLine<V> line, Object key) {
+        if (line instanceof OffHeapCacheLine) {
+            return ((OffHeapCacheLine<V>) line).getSizeInBytes();
+        }
+        return findSizeInBytes(line.getValue(), key);
+    }
+
     public long getSizeInBytes() {
         long totalSize = 0;
         // SCIPIO: Include key for debugging
@@ -450,7 +731,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         //    totalSize += findSizeInBytes(line.getValue());
         //}
         for (Map.Entry<Object, CacheLine<V>> lineEntry : memoryTable.entrySet()) {
-            totalSize += findSizeInBytes(lineEntry.getValue().getValue(), lineEntry.getKey());
+            totalSize += findLineSizeInBytes(lineEntry.getValue(), lineEntry.getKey());
         }
         return totalSize;
     }
@@ -472,6 +753,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             }
         }
         Object nulledKey = fromKey(key);
+        invalidateLoad(nulledKey); // SCIPIO
         CacheLine<V> oldCacheLine;
         V oldValue;
         oldCacheLine = memoryTable.remove(nulledKey);
@@ -503,13 +785,20 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     /** Removes all elements from this cache */
     public synchronized void erase() {
+        invalidateLoad(null); // SCIPIO
         Iterator<Map.Entry<Object, CacheLine<V>>> it = memoryTable.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<Object, CacheLine<V>> entry = it.next();
-            noteRemoval(toKey(entry.getKey()), entry.getValue().getValue());
+            // SCIPIO: Only read (deserialize, for off-heap lines) the value if someone is listening
+            if (!listeners.isEmpty()) {
+                noteRemoval(toKey(entry.getKey()), entry.getValue().getValue());
+            }
             removeHitCount.incrementAndGet();
             it.remove();
         }
+        if (offHeapStore != null) {
+            offHeapStore.clear();
+        }
     }
 
     /** Removes all element from the cache matching the given filter (SCIPIO).
@@ -517,6 +806,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
      * @param entryFilter The entry filter - return true to remove key
      */
     public synchronized void removeByFilter(CacheEntryFilter<K, V> entryFilter) {
+        invalidateLoad(null); // SCIPIO: can't tell which in-flight loads match, so none of them are cached
         Iterator<Map.Entry<Object, CacheLine<V>>> it = memoryTable.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<Object, CacheLine<V>> entry = it.next();
@@ -582,6 +872,13 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         }
     }
 
+    /**
+     * Returns a read-only live view of all caches, for iterating without copying (SCIPIO).
+     */
+    public static Collection<UtilCache<?, ?>> getUtilCaches() {
+        return Collections.unmodifiableCollection(utilCacheTable.values());
+    }
+
     public static Set<String> getUtilCacheTableKeySet() {
         Set<String> set = new HashSet<>(utilCacheTable.size());
         set.addAll(utilCacheTable.keySet());
@@ -656,6 +953,54 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return this.removeMissCount.get();
     }
 
+    /** SCIPIO: Returns the number of lines evicted to make room, by the in-memory LRU limit or the off-heap store. */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /** SCIPIO: Returns the number of loader calls made by {@link #getOrLoad}, including refresh-ahead. */
+    public long getLoadCount() {
+        return this.loadCount.get();
+    }
+
+    /** SCIPIO: Returns the number of {@link #getOrLoad} calls that waited for another thread's load of the same key. */
+    public long getLoadWaitCount() {
+        return this.loadWaitCount.get();
+    }
+
+    /** SCIPIO: Returns the number of background refresh-ahead loads started by {@link #getOrLoad}. */
+    public long getRefreshAheadCount() {
+        return this.refreshAheadCount.get();
+    }
+
+    /**
+     * SCIPIO: Sets the time before expiry at which {@link #getOrLoad} hits reload the line in the background; 0 disables.
+     * Only has an effect if the cache has an expire time.
+     */
+    public void setRefreshAheadTime(long refreshAheadTimeMillis) {
+        this.refreshAheadTimeNanos = TimeUnit.NANOSECONDS.convert(Math.max(0, refreshAheadTimeMillis), TimeUnit.MILLISECONDS);
+    }
+
+    /** SCIPIO: Returns the refresh-ahead time, see {@link #setRefreshAheadTime(long)}. */
+    public long getRefreshAheadTime() {
+        return TimeUnit.MILLISECONDS.convert(refreshAheadTimeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** SCIPIO: Returns where line values are kept: {@link #STORE_TYPE_HEAP} or {@link #STORE_TYPE_OFFHEAP}. */
+    public String getStoreType() {
+        return storeType;
+    }
+
+    /** SCIPIO: Returns the number of off-heap bytes used by line values, or 0 if the cache is on-heap. */
+    public long getOffHeapSizeInBytes() {
+        return offHeapStore != null ? offHeapStore.getUsedBytes() : 0;
+    }
+
+    /** SCIPIO: Returns the off-heap store, or null if the cache is on-heap. */
+    public OffHeapCacheStore getOffHeapStore() {
+        return offHeapStore;
+    }
+
     /** Clears the hit and miss counters
      */
     public void clearCounters() {
@@ -665,6 +1010,10 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         this.missCountSoftRef.set(0);
         this.removeHitCount.set(0);
         this.removeMissCount.set(0);
+        this.evictionCount.set(0);
+        this.loadCount.set(0);
+        this.loadWaitCount.set(0);
+        this.refreshAheadCount.set(0);
     }
 
     public void setMaxInMemory(int newInMemory) {
@@ -791,7 +1140,7 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (line.getLoadTimeNanos() > 0) {
             lineInfo.put("expireTimeMillis", TimeUnit.MILLISECONDS.convert(line.getExpireTimeNanos() - System.nanoTime(), TimeUnit.NANOSECONDS));
         }
-        lineInfo.put("lineSize", findSizeInBytes(line.getValue(), key)); // SCIPIO: pass key
+        lineInfo.put("lineSize", findLineSizeInBytes(line, key)); // SCIPIO: pass key, off-heap size
         lineInfo.put("keyNum", keyNum);
         return lineInfo;
     }
@@ -997,6 +1346,14 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     @Override
     public void onEviction(Object key, CacheLine<V> value) {
         ExecutionPool.removePulse(value);
+        if (!listeners.isEmpty()) {
+            // SCIPIO: notify evictions like removals, so listeners keeping per-key state can drop it
+            noteRemoval(toKey(key), value.getValue());
+        }
+        if (value instanceof OffHeapCacheLine) {
+            value.cancel(); // SCIPIO: releases off-heap space accounting
+        }
+        evictionCount.incrementAndGet();
     }
 
     /**
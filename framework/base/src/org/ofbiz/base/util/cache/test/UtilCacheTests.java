@@ -22,16 +22,25 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ofbiz.base.test.GenericTestCaseBase;
 import org.ofbiz.base.util.UtilMisc;
 import org.ofbiz.base.util.UtilObject;
 import org.ofbiz.base.util.cache.CacheListener;
+import org.ofbiz.base.util.cache.OffHeapCacheStore;
 import org.ofbiz.base.util.cache.UtilCache;
 
 @SuppressWarnings("serial")
@@ -363,6 +372,23 @@ public class UtilCacheTests extends GenericTestCaseBase implements Serializable
         assertEquals("listener", wantedListener, gotListener);
     }
 
+    public void testEvictionListener() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(2, 2, 0, false);
+        Listener<String, String> gotListener = createListener(cache);
+        Listener<String, String> wantedListener = new Listener<>();
+        wantedListener.noteKeyAddition(cache, "one", "uno");
+        wantedListener.noteKeyAddition(cache, "two", "dos");
+        wantedListener.noteKeyAddition(cache, "three", "tres");
+        wantedListener.noteKeyRemoval(cache, "one", "uno");
+        cache.put("one", "uno");
+        cache.put("two", "dos");
+        cache.put("three", "tres");
+        assertNull("evicted", cache.get("one"));
+        assertEquals("cache.size", 2, cache.size());
+        cache.removeListener(gotListener);
+        assertEquals("listener", wantedListener, gotListener);
+    }
+
     public void testChangeMemSize() throws Exception {
         int size = 5;
         long ttl = 2000;
@@ -431,4 +457,107 @@ public class UtilCacheTests extends GenericTestCaseBase implements Serializable
         assertNull("not-key(0)", cache.get("0"));
         assertTrue("empty", cache.isEmpty());
     }
+
+    public void testOffHeapStore() throws Exception {
+        // Two segments of 16 bytes
+        OffHeapCacheStore store = new OffHeapCacheStore(getClass().getName() + "." + getName(), 32, 16, null);
+        assertNull("too large", store.put(new byte[17]));
+        OffHeapCacheStore.Ref first = store.put(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        OffHeapCacheStore.Ref second = store.put(new byte[] {9, 10, 11, 12, 13, 14, 15, 16});
+        assertEquals("first read", UtilMisc.toList((byte) 1, (byte) 8), UtilMisc.toList(first.read()[0], first.read()[7]));
+        assertEquals("second read", UtilMisc.toList((byte) 9, (byte) 16), UtilMisc.toList(second.read()[0], second.read()[7]));
+        assertEquals("used bytes", 16, store.getUsedBytes());
+        second.release();
+        second.release();
+        assertEquals("used bytes after release", 8, store.getUsedBytes());
+        // Fills the second segment, then recycles the first one
+        OffHeapCacheStore.Ref third = store.put(new byte[12]);
+        assertNotNull("third read", third.read());
+        assertNotNull("first still readable", first.read());
+        OffHeapCacheStore.Ref fourth = store.put(new byte[12]);
+        assertNull("first recycled", first.read());
+        assertNull("second recycled", second.read());
+        assertNotNull("third still readable", third.read());
+        assertNotNull("fourth read", fourth.read());
+        assertEquals("recycled segments", 1, store.getRecycledSegmentCount());
+        store.clear();
+        assertNull("third cleared", third.read());
+        assertNull("fourth cleared", fourth.read());
+        assertEquals("used bytes after clear", 0, store.getUsedBytes());
+    }
+
+    public void testOffHeapPutIfAbsent() throws Exception {
+        UtilCache<String, String> cache = UtilCache.createUtilCache(getClass().getName() + "." + getName(), 0, 0, 0, false, "test.offheap");
+        assertNotNull("off-heap store", cache.getOffHeapStore());
+        assertNull("first put", cache.putIfAbsent("key", "value1"));
+        long usedBytes = cache.getOffHeapSizeInBytes();
+        assertTrue("stored off-heap", usedBytes > 0);
+        assertEquals("existing value", "value1", cache.putIfAbsent("key", "value2"));
+        assertEquals("unused line released", usedBytes, cache.getOffHeapSizeInBytes());
+        assertEquals("value kept", "value1", cache.get("key"));
+    }
+
+    public void testGetOrLoad() throws Exception {
+        final UtilCache<String, String> cache = createUtilCache(5, 5, 0, false);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.getOrLoad("key", key -> {
+                    loads.incrementAndGet();
+                    loading.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "value";
+                })));
+            }
+            assertTrue("loading", loading.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("result", "value", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("single load", 1, loads.get());
+        assertEquals("load count", 1, cache.getLoadCount());
+        assertHasSingleKey(cache, "key", "value");
+        assertEquals("cached", "value", cache.getOrLoad("key", key -> "other"));
+
+        assertNull("null load", cache.getOrLoad("missing", key -> null));
+        assertFalse("null not cached", cache.containsKey("missing"));
+        try {
+            cache.getOrLoad("failing", key -> {
+                throw new IllegalArgumentException("fail");
+            });
+            fail("loader exception");
+        } catch (IllegalArgumentException e) {
+            assertFalse("failure not cached", cache.containsKey("failing"));
+        }
+        assertEquals("load after failure", "loaded", cache.getOrLoad("failing", key -> "loaded"));
+    }
+
+    public void testGetOrLoadRefreshAhead() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(5, 5, 1000, false);
+        cache.setRefreshAheadTime(900);
+        final AtomicInteger loads = new AtomicInteger();
+        assertEquals("first load", "value1", cache.getOrLoad("key", key -> "value" + loads.incrementAndGet()));
+        Thread.sleep(300);
+        // Within the refresh-ahead window: returns the current value and reloads in the background
+        assertEquals("refresh-ahead hit", "value1", cache.getOrLoad("key", key -> "value" + loads.incrementAndGet()));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"value2".equals(cache.get("key")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("refreshed", "value2", cache.get("key"));
+        assertEquals("refresh-ahead count", 1, cache.getRefreshAheadCount());
+        assertEquals("load count", 2, cache.getLoadCount());
+    }
 }
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.base.util.collections;
+
+import java.util.List;
+
+/**
+ * PagedList read by keyset (seek) pagination, which also carries the seek key of the next page (SCIPIO).
+ * <p>
+ * The seek key is an opaque string identifying the last row of this page, to be passed back to the source
+ * (such as <code>EntityQuery.seekAfter(String)</code>) to read the next page without an offset. It is null
+ * if there is no next page or the last row cannot be sought after, in which case the next page can still be
+ * read by view index.</p>
+ */
+public class KeysetPagedList<E> extends PagedList<E> {
+
+    protected final String nextSeekKey;
+
+    public KeysetPagedList(int startIndex, int endIndex, int size, int viewIndex, int viewSize, List<E> data, String nextSeekKey) {
+        super(startIndex, endIndex, size, viewIndex, viewSize, data);
+        this.nextSeekKey = nextSeekKey;
+    }
+
+    /**
+     * Copy constructor with ability to override data.
+     */
+    public KeysetPagedList(KeysetPagedList<?> other, List<E> data) {
+        super(other, data);
+        this.nextSeekKey = other.nextSeekKey;
+    }
+
+    /**
+     * @return the seek key of the next page, or null if there is none
+     */
+    public String getNextSeekKey() {
+        return nextSeekKey;
+    }
+}
@@ -167,6 +167,32 @@ public interface Delegator {
      */
     GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /**
+     * Creates all of the given values in the datasource in one transaction, reusing one prepared statement per
+     * entity and sending rows in JDBC batches (multi-row <code>INSERT ... VALUES</code> where the datasource has
+     * <code>use-multi-row-insert</code> enabled). Entity ECA rules and cache clearing are done per value.
+     * <p>Unlike {@link #storeAll(Collection)}, this does not check for existing rows; duplicate keys fail the whole call.</p>
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     *
+     * @param values
+     *            The GenericValues to create, possibly of different entities
+     * @return int representing number of rows effected by this operation
+     */
+    int createAll(List<GenericValue> values) throws GenericEntityException;
+
+    /**
+     * Creates all of the given values in the datasource using JDBC batches of the given size.
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     *
+     * @param values
+     *            The GenericValues to create, possibly of different entities
+     * @param batchSize
+     *            Rows per batch; zero or less for the datasource <code>batch-size</code>
+     * @return int representing number of rows effected by this operation
+     * @see #createAll(List)
+     */
+    int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException;
+
     /**
      * Creates a Entity in the form of a GenericValue and write it to the
      * database
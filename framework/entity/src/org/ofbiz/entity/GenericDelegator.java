@@ -28,6 +28,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +46,8 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.ofbiz.base.concurrent.ConstantFuture;
 import org.ofbiz.base.concurrent.ExecutionPool;
+import org.ofbiz.base.trace.TraceSpan;
+import org.ofbiz.base.trace.Tracer;
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.GeneralRuntimeException;
 import org.ofbiz.base.util.UtilDateTime;
@@ -56,12 +60,15 @@ import org.ofbiz.base.util.UtilValidate;
 import org.ofbiz.base.util.UtilXml;
 import org.ofbiz.entity.cache.Cache;
 import org.ofbiz.entity.condition.EntityCondition;
+import org.ofbiz.entity.condition.EntityOperator;
 import org.ofbiz.entity.config.model.Datasource;
 import org.ofbiz.entity.config.model.DelegatorElement;
 import org.ofbiz.entity.config.model.EntityConfig;
+import org.ofbiz.entity.config.model.GroupMap;
 import org.ofbiz.entity.datasource.GenericHelper;
 import org.ofbiz.entity.datasource.GenericHelperFactory;
 import org.ofbiz.entity.datasource.GenericHelperInfo;
+import org.ofbiz.entity.datasource.ReadReplicaRouter;
 import org.ofbiz.entity.eca.EntityEcaHandler;
 import org.ofbiz.entity.model.DynamicViewEntity;
 import org.ofbiz.entity.model.ModelEntity;
@@ -103,6 +110,8 @@ public class GenericDelegator implements Delegator {
     public static final boolean alwaysUseTransaction = true;
     // TODO should this is be handled by tenant?
     public static final boolean saveEntitySyncRemoveInfo = UtilProperties.getPropertyAsBoolean("general", "saveEntitySyncRemove", false);
+    /** Max primary keys per select when looking up existing rows in batched storeAll (SCIPIO). */
+    private static final int STORE_ALL_PK_CHUNK_SIZE = 200;
 
     protected String delegatorBaseName = null;
     protected String delegatorFullName = null;
@@ -110,6 +119,8 @@ public class GenericDelegator implements Delegator {
     private String originalDelegatorName = null;
 
     protected DelegatorElement delegatorInfo = null;
+    /** Read replica routers by entity group name, for the groups with read replicas (SCIPIO). */
+    protected Map<String, ReadReplicaRouter> readReplicaRouters = Collections.emptyMap();
 
     protected Cache cache = null;
 
@@ -200,6 +211,7 @@ public class GenericDelegator implements Delegator {
         if (this.delegatorInfo == null) {
             throw new GenericEntityException("No configuration found for delegator [" + delegatorFullName + "]");
         }
+        this.readReplicaRouters = makeReadReplicaRouters(this.delegatorInfo); // SCIPIO
 
         String kekText;
         // before continuing, if there is a tenantId use the base delegator to see if it is valid
@@ -564,6 +576,35 @@ public class GenericDelegator implements Delegator {
         return getEntityHelper(entity.getEntityName());
     }
 
+    private static Map<String, ReadReplicaRouter> makeReadReplicaRouters(DelegatorElement delegatorInfo) { // SCIPIO
+        Map<String, ReadReplicaRouter> routers = new HashMap<>();
+        for (GroupMap groupMap : delegatorInfo.getGroupMapList()) {
+            if (!groupMap.getReadReplicaNames().isEmpty()) {
+                routers.put(groupMap.getGroupName(), new ReadReplicaRouter(groupMap));
+            }
+        }
+        return routers.isEmpty() ? Collections.<String, ReadReplicaRouter>emptyMap() : Collections.unmodifiableMap(routers);
+    }
+
+    /**
+     * SCIPIO: Returns the helper to read the given entity from. This is a read replica of its entity group if the group
+     * has any and the read is outside of a transaction, does not fill the entity cache, does not require fresh data and
+     * does not use an updatable result set; otherwise it is the same as {@link #getEntityHelper(String)}.
+     * <p>
+     * NOTE: Must be called before the find begins its own transaction.</p>
+     */
+    public GenericHelper getEntityReadHelper(String entityName, EntityFindOptions findOptions, boolean useCache) throws GenericEntityException {
+        if (!readReplicaRouters.isEmpty() && !useCache && UtilValidate.isEmpty(this.delegatorTenantId)
+                && (findOptions == null || (!findOptions.getRequireFresh() && findOptions.getResultSetConcurrency() != EntityFindOptions.CONCUR_UPDATABLE))
+                && !TransactionUtil.isTransactionInPlace()) {
+            ReadReplicaRouter router = readReplicaRouters.get(this.getEntityGroupName(entityName));
+            if (router != null) {
+                return GenericHelperFactory.getHelper(router.getHelperInfo());
+            }
+        }
+        return getEntityHelper(entityName);
+    }
+
     /* (non-Javadoc)
      * @see org.ofbiz.entity.Delegator#getEntityFieldType(org.ofbiz.entity.model.ModelEntity, java.lang.String)
      */
@@ -886,7 +927,12 @@ public class GenericDelegator implements Delegator {
                 createEntityAuditLogAll(value, false, false);
             }
 
-            value = helper.create(value);
+            TraceSpan span = startEntitySpan("create", value.getEntityName()); // SCIPIO
+            try {
+                value = helper.create(value);
+            } finally {
+                Tracer.endSpan(span);
+            }
 
             if (testMode) {
                 storeForTestRollback(new TestOperation(OperationType.INSERT, value));
@@ -913,6 +959,56 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.ofbiz.entity.Delegator#createAll(java.util.List)
+     */
+    @Override
+    public int createAll(List<GenericValue> values) throws GenericEntityException {
+        return createAll(values, 0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.ofbiz.entity.Delegator#createAll(java.util.List, int)
+     */
+    @Override
+    public int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        if (UtilValidate.isEmpty(values)) {
+            return 0;
+        }
+        int numberCreated = 0;
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+
+            Map<String, List<GenericValue>> valuesByEntity = new LinkedHashMap<>();
+            for (GenericValue value : values) {
+                if (value == null) {
+                    throw new GenericEntityException("Cannot create a null value");
+                }
+                valuesByEntity.computeIfAbsent(value.getEntityName(), k -> new ArrayList<>()).add(value);
+            }
+            for (List<GenericValue> entityValues : valuesByEntity.values()) {
+                ModelEntity modelEntity = entityValues.get(0).getModelEntity();
+                if (modelEntity instanceof ModelViewEntity || modelEntity.lock()) {
+                    for (GenericValue value : entityValues) {
+                        this.create(value);
+                        numberCreated++;
+                    }
+                    continue;
+                }
+                numberCreated += createAllBatch(getEntityHelper(modelEntity), entityValues, batchSize);
+            }
+
+            TransactionUtil.commit(beganTransaction);
+            return numberCreated;
+        } catch (GenericEntityException e) {
+            String errMsg = "Failure in createAll operation: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(e, errMsg, module);
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            throw new GenericEntityException(e);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.ofbiz.entity.Delegator#createOrStore(org.ofbiz.entity.GenericValue)
      */
@@ -995,7 +1091,13 @@ public class GenericDelegator implements Delegator {
             if (testMode) {
                 removedEntity = this.findOne(primaryKey.getEntityName(), primaryKey, false);
             }
-            int num = helper.removeByPrimaryKey(primaryKey);
+            int num;
+            TraceSpan span = startEntitySpan("remove", primaryKey.getEntityName()); // SCIPIO
+            try {
+                num = helper.removeByPrimaryKey(primaryKey);
+            } finally {
+                Tracer.endSpan(span);
+            }
 
             // doCacheClear
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_REMOVE, primaryKey, false);
@@ -1051,7 +1153,13 @@ public class GenericDelegator implements Delegator {
                 removedValue = this.findOne(value.getEntityName(), value.getPrimaryKey(), false);
             }
 
-            int num = helper.removeByPrimaryKey(value.getPrimaryKey());
+            int num;
+            TraceSpan span = startEntitySpan("remove", value.getEntityName()); // SCIPIO
+            try {
+                num = helper.removeByPrimaryKey(value.getPrimaryKey());
+            } finally {
+                Tracer.endSpan(span);
+            }
             // Need to call removedFromDatasource() here because the helper calls removedFromDatasource() on the PK instead of the GenericEntity.
             value.removedFromDatasource();
 
@@ -1117,7 +1225,13 @@ public class GenericDelegator implements Delegator {
                 removedEntities = this.findList(entityName, condition, null, null, null, false);
             }
 
-            int rowsAffected = helper.removeByCondition(this, modelEntity, condition);
+            int rowsAffected;
+            TraceSpan span = startEntitySpan("removeByCondition", entityName); // SCIPIO
+            try {
+                rowsAffected = helper.removeByCondition(this, modelEntity, condition);
+            } finally {
+                Tracer.endSpan(span);
+            }
             if (rowsAffected > 0) {
                 this.clearCacheLine(entityName);
             }
@@ -1199,7 +1313,13 @@ public class GenericDelegator implements Delegator {
                 updatedEntities = this.findList(entityName, condition, null, null, null, false);
             }
 
-            int rowsAffected =  helper.storeByCondition(this, modelEntity, fieldsToSet, condition);
+            int rowsAffected;
+            TraceSpan span = startEntitySpan("storeByCondition", entityName); // SCIPIO
+            try {
+                rowsAffected = helper.storeByCondition(this, modelEntity, fieldsToSet, condition);
+            } finally {
+                Tracer.endSpan(span);
+            }
             if (rowsAffected > 0) {
                 this.clearCacheLine(entityName);
             }
@@ -1247,7 +1367,13 @@ public class GenericDelegator implements Delegator {
                 updatedEntity = this.findOne(value.getEntityName(), value.getPrimaryKey(), false);
             }
 
-            int retVal = helper.store(value);
+            int retVal;
+            TraceSpan span = startEntitySpan("store", value.getEntityName()); // SCIPIO
+            try {
+                retVal = helper.store(value);
+            } finally {
+                Tracer.endSpan(span);
+            }
 
             // doCacheClear
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_STORE, value, false);
@@ -1294,6 +1420,11 @@ public class GenericDelegator implements Delegator {
             storeOptions = new EntityStoreOptions();
         }
 
+        // SCIPIO: 2.1.0: Batched mode: chunked primary key prefetch and JDBC batch inserts/updates
+        if (storeOptions.isBatch()) {
+            return storeAllBatch(values, storeOptions);
+        }
+
         int numberChanged = 0;
 
         boolean beganTransaction = false;
@@ -1360,6 +1491,202 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /**
+     * Batched implementation of {@link #storeAll(Collection, EntityStoreOptions)}, used when {@link EntityStoreOptions#isBatch()} is set.
+     * <p>Values are grouped by entity; existing rows are looked up with chunked primary key selects and the resulting
+     * inserts and updates are sent through {@link GenericHelper#createAll(List, int)} and {@link GenericHelper#storeAll(List, int)}.
+     * Entity ECA rules, audit logging and cache clearing are still done per value, but the rules before the writes run
+     * for all values of an entity first and the rules after them last. View entities and entities
+     * with optimistic locking fall back to the non-batched per-value path.</p>
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     */
+    protected int storeAllBatch(Collection<GenericValue> values, EntityStoreOptions storeOptions) throws GenericEntityException {
+        int numberChanged = 0;
+
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+
+            // group by entity, keeping the original order within each entity
+            Map<String, List<GenericValue>> valuesByEntity = new LinkedHashMap<>();
+            for (GenericValue value : values) {
+                if (!value.getPrimaryKey().isPrimaryKey()) {
+                    throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + value.getPrimaryKey());
+                }
+                valuesByEntity.computeIfAbsent(value.getEntityName(), k -> new ArrayList<>()).add(value);
+            }
+
+            for (List<GenericValue> entityValues : valuesByEntity.values()) {
+                ModelEntity modelEntity = entityValues.get(0).getModelEntity();
+                if (modelEntity instanceof ModelViewEntity || modelEntity.lock()) {
+                    numberChanged += this.storeAll(entityValues, new EntityStoreOptions(storeOptions.isCreateDummyFks()));
+                    continue;
+                }
+                GenericHelper helper = getEntityHelper(modelEntity);
+
+                // NOTE: don't use findList because we don't want to the ECA events to fire and such
+                Map<GenericPK, GenericValue> existingByPk = findExistingForStoreAll(helper, modelEntity, entityValues);
+
+                List<GenericValue> toCreate = new ArrayList<>();
+                List<GenericValue> toStore = new ArrayList<>();
+                List<GenericValue> toStoreExisting = new ArrayList<>();
+                for (GenericValue value : entityValues) {
+                    GenericPK primaryKey = value.getPrimaryKey();
+                    GenericValue existing = existingByPk.get(primaryKey);
+                    if (existing == null) {
+                        if (storeOptions.isCreateDummyFks()) {
+                            value.checkFks(true);
+                        }
+                        toCreate.add(value);
+                        // a later value with the same primary key becomes an update of this one
+                        existingByPk.put(primaryKey, GenericValue.create(value));
+                    } else {
+                        // don't send fields that are the same, and if no fields have changed, update nothing
+                        GenericValue toStoreValue = GenericValue.create(this, modelEntity, primaryKey);
+                        boolean atLeastOneField = false;
+                        Iterator<ModelField> nonPksIter = modelEntity.getNopksIterator();
+                        while (nonPksIter.hasNext()) {
+                            ModelField modelField = nonPksIter.next();
+                            String fieldName = modelField.getName();
+                            if (value.containsKey(fieldName)) {
+                                Object fieldValue = value.get(fieldName);
+                                Object oldValue = existing.get(fieldName);
+                                if (!UtilObject.equalsHelper(oldValue, fieldValue)) {
+                                    toStoreValue.put(fieldName, fieldValue);
+                                    atLeastOneField = true;
+                                }
+                            }
+                        }
+
+                        if (atLeastOneField) {
+                            if (storeOptions.isCreateDummyFks()) {
+                                value.checkFks(true);
+                            }
+                            toStore.add(toStoreValue);
+                            toStoreExisting.add(GenericValue.create(existing));
+                            existing.putAll(toStoreValue);
+                        }
+                    }
+                }
+
+                numberChanged += createAllBatch(helper, toCreate, storeOptions.getBatchSize());
+                numberChanged += storeAllBatch(helper, toStore, toStoreExisting, storeOptions.getBatchSize());
+            }
+            TransactionUtil.commit(beganTransaction);
+            return numberChanged;
+        } catch (GenericEntityException e) {
+            String errMsg = "Failure in storeAll operation: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(e, errMsg, module);
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            throw new GenericEntityException(e);
+        }
+    }
+
+    /**
+     * Looks up the existing rows for the given values of a single entity using chunked primary key selects,
+     * <code>IN (...)</code> for single-field primary keys and OR-ed field maps otherwise.
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     */
+    private Map<GenericPK, GenericValue> findExistingForStoreAll(GenericHelper helper, ModelEntity modelEntity, List<GenericValue> values) throws GenericEntityException {
+        Map<GenericPK, GenericValue> existingByPk = new HashMap<>();
+        List<String> pkFieldNames = modelEntity.getPkFieldNames();
+        for (int i = 0; i < values.size(); i += STORE_ALL_PK_CHUNK_SIZE) {
+            List<GenericValue> chunk = values.subList(i, Math.min(i + STORE_ALL_PK_CHUNK_SIZE, values.size()));
+            EntityCondition condition;
+            if (pkFieldNames.size() == 1) {
+                String pkFieldName = pkFieldNames.get(0);
+                Set<Object> pkValues = new LinkedHashSet<>();
+                for (GenericValue value : chunk) {
+                    pkValues.add(value.get(pkFieldName));
+                }
+                condition = EntityCondition.makeCondition(pkFieldName, EntityOperator.IN, pkValues);
+            } else {
+                List<EntityCondition> pkConditions = new ArrayList<>(chunk.size());
+                for (GenericValue value : chunk) {
+                    pkConditions.add(EntityCondition.makeCondition(value.getPrimaryKey().getAllFields()));
+                }
+                condition = EntityCondition.makeCondition(pkConditions, EntityOperator.OR);
+            }
+            try (EntityListIterator eli = helper.findListIteratorByCondition(this, modelEntity, condition, null, null, null, null)) {
+                GenericValue existing;
+                while ((existing = eli.next()) != null) {
+                    existingByPk.put(existing.getPrimaryKey(), existing);
+                }
+            }
+        }
+        return existingByPk;
+    }
+
+    private int createAllBatch(GenericHelper helper, List<GenericValue> values, int batchSize) throws GenericEntityException {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(values.get(0).getEntityName());
+        for (GenericValue value : values) {
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_CREATE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_CREATE, value, false);
+            value.setDelegator(this);
+            // if audit log on for any fields, save new value with no old value because it's a create
+            if (value.getModelEntity().getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, false, false);
+            }
+        }
+
+        int retVal;
+        TraceSpan span = startEntitySpan("createAll", values.get(0).getEntityName()); // SCIPIO
+        try {
+            retVal = helper.createAll(values, batchSize);
+        } finally {
+            Tracer.endSpan(span);
+        }
+
+        for (GenericValue value : values) {
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.INSERT, value));
+            }
+            // doCacheClear
+            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_CREATE, value, false);
+            this.clearCacheLine(value);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_CREATE, value, false);
+        }
+        return retVal;
+    }
+
+    private int storeAllBatch(GenericHelper helper, List<GenericValue> values, List<GenericValue> existingValues, int batchSize) throws GenericEntityException {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(values.get(0).getEntityName());
+        for (GenericValue value : values) {
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_STORE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_STORE, value, false);
+            // if audit log on for any fields, save old value before the update so we still have both
+            if (value.getModelEntity().getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, true, false);
+            }
+        }
+
+        int retVal;
+        TraceSpan span = startEntitySpan("storeAll", values.get(0).getEntityName()); // SCIPIO
+        try {
+            retVal = helper.storeAll(values, batchSize);
+        } finally {
+            Tracer.endSpan(span);
+        }
+
+        for (int i = 0; i < values.size(); i++) {
+            GenericValue value = values.get(i);
+            // doCacheClear
+            ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, EntityEcaHandler.OP_STORE, value, false);
+            this.clearCacheLine(value);
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.UPDATE, existingValues.get(i)));
+            }
+            ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_STORE, value, false);
+        }
+        return retVal;
+    }
+
     /* (non-Javadoc)
      * @see org.ofbiz.entity.Delegator#removeAll(java.lang.String)
      */
@@ -1431,6 +1758,7 @@ public class GenericDelegator implements Delegator {
             }
         }
 
+        GenericHelper helper = getEntityReadHelper(entityName, null, useCache); // SCIPIO: before our transaction
         boolean beganTransaction = false;
         try {
             if (alwaysUseTransaction) {
@@ -1439,13 +1767,15 @@ public class GenericDelegator implements Delegator {
 
             ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_FIND, primaryKey, false);
 
-            GenericHelper helper = getEntityHelper(entityName);
             GenericValue value = null;
 
             ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, primaryKey, false);
+            TraceSpan span = startEntitySpan("findOne", entityName); // SCIPIO
             try {
                 value = helper.findByPrimaryKey(primaryKey);
             } catch (GenericEntityNotFoundException e) {
+            } finally {
+                Tracer.endSpan(span);
             }
             if (value != null) {
                 value.setDelegator(this);
@@ -1476,6 +1806,7 @@ public class GenericDelegator implements Delegator {
      */
     @Override
     public GenericValue findByPrimaryKeyPartial(GenericPK primaryKey, Set<String> keys) throws GenericEntityException {
+        GenericHelper helper = getEntityReadHelper(primaryKey.getEntityName(), null, false); // SCIPIO: before our transaction
         boolean beganTransaction = false;
         try {
             if (alwaysUseTransaction) {
@@ -1485,7 +1816,6 @@ public class GenericDelegator implements Delegator {
             EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(primaryKey.getEntityName());
             ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_FIND, primaryKey, false);
 
-            GenericHelper helper = getEntityHelper(primaryKey.getEntityName());
             GenericValue value = null;
 
             if (!primaryKey.isPrimaryKey()) {
@@ -1534,6 +1864,26 @@ public class GenericDelegator implements Delegator {
      */
     @Override
     public EntityListIterator find(String entityName, EntityCondition whereEntityCondition, EntityCondition havingEntityCondition, Set<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions) throws GenericEntityException {
+        TraceSpan span = startEntitySpan("find", entityName); // SCIPIO: query execution only; the rows are read by the caller
+        try {
+            return find(entityName, whereEntityCondition, havingEntityCondition, fieldsToSelect, orderBy, findOptions, getEntityReadHelper(entityName, findOptions, false));
+        } finally {
+            Tracer.endSpan(span);
+        }
+    }
+
+    /**
+     * SCIPIO: Starts a tracing span for a datasource operation of an entity, or returns null if not tracing.
+     */
+    private static TraceSpan startEntitySpan(String operation, String entityName) {
+        TraceSpan span = Tracer.startSpan(TraceSpan.TYPE_ENTITY, operation + " " + entityName);
+        if (span != null) {
+            span.setAttribute("db.operation", operation).setAttribute("entity.name", entityName);
+        }
+        return span;
+    }
+
+    private EntityListIterator find(String entityName, EntityCondition whereEntityCondition, EntityCondition havingEntityCondition, Set<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions, GenericHelper helper) throws GenericEntityException { // SCIPIO: helper
 
         // if there is no transaction throw an exception, we don't want to create a transaction here since closing it would mess up the ELI
         if (!TransactionUtil.isTransactionInPlace()) {
@@ -1557,7 +1907,6 @@ public class GenericDelegator implements Delegator {
         }
 
         ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, dummyValue, false);
-        GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
         EntityListIterator eli = helper.findListIteratorByCondition(this, modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect, orderBy, findOptions);
         eli.setDelegator(this);
 
@@ -1590,6 +1939,7 @@ public class GenericDelegator implements Delegator {
             }
         }
 
+        GenericHelper helper = getEntityReadHelper(entityName, findOptions, useCache); // SCIPIO: before our transaction
         boolean beganTransaction = false;
         try {
             if (alwaysUseTransaction) {
@@ -1597,8 +1947,14 @@ public class GenericDelegator implements Delegator {
             }
 
             List<GenericValue> list = null;
-            try (EntityListIterator eli = this.find(entityName, entityCondition, null, fieldsToSelect, orderBy, findOptions)) {
+            TraceSpan span = startEntitySpan("findList", entityName); // SCIPIO
+            try (EntityListIterator eli = this.find(entityName, entityCondition, null, fieldsToSelect, orderBy, findOptions, helper)) {
                 list = eli.getCompleteList();
+                if (span != null) {
+                    span.setAttribute("db.rows", list.size());
+                }
+            } finally {
+                Tracer.endSpan(span);
             }
 
             if (useCache) {
@@ -1642,7 +1998,7 @@ public class GenericDelegator implements Delegator {
             havingEntityCondition.checkCondition(modelViewEntity);
         }
 
-        GenericHelper helper = getEntityHelper(dynamicViewEntity.getOneRealEntityName());
+        GenericHelper helper = getEntityReadHelper(dynamicViewEntity.getOneRealEntityName(), findOptions, false); // SCIPIO: read replicas
         EntityListIterator eli = helper.findListIteratorByCondition(this, modelViewEntity, whereEntityCondition,
                 havingEntityCondition, fieldsToSelect, orderBy, findOptions);
         eli.setDelegator(this);
@@ -1657,6 +2013,7 @@ public class GenericDelegator implements Delegator {
     public long findCountByCondition(String entityName, EntityCondition whereEntityCondition,
             EntityCondition havingEntityCondition, EntityFindOptions findOptions) throws GenericEntityException {
 
+        GenericHelper helper = getEntityReadHelper(entityName, findOptions, false); // SCIPIO: before our transaction
         boolean beganTransaction = false;
         try {
             if (alwaysUseTransaction) {
@@ -1676,8 +2033,13 @@ public class GenericDelegator implements Delegator {
             }
 
             ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_FIND, dummyValue, false);
-            GenericHelper helper = getEntityHelper(modelEntity.getEntityName());
-            long count = helper.findCountByCondition(this, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+            long count;
+            TraceSpan span = startEntitySpan("findCount", entityName); // SCIPIO
+            try {
+                count = helper.findCountByCondition(this, modelEntity, whereEntityCondition, havingEntityCondition, findOptions);
+            } finally {
+                Tracer.endSpan(span);
+            }
 
             ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, EntityEcaHandler.OP_FIND, dummyValue, false);
             TransactionUtil.commit(beganTransaction);
@@ -2532,6 +2894,7 @@ public class GenericDelegator implements Delegator {
         //   delegator, allowing the new delegatorFullName to not match a delegator name in the entityengine.xml file
         newDelegator.delegatorBaseName = this.delegatorBaseName;
         newDelegator.delegatorInfo = this.delegatorInfo;
+        newDelegator.readReplicaRouters = this.readReplicaRouters; // SCIPIO
         newDelegator.cache = this.cache;
         newDelegator.distributedCacheClear.set(this.distributedCacheClear.get());
         newDelegator.originalDelegatorName = getOriginalDelegatorName();
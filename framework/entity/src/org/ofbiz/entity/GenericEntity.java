@@ -2224,6 +2224,10 @@ public class GenericEntity implements ScipioMap<String, Object>, LocalizedMap<Ob
         public String toString() {
             return "[null-entity]";
         }
+        /** SCIPIO: Preserves the singleton across serialization (e.g. off-heap caches), since it is checked by identity. */
+        private Object readResolve() {
+            return NULL_ENTITY;
+        }
     }
 
     public static class NullField implements NULL, Comparable<NullField> {
@@ -361,6 +361,10 @@ public class GenericValue extends GenericEntity {
         public String toString() {
             return "[null-entity-value]";
         }
+        /** SCIPIO: Preserves the singleton across serialization (e.g. off-heap caches), since it is checked by identity. */
+        private Object readResolve() {
+            return NULL_VALUE;
+        }
     }
 
     public static String getStackTraceAsString() {
@@ -18,9 +18,12 @@
  *******************************************************************************/
 package org.ofbiz.entity.cache;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -37,6 +40,9 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
 
     private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
 
+    /** Condition key indexes, per entity name (SCIPIO). */
+    private final ConcurrentMap<String, EntityConditionCacheIndex<ConcurrentMap<K, V>>> indexes = new ConcurrentHashMap<>();
+
     protected AbstractEntityConditionCache(String delegatorName, String id) {
         super(delegatorName, id);
     }
@@ -63,18 +69,95 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
     }
 
     /**
-     * Removes all condition caches that include the specified entity.
+     * Removes the condition cache entries that the specified entity could affect, and all condition caches of
+     * the view entities it converts to.
+     * <p>SCIPIO: Previously this cleared the whole condition cache of the entity; now only the conditions found
+     * affected through the condition index are removed. See {@link #remove(GenericEntity, GenericEntity)}.</p>
      */
     public void remove(GenericEntity entity) {
-        UtilCache.clearCache(getCacheName(entity.getEntityName()));
+        remove(null, entity);
+    }
+
+    /**
+     * Removes the condition cache entries that a change from oldEntity (may be null if unknown) to entity could affect,
+     * and all condition caches of the view entities it converts to (SCIPIO).
+     * <p>Affected conditions are those that either value could match, plus, for caches that track the rows they
+     * returned, those that returned a row with the same primary key. Caches that do not track rows fall back to
+     * clearing the whole entity cache when the old value is unknown.</p>
+     */
+    public void remove(GenericEntity oldEntity, GenericEntity entity) {
         ModelEntity model = entity.getModelEntity();
+        String entityName = model.getEntityName();
+        if (isNull(oldEntity)) {
+            oldEntity = null;
+        }
+        UtilCache<EntityCondition, ConcurrentMap<K, V>> cache = getCache(entityName);
+        if (cache != null) {
+            EntityConditionCacheIndex<ConcurrentMap<K, V>> index = indexes.get(entityName);
+            if (index == null || (oldEntity == null && !isTrackMembers())) {
+                UtilCache.clearCache(getCacheName(entityName));
+            } else {
+                GenericPK pk = isTrackMembers() ? entity.getPrimaryKey() : null;
+                removeConditions(cache, index, index.getAffectedConditions(getDelegator(), pk, oldEntity, entity));
+            }
+        }
         Iterator<String> it = model.getViewConvertorsIterator();
         while (it.hasNext()) {
             String targetEntityName = it.next();
+            // Converted view values only hold the fields of this member entity, so they can't be matched reliably
             UtilCache.clearCache(getCacheName(targetEntityName));
         }
     }
 
+    /**
+     * Returns true if this cache records the rows each condition returned through {@link #addMembers}, so that
+     * a changed row can be matched to the conditions that contain it (SCIPIO).
+     */
+    protected boolean isTrackMembers() {
+        return false;
+    }
+
+    /**
+     * Records the rows returned for the given condition in the condition index (SCIPIO).
+     */
+    protected void addMembers(String entityName, EntityCondition condition, Collection<? extends GenericEntity> values) {
+        EntityConditionCacheIndex<ConcurrentMap<K, V>> index = indexes.get(entityName);
+        if (index != null) {
+            index.addMembers(getConditionKey(condition), values);
+        }
+    }
+
+    protected EntityConditionCacheIndex<ConcurrentMap<K, V>> getIndex(String entityName) {
+        return indexes.get(entityName);
+    }
+
+    protected EntityConditionCacheIndex<ConcurrentMap<K, V>> getOrCreateIndex(String entityName, UtilCache<EntityCondition, ConcurrentMap<K, V>> cache) {
+        EntityConditionCacheIndex<ConcurrentMap<K, V>> index = indexes.get(entityName);
+        if (index == null) {
+            EntityConditionCacheIndex<ConcurrentMap<K, V>> newIndex = new EntityConditionCacheIndex<>();
+            index = indexes.putIfAbsent(entityName, newIndex);
+            if (index == null) {
+                index = newIndex;
+                cache.addListener(index);
+            }
+        }
+        return index;
+    }
+
+    private void removeConditions(UtilCache<EntityCondition, ConcurrentMap<K, V>> cache, EntityConditionCacheIndex<ConcurrentMap<K, V>> index,
+                                  Set<EntityCondition> conditions) {
+        for (EntityCondition condition : conditions) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Removing affected condition from cache [" + cache.getName() + "]: " + condition, module);
+            }
+            cache.remove(condition);
+            // Normally done by the index removal listener; also covers a condition no longer in the cache
+            if (!cache.containsKey(condition)) {
+                index.unregister(condition);
+            }
+        }
+    }
+
     public void remove(String entityName, EntityCondition condition) {
         UtilCache<EntityCondition, ConcurrentMap<K, V>> cache = getCache(entityName);
         if (cache == null) {
@@ -115,6 +198,8 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         if (conditionCache == null) {
             conditionCache = new ConcurrentHashMap<>();
             utilCache.put(conditionKey, conditionCache);
+            // SCIPIO: Register after the put, so a concurrent removal notification for the same key can't unregister it
+            getOrCreateIndex(entityName, utilCache).register(conditionKey);
         }
         return conditionCache;
     }
@@ -182,7 +267,31 @@ public abstract class AbstractEntityConditionCache<K, V> extends AbstractCache<E
         if (entityCache == null) {
             return;
         }
-        for (EntityCondition condition: entityCache.getCacheLineKeys()) {
+        // SCIPIO: Only check the conditions the index finds the values could match, instead of all cache keys;
+        // the isPK case removes conditions that did not match the old value, so it still needs the full scan.
+        Collection<? extends EntityCondition> conditions = entityCache.getCacheLineKeys();
+        EntityConditionCacheIndex<ConcurrentMap<K, V>> index = indexes.get(entityName);
+        if (index != null && !isPK) {
+            Set<EntityCondition> candidates = new HashSet<>();
+            if (oldValues != null) {
+                for (T1 oldValue : oldValues) {
+                    if (!isNull(oldValue)) {
+                        candidates.addAll(index.getMatchingConditions(getDelegator(), oldValue));
+                    }
+                }
+            } else if (newValues != null) {
+                for (T2 newValue : newValues) {
+                    if (!isNull(newValue)) {
+                        candidates.addAll(index.getMatchingConditions(getDelegator(), newValue));
+                    }
+                }
+            }
+            if (entityCache.containsKey(null)) {
+                candidates.add(null);
+            }
+            conditions = candidates;
+        }
+        for (EntityCondition condition: conditions) {
             boolean shouldRemove = false;
             if (condition == null) {
                 shouldRemove = true;
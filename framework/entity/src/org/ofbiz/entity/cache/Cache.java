@@ -19,6 +19,7 @@
 package org.ofbiz.entity.cache;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.UtilGenerics;
@@ -31,6 +32,8 @@ public class Cache {
 
     private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
 
+    private static final List<ClearListener> clearListeners = new CopyOnWriteArrayList<>(); // SCIPIO
+
     protected EntityCache entityCache;
     protected EntityListCache entityListCache;
     protected EntityObjectCache entityObjectCache;
@@ -44,15 +47,39 @@ public class Cache {
         entityListCache = new EntityListCache(delegatorName);
     }
 
+    /**
+     * SCIPIO: Registers a listener notified whenever entries of any delegator's entity cache are cleared, which the
+     * delegator does on every write of a cacheable entity, including distributed cache clears from other servers.
+     */
+    public static void addClearListener(ClearListener listener) {
+        clearListeners.add(listener);
+    }
+
+    public static void removeClearListener(ClearListener listener) {
+        clearListeners.remove(listener);
+    }
+
+    protected void noteClear(String entityName, GenericEntity entity) { // SCIPIO
+        for (ClearListener listener : clearListeners) {
+            try {
+                listener.noteClear(delegatorName, entityName, entity);
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Error in entity cache clear listener " + listener, module);
+            }
+        }
+    }
+
     public void clear() {
         entityCache.clear();
         entityListCache.clear();
         entityObjectCache.clear();
+        noteClear(null, null); // SCIPIO
     }
 
     public void remove(String entityName) {
         entityCache.remove(entityName);
         entityListCache.remove(entityName);
+        noteClear(entityName, null); // SCIPIO
     }
 
     public GenericValue get(GenericPK pk) {
@@ -103,6 +130,7 @@ public class Cache {
         entityCache.remove(entityName, condition);
         entityListCache.remove(entityName, condition);
         entityObjectCache.remove(entityName, condition);
+        noteClear(entityName, null); // SCIPIO
     }
 
     public <T> T remove(String entityName, EntityCondition condition, String name) {
@@ -115,8 +143,10 @@ public class Cache {
         }
         GenericValue oldEntity = entityCache.remove(entity.getPrimaryKey());
         // Workaround because AbstractEntityConditionCache.storeHook doesn't work.
-        entityListCache.remove(entity);
-        entityObjectCache.remove(entity);
+        // SCIPIO: Pass the previously cached value, if any, so only the affected conditions are removed
+        entityListCache.remove(oldEntity, entity);
+        entityObjectCache.remove(oldEntity, entity);
+        noteClear(entity.getEntityName(), entity); // SCIPIO
         return oldEntity;
     }
 
@@ -126,10 +156,23 @@ public class Cache {
         }
         GenericValue oldEntity = entityCache.remove(pk);
         // Workaround because AbstractEntityConditionCache.storeHook doesn't work.
-        entityListCache.remove(pk);
-        entityObjectCache.remove(pk);
+        // SCIPIO: Pass the previously cached value, if any, so only the affected conditions are removed
+        entityListCache.remove(oldEntity, pk);
+        entityObjectCache.remove(oldEntity, pk);
         // entityListCache.storeHook(pk, null);
         // entityObjectCache.storeHook(pk, null);
+        noteClear(pk.getEntityName(), pk); // SCIPIO
         return oldEntity;
     }
+
+    /**
+     * SCIPIO: Entity cache clear listener.
+     */
+    public interface ClearListener {
+        /**
+         * Called after entity cache entries were cleared: entityName null means the whole cache of the delegator,
+         * entity null means all entries of the entity, otherwise those of the given value or primary key.
+         */
+        void noteClear(String delegatorName, String entityName, GenericEntity entity);
+    }
 }
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.entity.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.cache.CacheListener;
+import org.ofbiz.base.util.cache.UtilCache;
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.entity.GenericEntity;
+import org.ofbiz.entity.GenericPK;
+import org.ofbiz.entity.condition.EntityCondition;
+import org.ofbiz.entity.condition.EntityConditionList;
+import org.ofbiz.entity.condition.EntityConditionValue;
+import org.ofbiz.entity.condition.EntityExpr;
+import org.ofbiz.entity.condition.EntityFieldMap;
+import org.ofbiz.entity.condition.EntityFieldValue;
+import org.ofbiz.entity.condition.EntityOperator;
+
+/**
+ * Index of the condition keys held in the condition cache of a single entity, used to find the cache
+ * entries that a changed value could affect without scanning every cached condition (SCIPIO).
+ * <p>
+ * Each registered condition is indexed by one of its top-level <code>field = constant</code> constraints, so
+ * a value can only match it if it has that field value; conditions without such a constraint are kept in a
+ * separate set that is always checked. For list caches the index also records which rows (by primary key)
+ * each cached condition returned, so that a changed row evicts the lists that contain it even when its old
+ * values are unknown.</p>
+ * <p>
+ * Matching is conservative: a condition that references fields the value does not contain, or whose
+ * structure cannot be evaluated in memory, is always reported as affected.</p>
+ * <p>
+ * The index is registered as a listener on the entity's UtilCache so that removed and evicted (LRU) cache
+ * lines are dropped from it, which keeps it no larger than the cache.</p>
+ */
+public class EntityConditionCacheIndex<V> implements CacheListener<EntityCondition, V> {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    private final Map<EntityCondition, ConditionInfo> conditions = new HashMap<>();
+    private final Map<String, Map<Object, Set<EntityCondition>>> fieldIndex = new HashMap<>();
+    private final Set<EntityCondition> unindexed = new HashSet<>();
+    private final Map<GenericPK, Set<EntityCondition>> members = new HashMap<>();
+
+    /**
+     * Registers a condition key; has no effect if already registered.
+     */
+    public synchronized void register(EntityCondition condition) {
+        if (conditions.containsKey(condition)) {
+            return;
+        }
+        ConditionInfo info = new ConditionInfo(condition);
+        conditions.put(condition, info);
+        if (info.indexField != null) {
+            fieldIndex.computeIfAbsent(info.indexField, k -> new HashMap<>())
+                    .computeIfAbsent(info.indexValue, k -> new HashSet<>()).add(condition);
+        } else {
+            unindexed.add(condition);
+        }
+    }
+
+    /**
+     * Records the rows returned for a registered condition, by primary key.
+     */
+    public synchronized void addMembers(EntityCondition condition, Collection<? extends GenericEntity> values) {
+        ConditionInfo info = conditions.get(condition);
+        if (info == null) {
+            return;
+        }
+        if (info.members == null) {
+            info.members = new HashSet<>();
+        }
+        for (GenericEntity value : values) {
+            GenericPK pk = value.getPrimaryKey();
+            if (info.members.add(pk)) {
+                members.computeIfAbsent(pk, k -> new HashSet<>()).add(condition);
+            }
+        }
+    }
+
+    /**
+     * Unregisters a condition key along with its recorded rows.
+     */
+    public synchronized void unregister(EntityCondition condition) {
+        ConditionInfo info = conditions.remove(condition);
+        if (info == null) {
+            return;
+        }
+        if (info.indexField != null) {
+            Map<Object, Set<EntityCondition>> valueIndex = fieldIndex.get(info.indexField);
+            if (valueIndex != null) {
+                Set<EntityCondition> indexed = valueIndex.get(info.indexValue);
+                if (indexed != null && indexed.remove(condition) && indexed.isEmpty()) {
+                    valueIndex.remove(info.indexValue);
+                    if (valueIndex.isEmpty()) {
+                        fieldIndex.remove(info.indexField);
+                    }
+                }
+            }
+        } else {
+            unindexed.remove(condition);
+        }
+        if (info.members != null) {
+            for (GenericPK pk : info.members) {
+                Set<EntityCondition> pkConditions = members.get(pk);
+                if (pkConditions != null && pkConditions.remove(condition) && pkConditions.isEmpty()) {
+                    members.remove(pk);
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return conditions.size();
+    }
+
+    /**
+     * Returns the registered conditions that the given row change could affect: those whose recorded rows include
+     * the primary key, and those that the old or new value (either may be null) could match.
+     */
+    public synchronized Set<EntityCondition> getAffectedConditions(Delegator delegator, GenericPK pk, Map<String, ? extends Object> oldValue,
+                                                                   Map<String, ? extends Object> newValue) {
+        Set<EntityCondition> affected = new HashSet<>();
+        if (pk != null) {
+            Set<EntityCondition> pkConditions = members.get(pk);
+            if (pkConditions != null) {
+                affected.addAll(pkConditions);
+            }
+        }
+        if (oldValue != null) {
+            addMatchingConditions(delegator, oldValue, affected);
+        }
+        if (newValue != null) {
+            addMatchingConditions(delegator, newValue, affected);
+        }
+        return affected;
+    }
+
+    /**
+     * Returns the registered conditions that the given value could match.
+     */
+    public synchronized Set<EntityCondition> getMatchingConditions(Delegator delegator, Map<String, ? extends Object> value) {
+        Set<EntityCondition> matching = new HashSet<>();
+        addMatchingConditions(delegator, value, matching);
+        return matching;
+    }
+
+    private void addMatchingConditions(Delegator delegator, Map<String, ? extends Object> value, Set<EntityCondition> result) {
+        for (EntityCondition condition : unindexed) {
+            if (!result.contains(condition) && mayMatch(delegator, condition, value)) {
+                result.add(condition);
+            }
+        }
+        for (Map.Entry<String, Map<Object, Set<EntityCondition>>> entry : fieldIndex.entrySet()) {
+            if (value.containsKey(entry.getKey())) {
+                Set<EntityCondition> indexed = entry.getValue().get(value.get(entry.getKey()));
+                if (indexed != null) {
+                    for (EntityCondition condition : indexed) {
+                        if (!result.contains(condition) && mayMatch(delegator, condition, value)) {
+                            result.add(condition);
+                        }
+                    }
+                }
+            } else {
+                // Value does not say anything about the indexed field, so every condition on it may match
+                for (Set<EntityCondition> indexed : entry.getValue().values()) {
+                    result.addAll(indexed);
+                }
+            }
+        }
+    }
+
+    private boolean mayMatch(Delegator delegator, EntityCondition condition, Map<String, ? extends Object> value) {
+        if (condition == null) {
+            return true;
+        }
+        ConditionInfo info = conditions.get(condition);
+        if (info == null || info.fields == null || !value.keySet().containsAll(info.fields)) {
+            return true;
+        }
+        try {
+            return condition.mapMatches(delegator, value);
+        } catch (RuntimeException e) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Could not evaluate cached condition in memory, treating as matched: " + condition + ": " + e.toString(), module);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void noteKeyRemoval(UtilCache<EntityCondition, V> cache, EntityCondition key, V oldValue) {
+        synchronized (this) {
+            // The same key may have been put back in the meantime
+            if (!cache.containsKey(key)) {
+                unregister(key);
+            }
+        }
+    }
+
+    @Override
+    public void noteKeyAddition(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue) {
+    }
+
+    @Override
+    public void noteKeyUpdate(UtilCache<EntityCondition, V> cache, EntityCondition key, V newValue, V oldValue) {
+    }
+
+    private static class ConditionInfo {
+        private final String indexField;
+        private final Object indexValue;
+        /** All field names the condition references, or null if it cannot be evaluated in memory reliably. */
+        private final Set<String> fields;
+        private Set<GenericPK> members;
+
+        ConditionInfo(EntityCondition condition) {
+            Set<String> fields = null;
+            Map<String, Object> equalities = new LinkedHashMap<>();
+            if (condition != null) {
+                fields = new HashSet<>();
+                if (!collectFields(condition, true, fields, equalities)) {
+                    fields = null;
+                }
+            }
+            this.fields = fields;
+            Iterator<Map.Entry<String, Object>> it = equalities.entrySet().iterator();
+            if (it.hasNext()) {
+                Map.Entry<String, Object> entry = it.next();
+                this.indexField = entry.getKey();
+                this.indexValue = entry.getValue();
+            } else {
+                this.indexField = null;
+                this.indexValue = null;
+            }
+        }
+    }
+
+    /**
+     * Collects the field names referenced by the condition and, for the parts joined by AND from the top, its
+     * <code>field = constant</code> constraints. Returns false if the condition contains anything else.
+     */
+    private static boolean collectFields(EntityCondition condition, boolean conjunctive, Set<String> fields, Map<String, Object> equalities) {
+        if (condition instanceof EntityExpr) {
+            EntityExpr expr = (EntityExpr) condition;
+            Object lhs = expr.getLhs();
+            Object rhs = expr.getRhs();
+            if (lhs instanceof EntityCondition) {
+                boolean childConjunctive = conjunctive && EntityOperator.AND.equals(expr.getOperator());
+                return collectFields((EntityCondition) lhs, childConjunctive, fields, equalities)
+                        && rhs instanceof EntityCondition && collectFields((EntityCondition) rhs, childConjunctive, fields, equalities);
+            }
+            if (!(lhs instanceof EntityFieldValue)) {
+                return false;
+            }
+            String fieldName = ((EntityFieldValue) lhs).getFieldName();
+            fields.add(fieldName);
+            if (rhs instanceof EntityFieldValue) {
+                fields.add(((EntityFieldValue) rhs).getFieldName());
+            } else if (rhs instanceof EntityConditionValue || rhs instanceof EntityCondition) {
+                return false;
+            } else if (conjunctive && rhs != null && rhs != GenericEntity.NULL_FIELD && EntityOperator.EQUALS.equals(expr.getOperator())) {
+                equalities.putIfAbsent(fieldName, rhs);
+            }
+            return true;
+        } else if (condition instanceof EntityConditionList<?>) {
+            EntityConditionList<?> list = (EntityConditionList<?>) condition;
+            boolean childConjunctive = conjunctive && EntityOperator.AND.equals(list.getOperator());
+            Iterator<? extends EntityCondition> it = list.getConditionIterator();
+            while (it.hasNext()) {
+                if (!collectFields(it.next(), childConjunctive, fields, equalities)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (condition instanceof EntityFieldMap) {
+            EntityFieldMap fieldMap = (EntityFieldMap) condition;
+            boolean childConjunctive = conjunctive && EntityOperator.AND.equals(fieldMap.getOperator());
+            int i = 0;
+            Iterator<String> it = fieldMap.getFieldKeyIterator();
+            while (it.hasNext()) {
+                it.next();
+                if (!collectFields(fieldMap.getCondition(i++), childConjunctive, fields, equalities)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -95,8 +95,17 @@ public class EntityListCache extends AbstractEntityConditionCache<Object, List<G
         } else {
             entities = Collections.unmodifiableList(new ArrayList<>(entities));
         }
-        Map<Object, List<GenericValue>> conditionCache = getOrCreateConditionCache(entityName, getFrozenConditionKey(condition));
-        return conditionCache.put(getOrderByKey(orderBy), entities);
+        EntityCondition conditionKey = getFrozenConditionKey(condition);
+        Map<Object, List<GenericValue>> conditionCache = getOrCreateConditionCache(entityName, conditionKey);
+        List<GenericValue> oldEntities = conditionCache.put(getOrderByKey(orderBy), entities);
+        // SCIPIO: Record the returned rows so that updates to them remove this condition (see AbstractEntityConditionCache#remove(GenericEntity, GenericEntity))
+        addMembers(entityName, conditionKey, entities);
+        return oldEntities;
+    }
+
+    @Override
+    protected boolean isTrackMembers() {
+        return true;
     }
 
     public List<GenericValue> remove(String entityName, EntityCondition condition, List<String> orderBy) {
@@ -221,6 +221,16 @@ public abstract class EntityCondition extends EntityConditionBase implements IsE
 
     abstract public String makeWhereString(ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams, Datasource datasourceInfo);
 
+    /**
+     * SCIPIO: Appends the structure of this condition without its values to a SQL template cache key, and adds its
+     * values to <code>values</code> in the order {@link #makeWhereString} adds its parameters, so that the SQL made
+     * for one condition can be reused for any other with the same key. Returns false if this condition does not
+     * support it, which is the default, for example because its SQL contains values inline.
+     */
+    public boolean appendSqlShape(StringBuilder key, ModelEntity modelEntity, List<Object> values) {
+        return false;
+    }
+
     abstract public void checkCondition(ModelEntity modelEntity) throws GenericModelException;
 
     public boolean entityMatches(GenericEntity entity) {
@@ -77,6 +77,11 @@ public abstract class EntityConditionListBase<T extends EntityCondition> extends
         return sql.toString();
     }
 
+    @Override
+    public boolean appendSqlShape(StringBuilder key, ModelEntity modelEntity, List<Object> values) { // SCIPIO
+        return operator.appendSqlShape(key, modelEntity, values, conditionList);
+    }
+
     @Override
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
         operator.validateSql(modelEntity, conditionList);
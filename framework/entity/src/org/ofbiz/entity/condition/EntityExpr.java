@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.ofbiz.entity.condition;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
@@ -26,6 +27,7 @@ import java.util.Map;
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.ObjectType;
 import org.ofbiz.base.util.UtilGenerics;
+import org.ofbiz.base.util.UtilValidate;
 import org.ofbiz.entity.Delegator;
 import org.ofbiz.entity.DelegatorFactory;
 import org.ofbiz.entity.GenericEntity;
@@ -120,6 +122,37 @@ public final class EntityExpr extends EntityCondition {
         return sql.toString();
     }
 
+    @Override
+    public boolean appendSqlShape(StringBuilder key, ModelEntity modelEntity, List<Object> values) { // SCIPIO
+        if (lhs instanceof EntityCondition) {
+            if (!(((Object) operator) instanceof EntityJoinOperator)) {
+                return false;
+            }
+            return ((EntityJoinOperator) (Object) operator).appendSqlShape(key, modelEntity, values,
+                    Arrays.asList((EntityCondition) lhs, (EntityCondition) rhs));
+        }
+        // Only plain fields of the entity itself: for others (functions, unknown fields, sub-selects) values may be inlined
+        if (lhs.getClass() != EntityFieldValue.class || ((EntityFieldValue) lhs).modelViewEntity != null
+                || ((EntityFieldValue) lhs).getModelField(modelEntity) == null || rhs instanceof EntityConditionValue) {
+            return false;
+        }
+        key.append('[').append(((EntityFieldValue) lhs).getFieldName()).append(' ').append(operator.getCode());
+        if (rhs == null || rhs == GenericEntity.NULL_FIELD) {
+            key.append(" N");
+        } else if (EntityOperator.IN.equals(operator) && UtilValidate.isEmpty(rhs)) {
+            key.append(" E"); // rendered as 1=0
+        } else if (rhs instanceof Collection<?>) {
+            Collection<?> rhsValues = (Collection<?>) rhs;
+            key.append(" C").append(rhsValues.size());
+            values.addAll(rhsValues);
+        } else {
+            key.append(" ?");
+            values.add(rhs);
+        }
+        key.append(']');
+        return true;
+    }
+
     @Override
     public boolean mapMatches(Delegator delegator, Map<String, ? extends Object> map) {
         return operator.mapMatches(delegator, map, lhs, rhs);
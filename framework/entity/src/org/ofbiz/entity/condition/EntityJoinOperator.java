@@ -78,6 +78,28 @@ public class EntityJoinOperator extends EntityOperator<EntityCondition, EntityCo
         }
     }
 
+    /**
+     * SCIPIO: Appends the SQL template cache key of the conditions joined by this operator, skipping the empty ones
+     * as {@link #addSqlValue(StringBuilder, ModelEntity, List, List, Datasource)} does.
+     * @see EntityCondition#appendSqlShape(StringBuilder, ModelEntity, List)
+     */
+    public boolean appendSqlShape(StringBuilder key, ModelEntity modelEntity, List<Object> values, List<? extends EntityCondition> conditionList) {
+        key.append('(').append(getCode());
+        if (conditionList != null) {
+            for (EntityCondition condition : conditionList) {
+                if (condition.isEmpty()) {
+                    continue;
+                }
+                key.append(' ');
+                if (!condition.appendSqlShape(key, modelEntity, values)) {
+                    return false;
+                }
+            }
+        }
+        key.append(')');
+        return true;
+    }
+
     protected EntityCondition freeze(Object item) {
         return ((EntityCondition) item).freeze();
     }
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 import org.ofbiz.entity.GenericEntity;
 import org.ofbiz.entity.GenericModelException;
@@ -96,6 +97,53 @@ public class OrderByList implements Comparator<GenericEntity> {
         }
     }
 
+    /**
+     * Returns the names of the ordered fields, for keyset (seek) pagination (SCIPIO).
+     * @throws IllegalArgumentException if an item is not a plain field, for example <code>UPPER(field)</code>
+     */
+    public List<String> getSeekFieldNames() throws IllegalArgumentException {
+        List<String> fieldNames = new ArrayList<>(orderByList.size());
+        for (OrderByItem orderByItem: orderByList) {
+            if (!(orderByItem.getValue() instanceof EntityFieldValue)) {
+                throw new IllegalArgumentException("Cannot seek on order by item [" + orderByItem + "]; only plain fields are supported");
+            }
+            fieldNames.add(((EntityFieldValue) orderByItem.getValue()).getFieldName());
+        }
+        return fieldNames;
+    }
+
+    /**
+     * Makes the keyset (seek) condition selecting the rows that follow the given row in this ordering (SCIPIO):
+     * <code>(f1 &gt; v1) OR (f1 = v1 AND f2 &gt; v2) OR ...</code>, using &lt; for descending fields.
+     * <p>
+     * The expanded form is used rather than a row value comparison <code>(f1, f2) &gt; (v1, v2)</code>, which
+     * not all databases support and which cannot mix ascending and descending fields. For stable pages the
+     * ordering should end with a unique key, and the row must have a non-null value for each ordered field.</p>
+     * @throws IllegalArgumentException if an item is not a plain field or the row has no value for it
+     */
+    public EntityCondition makeSeekCondition(Map<String, ? extends Object> lastRow) throws IllegalArgumentException {
+        List<String> fieldNames = getSeekFieldNames();
+        List<EntityCondition> orConds = new ArrayList<>(fieldNames.size());
+        for (int i = 0; i < fieldNames.size(); i++) {
+            List<EntityCondition> andConds = new ArrayList<>(i + 1);
+            for (int j = 0; j < i; j++) {
+                andConds.add(EntityCondition.makeCondition(fieldNames.get(j), EntityOperator.EQUALS, getSeekValue(lastRow, fieldNames.get(j))));
+            }
+            EntityComparisonOperator<?, ?> op = orderByList.get(i).getDescending() ? EntityOperator.LESS_THAN : EntityOperator.GREATER_THAN;
+            andConds.add(EntityCondition.makeCondition(fieldNames.get(i), op, getSeekValue(lastRow, fieldNames.get(i))));
+            orConds.add(EntityCondition.makeCondition(andConds, EntityOperator.AND));
+        }
+        return EntityCondition.makeCondition(orConds, EntityOperator.OR);
+    }
+
+    private static Object getSeekValue(Map<String, ? extends Object> lastRow, String fieldName) throws IllegalArgumentException {
+        Object value = lastRow.get(fieldName);
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot seek after a row with no value for ordered field [" + fieldName + "]");
+        }
+        return value;
+    }
+
     public int compare(GenericEntity entity1, GenericEntity entity2) {
         int result = 0;
         for (OrderByItem orderByItem: orderByList) {
@@ -82,6 +82,9 @@ public final class Datasource {
     private final String collate; // type = xs:string
     private final String rowFormat;
     private final int maxWorkerPoolSize; // type = xs:integer
+    private final int batchSize; // type = xs:integer, SCIPIO
+    private final boolean useMultiRowInsert; // SCIPIO
+    private final int sqlTemplateCacheSize; // type = xs:integer, SCIPIO
     private final List<SqlLoadPath> sqlLoadPathList; // <sql-load-path>
     private final List<ReadData> readDataList; // <read-data>
     private final InlineJdbc inlineJdbc; // <inline-jdbc>
@@ -189,6 +192,30 @@ public final class Datasource {
                 throw new GenericEntityConfException("<datasource> element max-worker-pool-size attribute is invalid" + lineNumberText);
             }
         }
+        // SCIPIO: 2.1.0: JDBC batching options for batched storeAll/createAll
+        String batchSize = getAttr(name, element, "batch-size");
+        if (batchSize.isEmpty()) {
+            this.batchSize = 500;
+        } else {
+            try {
+                int batchSizeInt = Integer.parseInt(batchSize);
+                this.batchSize = (batchSizeInt > 0) ? batchSizeInt : 1;
+            } catch (NumberFormatException e) {
+                throw new GenericEntityConfException("<datasource> element batch-size attribute is invalid" + lineNumberText);
+            }
+        }
+        this.useMultiRowInsert = "true".equals(getAttr(name, element, "use-multi-row-insert"));
+        // SCIPIO: 2.1.0: Generated SELECT SQL reuse by condition shape
+        String sqlTemplateCacheSize = getAttr(name, element, "sql-template-cache-size");
+        if (sqlTemplateCacheSize.isEmpty()) {
+            this.sqlTemplateCacheSize = 5000;
+        } else {
+            try {
+                this.sqlTemplateCacheSize = Math.max(Integer.parseInt(sqlTemplateCacheSize), 0);
+            } catch (NumberFormatException e) {
+                throw new GenericEntityConfException("<datasource> element sql-template-cache-size attribute is invalid" + lineNumberText);
+            }
+        }
         List<? extends Element> sqlLoadPathElementList = UtilXml.childElementList(element, "sql-load-path");
         if (sqlLoadPathElementList.isEmpty()) {
             this.sqlLoadPathList = Collections.emptyList();
@@ -414,6 +441,21 @@ public final class Datasource {
         return this.maxWorkerPoolSize;
     }
 
+    /** Returns the value of the <code>batch-size</code> attribute: rows per JDBC batch for batched inserts/updates (SCIPIO). */
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /** Returns the value of the <code>use-multi-row-insert</code> attribute: whether batched inserts may use <code>INSERT ... VALUES (...), (...)</code> (SCIPIO). */
+    public boolean getUseMultiRowInsert() {
+        return this.useMultiRowInsert;
+    }
+
+    /** Returns the value of the <code>sql-template-cache-size</code> attribute: max generated SELECT statements cached by condition shape, 0 to disable (SCIPIO). */
+    public int getSqlTemplateCacheSize() {
+        return this.sqlTemplateCacheSize;
+    }
+
     /** Returns the <code>&lt;sql-load-path&gt;</code> child elements. */
     public List<SqlLoadPath> getSqlLoadPathList() {
         return this.sqlLoadPathList;
@@ -51,6 +51,7 @@ public final class DelegatorElement {
     private final String keyEncryptingKey; // type = xs:string
     private final List<GroupMap> groupMapList; // <group-map>
     private final Map<String, String> groupMapMap; // <group-map>
+    private final Map<String, GroupMap> groupMapByName; // <group-map>, SCIPIO
 
     DelegatorElement(Element element) throws GenericEntityConfException {
         String lineNumberText = EntityConfig.createConfigFileLineNumberText(element);
@@ -100,13 +101,16 @@ public final class DelegatorElement {
         } else {
             List<GroupMap> groupMapList = new ArrayList<GroupMap>(groupMapElementList.size());
             Map<String, String> groupMapMap = new HashMap<String, String>();
+            Map<String, GroupMap> groupMapByName = new HashMap<>();
             for (Element groupMapElement : groupMapElementList) {
                 GroupMap groupMap = new GroupMap(groupMapElement);
                 groupMapList.add(groupMap);
                 groupMapMap.put(groupMap.getGroupName(), groupMap.getDatasourceName());
+                groupMapByName.put(groupMap.getGroupName(), groupMap);
             }
             this.groupMapList = Collections.unmodifiableList(groupMapList);
             this.groupMapMap = Collections.unmodifiableMap(groupMapMap);
+            this.groupMapByName = Collections.unmodifiableMap(groupMapByName);
         }
     }
 
@@ -180,4 +184,10 @@ public final class DelegatorElement {
     public String getGroupDataSource(String groupName) {
         return this.groupMapMap.get(groupName);
     }
+
+    /** Returns the specified <code>&lt;group-map&gt;</code> child element,
+     * or <code>null</code> if the <code>&lt;group-map&gt;</code> element does not exist (SCIPIO). */
+    public GroupMap getGroupMap(String groupName) {
+        return this.groupMapByName.get(groupName);
+    }
 }
@@ -18,7 +18,12 @@
  *******************************************************************************/
 package org.ofbiz.entity.config.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.ofbiz.base.lang.ThreadSafe;
+import org.ofbiz.base.util.UtilXml;
 import org.ofbiz.entity.GenericEntityConfException;
 import org.w3c.dom.Element;
 
@@ -32,6 +37,8 @@ public final class GroupMap {
 
     private final String groupName; // type = xs:string
     private final String datasourceName; // type = xs:string
+    private final List<String> readReplicaNames; // <read-replica datasource-name>, SCIPIO
+    private final String readReplicaRouting; // type = xs:string, SCIPIO
 
     GroupMap(Element element) throws GenericEntityConfException {
         String lineNumberText = EntityConfig.createConfigFileLineNumberText(element);
@@ -45,6 +52,28 @@ public final class GroupMap {
             throw new GenericEntityConfException("<group-map> element datasource-name attribute is empty" + lineNumberText);
         }
         this.datasourceName = datasourceName;
+        // SCIPIO: 2.1.0: Read replicas for reads outside transactions
+        List<? extends Element> readReplicaElementList = UtilXml.childElementList(element, "read-replica");
+        if (readReplicaElementList.isEmpty()) {
+            this.readReplicaNames = Collections.emptyList();
+        } else {
+            List<String> readReplicaNames = new ArrayList<>(readReplicaElementList.size());
+            for (Element readReplicaElement : readReplicaElementList) {
+                String readReplicaName = readReplicaElement.getAttribute("datasource-name").intern();
+                if (readReplicaName.isEmpty()) {
+                    throw new GenericEntityConfException("<read-replica> element datasource-name attribute is empty" + EntityConfig.createConfigFileLineNumberText(readReplicaElement));
+                }
+                readReplicaNames.add(readReplicaName);
+            }
+            this.readReplicaNames = Collections.unmodifiableList(readReplicaNames);
+        }
+        String readReplicaRouting = element.getAttribute("read-replica-routing").intern();
+        if (readReplicaRouting.isEmpty()) {
+            readReplicaRouting = "round-robin";
+        } else if (!"round-robin".equals(readReplicaRouting) && !"least-loaded".equals(readReplicaRouting)) {
+            throw new GenericEntityConfException("<group-map> element read-replica-routing attribute is invalid" + lineNumberText);
+        }
+        this.readReplicaRouting = readReplicaRouting;
     }
 
     /** Returns the value of the <code>group-name</code> attribute. */
@@ -56,4 +85,14 @@ public final class GroupMap {
     public String getDatasourceName() {
         return this.datasourceName;
     }
+
+    /** Returns the <code>datasource-name</code> attributes of the <code>&lt;read-replica&gt;</code> child elements (SCIPIO). */
+    public List<String> getReadReplicaNames() {
+        return this.readReplicaNames;
+    }
+
+    /** Returns the value of the <code>read-replica-routing</code> attribute: <code>round-robin</code> or <code>least-loaded</code> (SCIPIO). */
+    public String getReadReplicaRouting() {
+        return this.readReplicaRouting;
+    }
 }
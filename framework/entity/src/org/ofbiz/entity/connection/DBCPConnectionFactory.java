@@ -21,9 +21,11 @@ package org.ofbiz.entity.connection;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.transaction.TransactionManager;
@@ -112,6 +114,11 @@ public class DBCPConnectionFactory implements ConnectionFactory {
         factory.setDefaultReadOnly(false);
         factory.setRollbackOnReturn(false);
         factory.setEnableAutoCommitOnReturn(false);
+        // SCIPIO: 2.1.0: Per-connection prepared statement pool, so repeated SQL (see GenericDAO SQL template cache) is not re-prepared
+        if (jdbcElement.getPoolPreparedStatements()) {
+            factory.setPoolStatements(true);
+            factory.setMaxOpenPreparedStatements(jdbcElement.getMaxOpenPreparedStatements());
+        }
         String transIso = jdbcElement.getIsolationLevel();
         if (!transIso.isEmpty()) {
             if ("Serializable".equals(transIso)) {
@@ -164,6 +171,13 @@ public class DBCPConnectionFactory implements ConnectionFactory {
         dsCache.clear();
     }
 
+    /**
+     * Returns the names of the data sources created so far, as accepted by {@link #getDataSourceInfo(String)} (SCIPIO).
+     */
+    public static Set<String> getDataSourceNames() {
+        return Collections.unmodifiableSet(dsCache.keySet());
+    }
+
     public static Map<String, Object> getDataSourceInfo(String helperName) {
         Map<String, Object> dataSourceInfo = new HashMap<String, Object>();
         DebugManagedDataSource<? extends Connection> mds = dsCache.get(helperName);
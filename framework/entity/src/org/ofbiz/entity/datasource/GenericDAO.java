@@ -20,6 +20,7 @@ package org.ofbiz.entity.datasource;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -27,6 +28,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,6 +37,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.UtilValidate;
+import org.ofbiz.base.util.cache.UtilCache;
 import org.ofbiz.entity.Delegator;
 import org.ofbiz.entity.EntityLockedException;
 import org.ofbiz.entity.GenericDataSourceException;
@@ -75,6 +78,11 @@ public class GenericDAO {
     private final GenericHelperInfo helperInfo;
     private final ModelFieldTypeReader modelFieldTypeReader;
     private final Datasource datasource;
+    /** Generated SELECT statements by query shape, see {@link #makeSqlTemplateKey}; null if disabled (SCIPIO). */
+    private final UtilCache<String, SqlTemplate> sqlTemplateCache;
+
+    /** Max bind parameters per multi-row insert statement; stays below the PostgreSQL (32767) and MySQL (65535) limits (SCIPIO). */
+    private static final int MULTI_ROW_INSERT_MAX_PARAMS = 30000;
 
     public static GenericDAO getGenericDAO(GenericHelperInfo helperInfo) {
         String cacheKey = helperInfo.getHelperFullName();
@@ -90,6 +98,10 @@ public class GenericDAO {
         this.helperInfo = helperInfo;
         this.modelFieldTypeReader = ModelFieldTypeReader.getModelFieldTypeReader(helperInfo.getHelperBaseName());
         this.datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+        // SCIPIO: 2.1.0: Listed in webtools cache maintenance with its hit rates
+        this.sqlTemplateCache = (datasource != null && datasource.getSqlTemplateCacheSize() > 0)
+                ? UtilCache.getOrCreateUtilCache("entity.SqlTemplateCache." + helperInfo.getHelperFullName(),
+                        datasource.getSqlTemplateCacheSize(), 0, 0, false, "entity.SqlTemplateCache") : null;
     }
 
     private void addFieldIfMissing(List<ModelField> fieldsToSave, String fieldName, ModelEntity modelEntity) {
@@ -121,6 +133,32 @@ public class GenericDAO {
             return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
         }
 
+        setInsertStamps(entity, modelEntity, fieldsToSave);
+
+        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
+
+        modelEntity.colNameString(fieldsToSave, sqlB, "");
+        sqlB.append(") VALUES (");
+        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
+        String sql = sqlB.append(")").toString();
+
+        try {
+            sqlP.prepareStatement(sql);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            int retVal = sqlP.executeUpdate();
+
+            entity.synchronizedWithDatasource();
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+        }
+    }
+
+    /**
+     * Sets the STAMP_TX_FIELD/CREATE_STAMP_TX_FIELD and STAMP_FIELD/CREATE_STAMP_FIELD values for an insert.
+     * <p>SCIPIO: 2.1.0: Factored out of singleInsert so batched inserts set the same stamps.</p>
+     */
+    private void setInsertStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD or CREATE_STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -153,24 +191,6 @@ public class GenericDAO {
                 addFieldIfMissing(fieldsToSave, ModelEntity.CREATE_STAMP_FIELD, modelEntity);
             }
         }
-
-        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
-
-        modelEntity.colNameString(fieldsToSave, sqlB, "");
-        sqlB.append(") VALUES (");
-        modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
-        String sql = sqlB.append(")").toString();
-
-        try {
-            sqlP.prepareStatement(sql);
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            int retVal = sqlP.executeUpdate();
-
-            entity.synchronizedWithDatasource();
-            return retVal;
-        } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
-        }
     }
 
     public int updateAll(GenericEntity entity) throws GenericEntityException {
@@ -234,20 +254,7 @@ public class GenericDAO {
             }
         }
 
-        // if we have a STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
-        // NOTE: these fairly complicated if statements have a few objectives:
-        //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
-        //   2. don't set the stamp values if it is from an EntitySync (ie maintain original values), unless the stamps are null then set it anyway, ie even if it was from an EntitySync (also used for imports and such)
-        if (modelEntity.isField(ModelEntity.STAMP_TX_FIELD) && (!entity.getIsFromEntitySync() || entity.get(ModelEntity.STAMP_TX_FIELD) == null)) {
-            entity.set(ModelEntity.STAMP_TX_FIELD, TransactionUtil.getTransactionStartStamp());
-            addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_TX_FIELD, modelEntity);
-        }
-
-        // if we have a STAMP_FIELD then update it with NOW.
-        if (modelEntity.isField(ModelEntity.STAMP_FIELD) && (!entity.getIsFromEntitySync() || entity.get(ModelEntity.STAMP_FIELD) == null)) {
-            entity.set(ModelEntity.STAMP_FIELD, TransactionUtil.getTransactionUniqueNowStamp());
-            addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_FIELD, modelEntity);
-        }
+        setUpdateStamps(entity, modelEntity, fieldsToSave);
 
         StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
         modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
@@ -272,6 +279,27 @@ public class GenericDAO {
         return retVal;
     }
 
+    /**
+     * Sets the STAMP_TX_FIELD and STAMP_FIELD values for an update.
+     * <p>SCIPIO: 2.1.0: Factored out of singleUpdate so batched updates set the same stamps.</p>
+     */
+    private void setUpdateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        // if we have a STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
+        // NOTE: these fairly complicated if statements have a few objectives:
+        //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
+        //   2. don't set the stamp values if it is from an EntitySync (ie maintain original values), unless the stamps are null then set it anyway, ie even if it was from an EntitySync (also used for imports and such)
+        if (modelEntity.isField(ModelEntity.STAMP_TX_FIELD) && (!entity.getIsFromEntitySync() || entity.get(ModelEntity.STAMP_TX_FIELD) == null)) {
+            entity.set(ModelEntity.STAMP_TX_FIELD, TransactionUtil.getTransactionStartStamp());
+            addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_TX_FIELD, modelEntity);
+        }
+
+        // if we have a STAMP_FIELD then update it with NOW.
+        if (modelEntity.isField(ModelEntity.STAMP_FIELD) && (!entity.getIsFromEntitySync() || entity.get(ModelEntity.STAMP_FIELD) == null)) {
+            entity.set(ModelEntity.STAMP_FIELD, TransactionUtil.getTransactionUniqueNowStamp());
+            addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_FIELD, modelEntity);
+        }
+    }
+
     public int updateByCondition(Delegator delegator, ModelEntity modelEntity, Map<String, ? extends Object> fieldsToSet, EntityCondition condition) throws GenericEntityException {
         try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
             try {
@@ -314,6 +342,240 @@ public class GenericDAO {
         return sqlP.executeUpdate();
     }
 
+    /**
+     * Inserts the given entities using JDBC statement batching, reusing one prepared statement per entity and
+     * sending rows in batches of <code>batchSize</code>. If the datasource has <code>use-multi-row-insert</code>
+     * enabled, each batched statement is a multi-row <code>INSERT ... VALUES (...), (...)</code>.
+     * <p>View entities and entities with optimistic locking are not supported here; use {@link #insert(GenericEntity)} for those.</p>
+     * <p>SCIPIO: 2.1.0: Added for batched storeAll.</p>
+     *@param entities The entities to insert, possibly of different entity types
+     *@param batchSize Number of rows per executeBatch call; if zero or less, the datasource <code>batch-size</code> is used
+     *@return int representing number of rows effected by this operation
+     */
+    public int insertAll(List<? extends GenericEntity> entities, int batchSize) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+        Map<String, List<GenericEntity>> entitiesByName = new LinkedHashMap<>();
+        for (GenericEntity entity : entities) {
+            checkBatchable(entity.getModelEntity());
+            entitiesByName.computeIfAbsent(entity.getEntityName(), k -> new ArrayList<>()).add(entity);
+        }
+
+        int retVal = 0;
+        for (List<GenericEntity> entityGroup : entitiesByName.values()) {
+            ModelEntity modelEntity = entityGroup.get(0).getModelEntity();
+            List<ModelField> fieldsToSave = modelEntity.getFieldsUnmodifiable();
+            for (GenericEntity entity : entityGroup) {
+                setInsertStamps(entity, modelEntity, fieldsToSave);
+            }
+
+            int groupBatchSize = (batchSize > 0) ? batchSize : datasource.getBatchSize();
+            int rowsPerStatement = 1;
+            if (datasource.getUseMultiRowInsert()) {
+                rowsPerStatement = Math.max(1, Math.min(groupBatchSize, MULTI_ROW_INSERT_MAX_PARAMS / fieldsToSave.size()));
+                rowsPerStatement = Math.min(rowsPerStatement, entityGroup.size());
+            }
+            if (rowsPerStatement > 1) {
+                // full multi-row statements first, then the remainder as single-row batch entries
+                int multiRowCount = entityGroup.size() - (entityGroup.size() % rowsPerStatement);
+                retVal += executeMultiRowInsert(makeInsertSql(modelEntity, fieldsToSave, rowsPerStatement), modelEntity, fieldsToSave,
+                        entityGroup.subList(0, multiRowCount), rowsPerStatement, Math.max(1, groupBatchSize / rowsPerStatement));
+                if (multiRowCount < entityGroup.size()) {
+                    retVal += executeBatched(makeInsertSql(modelEntity, fieldsToSave, 1), modelEntity, fieldsToSave,
+                            entityGroup.subList(multiRowCount, entityGroup.size()), false, groupBatchSize);
+                }
+            } else {
+                retVal += executeBatched(makeInsertSql(modelEntity, fieldsToSave, 1), modelEntity, fieldsToSave, entityGroup, false, groupBatchSize);
+            }
+        }
+        return retVal;
+    }
+
+    private String makeInsertSql(ModelEntity modelEntity, List<ModelField> fieldsToSave, int rowCount) {
+        StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
+        modelEntity.colNameString(fieldsToSave, sqlB, "");
+        sqlB.append(") VALUES ");
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                sqlB.append(", ");
+            }
+            sqlB.append("(");
+            modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
+            sqlB.append(")");
+        }
+        return sqlB.toString();
+    }
+
+    private int executeMultiRowInsert(String sql, ModelEntity modelEntity, List<ModelField> fieldsToSave, List<GenericEntity> entities, int rowsPerStatement, int statementsPerBatch) throws GenericEntityException {
+        int retVal = 0;
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                sqlP.prepareStatement(sql);
+                int pendingStatements = 0;
+                for (int i = 0; i < entities.size(); i += rowsPerStatement) {
+                    for (GenericEntity entity : entities.subList(i, i + rowsPerStatement)) {
+                        SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                    }
+                    sqlP.addBatch();
+                    pendingStatements++;
+                    if (pendingStatements >= statementsPerBatch) {
+                        retVal += sumMultiRowResults(sqlP.executeBatch(), rowsPerStatement);
+                        pendingStatements = 0;
+                    }
+                }
+                if (pendingStatements > 0) {
+                    retVal += sumMultiRowResults(sqlP.executeBatch(), rowsPerStatement);
+                }
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw e;
+            }
+        }
+        for (GenericEntity entity : entities) {
+            entity.synchronizedWithDatasource();
+        }
+        return retVal;
+    }
+
+    private static int sumMultiRowResults(int[] results, int rowsPerStatement) throws GenericEntityException {
+        int retVal = 0;
+        for (int result : results) {
+            if (result == Statement.EXECUTE_FAILED) {
+                throw GenericDataSourceException.from("Batched multi-row insert statement failed", null, null, null, null);
+            }
+            // SUCCESS_NO_INFO (-2) is reported by some drivers; count it as all rows of the statement
+            retVal += (result >= 0) ? result : rowsPerStatement;
+        }
+        return retVal;
+    }
+
+    /**
+     * Updates the non-pk fields present in each of the given entities using JDBC statement batching. Consecutive
+     * entities with the same entity name and set of fields to update are grouped, with one prepared statement per group
+     * and rows sent in batches of <code>batchSize</code>; rows are written in the given order, so a row updated more than
+     * once ends up with the last values, but alternating field sets split the batches.
+     * <p>View entities and entities with optimistic locking are not supported here; use {@link #update(GenericEntity)} for those.</p>
+     * <p>SCIPIO: 2.1.0: Added for batched storeAll.</p>
+     *@param entities The entities to update, possibly of different entity types
+     *@param batchSize Number of rows per executeBatch call; if zero or less, the datasource <code>batch-size</code> is used
+     *@return int representing number of rows effected by this operation
+     */
+    public int updateAll(List<? extends GenericEntity> entities, int batchSize) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+        int retVal = 0;
+        String groupKey = null;
+        List<ModelField> groupFields = null;
+        List<GenericEntity> group = new ArrayList<>();
+        for (GenericEntity entity : entities) {
+            ModelEntity modelEntity = entity.getModelEntity();
+            checkBatchable(modelEntity);
+
+            List<ModelField> fieldsToSave = new ArrayList<>(modelEntity.getNopksSize());
+            Collection<String> keys = entity.getAllKeys();
+            Iterator<ModelField> nopkIter = modelEntity.getNopksIterator();
+            while (nopkIter.hasNext()) {
+                ModelField curField = nopkIter.next();
+                if (keys.contains(curField.getName())) {
+                    fieldsToSave.add(curField);
+                }
+            }
+            if (fieldsToSave.isEmpty()) {
+                // same as singleUpdate: effectively updated, nothing to send
+                retVal++;
+                continue;
+            }
+            setUpdateStamps(entity, modelEntity, fieldsToSave);
+
+            StringBuilder keyBuilder = new StringBuilder(entity.getEntityName());
+            for (ModelField field : fieldsToSave) {
+                keyBuilder.append(':').append(field.getName());
+            }
+            String key = keyBuilder.toString();
+            if (!key.equals(groupKey)) {
+                // flush the previous group first, so the writes keep their order
+                retVal += updateGroup(group, groupFields, batchSize);
+                group = new ArrayList<>();
+                groupKey = key;
+                groupFields = fieldsToSave;
+            }
+            group.add(entity);
+        }
+        retVal += updateGroup(group, groupFields, batchSize);
+        return retVal;
+    }
+
+    private int updateGroup(List<GenericEntity> entityGroup, List<ModelField> fieldsToSave, int batchSize) throws GenericEntityException {
+        if (entityGroup.isEmpty()) {
+            return 0;
+        }
+        ModelEntity modelEntity = entityGroup.get(0).getModelEntity();
+        StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
+        modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
+        sql.append(" WHERE ");
+        modelEntity.colNameString(modelEntity.getPkFieldsUnmodifiable(), sql, "", "=? AND ", "=?", false);
+        return executeBatched(sql.toString(), modelEntity, fieldsToSave, entityGroup, true, batchSize);
+    }
+
+    private void checkBatchable(ModelEntity modelEntity) throws GenericEntityException {
+        if (modelEntity instanceof ModelViewEntity) {
+            throw new GenericNotImplementedException("Batched operations not supported for view entities: " + modelEntity.getEntityName());
+        }
+        if (modelEntity.lock()) {
+            throw new GenericNotImplementedException("Batched operations not supported for entities with optimistic locking: " + modelEntity.getEntityName());
+        }
+    }
+
+    private int executeBatched(String sql, ModelEntity modelEntity, List<ModelField> fieldsToSave, List<GenericEntity> entities, boolean isUpdate, int batchSize) throws GenericEntityException {
+        if (batchSize <= 0) {
+            batchSize = datasource.getBatchSize();
+        }
+        int retVal = 0;
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                sqlP.prepareStatement(sql);
+                List<GenericEntity> pending = new ArrayList<>(Math.min(batchSize, entities.size()));
+                for (GenericEntity entity : entities) {
+                    SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+                    if (isUpdate) {
+                        SqlJdbcUtil.setValues(sqlP, modelEntity.getPkFieldsUnmodifiable(), entity, modelFieldTypeReader);
+                    }
+                    sqlP.addBatch();
+                    pending.add(entity);
+                    if (pending.size() >= batchSize) {
+                        retVal += checkBatchResults(sqlP.executeBatch(), pending, isUpdate);
+                        pending.clear();
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    retVal += checkBatchResults(sqlP.executeBatch(), pending, isUpdate);
+                }
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw e;
+            }
+        }
+        return retVal;
+    }
+
+    private static int checkBatchResults(int[] results, List<GenericEntity> entities, boolean isUpdate) throws GenericEntityException {
+        int retVal = 0;
+        for (int i = 0; i < results.length; i++) {
+            GenericEntity entity = entities.get(i);
+            if (results[i] == Statement.EXECUTE_FAILED) {
+                throw GenericDataSourceException.from("Batched statement failed for entity: " + entity.toString(), null, null, null, entity.getModelEntity());
+            } else if (results[i] == 0 && isUpdate) {
+                throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+            }
+            // SUCCESS_NO_INFO (-2) is reported by some drivers; count it as one row
+            retVal += (results[i] > 0) ? results[i] : 1;
+            entity.synchronizedWithDatasource();
+        }
+        return retVal;
+    }
+
     /* ====================================================================== */
 
     /* ====================================================================== */
@@ -593,6 +855,19 @@ public class GenericDAO {
             if (Debug.verboseOn()) Debug.logVerbose("Doing selectListIteratorByCondition with whereEntityCondition: " + whereEntityCondition, module);
         }
 
+        // SCIPIO: 2.1.0: Reuse the SQL made for a previous find of the same shape, binding this find's values
+        List<Object> sqlTemplateValues = null;
+        String sqlTemplateKey = null;
+        if (sqlTemplateCache != null && modelViewEntity == null) {
+            sqlTemplateValues = new ArrayList<>();
+            sqlTemplateKey = makeSqlTemplateKey(modelEntity, whereEntityCondition, havingEntityCondition, fieldsToSelect, orderBy, findOptions, sqlTemplateValues);
+            SqlTemplate sqlTemplate = (sqlTemplateKey != null) ? sqlTemplateCache.get(sqlTemplateKey) : null;
+            if (sqlTemplate != null && sqlTemplate.modelEntity == modelEntity) {
+                return executeSelectListIterator(delegator, modelEntity, whereEntityCondition, havingEntityCondition, findOptions, sqlTemplate.sql,
+                        sqlTemplate.selectFields, sqlTemplate.makeParams(sqlTemplateValues), Collections.<EntityConditionParam>emptyList());
+            }
+        }
+
         // make two ArrayLists of fields, one for fields to select and the other for where clause fields (to find by)
         List<ModelField> selectFields;
         if (UtilValidate.isNotEmpty(fieldsToSelect)) {
@@ -716,6 +991,18 @@ public class GenericDAO {
         // make the final SQL String
         String sql = sqlBuffer.toString();
 
+        if (sqlTemplateKey != null && havingEntityConditionParams.isEmpty() && SqlTemplate.paramsMatch(whereEntityConditionParams, sqlTemplateValues)) {
+            sqlTemplateCache.put(sqlTemplateKey, new SqlTemplate(modelEntity, sql, selectFields, whereEntityConditionParams));
+        }
+        return executeSelectListIterator(delegator, modelEntity, whereEntityCondition, havingEntityCondition, findOptions, sql,
+                selectFields, whereEntityConditionParams, havingEntityConditionParams);
+    }
+
+    private EntityListIterator executeSelectListIterator(Delegator delegator, ModelEntity modelEntity, EntityCondition whereEntityCondition,
+            EntityCondition havingEntityCondition, EntityFindOptions findOptions, String sql, List<ModelField> selectFields,
+            List<EntityConditionParam> whereEntityConditionParams, List<EntityConditionParam> havingEntityConditionParams) throws GenericEntityException {
+        boolean verboseOn = Debug.verboseOn();
+
         SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo);
         sqlP.prepareStatement(sql, findOptions.getSpecifyTypeAndConcur(), findOptions.getResultSetType(),
                 findOptions.getResultSetConcurrency(), findOptions.getFetchSize(), findOptions.getMaxRows());
@@ -752,6 +1039,67 @@ public class GenericDAO {
         return new EntityListIterator(sqlP, modelEntity, selectFields, modelFieldTypeReader, this, whereEntityCondition, havingEntityCondition, findOptions.getDistinct());
     }
 
+    /**
+     * SCIPIO: Makes the SQL template cache key of a find on a non-view entity, made of the entity, fields to select,
+     * where condition structure without its values, order by, distinct, offset and limit, and adds the where condition
+     * values to <code>values</code> in parameter order. Returns null if the find cannot use the cache.
+     */
+    private String makeSqlTemplateKey(ModelEntity modelEntity, EntityCondition whereEntityCondition, EntityCondition havingEntityCondition,
+            Collection<String> fieldsToSelect, List<String> orderBy, EntityFindOptions findOptions, List<Object> values) {
+        if (havingEntityCondition != null && !havingEntityCondition.isEmpty()) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(modelEntity.getEntityName());
+        key.append('|').append(UtilValidate.isNotEmpty(fieldsToSelect) ? fieldsToSelect : "").append('|');
+        if (UtilValidate.isNotEmpty(whereEntityCondition) && !whereEntityCondition.appendSqlShape(key, modelEntity, values)) {
+            return null;
+        }
+        key.append('|').append(orderBy != null ? orderBy : "");
+        key.append('|').append(findOptions.getDistinct()).append('|').append(findOptions.getOffset()).append(',').append(findOptions.getLimit());
+        return key.toString();
+    }
+
+    /**
+     * SCIPIO: Generated SELECT statement with the fields of its where parameters, for finds that only differ in values.
+     */
+    private static final class SqlTemplate {
+        private final ModelEntity modelEntity;
+        private final String sql;
+        private final List<ModelField> selectFields;
+        private final ModelField[] paramFields;
+
+        SqlTemplate(ModelEntity modelEntity, String sql, List<ModelField> selectFields, List<EntityConditionParam> params) {
+            this.modelEntity = modelEntity;
+            this.sql = sql;
+            this.selectFields = Collections.unmodifiableList(new ArrayList<>(selectFields));
+            this.paramFields = new ModelField[params.size()];
+            for (int i = 0; i < paramFields.length; i++) {
+                paramFields[i] = params.get(i).getModelField();
+            }
+        }
+
+        List<EntityConditionParam> makeParams(List<Object> values) {
+            List<EntityConditionParam> params = new ArrayList<>(paramFields.length);
+            for (int i = 0; i < paramFields.length; i++) {
+                params.add(new EntityConditionParam(paramFields[i], values.get(i)));
+            }
+            return params;
+        }
+
+        /** Checks that the generated parameters are exactly the values collected with the key, so none were inlined in the SQL. */
+        static boolean paramsMatch(List<EntityConditionParam> params, List<Object> values) {
+            if (params.size() != values.size()) {
+                return false;
+            }
+            for (int i = 0; i < params.size(); i++) {
+                if (params.get(i).getFieldValue() != values.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     @Deprecated
     protected StringBuilder makeConditionWhereString(ModelEntity modelEntity, EntityCondition whereEntityCondition, List<EntityCondition> viewWhereConditions, List<EntityConditionParam> whereEntityConditionParams) throws GenericEntityException {
         return makeConditionWhereString(new StringBuilder(), "", modelEntity, whereEntityCondition, viewWhereConditions, whereEntityConditionParams);
@@ -120,6 +120,22 @@ public interface GenericHelper {
      */
     public int store(GenericValue value) throws GenericEntityException;
 
+    /** Creates all of the given values using batched statements where possible; values may be of different entities.
+     * No ECA rules or cache clearing are done here, that is up to the caller.
+     *@param values The values to insert
+     *@param batchSize Number of rows per batch; zero or less for the helper default
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException;
+
+    /** Stores all of the given values using batched statements where possible; only the non-pk fields present in each value are updated.
+     * No ECA rules or cache clearing are done here, that is up to the caller.
+     *@param values The values to update
+     *@param batchSize Number of rows per batch; zero or less for the helper default
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(List<GenericValue> values, int batchSize) throws GenericEntityException;
+
     /** Check the datasource to make sure the entity definitions are correct, optionally adding missing entities or fields on the server
      *@param modelEntities Map of entityName names and ModelEntity values
      *@param messages List to put any result messages in
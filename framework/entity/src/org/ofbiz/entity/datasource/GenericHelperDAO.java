@@ -173,6 +173,30 @@ public class GenericHelperDAO implements GenericHelper {
         return genericDAO.update(value);
     }
 
+    /** Creates all of the given values using JDBC batching
+     *@param values The values to insert
+     *@param batchSize Number of rows per batch; zero or less for the DAO default
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        return genericDAO.insertAll(values, batchSize);
+    }
+
+    /** Stores all of the given values using JDBC batching
+     *@param values The values to update
+     *@param batchSize Number of rows per batch; zero or less for the DAO default
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        return genericDAO.updateAll(values, batchSize);
+    }
+
     /** Updates a group of values in a single pass.
      *@param modelEntity The ModelEntity of the Entity as defined in the entity XML file
      *@param fieldsToSet The fields of the named entity to set in the database
@@ -155,6 +155,20 @@ public class ReadOnlyHelperDAO implements GenericHelper {
         return 0;
     }
 
+    /** Read only, no creation realize on the database
+     *@return 0
+     */
+    public int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        return 0;
+    }
+
+    /** Read only, no store realize on the database
+     *@return 0
+     */
+    public int storeAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        return 0;
+    }
+
     /** Read only, no store realize on the database
      *@return 0
      */
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.entity.datasource;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ofbiz.entity.config.model.GroupMap;
+import org.ofbiz.entity.connection.DBCPConnectionFactory;
+
+/**
+ * Picks the read replica datasource of an entity group for each read, from the <code>&lt;read-replica&gt;</code>
+ * elements of its <code>&lt;group-map&gt;</code> (SCIPIO).
+ * <p>
+ * With <code>read-replica-routing="least-loaded"</code> the replica with the fewest active pooled connections is
+ * picked, with ties (and connection factories that do not report it) going round-robin.</p>
+ */
+public class ReadReplicaRouter {
+
+    private final String groupName;
+    private final List<String> datasourceNames;
+    private final boolean leastLoaded;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    public ReadReplicaRouter(GroupMap groupMap) {
+        this(groupMap.getGroupName(), groupMap.getReadReplicaNames(), "least-loaded".equals(groupMap.getReadReplicaRouting()));
+    }
+
+    public ReadReplicaRouter(String groupName, List<String> datasourceNames, boolean leastLoaded) {
+        this.groupName = groupName;
+        this.datasourceNames = datasourceNames;
+        this.leastLoaded = leastLoaded;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public List<String> getDatasourceNames() {
+        return datasourceNames;
+    }
+
+    /**
+     * Returns the helper info of the replica to read from next.
+     */
+    public GenericHelperInfo getHelperInfo() {
+        return new GenericHelperInfo(groupName, getDatasourceName());
+    }
+
+    /**
+     * Returns the name of the replica datasource to read from next.
+     */
+    public String getDatasourceName() {
+        int size = datasourceNames.size();
+        int start = Math.floorMod(nextIndex.getAndIncrement(), size);
+        if (!leastLoaded || size == 1) {
+            return datasourceNames.get(start);
+        }
+        String bestName = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            String name = datasourceNames.get((start + i) % size);
+            Object numActive = DBCPConnectionFactory.getDataSourceInfo(name).get("poolNumActive");
+            int active = (numActive instanceof Integer) ? (Integer) numActive : 0;
+            if (active < bestActive) {
+                bestName = name;
+                bestActive = active;
+                if (active == 0) {
+                    break;
+                }
+            }
+        }
+        return bestName;
+    }
+}
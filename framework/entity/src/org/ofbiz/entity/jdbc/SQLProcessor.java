@@ -435,6 +435,42 @@ public class SQLProcessor implements AutoCloseable {
         }
     }
 
+    /**
+     * Adds the currently bound parameters of the prepared statement to its batch and resets the
+     * binding index so the next row can be bound.
+     * <p>SCIPIO: 2.1.0: Added for batched inserts/updates.</p>
+     *
+     * @throws GenericDataSourceException
+     */
+    public void addBatch() throws GenericDataSourceException {
+        try {
+            _ps.addBatch();
+            _ind = 1;
+        } catch (SQLException sqle) {
+            throw GenericDataSourceException.from("SQL Exception while adding batch for: " + _sql, sqle, this, getDelegator(), null);
+        }
+    }
+
+    /**
+     * Execute the current batch of the prepared statement.
+     * <p>SCIPIO: 2.1.0: Added for batched inserts/updates.</p>
+     *
+     * @return  The update counts for each batched row, as returned by {@link Statement#executeBatch()}
+     * @throws GenericDataSourceException
+     */
+    public int[] executeBatch() throws GenericDataSourceException {
+        try {
+            return _ps.executeBatch();
+        } catch (SQLException sqle) {
+            this.checkLockWaitInfo(sqle);
+            if (sqle instanceof java.sql.BatchUpdateException && sqle.getNextException() != null) {
+                // the first exception is usually generic for batches, the chained one has the real cause
+                Debug.logWarning("[SQLProcessor.executeBatch]: Next exception in batch: " + sqle.getNextException(), module);
+            }
+            throw GenericDataSourceException.from("SQL Exception while executing batch of the following:" + _sql, sqle, this, getDelegator(), null);
+        }
+    }
+
     /**
      * Execute update based on the SQL statement given
      *
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.ofbiz.entity.test;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Date;
@@ -31,6 +32,8 @@ import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -43,24 +46,33 @@ import org.ofbiz.base.util.Observer;
 import org.ofbiz.base.util.UtilDateTime;
 import org.ofbiz.base.util.UtilMisc;
 import org.ofbiz.base.util.UtilXml;
+import org.ofbiz.base.util.cache.UtilCache;
+import org.ofbiz.base.util.collections.KeysetPagedList;
+import org.ofbiz.base.util.collections.PagedList;
 import org.ofbiz.entity.Delegator;
 import org.ofbiz.entity.DelegatorFactory;
+import org.ofbiz.entity.GenericDelegator;
 import org.ofbiz.entity.GenericEntity;
 import org.ofbiz.entity.GenericEntityException;
 import org.ofbiz.entity.GenericPK;
 import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.cache.EntityConditionCacheIndex;
 import org.ofbiz.entity.condition.EntityCondition;
 import org.ofbiz.entity.condition.EntityOperator;
 import org.ofbiz.entity.config.model.Datasource;
 import org.ofbiz.entity.config.model.EntityConfig;
+import org.ofbiz.entity.datasource.ReadReplicaRouter;
 import org.ofbiz.entity.model.ModelEntity;
 import org.ofbiz.entity.model.ModelField;
 import org.ofbiz.entity.testtools.EntityTestCase;
 import org.ofbiz.entity.transaction.GenericTransactionException;
 import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.entity.util.EntityFindOptions;
 import org.ofbiz.entity.util.EntityListIterator;
 import org.ofbiz.entity.util.EntityQuery;
 import org.ofbiz.entity.util.EntitySaxReader;
+import org.ofbiz.entity.util.EntityStoreOptions;
+import org.ofbiz.entity.util.EntityStreamExporter;
 import org.ofbiz.entity.util.SequenceUtil;
 
 public class EntityTestSuite extends EntityTestCase {
@@ -307,6 +319,56 @@ public class EntityTestSuite extends EntityTestCase {
         assertEquals("View retrieved from cache has the correct member description", "New Testing Subtype #Cache-3", testValue.getString("subtypeDescription"));
     }
 
+    /*
+     * Tests that updating a value only clears the list cache entries whose conditions it could affect
+     */
+    public void testEntityListCacheSelectiveClear() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-LCACHE-%"));
+        delegator.create("TestingType", "testingTypeId", "TEST-LCACHE-1", "description", "Testing Type #LCache-1");
+        delegator.create("TestingType", "testingTypeId", "TEST-LCACHE-2", "description", "Testing Type #LCache-2");
+        EntityCondition condition1 = EntityCondition.makeCondition("description", "Testing Type #LCache-1");
+        EntityCondition condition2 = EntityCondition.makeCondition("description", "Testing Type #LCache-2");
+        List<GenericValue> testList = EntityQuery.use(delegator).from("TestingType").where(condition1).cache(true).queryList();
+        assertEquals("Delegator findList returned one value", 1, testList.size());
+        testList = EntityQuery.use(delegator).from("TestingType").where(condition2).cache(true).queryList();
+        assertEquals("Delegator findList returned one value", 1, testList.size());
+        UtilCache<EntityCondition, ?> listCache = UtilCache.findCache("entitycache.entity-list." + delegator.getOriginalDelegatorName() + ".TestingType"); // the test delegator shares the cache of its original
+        assertNotNull("TestingType list cache exists", listCache);
+        assertTrue("First condition is cached", listCache.containsKey(condition1));
+        assertTrue("Second condition is cached", listCache.containsKey(condition2));
+        // Moving the value out of the first condition must clear it, but leave the unrelated second condition cached
+        GenericValue testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-LCACHE-1").queryOne();
+        testValue.put("description", "Testing Type #LCache-1b");
+        testValue.store();
+        assertFalse("First condition was cleared", listCache.containsKey(condition1));
+        assertTrue("Second condition is still cached", listCache.containsKey(condition2));
+        testList = EntityQuery.use(delegator).from("TestingType").where(condition1).cache(true).queryList();
+        assertEquals("Delegator findList returned empty list", 0, testList.size());
+        // Moving the value into the second condition must clear it
+        testValue.put("description", "Testing Type #LCache-2");
+        testValue.store();
+        assertFalse("Second condition was cleared", listCache.containsKey(condition2));
+        testList = EntityQuery.use(delegator).from("TestingType").where(condition2).cache(true).queryList();
+        assertEquals("Delegator findList returned two values", 2, testList.size());
+    }
+
+    /*
+     * Tests that conditions evicted from a full condition cache are dropped from its index
+     */
+    public void testEntityConditionCacheIndexEviction() throws Exception {
+        UtilCache<EntityCondition, String> cache = UtilCache.createUtilCache("test.entityConditionCacheIndex", 0, 5, 0, false);
+        EntityConditionCacheIndex<String> index = new EntityConditionCacheIndex<>();
+        cache.addListener(index);
+        for (int i = 0; i < 50; i++) {
+            EntityCondition condition = EntityCondition.makeCondition("testingTypeId", "TEST-CINDEX-" + i);
+            index.register(condition);
+            cache.put(condition, "value-" + i);
+        }
+        assertEquals("Condition cache is full", 5, cache.size());
+        assertEquals("Index only holds the cached conditions", cache.size(), index.size());
+        cache.removeListener(index);
+    }
+
     /*
      * Tests XML serialization by serializing/deserializing a GenericValue
      */
@@ -684,6 +746,35 @@ public class EntityTestSuite extends EntityTestCase {
         assertEquals("No more TestingRemoveAll: finish", 0, values.size());
     }
 
+    /*
+     * Tests that finds differing only in condition values reuse the cached SQL and still bind their own values
+     */
+    public void testSqlTemplateCache() throws Exception {
+        try {
+            List<GenericValue> newValues = new ArrayList<>(10);
+            for (int i = 0; i < 10; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("TSQL-", i), "testingSize", (long) (i % 3)));
+            }
+            delegator.createAll(newValues);
+            String helperName = delegator.getGroupHelperInfo(delegator.getEntityGroupName("Testing")).getHelperFullName();
+            UtilCache<?, ?> sqlTemplateCache = UtilCache.findCache("entity.SqlTemplateCache." + helperName);
+            assertNotNull("SQL template cache of " + helperName, sqlTemplateCache);
+            long hitCount = sqlTemplateCache.getHitCount();
+            for (long size = 0; size < 3; size++) {
+                List<GenericValue> values = EntityQuery.use(delegator).from("Testing")
+                        .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "TSQL-%"), EntityCondition.makeCondition("testingSize", size))
+                        .orderBy("testingId").queryList();
+                assertEquals("Values with testingSize " + size, size == 0 ? 4 : 3, values.size());
+                for (GenericValue value : values) {
+                    assertEquals("testingSize", Long.valueOf(size), value.getLong("testingSize"));
+                }
+            }
+            assertTrue("SQL template cache hits", sqlTemplateCache.getHitCount() >= hitCount + 2);
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "TSQL-%"));
+        }
+    }
+
     /*
      * This test will create a large number of unique items and add them to the delegator at once
      */
@@ -710,6 +801,219 @@ public class EntityTestSuite extends EntityTestCase {
         }
     }
 
+    /*
+     * This test will create a large number of unique items with the batched storeAll mode, then update half of them the same way
+     */
+    public void testCreateManyAndStoreAllBatched() throws Exception {
+        try {
+            List<GenericValue> newValues = new ArrayList<>((int) TEST_COUNT);
+            for (int i = 0; i < TEST_COUNT; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T3-", i), "description", "batch-create"));
+            }
+            int created = delegator.storeAll(newValues, new EntityStoreOptions().setBatch(true).setBatchSize(100));
+            assertEquals("Batched storeAll created rows", TEST_COUNT, created);
+
+            List<GenericValue> updateValues = new ArrayList<>((int) TEST_COUNT);
+            for (int i = 0; i < TEST_COUNT; i++) {
+                updateValues.add(delegator.makeValue("Testing", "testingId", getTestId("T3-", i), "description", (i % 2 == 0) ? "batch-update" : "batch-create"));
+            }
+            int updated = delegator.storeAll(updateValues, new EntityStoreOptions().setBatch(true).setBatchSize(100));
+            assertEquals("Batched storeAll only updates changed rows", (TEST_COUNT + 1) / 2, updated);
+            long updatedCount = EntityQuery.use(delegator)
+                                           .from("Testing")
+                                           .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T3-%"),
+                                                   EntityCondition.makeCondition("description", "batch-update"))
+                                           .queryCount();
+            assertEquals("Batched storeAll updated rows found", (TEST_COUNT + 1) / 2, updatedCount);
+        } finally {
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T3-%"))
+                                                               .queryList();
+            delegator.removeAll(newlyCreatedValues);
+        }
+    }
+
+    /*
+     * Tests that the batched storeAll writes the updates of a row in order, also when they update different fields
+     */
+    public void testStoreAllBatchedUpdateOrder() throws Exception {
+        try {
+            delegator.create("Testing", "testingId", "T3O-1", "description", "created", "testingName", "created");
+            List<GenericValue> updateValues = UtilMisc.toList(
+                    delegator.makeValue("Testing", "testingId", "T3O-1", "description", "first", "testingName", "first"),
+                    delegator.makeValue("Testing", "testingId", "T3O-1", "description", "second"),
+                    delegator.makeValue("Testing", "testingId", "T3O-1", "description", "third", "testingName", "third"));
+            int updated = delegator.storeAll(updateValues, new EntityStoreOptions().setBatch(true));
+            assertEquals("Batched storeAll updates", 3, updated);
+            GenericValue testValue = EntityQuery.use(delegator).from("Testing").where("testingId", "T3O-1").queryOne();
+            assertEquals("Last description", "third", testValue.getString("description"));
+            assertEquals("Last name", "third", testValue.getString("testingName"));
+        } finally {
+            delegator.removeByAnd("Testing", "testingId", "T3O-1");
+        }
+    }
+
+    /*
+     * Benchmark: creates the same number of rows with a create loop and with createAll (both in one transaction) and logs the timings
+     */
+    public void testCreateAllComparedToCreateLoop() throws Exception {
+        Datasource datasourceInfo = EntityConfig.getDatasource(delegator.getEntityHelper("Testing").getHelperName());
+        try {
+            boolean transactionStarted = TransactionUtil.begin();
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < TEST_COUNT; i++) {
+                delegator.create(delegator.makeValue("Testing", "testingId", getTestId("T4-", i), "description", "create-loop"));
+            }
+            TransactionUtil.commit(transactionStarted);
+            long totalTimeCreateLoop = System.currentTimeMillis() - startTime;
+
+            List<GenericValue> newValues = new ArrayList<>((int) TEST_COUNT);
+            for (int i = 0; i < TEST_COUNT; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T5-", i), "description", "create-all"));
+            }
+            startTime = System.currentTimeMillis();
+            int created = delegator.createAll(newValues);
+            long totalTimeCreateAll = System.currentTimeMillis() - startTime;
+
+            Debug.logInfo("Created " + TEST_COUNT + " rows with a create loop in " + totalTimeCreateLoop + " ms and with createAll in "
+                    + totalTimeCreateAll + " ms (datasource: " + datasourceInfo.getName() + ", batch-size: " + datasourceInfo.getBatchSize()
+                    + ", use-multi-row-insert: " + datasourceInfo.getUseMultiRowInsert() + ")", module);
+            assertEquals("createAll created rows", TEST_COUNT, created);
+            long createdCount = EntityQuery.use(delegator)
+                                           .from("Testing")
+                                           .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"))
+                                           .queryCount();
+            assertEquals("createAll created rows found", TEST_COUNT, createdCount);
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T4-%"));
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"));
+        }
+    }
+
+    /*
+     * Exports rows as CSV by keyset pages, then resumes a second export after a primary key in the middle
+     */
+    public void testEntityStreamExporter() throws Exception {
+        try {
+            List<GenericValue> newValues = new ArrayList<>(100);
+            for (int i = 0; i < 100; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T6-", i), "description", "export, \"quoted\""));
+            }
+            delegator.createAll(newValues);
+            EntityCondition cond = EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T6-%");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            EntityStreamExporter exporter = new EntityStreamExporter(delegator, EntityStreamExporter.Format.CSV, out)
+                    .setFieldNames(UtilMisc.toList("testingId", "description"))
+                    .setPageSize(30)
+                    .setFetchSize(10);
+            long written = exporter.export("Testing", cond);
+            exporter.finish();
+            assertEquals("Rows written", 100, written);
+            assertEquals("Last primary key", getTestId("T6-", 99), exporter.getLastPk().getString("testingId"));
+            String[] lines = new String(out.toByteArray(), "UTF-8").split("\r\n");
+            assertEquals("CSV header and rows", 101, lines.length);
+            assertEquals("CSV header", "testingId,description", lines[0]);
+            assertEquals("CSV row", getTestId("T6-", 0) + ",\"export, \"\"quoted\"\"\"", lines[1]);
+
+            out = new ByteArrayOutputStream();
+            exporter = new EntityStreamExporter(delegator, EntityStreamExporter.Format.JSON_LINES, out)
+                    .setPageSize(30)
+                    .setResumeAfter(UtilMisc.toMap("testingId", getTestId("T6-", 59)));
+            written = exporter.export("Testing", cond);
+            exporter.finish();
+            assertEquals("Rows written after resume", 40, written);
+            lines = new String(out.toByteArray(), "UTF-8").split("\n");
+            assertEquals("JSON lines", 40, lines.length);
+            assertTrue("First resumed row", lines[0].startsWith("{\"testingId\":\"" + getTestId("T6-", 60) + "\""));
+            for (int i = 0; i < lines.length; i++) {
+                assertTrue("JSON row " + i, lines[i].startsWith("{\"testingId\":\"" + getTestId("T6-", 60 + i) + "\","));
+                assertTrue("JSON row description " + i, lines[i].contains(",\"description\":\"export, \\\"quoted\\\"\","));
+                assertTrue("JSON row end " + i, lines[i].endsWith("}"));
+            }
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T6-%"));
+        }
+    }
+
+    /*
+     * Tests the read replica selection and the reads that must stay on the primary
+     */
+    public void testReadReplicaRouting() throws Exception {
+        ReadReplicaRouter roundRobin = new ReadReplicaRouter("org.ofbiz", UtilMisc.toList("replica1", "replica2"), false);
+        String first = roundRobin.getDatasourceName();
+        assertFalse("Round-robin alternates replicas", first.equals(roundRobin.getDatasourceName()));
+        assertEquals("Round-robin wraps around", first, roundRobin.getDatasourceName());
+
+        // An open iterator holds a localderby connection, so least-loaded must always pick the other replica
+        ReadReplicaRouter leastLoaded = new ReadReplicaRouter("org.ofbiz", UtilMisc.toList("localderby", "localderbyolap"), true);
+        boolean transBegin = TransactionUtil.begin();
+        try (EntityListIterator eli = EntityQuery.use(delegator).from("Testing").queryIterator()) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals("Least-loaded replica " + i, "localderbyolap", leastLoaded.getDatasourceName());
+            }
+        } finally {
+            TransactionUtil.commit(transBegin);
+        }
+
+        GenericDelegator replicaDelegator = (GenericDelegator) DelegatorFactory.getDelegator("test-readreplica");
+        assertEquals("Read outside a transaction", "localderbyreplica", replicaDelegator.getEntityReadHelper("Testing", null, false).getHelperName());
+        assertEquals("Read of a group without replicas", "localderbytenant", replicaDelegator.getEntityReadHelper("Tenant", null, false).getHelperName());
+        assertEquals("Cached read", "localderby", replicaDelegator.getEntityReadHelper("Testing", null, true).getHelperName());
+        assertEquals("Fresh read", "localderby", replicaDelegator.getEntityReadHelper("Testing",
+                new EntityFindOptions().setRequireFresh(true), false).getHelperName());
+        assertEquals("Updatable cursor read", "localderby", replicaDelegator.getEntityReadHelper("Testing",
+                new EntityFindOptions().setResultSetConcurrency(EntityFindOptions.CONCUR_UPDATABLE), false).getHelperName());
+        transBegin = TransactionUtil.begin();
+        try {
+            assertEquals("Read in a transaction", "localderby", replicaDelegator.getEntityReadHelper("Testing", null, false).getHelperName());
+        } finally {
+            TransactionUtil.commit(transBegin);
+        }
+
+        // The replica of the test delegator is a second pool on the same database, so it reads what the primary wrote
+        try {
+            delegator.create("Testing", "testingId", "T8-replica", "description", "Replica read");
+            GenericValue testValue = EntityQuery.use(replicaDelegator).from("Testing").where("testingId", "T8-replica").queryOne();
+            assertEquals("Value read from the replica", "Replica read", testValue.getString("description"));
+            assertEquals("Count read from the replica", 1, EntityQuery.use(replicaDelegator).from("Testing")
+                    .where("testingId", "T8-replica").queryCount());
+        } finally {
+            delegator.removeByAnd("Testing", "testingId", "T8-replica");
+        }
+    }
+
+    /*
+     * Reads pages by keyset (seek) pagination and checks they match the offset pages, in both orders
+     */
+    public void testKeysetPagedList() throws Exception {
+        try {
+            List<GenericValue> newValues = new ArrayList<>(50);
+            for (int i = 0; i < 50; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T7-", i), "testingSize", (long) (i % 7)));
+            }
+            delegator.createAll(newValues);
+            EntityCondition cond = EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T7-%");
+            for (String orderBy : UtilMisc.toList("testingSize", "-testingSize")) {
+                String seekKey = null;
+                for (int viewIndex = 0; viewIndex < 3; viewIndex++) {
+                    PagedList<GenericValue> offsetPage = EntityQuery.use(delegator).from("Testing").where(cond)
+                            .orderBy(orderBy).queryKeysetPagedList(viewIndex, 20);
+                    KeysetPagedList<GenericValue> seekPage = EntityQuery.use(delegator).from("Testing").where(cond)
+                            .orderBy(orderBy).seekAfter(seekKey).queryKeysetPagedList(viewIndex, 20);
+                    assertEquals("List size", 50, seekPage.getListSize());
+                    assertEquals("Page " + viewIndex + " by " + orderBy, offsetPage.getData(), seekPage.getData());
+                    assertEquals("Page " + viewIndex + " end index", Math.min(50, (viewIndex + 1) * 20), seekPage.getEndIndex());
+                    seekKey = seekPage.getNextSeekKey();
+                    assertEquals("Next seek key on page " + viewIndex, viewIndex < 2, seekKey != null);
+                }
+            }
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T7-%"));
+        }
+    }
+
     /*
      * This test will create a large number of unique items and add them to the delegator at once
      */
@@ -1232,6 +1536,60 @@ public class EntityTestSuite extends EntityTestCase {
         assertFalse("Duplicate sequence id returned", duplicateFound.get());
     }
 
+    /*
+        Throughput benchmark for sequence banks at 1, 8 and 64 threads; results are logged. Each thread draws the
+        same number of IDs from one sequence, so the time measured is dominated by contention on its bank.
+     */
+    public void testSequenceValueItemThroughput() throws Exception {
+        final SequenceUtil sequencer = new SequenceUtil(delegator.getGroupHelperInfo(delegator.getEntityGroupName("SequenceValueItem")),
+                                                  delegator.getModelEntity("SequenceValueItem"),
+                                                  "seqName", "seqId");
+        final int idsPerThread = 2000;
+        for (int threadCount : new int[] {1, 8, 64}) {
+            final String sequenceName = "BogusSequence" + UUID.randomUUID().toString();
+            final ConcurrentMap<Long, Long> seqIds = new ConcurrentHashMap<>();
+            final AtomicBoolean duplicateFound = new AtomicBoolean(false);
+            final AtomicBoolean nullSeqIdReturned = new AtomicBoolean(false);
+            // Warm up the bank so the first fill is not measured
+            Long firstSeqId = sequencer.getNextSeqId(sequenceName, 1, null);
+            assertNotNull("First sequence id", firstSeqId);
+            seqIds.put(firstSeqId, firstSeqId);
+            ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+            try {
+                List<Future<Void>> futures = new ArrayList<>();
+                Callable<Void> getSeqIdsTask = new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for (int i = 0; i < idsPerThread; i++) {
+                            Long seqId = sequencer.getNextSeqId(sequenceName, 1, null);
+                            if (seqId == null) {
+                                nullSeqIdReturned.set(true);
+                                return null;
+                            }
+                            if (seqIds.putIfAbsent(seqId, seqId) != null) {
+                                duplicateFound.set(true);
+                            }
+                        }
+                        return null;
+                    }
+                };
+                long startTime = System.nanoTime();
+                for (int i = 0; i < threadCount; i++) {
+                    futures.add(executor.submit(getSeqIdsTask));
+                }
+                ExecutionPool.getAllFutures(futures);
+                long totalNanos = System.nanoTime() - startTime;
+                long totalIds = (long) idsPerThread * threadCount;
+                Debug.logInfo("testSequenceValueItemThroughput threads=" + threadCount + ": " + totalIds + " ids in "
+                        + (totalNanos / 1000000) + " ms (" + (totalIds * 1000000000L / Math.max(1, totalNanos)) + " ids/s)", module);
+            } finally {
+                executor.shutdown();
+            }
+            assertFalse("Null sequence id returned", nullSeqIdReturned.get());
+            assertFalse("Duplicate sequence id returned", duplicateFound.get());
+            assertEquals("All sequence ids returned", idsPerThread * threadCount + 1, seqIds.size());
+        }
+    }
+
     /*
         This test is useful to confirm that the default setting of use-transaction="true" for screen definitions is
         the best one for performance.
@@ -55,6 +55,9 @@ public class EntityFindOptions implements java.io.Serializable {
     /** OFFSET option */
     protected int offset = -1;
 
+    /** Read from the primary datasource even if the entity group has read replicas (SCIPIO) */
+    protected boolean requireFresh = false;
+
     /** Default constructor. Defaults are as follows:
      *      specifyTypeAndConcur = true
      *      resultSetType = TYPE_FORWARD_ONLY
@@ -181,4 +184,15 @@ public class EntityFindOptions implements java.io.Serializable {
         this.offset = offset;
         return this;
     }
+
+    /** Returns true if the find must read from the primary datasource instead of a read replica (SCIPIO). */
+    public boolean getRequireFresh() {
+        return requireFresh;
+    }
+
+    /** Specifies whether the find must read from the primary datasource instead of a read replica, for data that must not lag behind recent writes (SCIPIO). */
+    public EntityFindOptions setRequireFresh(boolean requireFresh) {
+        this.requireFresh = requireFresh;
+        return this;
+    }
 }
@@ -18,10 +18,14 @@
  *******************************************************************************/
 package org.ofbiz.entity.util;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -32,6 +36,7 @@ import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.UtilGenerics;
 import org.ofbiz.base.util.UtilMisc;
 import org.ofbiz.base.util.UtilValidate;
+import org.ofbiz.base.util.collections.KeysetPagedList;
 import org.ofbiz.base.util.collections.PagedList;
 import org.ofbiz.entity.Delegator;
 import org.ofbiz.entity.EntityFieldNotFoundException;
@@ -40,6 +45,7 @@ import org.ofbiz.entity.GenericPK;
 import org.ofbiz.entity.GenericValue;
 import org.ofbiz.entity.condition.EntityCondition;
 import org.ofbiz.entity.condition.EntityJoinOperator;
+import org.ofbiz.entity.condition.OrderByList;
 import org.ofbiz.entity.model.DynamicViewEntity;
 import org.ofbiz.entity.model.ModelEntity;
 
@@ -73,6 +79,9 @@ public class EntityQuery {
     private List<String> filterByFieldNames = null;
     private boolean searchPkOnly = false;
     private Map<String, Object> fieldMap = null;
+    private Map<String, ? extends Object> seekAfter = null; // SCIPIO
+    private String seekAfterKey = null; // SCIPIO
+    private boolean requireFresh = false; // SCIPIO
 
 
 
@@ -242,6 +251,34 @@ public class EntityQuery {
         return this;
     }
 
+    /** SCIPIO: Restricts the results to the rows that follow the given row in the orderBy order (keyset or "seek" pagination),
+     * so the next page can be read with maxRows without the database skipping all previous rows as for an offset.
+     * <p>
+     * The orderBy fields must be plain fields (no UPPER/LOWER); any primary key fields not in them are appended to the
+     * order so that it is unique. The row must have a non-null value for each of these fields. Null clears it.</p>
+     *
+     * NOTE: Each successive call to any of the seekAfter(...) methods will replace the currently set row.
+     * @param lastRow - The last row of the previous page, usually a GenericValue
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery seekAfter(Map<String, ? extends Object> lastRow) {
+        this.seekAfter = lastRow;
+        this.seekAfterKey = null;
+        return this;
+    }
+
+    /** SCIPIO: Same as {@link #seekAfter(Map)} but for a seek key made by {@link #makeSeekKey(Map)}, typically from
+     * {@link KeysetPagedList#getNextSeekKey()} passed through a request parameter. Null or empty clears it.
+     *
+     * @param seekKey - The seek key of the last row of the previous page
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery seekAfter(String seekKey) {
+        this.seekAfter = null;
+        this.seekAfterKey = UtilValidate.isNotEmpty(seekKey) ? seekKey : null;
+        return this;
+    }
+
     /** Indicate that the ResultSet object's cursor may move only forward (this is the default behavior)
      *
      * @return this EntityQuery object, to enable chaining
@@ -311,6 +348,26 @@ public class EntityQuery {
         return this;
     }
 
+    /** SCIPIO: Specifies that the query must read from the primary datasource even if the entity group has read replicas,
+     * for data that must not lag behind recent writes. Reads inside a transaction always use the primary.
+     *
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery requireFresh() {
+        this.requireFresh = true;
+        return this;
+    }
+
+    /** SCIPIO: Specifies whether the query must read from the primary datasource even if the entity group has read replicas.
+     *
+     * @param requireFresh - boolean indicating whether to read from the primary datasource
+     * @return this EntityQuery object, to enable chaining
+     */
+    public EntityQuery requireFresh(boolean requireFresh) {
+        this.requireFresh = requireFresh;
+        return this;
+    }
+
     /** Specifies whether results should be read from the cache (or written to the cache if the results have not yet been cached)
      *
      * @return this EntityQuery object, to enable chaining
@@ -565,9 +622,9 @@ public class EntityQuery {
             Debug.logWarning("Call to iterator() with cache, ignoring cache" + toLogAppend(), module); // SCIPIO: Improved logging
         }
         if (dynamicViewEntity == null) {
-            return delegator.find(entityName, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, makeEntityFindOptions());
+            return delegator.find(entityName, makeQueryCondition(false), havingEntityCondition, fieldsToSelect, makeOrderBy(), makeEntityFindOptions());
         } else {
-            return delegator.findListIteratorByCondition(dynamicViewEntity, makeWhereCondition(false), havingEntityCondition, fieldsToSelect, orderBy, makeEntityFindOptions());
+            return delegator.findListIteratorByCondition(dynamicViewEntity, makeQueryCondition(false), havingEntityCondition, fieldsToSelect, makeOrderBy(), makeEntityFindOptions());
         }
     }
 
@@ -601,7 +658,7 @@ public class EntityQuery {
         // it's simpler and more efficient for PK queries, so instead, use the Delegator PK lookup method wherever possible
         //GenericValue result =  EntityUtil.getOnly(queryList());
         GenericValue result;
-        if (dynamicViewEntity == null && !filterByDate && orderBy == null && !hasEntityFindOptions() &&
+        if (dynamicViewEntity == null && !filterByDate && orderBy == null && !hasEntityFindOptions() && !isSeeking() &&
                 whereEntityCondition == null && havingEntityCondition == null && fieldMap != null) {
             //if (Debug.verboseOn()) {
             //    Debug.logVerbose("queryOne: using findOne() implementation" + toLogAppend(), module);
@@ -652,7 +709,7 @@ public class EntityQuery {
                 return iterator.getResultsSizeAfterPartialList();
             }
         }
-        return delegator.findCountByCondition(entityName, makeWhereCondition(false), havingEntityCondition, makeEntityFindOptions());
+        return delegator.findCountByCondition(entityName, makeQueryCondition(false), havingEntityCondition, makeEntityFindOptions());
     }
 
     private List<GenericValue> query(EntityFindOptions efo) throws GenericEntityException {
@@ -664,7 +721,7 @@ public class EntityQuery {
         }
         List<GenericValue> result = null;
         if (dynamicViewEntity == null) {
-            result = delegator.findList(entityName, makeWhereCondition(useCache), fieldsToSelect, orderBy, findOptions, useCache);
+            result = delegator.findList(entityName, makeQueryCondition(useCache), fieldsToSelect, makeOrderBy(), findOptions, useCache);
         } else {
             try (EntityListIterator it = queryIterator()) {
                 result = it.getCompleteList();
@@ -694,11 +751,12 @@ public class EntityQuery {
         if (distinct != null) {
             findOptions.setDistinct(distinct);
         }
+        findOptions.setRequireFresh(requireFresh); // SCIPIO
         return findOptions;
     }
 
     private boolean hasEntityFindOptions() { // SCIPIO
-        return (resultSetType != EntityFindOptions.TYPE_FORWARD_ONLY) || (fetchSize != null) || (maxRows != null) || (distinct != null);
+        return (resultSetType != EntityFindOptions.TYPE_FORWARD_ONLY) || (fetchSize != null) || (maxRows != null) || (distinct != null) || requireFresh;
     }
 
     private EntityCondition makeWhereCondition(boolean usingCache) {
@@ -735,6 +793,96 @@ public class EntityQuery {
         return whereEntityCondition;
     }
 
+    /** SCIPIO: Returns the where condition combined with the seekAfter condition, if any. */
+    private EntityCondition makeQueryCondition(boolean usingCache) throws GenericEntityException {
+        EntityCondition whereCondition = makeWhereCondition(usingCache);
+        if (!isSeeking()) {
+            return whereCondition;
+        }
+        EntityCondition seekCondition;
+        try {
+            seekCondition = new OrderByList(makeOrderBy()).makeSeekCondition(getSeekAfterRow());
+        } catch (IllegalArgumentException e) {
+            throw new GenericEntityException("Invalid seekAfter query: " + e.getMessage() + toLogAppend(), e);
+        }
+        return (whereCondition != null) ? EntityCondition.makeCondition(whereCondition, seekCondition) : seekCondition;
+    }
+
+    private boolean isSeeking() { // SCIPIO
+        return (seekAfter != null || seekAfterKey != null);
+    }
+
+    /** SCIPIO: Returns the orderBy, with the primary key fields it lacks appended if seeking. */
+    private List<String> makeOrderBy() throws GenericEntityException {
+        return isSeeking() ? makeSeekOrderBy() : orderBy;
+    }
+
+    private List<String> makeSeekOrderBy() throws GenericEntityException { // SCIPIO
+        List<String> seekOrderBy = (orderBy != null) ? new ArrayList<>(orderBy) : new ArrayList<>();
+        List<String> orderByFieldNames;
+        try {
+            orderByFieldNames = new OrderByList(seekOrderBy).getSeekFieldNames();
+        } catch (IllegalArgumentException e) {
+            throw new GenericEntityException("Invalid seekAfter query: " + e.getMessage() + toLogAppend(), e);
+        }
+        for (String pkFieldName : getQueryModelEntity().getPkFieldNames()) {
+            if (!orderByFieldNames.contains(pkFieldName)) {
+                seekOrderBy.add(pkFieldName);
+            }
+        }
+        return seekOrderBy;
+    }
+
+    private ModelEntity getQueryModelEntity() { // SCIPIO
+        return (dynamicViewEntity != null) ? dynamicViewEntity.makeModelViewEntity(delegator) : delegator.getModelEntity(entityName);
+    }
+
+    private Map<String, ? extends Object> getSeekAfterRow() throws GenericEntityException { // SCIPIO
+        if (seekAfter != null) {
+            return seekAfter;
+        }
+        List<String> fieldNames = new OrderByList(makeSeekOrderBy()).getSeekFieldNames();
+        String[] encodedValues = seekAfterKey.split(",", -1);
+        if (encodedValues.length != fieldNames.size()) {
+            throw new GenericEntityException("Invalid seek key [" + seekAfterKey + "]: expected " + fieldNames.size() + " values for fields " + fieldNames + toLogAppend());
+        }
+        GenericValue row = GenericValue.create(delegator, getQueryModelEntity(), Collections.<String, Object>emptyMap());
+        try {
+            for (int i = 0; i < encodedValues.length; i++) {
+                row.setString(fieldNames.get(i), URLDecoder.decode(encodedValues[i], "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new GenericEntityException("Invalid seek key [" + seekAfterKey + "]: " + e.getMessage() + toLogAppend(), e);
+        }
+        return row;
+    }
+
+    /** SCIPIO: Makes the seek key of the given row for {@link #seekAfter(String)}, from the values of the orderBy fields
+     * and the primary key fields not in them; returns null if the row has no value for one of them, in which case it
+     * cannot be sought after.
+     *
+     * @param row - The row, usually the last one of a page read by this query
+     * @return the seek key, or null
+     */
+    public String makeSeekKey(Map<String, ? extends Object> row) throws GenericEntityException {
+        StringBuilder sb = new StringBuilder();
+        for (String fieldName : new OrderByList(makeSeekOrderBy()).getSeekFieldNames()) {
+            Object value = row.get(fieldName);
+            if (value == null) {
+                return null;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            try {
+                sb.append(URLEncoder.encode(value.toString(), "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new GenericEntityException(e);
+            }
+        }
+        return sb.toString();
+    }
+
     private EntityCondition makeDateCondition() {
         List<EntityCondition> conditions = new ArrayList<>();
         if (UtilValidate.isEmpty(this.filterByFieldNames)) {
@@ -883,6 +1031,68 @@ public class EntityQuery {
         }
     }
 
+    /**
+     * SCIPIO: Query paged list by keyset (seek) pagination: if {@link #seekAfter(Map)} or {@link #seekAfter(String)}
+     * was set to the last row of the previous page, reads the page with a seek condition and maxRows instead of an offset,
+     * otherwise (first page, or jump to another page) falls back to an offset of viewIndex * viewSize.
+     * <p>
+     * The returned list carries the seek key of its last row for the next page. The total size is counted without the seek
+     * condition. In both cases the rows are ordered as for {@link #seekAfter(Map)}, so offset and keyset pages match.</p>
+     * @param viewIndex the page index, for the list indexes and the offset fallback
+     * @param viewSize the page size
+     * @return KeysetPagedList object with the data items of the page
+     * @throws GenericEntityException
+     */
+    public KeysetPagedList<GenericValue> queryKeysetPagedList(int viewIndex, int viewSize) throws GenericEntityException {
+        boolean seeking = isSeeking();
+        List<String> savedOrderBy = orderBy;
+        Map<String, ? extends Object> savedSeekAfter = seekAfter;
+        String savedSeekAfterKey = seekAfterKey;
+        Integer savedMaxRows = maxRows;
+        try {
+            // Fix the unique order first so that the offset fallback reads the same pages
+            orderBy = makeSeekOrderBy();
+            seekAfter = null;
+            seekAfterKey = null;
+            maxRows = null;
+            int size = (int) queryCount();
+
+            // The offset fallback skips rows by reading forward, so it works with the default forward-only cursor
+            int skip = 0;
+            if (seeking) {
+                seekAfter = savedSeekAfter;
+                seekAfterKey = savedSeekAfterKey;
+                maxRows = viewSize;
+            } else {
+                skip = viewIndex * viewSize;
+                maxRows = skip + viewSize;
+            }
+            List<GenericValue> data = new ArrayList<>(viewSize);
+            try (EntityListIterator eli = queryIterator()) {
+                GenericValue value;
+                while (data.size() < viewSize && (value = eli.next()) != null) {
+                    if (skip > 0) {
+                        skip--;
+                    } else {
+                        data.add(value);
+                    }
+                }
+            }
+            int startIndex = EntityUtil.getStartIndexFromViewIndex(viewIndex, viewSize);
+            int endIndex = Math.min(startIndex + data.size() - 1, size);
+            String nextSeekKey = null;
+            if (!data.isEmpty() && endIndex < size) {
+                nextSeekKey = makeSeekKey(data.get(data.size() - 1));
+            }
+            return new KeysetPagedList<>(startIndex, endIndex, size, viewIndex, viewSize, data, nextSeekKey);
+        } finally {
+            orderBy = savedOrderBy;
+            seekAfter = savedSeekAfter;
+            seekAfterKey = savedSeekAfterKey;
+            maxRows = savedMaxRows;
+        }
+    }
+
     /** SCIPIO: Executes the EntityQuery and returns a list of results; returns null if GenericEntityException.
      * NOTE: Unchecked exceptions representing programming errors may still be thrown.
      *
@@ -1018,6 +1228,23 @@ public class EntityQuery {
         }
     }
 
+    /**
+     * SCIPIO: Query paged list by keyset (seek) pagination; returns null if GenericEntityException.
+     * NOTE: Unchecked exceptions representing programming errors may still be thrown.
+     * @param viewIndex
+     * @param viewSize
+     * @return KeysetPagedList object with the data items of the page
+     * @see #queryKeysetPagedList(int, int)
+     */
+    public KeysetPagedList<GenericValue> queryKeysetPagedListSafe(int viewIndex, int viewSize) {
+        try {
+            return queryKeysetPagedList(viewIndex, viewSize);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error in queryKeysetPagedList(): " + e.getMessage() + toLogAppend(), module);
+            return null;
+        }
+    }
+
     @Override
     public String toString() { // SCIPIO: Debugging help
         return "{entityName='" + entityName + '\'' +
@@ -1036,6 +1263,7 @@ public class EntityQuery {
                 ", filterByFieldNames=" + filterByFieldNames +
                 //", searchPkOnly=" + searchPkOnly +
                 ", fieldMap=" + fieldMap +
+                ", seekAfter=" + ((seekAfterKey != null) ? seekAfterKey : seekAfter) +
                 '}';
     }
 
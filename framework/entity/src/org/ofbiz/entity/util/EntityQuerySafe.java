@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.collections.KeysetPagedList;
 import org.ofbiz.base.util.collections.PagedList;
 import org.ofbiz.entity.Delegator;
 import org.ofbiz.entity.GenericEntityException;
@@ -102,6 +103,16 @@ public class EntityQuerySafe extends EntityQuery {
         return (EntityQuerySafe) super.orderBy(fields);
     }
 
+    @Override
+    public EntityQuerySafe seekAfter(Map<String, ? extends Object> lastRow) {
+        return (EntityQuerySafe) super.seekAfter(lastRow);
+    }
+
+    @Override
+    public EntityQuerySafe seekAfter(String seekKey) {
+        return (EntityQuerySafe) super.seekAfter(seekKey);
+    }
+
     @Override
     public EntityQuerySafe cursorForwardOnly() {
         return (EntityQuerySafe) super.cursorForwardOnly();
@@ -137,6 +148,16 @@ public class EntityQuerySafe extends EntityQuery {
         return (EntityQuerySafe) super.distinct(distinct);
     }
 
+    @Override
+    public EntityQuerySafe requireFresh() {
+        return (EntityQuerySafe) super.requireFresh();
+    }
+
+    @Override
+    public EntityQuerySafe requireFresh(boolean requireFresh) {
+        return (EntityQuerySafe) super.requireFresh(requireFresh);
+    }
+
     @Override
     public EntityQuerySafe cache() {
         return (EntityQuerySafe) super.cache();
@@ -296,4 +317,24 @@ public class EntityQuerySafe extends EntityQuery {
             return null;
         }
     }
+
+    @Override
+    public KeysetPagedList<GenericValue> queryKeysetPagedList(int viewIndex, int viewSize) {
+        try {
+            return super.queryKeysetPagedList(viewIndex, viewSize);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error in queryKeysetPagedList(): " + e.getMessage() + toLogAppend(), module);
+            return null;
+        }
+    }
+
+    @Override
+    public String makeSeekKey(Map<String, ? extends Object> row) {
+        try {
+            return super.makeSeekKey(row);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error in makeSeekKey(): " + e.getMessage() + toLogAppend(), module);
+            return null;
+        }
+    }
 }
@@ -97,6 +97,7 @@ public class EntitySaxReader extends DefaultHandler {
     private boolean useTryInsertMethod = false;
     private boolean maintainTxStamps = false;
     private boolean createDummyFks = false;
+    private boolean batchStore = false; // SCIPIO
     private boolean checkDataOnly = false;
     private enum Action {CREATE, CREATE_UPDATE, CREATE_REPLACE, DELETE};
     private List<String> actionTags = UtilMisc.toList("create", "create-update", "create-replace", "delete");
@@ -150,6 +151,14 @@ public class EntitySaxReader extends DefaultHandler {
         this.createDummyFks = createDummyFks;
     }
 
+    /**
+     * If true, values are written using the batched storeAll mode (see {@link EntityStoreOptions#setBatch(boolean)}).
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     */
+    public void setBatchStore(boolean batchStore) {
+        this.batchStore = batchStore;
+    }
+
     public void setCheckDataOnly(boolean checkDataOnly) {
         this.checkDataOnly = checkDataOnly;
     }
@@ -460,7 +469,7 @@ public class EntitySaxReader extends DefaultHandler {
         if (this.checkDataOnly) {
             EntityDataAssert.checkValueList(valuesToWrite, delegator, this.getMessageList());
         } else {
-            delegator.storeAll(valuesToWrite, new EntityStoreOptions(createDummyFks));
+            delegator.storeAll(valuesToWrite, new EntityStoreOptions(createDummyFks).setBatch(batchStore));
         }
     }
 
@@ -27,6 +27,12 @@ public class EntityStoreOptions implements java.io.Serializable {
     /** Option for creating missing referenced values as dummy (pk-only) entries */
     protected boolean createDummyFks = false;
 
+    /** Option for storing using batched primary key lookups and JDBC batch inserts/updates (SCIPIO) */
+    protected boolean batch = false;
+
+    /** Number of rows per JDBC batch when batch is enabled; zero or less for the default (SCIPIO) */
+    protected int batchSize = 0;
+
     /**
      * Default constructor. Defaults are as follows: createDummyFks = false
      */
@@ -59,4 +65,55 @@ public class EntityStoreOptions implements java.io.Serializable {
     public void setCreateDummyFks(boolean createDummyFks) {
         this.createDummyFks = createDummyFks;
     }
+
+    /**
+     * If true, existing rows are looked up per entity with chunked primary key selects and inserts/updates are
+     * sent with JDBC batching, instead of one lookup and one statement per value. Entity ECA rules and cache clearing
+     * are still done per value, but not around each write (see {@link #setBatch(boolean)}).
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     *
+     * @return boolean
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * If true, existing rows are looked up per entity with chunked primary key selects and inserts/updates are
+     * sent with JDBC batching.
+     * <p>Entity ECA rules then run per phase for all the values of an entity rather than around each write: the
+     * validate and run rules of all values fire before any of them is written, and the cache-clear and return rules
+     * after all of them are. Rules that read the database or depend on the writes of earlier values in the same call
+     * see a different state than with per-value stores.</p>
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     *
+     * @param batch
+     * @return this
+     */
+    public EntityStoreOptions setBatch(boolean batch) {
+        this.batch = batch;
+        return this;
+    }
+
+    /**
+     * Number of rows per JDBC batch when {@link #isBatch()} is enabled; zero or less for the default.
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     *
+     * @return int
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of rows per JDBC batch when {@link #isBatch()} is enabled; zero or less for the default.
+     * <p>SCIPIO: 2.1.0: Added.</p>
+     *
+     * @param batchSize
+     * @return this
+     */
+    public EntityStoreOptions setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
 }
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.entity.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.ofbiz.base.util.Base64;
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilIO;
+import org.ofbiz.base.util.UtilValidate;
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.entity.GenericEntityException;
+import org.ofbiz.entity.GenericPK;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.condition.EntityCondition;
+import org.ofbiz.entity.condition.EntityOperator;
+import org.ofbiz.entity.model.ModelEntity;
+import org.ofbiz.entity.transaction.GenericTransactionException;
+import org.ofbiz.entity.transaction.TransactionUtil;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Streams entity rows to an <code>OutputStream</code> as entity-engine XML, JSON lines or CSV without building
+ * lists of values, so that memory use does not depend on the number of rows (SCIPIO).
+ * <p>
+ * Rows are read through an {@link EntityListIterator} ordered by primary key, using the JDBC fetch size set by
+ * {@link #setFetchSize(int)}. If a page size is set, the rows are read in pages using keyset pagination (each page
+ * selects the rows whose primary key follows the last one written), each page in its own transaction, so that no
+ * cursor or transaction stays open for the whole export. After an export, or if it failed part-way,
+ * {@link #getLastPk()} returns the primary key of the last row written, which can be passed to
+ * {@link #setResumeAfter(Map)} to continue from there.</p>
+ * <p>
+ * One exporter writes to one stream; several entities can be exported to it, after which {@link #finish()} must
+ * be called to write any trailer and flush. The underlying stream is not closed. Not thread-safe.</p>
+ */
+public class EntityStreamExporter {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    public enum Format {
+        XML,
+        JSON_LINES,
+        CSV;
+
+        /** Returns the format for the name, case-insensitive and with "-" for "_" (e.g. "json-lines"), or null if empty. */
+        public static Format fromString(String name) throws IllegalArgumentException {
+            if (UtilValidate.isEmpty(name)) {
+                return null;
+            }
+            return Format.valueOf(name.toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final Delegator delegator;
+    private final Format format;
+    private final PrintWriter writer;
+    private JsonGenerator jsonGenerator;
+    private boolean started = false;
+
+    private int fetchSize = -1;
+    private int pageSize = 0;
+    private int transactionTimeout = 7200;
+    private List<String> fieldNames = null;
+    private Map<String, ? extends Object> resumeAfter = null;
+    private GenericPK lastPk = null;
+
+    public EntityStreamExporter(Delegator delegator, Format format, OutputStream outputStream) {
+        this.delegator = delegator;
+        this.format = format;
+        this.writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(outputStream, UtilIO.getUtf8())));
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the JDBC fetch size, the number of rows the driver reads from the database at a time; -1 (default)
+     * for the datasource result-fetch-size. Some drivers (e.g. MySQL, PostgreSQL) need it set, or a page size,
+     * to avoid reading the whole result into memory.
+     */
+    public EntityStreamExporter setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Sets the number of rows read per keyset page, each in its own transaction; 0 or less (default) reads all
+     * rows with one query in one transaction.
+     */
+    public EntityStreamExporter setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public int getTransactionTimeout() {
+        return transactionTimeout;
+    }
+
+    /** Sets the timeout in seconds of the transaction of each query (default 7200). */
+    public EntityStreamExporter setTransactionTimeout(int transactionTimeout) {
+        this.transactionTimeout = transactionTimeout;
+        return this;
+    }
+
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /** Sets the fields written in JSON and CSV format; null (default) for all fields of the entity. Ignored for XML. */
+    public EntityStreamExporter setFieldNames(List<String> fieldNames) {
+        this.fieldNames = fieldNames;
+        return this;
+    }
+
+    public Map<String, ? extends Object> getResumeAfter() {
+        return resumeAfter;
+    }
+
+    /**
+     * Sets the primary key after which the next export starts, usually the {@link #getLastPk()} of an earlier
+     * export of the same entity and condition; null (default) to start at the beginning.
+     */
+    public EntityStreamExporter setResumeAfter(Map<String, ? extends Object> resumeAfter) {
+        this.resumeAfter = resumeAfter;
+        return this;
+    }
+
+    /** Returns the primary key of the last row written by the last export, or null if it wrote no rows. */
+    public GenericPK getLastPk() {
+        return lastPk;
+    }
+
+    /**
+     * Writes the rows of the entity matching the condition (may be null), ordered by primary key, and returns the
+     * number of rows written.
+     */
+    public long export(String entityName, EntityCondition condition) throws GenericEntityException, IOException {
+        ModelEntity modelEntity = delegator.getModelEntity(entityName);
+        if (modelEntity == null) {
+            throw new GenericEntityException("Entity [" + entityName + "] not found");
+        }
+        List<String> pkFieldNames = modelEntity.getPkFieldNames();
+        if (pageSize > 0 && pkFieldNames.isEmpty()) {
+            throw new GenericEntityException("Cannot export entity [" + entityName + "] by pages because it has no primary key");
+        }
+        List<String> rowFieldNames = (fieldNames != null) ? fieldNames : modelEntity.getAllFieldNames();
+        beginEntity(modelEntity, rowFieldNames);
+        lastPk = null;
+        Map<String, ? extends Object> after = resumeAfter;
+        long numberWritten = 0;
+        while (true) {
+            long pageWritten = 0;
+            boolean beganTransaction = TransactionUtil.begin(transactionTimeout);
+            try {
+                EntityQuery query = EntityQuery.use(delegator).from(entityName)
+                        .where(makeResumeCondition(condition, pkFieldNames, after))
+                        .orderBy(pkFieldNames);
+                if (fetchSize >= 0) {
+                    query.fetchSize(fetchSize);
+                }
+                if (pageSize > 0) {
+                    query.maxRows(pageSize);
+                }
+                try (EntityListIterator values = query.queryIterator()) {
+                    GenericValue value;
+                    while ((value = values.next()) != null) {
+                        writeValue(value, rowFieldNames);
+                        lastPk = value.getPrimaryKey();
+                        pageWritten++;
+                        if (pageSize > 0 && pageWritten >= pageSize) {
+                            break;
+                        }
+                    }
+                }
+                TransactionUtil.commit(beganTransaction);
+            } catch (GenericEntityException | IOException | RuntimeException e) {
+                String errMsg = "Error exporting entity [" + entityName + "] after " + (numberWritten + pageWritten) + " rows; last primary key written: " + lastPk;
+                try {
+                    TransactionUtil.rollback(beganTransaction, errMsg, e);
+                } catch (GenericTransactionException e2) {
+                    Debug.logError(e2, "Unable to rollback transaction", module);
+                }
+                writer.flush();
+                throw e;
+            }
+            numberWritten += pageWritten;
+            if (pageSize <= 0 || pageWritten < pageSize) {
+                break;
+            }
+            after = lastPk;
+        }
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Error writing export of entity [" + entityName + "]");
+        }
+        return numberWritten;
+    }
+
+    /**
+     * Writes the remaining values of the iterator, which the caller closes, and returns the number of rows written.
+     * Unlike {@link #export(String, EntityCondition)} this does not manage transactions or resume.
+     */
+    public long export(EntityListIterator values) throws GenericEntityException, IOException {
+        ModelEntity modelEntity = values.getModelEntity();
+        List<String> rowFieldNames = (fieldNames != null) ? fieldNames : modelEntity.getAllFieldNames();
+        beginEntity(modelEntity, rowFieldNames);
+        lastPk = null;
+        long numberWritten = 0;
+        GenericValue value;
+        while ((value = values.next()) != null) {
+            writeValue(value, rowFieldNames);
+            lastPk = value.getPrimaryKey();
+            numberWritten++;
+        }
+        writer.flush();
+        return numberWritten;
+    }
+
+    /**
+     * Writes the format trailer, if any, and flushes; the underlying stream is left open.
+     */
+    public void finish() throws IOException {
+        if (format == Format.XML && started) {
+            writer.println("</entity-engine-xml>");
+        }
+        if (jsonGenerator != null) {
+            jsonGenerator.flush();
+        }
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Error writing entity export");
+        }
+    }
+
+    /**
+     * Makes the condition selecting the rows whose primary key follows the given one in primary key order:
+     * <code>(pk1 &gt; v1) OR (pk1 = v1 AND pk2 &gt; v2) OR ...</code>, combined with the base condition.
+     */
+    public static EntityCondition makeResumeCondition(EntityCondition condition, List<String> pkFieldNames, Map<String, ? extends Object> after) {
+        if (after == null) {
+            return condition;
+        }
+        List<EntityCondition> orConds = new ArrayList<>(pkFieldNames.size());
+        for (int i = 0; i < pkFieldNames.size(); i++) {
+            List<EntityCondition> andConds = new ArrayList<>(i + 1);
+            for (int j = 0; j < i; j++) {
+                andConds.add(EntityCondition.makeCondition(pkFieldNames.get(j), EntityOperator.EQUALS, after.get(pkFieldNames.get(j))));
+            }
+            andConds.add(EntityCondition.makeCondition(pkFieldNames.get(i), EntityOperator.GREATER_THAN, after.get(pkFieldNames.get(i))));
+            orConds.add(EntityCondition.makeCondition(andConds, EntityOperator.AND));
+        }
+        EntityCondition keysetCond = EntityCondition.makeCondition(orConds, EntityOperator.OR);
+        return (condition != null) ? EntityCondition.makeCondition(condition, EntityOperator.AND, keysetCond) : keysetCond;
+    }
+
+    private void beginEntity(ModelEntity modelEntity, List<String> rowFieldNames) throws IOException {
+        switch (format) {
+        case XML:
+            if (!started) {
+                writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                writer.println("<entity-engine-xml>");
+            }
+            break;
+        case JSON_LINES:
+            if (jsonGenerator == null) {
+                jsonGenerator = new JsonFactory().createGenerator(writer);
+                // Rows are separated by hand; flushing only the generator keeps the buffered writer in effect
+                jsonGenerator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+                jsonGenerator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // The default root value separator is a space, which would start every row after the first
+                jsonGenerator.setRootValueSeparator(null);
+            }
+            break;
+        case CSV:
+            for (int i = 0; i < rowFieldNames.size(); i++) {
+                if (i > 0) {
+                    writer.print(',');
+                }
+                writeCsvField(rowFieldNames.get(i));
+            }
+            writer.print("\r\n");
+            break;
+        }
+        started = true;
+    }
+
+    private void writeValue(GenericValue value, List<String> rowFieldNames) throws IOException {
+        switch (format) {
+        case XML:
+            value.writeXmlText(writer, "");
+            break;
+        case JSON_LINES:
+            jsonGenerator.writeStartObject();
+            for (String fieldName : rowFieldNames) {
+                Object fieldValue = value.get(fieldName);
+                jsonGenerator.writeFieldName(fieldName);
+                if (fieldValue == null) {
+                    jsonGenerator.writeNull();
+                } else if (fieldValue instanceof Number || fieldValue instanceof Boolean || fieldValue instanceof String || fieldValue instanceof byte[]) {
+                    // byte[] is written as base64
+                    jsonGenerator.writeObject(fieldValue);
+                } else {
+                    jsonGenerator.writeString(value.getString(fieldName));
+                }
+            }
+            jsonGenerator.writeEndObject();
+            jsonGenerator.flush();
+            writer.print('\n');
+            break;
+        case CSV:
+            for (int i = 0; i < rowFieldNames.size(); i++) {
+                if (i > 0) {
+                    writer.print(',');
+                }
+                Object fieldValue = value.get(rowFieldNames.get(i));
+                if (fieldValue instanceof byte[]) {
+                    writer.print(new String(Base64.base64Encode((byte[]) fieldValue), UtilIO.getUtf8()));
+                } else if (fieldValue != null) {
+                    writeCsvField(value.getString(rowFieldNames.get(i)));
+                }
+            }
+            writer.print("\r\n");
+            break;
+        }
+    }
+
+    private void writeCsvField(String str) {
+        boolean quote = false;
+        for (int i = 0; i < str.length() && !quote; i++) {
+            char c = str.charAt(i);
+            quote = (c == ',' || c == '"' || c == '\n' || c == '\r');
+        }
+        if (quote) {
+            writer.print('"');
+            writer.print(str.replace("\"", "\"\""));
+            writer.print('"');
+        } else {
+            writer.print(str);
+        }
+    }
+}
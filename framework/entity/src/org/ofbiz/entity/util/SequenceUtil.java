@@ -22,11 +22,17 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.Transaction;
 
+import org.ofbiz.base.concurrent.ExecutionPool;
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.entity.GenericEntityException;
 import org.ofbiz.entity.datasource.GenericHelperInfo;
@@ -103,23 +109,37 @@ public class SequenceUtil {
         return bank;
     }
 
+    /**
+     * Bank of sequence IDs for one sequence name.
+     * <p>
+     * SCIPIO: IDs are handed out from the current range with an atomic increment, without locking. When the range
+     * drops to its low-water mark the next range is fetched in the background, so that callers rarely wait on the
+     * database; only switching to the next range is synchronized. The size of fetched ranges doubles, up to
+     * {@link #maxBankSize}, while ranges are drained faster than {@link #fastDrainMillis}, and halves back toward
+     * the configured size while they take longer than {@link #slowDrainMillis}.</p>
+     */
     private class SequenceBank {
         public static final long defaultBankSize = 10;
         public static final long maxBankSize = 5000;
         public static final long startSeqId = 10000;
+        /** SCIPIO: Fraction of a range left when the next range is prefetched. */
+        public static final double lowWaterRatio = 0.25;
+        public static final long fastDrainMillis = 1000;
+        public static final long slowDrainMillis = 60000;
 
         private final String seqName;
-        private final long bankSize;
+        private final long baseBankSize;
         private final String updateForLockStatement;
         private final String selectSequenceStatement;
 
-        private long curSeqId;
-        private long maxSeqId;
+        private volatile SeqRange currentRange = SeqRange.EMPTY;
+        // Guarded by this
+        private long bankSize;
+        private CompletableFuture<SeqRange> prefetchedRange;
 
         private SequenceBank(String seqName, long bankSize) {
             this.seqName = seqName;
-            curSeqId = 0;
-            maxSeqId = 0;
+            this.baseBankSize = bankSize;
             this.bankSize = bankSize;
             updateForLockStatement = "UPDATE " + SequenceUtil.this.tableName + " SET " + SequenceUtil.this.idColName + "=" + SequenceUtil.this.idColName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
             selectSequenceStatement = "SELECT " + SequenceUtil.this.idColName + " FROM " + SequenceUtil.this.tableName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
@@ -131,54 +151,110 @@ public class SequenceUtil {
                 stagger = (long)Math.ceil(Math.random() * staggerMax);
                 if (stagger == 0) stagger = 1;
             }
-            synchronized (this) {
-                if ((curSeqId + stagger) <= maxSeqId) {
-                    long retSeqId = curSeqId;
-                    curSeqId += stagger;
-                    return retSeqId;
-                } else {
-                    fillBank(stagger);
-                    if ((curSeqId + stagger) <= maxSeqId) {
-                        long retSeqId = curSeqId;
-                        curSeqId += stagger;
-                        return retSeqId;
-                    } else {
-                        Debug.logError("Fill bank failed, returning null", module);
-                        return null;
+            SeqRange range = currentRange;
+            while (true) {
+                long retSeqId = range.nextSeqId.getAndAdd(stagger);
+                if ((retSeqId + stagger) <= range.maxSeqId) {
+                    if ((range.maxSeqId - (retSeqId + stagger)) <= range.lowWater && range.prefetchTriggered.compareAndSet(false, true)) {
+                        prefetch(range, stagger);
                     }
+                    return retSeqId;
+                }
+                range = switchRange(range, stagger, true);
+                if (range == null) {
+                    Debug.logError("Fill bank failed, returning null", module);
+                    return null;
                 }
             }
         }
 
-        private synchronized void refresh(long staggerMax) {
-            this.curSeqId = this.maxSeqId;
-            this.fillBank(staggerMax);
+        private void refresh(long staggerMax) {
+            SeqRange range = currentRange;
+            // Makes concurrent callers switch ranges too
+            range.nextSeqId.set(range.maxSeqId);
+            switchRange(range, staggerMax, false);
         }
 
-        /*
-           The algorithm to get the new sequence id in a thread safe way is the following:
-           1 - run an update with no changes to get a lock on the record
-               1bis - if no record is found, try to create and update it to get the lock
-           2 - select the record (now locked) to get the curSeqId
-           3 - increment the sequence
-           The three steps are executed in one dedicated database transaction.
+        /**
+         * Replaces the given range with the prefetched one or, if there is none, with a range fetched now, and returns
+         * the new current range; returns null if fetching failed.
          */
-        private void fillBank(long stagger) {
-            // no need to get a new bank, SeqIds available
-            if ((curSeqId + stagger) <= maxSeqId) {
+        private synchronized SeqRange switchRange(SeqRange exhausted, long stagger, boolean drained) {
+            if (currentRange != exhausted) {
+                // Another thread already switched
+                return currentRange;
+            }
+            if (drained && exhausted != SeqRange.EMPTY) {
+                long drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - exhausted.activatedNanos);
+                if (drainMillis < fastDrainMillis) {
+                    bankSize = Math.min(bankSize * 2, maxBankSize);
+                } else if (drainMillis > slowDrainMillis) {
+                    bankSize = Math.max(bankSize / 2, baseBankSize);
+                }
+            }
+            SeqRange range = null;
+            if (prefetchedRange != null) {
+                range = prefetchedRange.join();
+                prefetchedRange = null;
+            }
+            if (range == null) {
+                range = fillBank(getFillSize(stagger));
+                if (range == null) {
+                    return null;
+                }
+            }
+            range.activatedNanos = System.nanoTime();
+            currentRange = range;
+            return range;
+        }
+
+        private synchronized void prefetch(SeqRange range, long stagger) {
+            if (currentRange != range || prefetchedRange != null) {
                 return;
             }
+            final long fillSize = getFillSize(stagger);
+            final CompletableFuture<SeqRange> future = new CompletableFuture<>();
+            prefetchedRange = future;
+            try {
+                ExecutionPool.GLOBAL_BATCH.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SeqRange nextRange = null;
+                        try {
+                            nextRange = fillBank(fillSize);
+                        } catch (RuntimeException e) {
+                            Debug.logError(e, "Error prefetching sequenced IDs for [" + seqName + "]", module);
+                        } finally {
+                            // On failure the next switch fetches synchronously
+                            future.complete(nextRange);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                prefetchedRange = null;
+            }
+        }
 
-            long bankSize = this.bankSize;
+        private long getFillSize(long stagger) {
+            long fillSize = this.bankSize;
             if (stagger > 1) {
                 // NOTE: could use staggerMax for this, but if that is done it would be easier to guess a valid next id without a brute force attack
-                bankSize = stagger * defaultBankSize;
-            }
-
-            if (bankSize > maxBankSize) {
-                bankSize = maxBankSize;
+                fillSize = Math.max(fillSize, stagger * defaultBankSize);
             }
+            return Math.min(fillSize, maxBankSize);
+        }
 
+        /*
+           The algorithm to get the new sequence id in a thread safe way is the following:
+           1 - run an update with no changes to get a lock on the record
+               1bis - if no record is found, try to create and update it to get the lock
+           2 - select the record (now locked) to get the curSeqId
+           3 - increment the sequence
+           The three steps are executed in one dedicated database transaction.
+           SCIPIO: Returns the fetched range, or null on failure; does not modify the bank.
+         */
+        private SeqRange fillBank(long bankSize) {
+            long curSeqId = 0;
             Transaction suspendedTransaction = null;
             try {
                 if (TransactionUtil.isTransactionInPlace()) { // SCIPIO: 2018-09-04: added check to eliminate useless warnings
@@ -260,9 +336,7 @@ public class SequenceUtil {
                         }
                     }
                 } catch (SQLException | GenericEntityException  e) {
-                    // reset the sequence fields and return (note: it would be better to throw an exception)
-                    curSeqId = 0;
-                    maxSeqId = 0;
+                    // return no range (note: it would be better to throw an exception)
                     String errMsg = "General error in getting a sequenced ID";
                     Debug.logError(e, errMsg, module);
                     try {
@@ -270,30 +344,48 @@ public class SequenceUtil {
                     } catch (GenericTransactionException gte2) {
                         Debug.logError(gte2, "Unable to rollback transaction", module);
                     }
-                    return;
+                    return null;
                 }
             } catch (GenericTransactionException e) {
                 Debug.logError(e, "System Error suspending transaction in sequence util", module);
-                // reset the sequence fields and return (note: it would be better to throw an exception)
-                curSeqId = 0;
-                maxSeqId = 0;
-                return;
+                // return no range (note: it would be better to throw an exception)
+                return null;
             } finally {
                 if (suspendedTransaction != null) {
                     try {
                         TransactionUtil.resume(suspendedTransaction);
                     } catch (GenericTransactionException e) {
                         Debug.logError(e, "Error resuming suspended transaction in sequence util", module);
-                        // reset the sequence fields and return (note: it would be better to throw an exception)
-                        curSeqId = 0;
-                        maxSeqId = 0;
-                        return;
+                        // return no range (note: it would be better to throw an exception)
+                        return null;
                     }
                 }
             }
 
-            maxSeqId = curSeqId + bankSize;
+            long maxSeqId = curSeqId + bankSize;
             if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+            return new SeqRange(curSeqId, maxSeqId);
+        }
+    }
+
+    /**
+     * Range of sequence IDs fetched by a bank (SCIPIO).
+     */
+    private static final class SeqRange {
+        static final SeqRange EMPTY = new SeqRange(0, 0);
+
+        private final AtomicLong nextSeqId;
+        /** Exclusive. */
+        private final long maxSeqId;
+        private final long lowWater;
+        private final AtomicBoolean prefetchTriggered = new AtomicBoolean(false);
+        /** Set when the range becomes the current one, under the bank lock. */
+        private long activatedNanos;
+
+        SeqRange(long curSeqId, long maxSeqId) {
+            this.nextSeqId = new AtomicLong(curSeqId);
+            this.maxSeqId = maxSeqId;
+            this.lowWater = Math.max(1, (long) ((maxSeqId - curSeqId) * SequenceBank.lowWaterRatio));
         }
     }
 }
@@ -300,6 +300,8 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
     LogLevel ecaLogLevel = LogLevel.NORMAL;
     
     private transient List<ModelParam> typeConvertParamList; // SCIPIO
+    private transient volatile ModelServiceValidator inValidator; // SCIPIO
+    private transient volatile ModelServiceValidator outValidator; // SCIPIO
 
     /**
      * SCIPIO: The last service this one overrides (which may override one before it).
@@ -323,6 +325,16 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
      */
     Integer startDelay;
 
+    /**
+     * SCIPIO: Whether async and job invocations run on virtual threads, for I/O-bound services.
+     */
+    boolean virtualThread;
+
+    /**
+     * SCIPIO: Maximum concurrent async and job invocations on virtual threads, or null for the default.
+     */
+    Integer virtualThreadMax;
+
     /**
      * Cached reflection info for StandardJavaEngine.
      * <p>SCIPIO: 2.1.0: Added.</p>
@@ -413,6 +425,8 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         this.priority = model.priority;
         this.jobPoolPersist = model.jobPoolPersist;
         this.startDelay = model.startDelay;
+        this.virtualThread = model.virtualThread;
+        this.virtualThreadMax = model.virtualThreadMax;
         this.accessorLocation = model.accessorLocation;
         this.accessorInvoke = model.accessorInvoke;
         this.overriddenService = model.overriddenService;
@@ -573,6 +587,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         if (param != null) {
             contextInfo.put(param.name, param);
             contextParamList.add(param);
+            clearValidators(); // SCIPIO
         }
     }
 
@@ -657,6 +672,11 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
     }
 
     public void updateDefaultValues(Map<String, Object> context, String mode) {
+        // SCIPIO: IN and OUT use the compiled param contract
+        if (IN_PARAM.equals(mode) || OUT_PARAM.equals(mode)) {
+            getValidator(mode).updateDefaultValues(context, (Debug.isOn(logParamLevel) && !this.isQuiet()) || this.debug);
+            return;
+        }
         List<ModelParam> params = this.getModelParamList();
         for (ModelParam param: params) {
             if (IN_OUT_PARAM.equals(param.mode) || mode.equals(param.mode)) {
@@ -683,6 +703,11 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
      * @param log Allow logging (SCIPIO)
      */
     public void validate(Map<String, Object> context, String mode, Locale locale, boolean log) throws ServiceValidationException {
+        // SCIPIO: IN and OUT use the compiled param contract
+        if (IN_PARAM.equals(mode) || OUT_PARAM.equals(mode)) {
+            getValidator(mode).validate(context, locale, log);
+            return;
+        }
         Map<String, String> requiredInfo = new HashMap<>();
         Map<String, String> optionalInfo = new HashMap<>();
 
@@ -838,15 +863,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
             Set<String> missing = new TreeSet<>(keySet);
 
             missing.removeAll(testSet);
-            List<String> missingMsgs = new ArrayList<>(missing.size()); // SCIPIO: switched to ArrayList
-            for (String key: missing) {
-                String msg = model.getParam(key).getPrimaryFailMessage(locale);
-                if (msg == null) {
-                    String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale) ;
-                    msg = errMsg + " [" + mode + "] [" + model.name + "." + key + "]";
-                }
-                missingMsgs.add(msg);
-            }
+            List<String> missingMsgs = ModelServiceValidator.makeMissingMessages(model, mode, missing, locale); // SCIPIO: shared with the compiled validation
 
             List<String> missingCopy = new ArrayList<>(missing); // SCIPIO: switched to ArrayList
             //missingCopy.addAll(missing);
@@ -858,18 +875,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
             Set<String> extra = new TreeSet<>(testSet);
 
             extra.removeAll(keySet);
-            List<String> extraMsgs = new ArrayList<>(extra.size()); // SCIPIO: switched to ArrayList
-            for (String key: extra) {
-                ModelParam param = model.getParam(key);
-                String msg = null;
-                if (param != null) {
-                    msg = param.getPrimaryFailMessage(locale);
-                }
-                if (msg == null) {
-                    msg = "Unknown parameter found: [" + model.name + "." + key + "]";
-                }
-                extraMsgs.add(msg);
-            }
+            List<String> extraMsgs = ModelServiceValidator.makeExtraMessages(model, extra, locale); // SCIPIO: shared with the compiled validation
 
             List<String> extraCopy = new ArrayList<>(extra); // SCIPIO: switched to ArrayList
             //extraCopy.addAll(extra);
@@ -877,115 +883,22 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         }
 
         // * Validate types next
-        List<String> typeFailMsgs = new ArrayList<>(); // SCIPIO: switched to ArrayList
+        // SCIPIO: shared with the compiled validation; here the validator methods are resolved on each call
+        List<String> typeFailMsgs = null;
         for (String key: testSet) {
             ModelParam param = model.getParam(key);
-
-            Object testObject = test.get(key);
-            String infoType = info.get(key);
-
-            if (UtilValidate.isNotEmpty(param.validators)) {
-                for (ModelParam.ModelParamValidator val: param.validators) {
-                    if (UtilValidate.isNotEmpty(val.getMethodName())) {
-                        try {
-                            if (!typeValidate(val, testObject)) {
-                                String msg = val.getFailMessage(locale);
-                                if (msg == null) {
-                                    msg = "The following parameter failed validation: [" + model.name + "." + key + "]";
-                                }
-                                typeFailMsgs.add(msg);
-                            }
-                        } catch (GeneralException e) {
-                            Debug.logError(e, module);
-                            String msg = param.getPrimaryFailMessage(locale);
-                            if (msg == null) {
-                                msg = "The following parameter failed validation: [" + model.name + "." + key + "]";
-                            }
-                            typeFailMsgs.add(msg);
-                        }
-                    } else {
-                        if (!ObjectType.instanceOf(testObject, infoType, null)) {
-                            String msg = val.getFailMessage(locale);
-                            if (msg == null) {
-                                msg = "The following parameter failed validation: [" + model.name + "." + key + "]";
-                            }
-                            typeFailMsgs.add(msg);
-                        }
-                    }
-                }
-            } else {
-                if (!ObjectType.instanceOf(testObject, infoType, null)) {
-                    String testType = testObject == null ? "null" : testObject.getClass().getName();
-                    String msg = "Type check failed for field [" + model.name + "." + key + "]; expected type is [" + infoType + "]; actual type is [" + testType + "]";
-                    typeFailMsgs.add(msg);
-                }
-            }
+            typeFailMsgs = ModelServiceValidator.checkType(model, param, info.get(key), null,
+                    ModelServiceValidator.compileValidators(param), test.get(key), locale, typeFailMsgs);
         }
 
-        if (typeFailMsgs.size() > 0) {
+        if (typeFailMsgs != null) {
             throw new ServiceValidationException(typeFailMsgs, model, mode);
         }
     }
 
     public static boolean typeValidate(ModelParam.ModelParamValidator vali, Object testValue) throws GeneralException {
-        // find the validator class
-        Class<?> validatorClass = null;
-        try {
-            validatorClass = ObjectType.loadClass(vali.getClassName());
-        } catch (ClassNotFoundException e) {
-            Debug.logWarning(e, module);
-        }
-
-        if (validatorClass == null) {
-            throw new GeneralException("Unable to load validation class [" + vali.getClassName() + "]");
-        }
-
-        boolean foundObjectParam = true;
-
-        Method validatorMethod = null;
-        try {
-            // try object type first
-            validatorMethod = validatorClass.getMethod(vali.getMethodName(), Object.class);
-        } catch (NoSuchMethodException e) {
-            foundObjectParam = false;
-            // next try string type
-            try {
-                validatorMethod = validatorClass.getMethod(vali.getMethodName(), String.class);
-            } catch (NoSuchMethodException e2) {
-                Debug.logWarning(e2, module);
-            }
-        }
-
-        if (validatorMethod == null) {
-            throw new GeneralException("Unable to find validation method [" + vali.getMethodName() + "] in class [" + vali.getClassName() + "]");
-        }
-
-        Object param;
-        if (!foundObjectParam) {
-            // convert to string
-            String converted;
-            try {
-                converted = (String) ObjectType.simpleTypeConvert(testValue, "String", null, null);
-            } catch (GeneralException e) {
-                throw new GeneralException("Unable to convert parameter to String");
-            }
-            param = converted;
-        } else {
-            // use plain object
-            param = testValue;
-        }
-
-        // run the validator
-        Boolean resultBool;
-        try {
-            resultBool = (Boolean) validatorMethod.invoke(null, param);
-        } catch (ClassCastException e) {
-            throw new GeneralException("Validation method [" + vali.getMethodName() + "] in class [" + vali.getClassName() + "] did not return expected Boolean");
-        } catch (Exception e) {
-            throw new GeneralException("Unable to run validation method [" + vali.getMethodName() + "] in class [" + vali.getClassName() + "]");
-        }
-
-        return resultBool;
+        // SCIPIO: shared with the compiled validation
+        return new ModelServiceValidator.CompiledParamValidator(vali).validate(testValue);
     }
 
     /**
@@ -1548,6 +1461,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
 
             // set the flag so we don't do this again
             this.inheritedParameters = true;
+            clearValidators(); // SCIPIO: override params may have changed types and modes in place
         }
     }
 
@@ -2518,6 +2432,38 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         return paramList;
     }
 
+    /**
+     * SCIPIO: Returns the compiled IN or OUT param contract used by {@link #validate(Map, String, Locale, boolean)} and
+     * {@link #updateDefaultValues(Map, String)}, built on first use after the params last changed.
+     */
+    public ModelServiceValidator getValidator(String mode) {
+        ModelServiceValidator validator;
+        if (IN_PARAM.equals(mode)) {
+            validator = this.inValidator;
+            if (validator == null) {
+                validator = new ModelServiceValidator(this, mode);
+                this.inValidator = validator;
+            }
+        } else if (OUT_PARAM.equals(mode)) {
+            validator = this.outValidator;
+            if (validator == null) {
+                validator = new ModelServiceValidator(this, mode);
+                this.outValidator = validator;
+            }
+        } else {
+            throw new IllegalArgumentException("Invalid param mode for validation: " + mode);
+        }
+        return validator;
+    }
+
+    /**
+     * SCIPIO: Drops the compiled param contracts, to be rebuilt on next use.
+     */
+    protected void clearValidators() {
+        this.inValidator = null;
+        this.outValidator = null;
+    }
+
     /**
      * SCIPIO: Returns the service this one overrode, or null.
      */
@@ -2574,6 +2520,21 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         return startDelay;
     }
 
+    /**
+     * SCIPIO: Returns true if async and job invocations of this service should run on virtual threads.
+     */
+    public boolean isVirtualThread() {
+        return virtualThread;
+    }
+
+    /**
+     * SCIPIO: Returns the maximum concurrent async and job invocations on virtual threads, or null for the default
+     * (service.properties <code>jobManager.virtualThreads.defaultMax</code>).
+     */
+    public Integer getVirtualThreadMax() {
+        return virtualThreadMax;
+    }
+
     /**
      * SCIPIO: Determines the effected priority for async and job service.
      * NOTE: This is NOT stored in JobSandbox.
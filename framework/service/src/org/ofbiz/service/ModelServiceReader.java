@@ -340,6 +340,9 @@ public class ModelServiceReader implements Serializable {
 
         service.startDelay = UtilMisc.toIntegerObject(UtilValidate.nullIfEmpty(serviceElement.getAttribute("start-delay")));
 
+        service.virtualThread = "true".equals(serviceElement.getAttribute("virtual-thread"));
+        service.virtualThreadMax = UtilMisc.toIntegerObject(UtilValidate.nullIfEmpty(serviceElement.getAttribute("virtual-thread-max")));
+
         return service;
     }
 
@@ -0,0 +1,476 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.GeneralException;
+import org.ofbiz.base.util.ObjectType;
+import org.ofbiz.base.util.UtilCodec;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.base.util.UtilValidate;
+
+/**
+ * The IN or OUT parameter contract of a {@link ModelService}, compiled once so that
+ * {@link ModelService#validate(Map, String, Locale, boolean)} and {@link ModelService#updateDefaultValues(Map, String)}
+ * do not rebuild the info maps and re-resolve parameter types, validator methods and default values on every call (SCIPIO).
+ * <p>
+ * Instances are created lazily by {@link ModelService#getValidator(String)} and cached on the model until its parameters
+ * change. Validation results and error messages are the same as the uncompiled
+ * {@link ModelService#validate(Map, Map, boolean, ModelService, String, Locale)}; types that cannot be resolved up front
+ * fall back to the by-name checks so they fail the same way at call time.</p>
+ */
+public class ModelServiceValidator {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    /**
+     * Default value types safe to share between calls; other default values are converted again on each call.
+     */
+    private static final Set<Class<?>> immutableDefaultValueTypes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigDecimal.class, BigInteger.class, Locale.class)));
+
+    private final ModelService model;
+    private final String mode;
+    private final Map<String, CompiledParam> params;
+    private final List<CompiledParam> requiredParams;
+    private final List<CompiledParam> defaultValueParams;
+    private final List<String> htmlCheckParamNames;
+
+    ModelServiceValidator(ModelService model, String mode) {
+        this.model = model;
+        this.mode = mode;
+        Map<String, CompiledParam> params = new HashMap<>();
+        List<CompiledParam> requiredParams = new ArrayList<>();
+        List<CompiledParam> defaultValueParams = new ArrayList<>();
+        List<String> htmlCheckParamNames = new ArrayList<>();
+        for (ModelParam modelParam : model.getModelParamList()) {
+            if (ModelService.IN_OUT_PARAM.equals(modelParam.mode) || mode.equals(modelParam.mode)) {
+                CompiledParam param = new CompiledParam(model, modelParam);
+                params.put(param.name, param);
+                if (param.required) {
+                    requiredParams.add(param);
+                }
+                if (param.hasDefaultValue) {
+                    defaultValueParams.add(param);
+                }
+            }
+        }
+        if (ModelService.IN_PARAM.equals(mode)) {
+            // allow-html is checked for every IN String param of the service, same as the uncompiled validation
+            for (ModelParam modelParam : model.contextInfo.values()) {
+                if (("String".equals(modelParam.type) || "java.lang.String".equals(modelParam.type)) && !"any".equals(modelParam.allowHtml)
+                        && (ModelService.IN_OUT_PARAM.equals(modelParam.mode) || ModelService.IN_PARAM.equals(modelParam.mode))) {
+                    htmlCheckParamNames.add(modelParam.name);
+                }
+            }
+        }
+        this.params = params;
+        this.requiredParams = requiredParams;
+        this.defaultValueParams = defaultValueParams;
+        this.htmlCheckParamNames = htmlCheckParamNames;
+    }
+
+    public ModelService getModel() {
+        return model;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the default values of the params of this mode that are missing or null in the context.
+     * @param context the context
+     * @param log Log each default value set
+     */
+    public void updateDefaultValues(Map<String, Object> context, boolean log) {
+        for (CompiledParam param : defaultValueParams) {
+            if (context.get(param.name) == null) {
+                Object defaultValueObj = param.getDefaultValue();
+                context.put(param.name, defaultValueObj);
+                if (log) {
+                    Debug.logInfo("Set default value [" + defaultValueObj + "] for parameter [" + param.name + "]", module);
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates a context against the params of this mode.
+     * @param context the context
+     * @param locale the actual locale to use
+     * @param log Allow logging
+     */
+    public void validate(Map<String, Object> context, Locale locale, boolean log) throws ServiceValidationException {
+        if (log && Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : {" + model.name + "} : Validating context - " + context, module);
+
+        // do not validate results with errors
+        if (ModelService.OUT_PARAM.equals(mode) && context != null && context.containsKey(ModelService.RESPONSE_MESSAGE)) {
+            Object responseMessage = context.get(ModelService.RESPONSE_MESSAGE);
+            if (ModelService.RESPOND_ERROR.equals(responseMessage) || ModelService.RESPOND_FAIL.equals(responseMessage)) {
+                if (log && Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : {" + model.name + "} : response was an error, not validating.", module);
+                return;
+            }
+        }
+        if (context == null) {
+            context = Collections.emptyMap();
+        }
+
+        // split the context into required and optional keys, in one pass and without copying
+        List<String> requiredButNull = null;
+        List<String> extraKeys = null;
+        int requiredFound = 0;
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            CompiledParam param = params.get(entry.getKey());
+            if (param == null) {
+                if (extraKeys == null) {
+                    extraKeys = new ArrayList<>();
+                }
+                extraKeys.add(entry.getKey());
+            } else if (param.required) {
+                requiredFound++;
+                if (entry.getValue() == null) {
+                    if (requiredButNull == null) {
+                        requiredButNull = new ArrayList<>();
+                    }
+                    requiredButNull.add(entry.getKey());
+                }
+            }
+        }
+
+        // check for requiredButNull fields and return an error since null values are not allowed for required fields
+        if (requiredButNull != null) {
+            List<String> missingMsg = new ArrayList<>(requiredButNull.size());
+            for (String missingKey : requiredButNull) {
+                String message = params.get(missingKey).modelParam.getPrimaryFailMessage(locale);
+                if (message == null) {
+                    String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
+                    message = errMsg + " [" + model.name + "." + missingKey + "]";
+                }
+                missingMsg.add(message);
+            }
+            throw new ServiceValidationException(missingMsg, model, requiredButNull, null, mode);
+        }
+
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("[ModelService.validate] : {" + model.name + "} : (" + mode + ") Required - " +
+                requiredFound + " / " + requiredParams.size(), module);
+        }
+
+        try {
+            // required params: all present, then types
+            if (requiredFound < requiredParams.size()) {
+                Set<String> missing = new TreeSet<>();
+                for (CompiledParam param : requiredParams) {
+                    if (!context.containsKey(param.name)) {
+                        missing.add(param.name);
+                    }
+                }
+                throw new ServiceValidationException(makeMissingMessages(model, mode, missing, locale), model, new ArrayList<>(missing), null, mode);
+            }
+            List<String> typeFailMsgs = null;
+            for (Map.Entry<String, Object> entry : context.entrySet()) {
+                CompiledParam param = params.get(entry.getKey());
+                if (param != null && param.required) {
+                    typeFailMsgs = param.checkType(entry.getValue(), locale, typeFailMsgs);
+                }
+            }
+            if (typeFailMsgs != null) {
+                throw new ServiceValidationException(typeFailMsgs, model, mode);
+            }
+
+            // optional params: no unknown keys, then types
+            if (extraKeys != null) {
+                Set<String> extra = new TreeSet<>(extraKeys);
+                throw new ServiceValidationException(makeExtraMessages(model, extra, locale), model, null, new ArrayList<>(extra), mode);
+            }
+            for (Map.Entry<String, Object> entry : context.entrySet()) {
+                CompiledParam param = params.get(entry.getKey());
+                if (!param.required) {
+                    typeFailMsgs = param.checkType(entry.getValue(), locale, typeFailMsgs);
+                }
+            }
+            if (typeFailMsgs != null) {
+                throw new ServiceValidationException(typeFailMsgs, model, mode);
+            }
+        } catch (ServiceValidationException e) {
+            if (log) {
+                Debug.logError("[ModelService.validate] : {" + model.name + "} : (" + mode + ") Required test error: " + e.toString(), module);
+            }
+            throw e;
+        }
+
+        // required and type validation complete, do allow-html validation
+        if (!htmlCheckParamNames.isEmpty()) {
+            List<String> errorMessageList = new ArrayList<>();
+            for (String name : htmlCheckParamNames) {
+                Object value = context.get(name);
+                if (value != null) {
+                    UtilCodec.checkStringForHtmlStrictNone(name, (String) value, errorMessageList);
+                }
+            }
+            if (errorMessageList.size() > 0) {
+                throw new ServiceValidationException(errorMessageList, model, mode);
+            }
+        }
+    }
+
+    /**
+     * A param with its type, validator methods and default value resolved.
+     */
+    private static class CompiledParam {
+        final ModelService model;
+        final ModelParam modelParam;
+        final String name;
+        final boolean required;
+        /** The resolved type, or null if it could not be resolved, in which case the by-name check reports the error. */
+        final Class<?> typeClass;
+        final CompiledParamValidator[] validators;
+        final boolean hasDefaultValue;
+        /** The converted default value, if immutable; otherwise converted on each call. */
+        final Object defaultValue;
+
+        CompiledParam(ModelService model, ModelParam modelParam) {
+            this.model = model;
+            this.modelParam = modelParam;
+            this.name = modelParam.name;
+            this.required = !modelParam.optional;
+            Class<?> typeClass = null;
+            if (modelParam.type != null) {
+                try {
+                    typeClass = ObjectType.loadInfoClass(modelParam.type, null);
+                } catch (IllegalArgumentException e) {
+                    ; // reported by ObjectType.instanceOf on use
+                }
+            }
+            this.typeClass = typeClass;
+            this.validators = compileValidators(modelParam);
+            Object defaultValue = modelParam.getDefaultValue();
+            this.hasDefaultValue = (defaultValue != null);
+            this.defaultValue = (defaultValue != null && immutableDefaultValueTypes.contains(defaultValue.getClass())) ? defaultValue : null;
+        }
+
+        Object getDefaultValue() {
+            // never null for a param with a default value: a failed conversion falls back to the String
+            return (defaultValue != null) ? defaultValue : modelParam.getDefaultValue();
+        }
+
+        List<String> checkType(Object value, Locale locale, List<String> typeFailMsgs) {
+            return ModelServiceValidator.checkType(model, modelParam, modelParam.type, typeClass, validators, value, locale, typeFailMsgs);
+        }
+    }
+
+    /**
+     * Makes the messages for missing required params, in the order of the given keys.
+     */
+    static List<String> makeMissingMessages(ModelService model, String mode, Collection<String> keys, Locale locale) {
+        List<String> missingMsgs = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String msg = model.getParam(key).getPrimaryFailMessage(locale);
+            if (msg == null) {
+                String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
+                msg = errMsg + " [" + mode + "] [" + model.name + "." + key + "]";
+            }
+            missingMsgs.add(msg);
+        }
+        return missingMsgs;
+    }
+
+    /**
+     * Makes the messages for unknown params, in the order of the given keys.
+     */
+    static List<String> makeExtraMessages(ModelService model, Collection<String> keys, Locale locale) {
+        List<String> extraMsgs = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ModelParam param = model.getParam(key);
+            String msg = null;
+            if (param != null) {
+                msg = param.getPrimaryFailMessage(locale);
+            }
+            if (msg == null) {
+                msg = "Unknown parameter found: [" + model.name + "." + key + "]";
+            }
+            extraMsgs.add(msg);
+        }
+        return extraMsgs;
+    }
+
+    /**
+     * Compiles the validators of a param, or returns null if it has none.
+     */
+    static CompiledParamValidator[] compileValidators(ModelParam modelParam) {
+        if (UtilValidate.isEmpty(modelParam.validators)) {
+            return null;
+        }
+        List<CompiledParamValidator> validators = new ArrayList<>(modelParam.validators.size());
+        for (ModelParam.ModelParamValidator val : modelParam.validators) {
+            validators.add(new CompiledParamValidator(val));
+        }
+        return validators.toArray(new CompiledParamValidator[validators.size()]);
+    }
+
+    /**
+     * Type-checks the value of a param, adding any failure messages to the given list, which is created if needed and returned.
+     * @param type the expected type name
+     * @param typeClass the resolved type, or null to check by type name
+     * @param validators the compiled validators of the param, or null if it has none
+     */
+    static List<String> checkType(ModelService model, ModelParam modelParam, String type, Class<?> typeClass,
+            CompiledParamValidator[] validators, Object value, Locale locale, List<String> typeFailMsgs) {
+        String name = modelParam.name;
+        if (validators != null) {
+            for (CompiledParamValidator val : validators) {
+                if (val.method != null || val.error != null) {
+                    try {
+                        if (!val.validate(value)) {
+                            String msg = val.validator.getFailMessage(locale);
+                            if (msg == null) {
+                                msg = "The following parameter failed validation: [" + model.name + "." + name + "]";
+                            }
+                            typeFailMsgs = addMessage(typeFailMsgs, msg);
+                        }
+                    } catch (GeneralException e) {
+                        Debug.logError(e, module);
+                        String msg = modelParam.getPrimaryFailMessage(locale);
+                        if (msg == null) {
+                            msg = "The following parameter failed validation: [" + model.name + "." + name + "]";
+                        }
+                        typeFailMsgs = addMessage(typeFailMsgs, msg);
+                    }
+                } else if (!isInstance(value, type, typeClass)) {
+                    String msg = val.validator.getFailMessage(locale);
+                    if (msg == null) {
+                        msg = "The following parameter failed validation: [" + model.name + "." + name + "]";
+                    }
+                    typeFailMsgs = addMessage(typeFailMsgs, msg);
+                }
+            }
+        } else if (!isInstance(value, type, typeClass)) {
+            String testType = value == null ? "null" : value.getClass().getName();
+            String msg = "Type check failed for field [" + model.name + "." + name + "]; expected type is [" + type + "]; actual type is [" + testType + "]";
+            typeFailMsgs = addMessage(typeFailMsgs, msg);
+        }
+        return typeFailMsgs;
+    }
+
+    private static boolean isInstance(Object value, String type, Class<?> typeClass) {
+        if (typeClass == null) {
+            return ObjectType.instanceOf(value, type, null);
+        }
+        return value == null || typeClass.isInstance(value);
+    }
+
+    private static List<String> addMessage(List<String> msgs, String msg) {
+        if (msgs == null) {
+            msgs = new ArrayList<>();
+        }
+        msgs.add(msg);
+        return msgs;
+    }
+
+    /**
+     * A param validator with its method resolved; {@link ModelService#typeValidate(ModelParam.ModelParamValidator, Object)} resolves one per call.
+     */
+    static class CompiledParamValidator {
+        final ModelParam.ModelParamValidator validator;
+        final Method method;
+        final boolean stringParam;
+        /** Set if the method could not be resolved; thrown on each use. */
+        final String error;
+
+        CompiledParamValidator(ModelParam.ModelParamValidator validator) {
+            this.validator = validator;
+            Method method = null;
+            boolean stringParam = false;
+            String error = null;
+            if (UtilValidate.isNotEmpty(validator.getMethodName())) {
+                Class<?> validatorClass = null;
+                try {
+                    validatorClass = ObjectType.loadClass(validator.getClassName());
+                } catch (ClassNotFoundException e) {
+                    Debug.logWarning(e, module);
+                }
+                if (validatorClass == null) {
+                    error = "Unable to load validation class [" + validator.getClassName() + "]";
+                } else {
+                    try {
+                        // try object type first
+                        method = validatorClass.getMethod(validator.getMethodName(), Object.class);
+                    } catch (NoSuchMethodException e) {
+                        // next try string type
+                        try {
+                            method = validatorClass.getMethod(validator.getMethodName(), String.class);
+                            stringParam = true;
+                        } catch (NoSuchMethodException e2) {
+                            Debug.logWarning(e2, module);
+                        }
+                    }
+                    if (method == null) {
+                        error = "Unable to find validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]";
+                    }
+                }
+            }
+            this.method = method;
+            this.stringParam = stringParam;
+            this.error = error;
+        }
+
+        boolean validate(Object value) throws GeneralException {
+            if (error != null) {
+                throw new GeneralException(error);
+            }
+            if (method == null) {
+                throw new GeneralException("Unable to find validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]");
+            }
+            Object param = value;
+            if (stringParam) {
+                try {
+                    param = ObjectType.simpleTypeConvert(value, "String", null, null);
+                } catch (GeneralException e) {
+                    throw new GeneralException("Unable to convert parameter to String");
+                }
+            }
+            Boolean resultBool;
+            try {
+                resultBool = (Boolean) method.invoke(null, param);
+            } catch (ClassCastException e) {
+                throw new GeneralException("Validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "] did not return expected Boolean");
+            } catch (Exception e) {
+                throw new GeneralException("Unable to run validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]");
+            }
+            return resultBool;
+        }
+    }
+}
@@ -29,6 +29,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import javax.transaction.Transaction;
 
 import org.ofbiz.base.config.GenericConfigException;
+import org.ofbiz.base.trace.TraceSpan;
+import org.ofbiz.base.trace.Tracer;
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.GeneralRuntimeException;
 import org.ofbiz.base.util.UtilMisc;
@@ -272,6 +274,27 @@ public class ServiceDispatcher {
      * @throws GenericServiceException
      */
     public Map<String, Object> runSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
+        // SCIPIO: tracing span around the whole call, including ECAs and transaction handling
+        TraceSpan span = Tracer.startSpan(TraceSpan.TYPE_SERVICE, modelService.name);
+        if (span == null) {
+            return doRunSync(localName, modelService, params, validateOut);
+        }
+        try {
+            span.setAttribute("service.mode", "sync").setAttribute("service.engine", modelService.engineName);
+            Map<String, Object> result = doRunSync(localName, modelService, params, validateOut);
+            if (ServiceUtil.isError(result) || ServiceUtil.isFailure(result)) {
+                span.setError(ServiceUtil.getErrorMessage(result));
+            }
+            return result;
+        } catch (GenericServiceException | RuntimeException | Error e) {
+            span.setError(e);
+            throw e;
+        } finally {
+            Tracer.endSpan(span);
+        }
+    }
+
+    private Map<String, Object> doRunSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
         long serviceStartTime = System.currentTimeMillis();
         Map<String, Object> result = new HashMap<>();
         ServiceSemaphore lock = null;
@@ -701,6 +724,27 @@ public class ServiceDispatcher {
      * @throws GenericServiceException
      */
     public JobInfo runAsync(String localName, ModelService service, Map<String, ? extends Object> params, GenericRequester requester, AsyncOptions serviceOptions) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
+        // SCIPIO: tracing span for the dispatch only; the job itself runs as a separate trace
+        TraceSpan span = Tracer.startSpan(TraceSpan.TYPE_SERVICE, service.name);
+        if (span == null) {
+            return doRunAsync(localName, service, params, requester, serviceOptions);
+        }
+        try {
+            span.setAttribute("service.mode", "async").setAttribute("service.engine", service.engineName);
+            JobInfo job = doRunAsync(localName, service, params, requester, serviceOptions);
+            if (job != null && job.getJobId() != null) {
+                span.setAttribute("job.id", job.getJobId());
+            }
+            return job;
+        } catch (GenericServiceException | RuntimeException | Error e) {
+            span.setError(e);
+            throw e;
+        } finally {
+            Tracer.endSpan(span);
+        }
+    }
+
+    private JobInfo doRunAsync(String localName, ModelService service, Map<String, ? extends Object> params, GenericRequester requester, AsyncOptions serviceOptions) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
         JobInfo job; // SCIPIO
         if (Debug.timingOn() && service.getLogLevel() != ModelService.LogLevel.QUIET) { // SCIPIO: not if quiet, this is mostly useless anyway
             UtilTimer.timerLog(localName + " / " + service.name, "ASync service started...", module);
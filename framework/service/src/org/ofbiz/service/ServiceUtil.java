@@ -58,6 +58,7 @@ import org.ofbiz.service.config.ServiceConfigUtil;
 
 import com.ibm.icu.util.Calendar;
 import org.ofbiz.service.job.Job;
+import org.ofbiz.service.job.JobPoller;
 
 /**
  * Generic Service Utility Class
@@ -711,6 +712,14 @@ public final class ServiceUtil {
         }
     }
 
+    /**
+     * Wakes up the job poller of this server so it polls for jobs right away (SCIPIO).
+     */
+    public static Map<String, Object> wakeUpJobPoller(DispatchContext dctx, Map<String, ? extends Object> context) {
+        JobPoller.getInstance().wakeUp();
+        return ServiceUtil.returnSuccess();
+    }
+
     public static Map<String, Object> purgeOldJobs(DispatchContext dctx, Map<String, ? extends Object> context) {
         Locale locale = (Locale)context.get("locale");
         Debug.logWarning("purgeOldJobs service invoked. This service is obsolete - the Job Scheduler will purge old jobs automatically.", module);
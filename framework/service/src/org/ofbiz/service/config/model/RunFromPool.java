@@ -18,7 +18,10 @@
  *******************************************************************************/
 package org.ofbiz.service.config.model;
 
+import java.util.Map;
+
 import org.ofbiz.base.lang.ThreadSafe;
+import org.ofbiz.base.util.Debug;
 import org.ofbiz.service.config.ServiceConfigException;
 import org.w3c.dom.Element;
 
@@ -28,7 +31,13 @@ import org.w3c.dom.Element;
 @ThreadSafe
 public final class RunFromPool {
 
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
     private final String name;
+    private final int minThreads; // SCIPIO
+    private final int maxThreads; // SCIPIO
+    private final int jobs; // SCIPIO
+    private final int weight; // SCIPIO
 
     RunFromPool(Element runFromPoolElement) throws ServiceConfigException {
         String name = runFromPoolElement.getAttribute("name").intern();
@@ -36,9 +45,88 @@ public final class RunFromPool {
             throw new ServiceConfigException("<run-from-pool> element name attribute is empty");
         }
         this.name = name;
+        // SCIPIO: Optional worker group of the pool
+        this.maxThreads = parseNonNegativeInt(runFromPoolElement, "max-threads", 0);
+        this.minThreads = parseNonNegativeInt(runFromPoolElement, "min-threads", (this.maxThreads > 0) ? ThreadPool.MIN_THREADS : 0);
+        if (this.maxThreads > 0 && (this.minThreads < 1 || this.minThreads > this.maxThreads)) {
+            throw new ServiceConfigException("<run-from-pool> element min-threads attribute value is invalid");
+        }
+        this.jobs = parseNonNegativeInt(runFromPoolElement, "jobs", ThreadPool.QUEUE_SIZE);
+        if (this.jobs < 1) {
+            throw new ServiceConfigException("<run-from-pool> element jobs attribute value is invalid");
+        }
+        this.weight = parseNonNegativeInt(runFromPoolElement, "weight", 0);
+    }
+
+    private static int parseNonNegativeInt(Element runFromPoolElement, String attrName, int defaultValue) throws ServiceConfigException { // SCIPIO
+        String value = runFromPoolElement.getAttribute(attrName);
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int result = Integer.parseInt(value);
+            if (result < 0) {
+                throw new ServiceConfigException("<run-from-pool> element " + attrName + " attribute value is invalid");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            Debug.logError(e, module);
+            throw new ServiceConfigException("<run-from-pool> element " + attrName + " attribute value is invalid");
+        }
     }
 
     public String getName() {
         return name;
     }
+
+    /**
+     * Returns true if the pool runs on its own worker group (threads and queue) instead of the main thread pool (SCIPIO).
+     */
+    public boolean hasWorkerGroup() {
+        return maxThreads > 0;
+    }
+
+    /**
+     * Returns the minimum worker threads of the pool worker group, or 0 if none (SCIPIO).
+     */
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    /**
+     * Returns the maximum worker threads of the pool worker group, or 0 if none (SCIPIO).
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Returns the queue size of the pool worker group (SCIPIO).
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Returns the weight of the pool in the main thread pool, or 0 if not weighted (SCIPIO).
+     * <p>
+     * Weighted pools are polled first, each up to its weighted share of the free queue capacity; the capacity left
+     * goes to all pools by job priority. Unweighted pools share a weight equal to their count.</p>
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    public Map<String, Object> toMap(Map<String, Object> map) { // SCIPIO
+        map.put("name", name);
+        if (hasWorkerGroup()) {
+            map.put("minThreads", minThreads);
+            map.put("maxThreads", maxThreads);
+            map.put("jobs", jobs);
+        }
+        if (weight > 0) {
+            map.put("weight", weight);
+        }
+        return map;
+    }
 }
@@ -234,6 +234,15 @@ public final class ThreadPool {
         map.put("pollEnabled", pollEnabled);
         map.put("purgeJobDays", purgeJobDays);
         //map.put("runFromPools", runFromPools);
+        List<Map<String, Object>> runFromPoolMaps = new ArrayList<>(runFromPools.size()); // SCIPIO: worker groups and weights
+        for (RunFromPool runFromPool : runFromPools) {
+            if (runFromPool.hasWorkerGroup() || runFromPool.getWeight() > 0) {
+                runFromPoolMaps.add(runFromPool.toMap(new HashMap<>()));
+            }
+        }
+        if (!runFromPoolMaps.isEmpty()) {
+            map.put("runFromPools", runFromPoolMaps);
+        }
         map.put("runFromPoolNames", runFromPoolNames);
         map.put("sendToPool", sendToPool);
         map.put("ttl", ttl);
@@ -24,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.ofbiz.base.trace.TraceSpan;
+import org.ofbiz.base.trace.Tracer;
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.UtilMisc;
 import org.ofbiz.base.util.UtilValidate;
@@ -188,8 +190,22 @@ public final class ServiceEcaRule implements java.io.Serializable {
                         if (Debug.infoOn()) {
                             Debug.logInfo("Running Service ECA Service: " + ea.serviceName + ", triggered by rule on Service: " + serviceName, module);
                         }
-                        if (ea.runAction(serviceName, dctx, context, result)) {
-                            actionsRun.add(ea.serviceName);
+                        TraceSpan span = Tracer.startSpan(TraceSpan.TYPE_ECA, "eca:" + this.eventName + ":" + ea.serviceName); // SCIPIO
+                        try {
+                            if (span != null) {
+                                span.setAttribute("eca.service", serviceName).setAttribute("eca.event", this.eventName)
+                                        .setAttribute("eca.action.service", ea.serviceName).setAttribute("eca.action.mode", ea.serviceMode);
+                            }
+                            if (ea.runAction(serviceName, dctx, context, result)) {
+                                actionsRun.add(ea.serviceName);
+                            }
+                        } catch (GenericServiceException | RuntimeException e) {
+                            if (span != null) {
+                                span.setError(e);
+                            }
+                            throw e;
+                        } finally {
+                            Tracer.endSpan(span);
                         }
                     }
                 } else {
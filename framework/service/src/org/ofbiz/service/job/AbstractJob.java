@@ -37,6 +37,7 @@ public abstract class AbstractJob implements Job {
     protected State currentState = State.CREATED;
     private long elapsedTime = 0;
     private final Date startTime = new Date();
+    private volatile long queueTime = 0; // SCIPIO
 
     protected AbstractJob(String jobId, String jobName) {
         Assert.notNull("jobId", jobId, "jobName", jobName);
@@ -65,6 +66,7 @@ public abstract class AbstractJob implements Job {
             throw new InvalidJobException("Illegal state change");
         }
         this.currentState = State.QUEUED;
+        this.queueTime = System.currentTimeMillis(); // SCIPIO
     }
 
     @Override
@@ -116,6 +118,13 @@ public abstract class AbstractJob implements Job {
         return (Date) startTime.clone();
     }
 
+    /**
+     * Returns the time this job was last queued, in milliseconds, or 0 if never queued (SCIPIO).
+     */
+    public long getQueueTime() {
+        return queueTime;
+    }
+
     /*
      * Returns JobPriority.NORMAL, the default setting
      */
@@ -47,6 +47,8 @@ public class GenericServiceJob extends AbstractJob implements Serializable {
     private final String service;
     private final long priority; // SCIPIO
     private final String jobPool; // SCIPIO
+    private final boolean virtualThread; // SCIPIO
+    private final Integer virtualThreadMax; // SCIPIO
     private final Map<String, Object> context;
 
     public GenericServiceJob(DispatchContext dctx, String jobId, String jobName, ModelService modelService,
@@ -61,6 +63,8 @@ public class GenericServiceJob extends AbstractJob implements Serializable {
         // SCIPIO: NOTE: serviceOptions could be a PersistAsyncOptions instance in this class design so if need MemoryAsyncOptions check AsyncOptions.isPersisted/instance
         this.priority = modelService.determinePriority(serviceOptions, JobPriority.NORMAL);
         this.jobPool = serviceOptions.jobPool();
+        this.virtualThread = modelService.isVirtualThread();
+        this.virtualThreadMax = modelService.getVirtualThreadMax();
         this.context = context;
         this.requester = req;
     }
@@ -210,4 +214,14 @@ public class GenericServiceJob extends AbstractJob implements Serializable {
     @Override
     public String getJobPool() { return jobPool; }
 
+    /**
+     * Returns true if the service should run on a virtual thread (SCIPIO).
+     */
+    public boolean isVirtualThread() { return virtualThread; }
+
+    /**
+     * Returns the maximum concurrent runs of the service on virtual threads, or null for the default (SCIPIO).
+     */
+    public Integer getVirtualThreadMax() { return virtualThreadMax; }
+
 }
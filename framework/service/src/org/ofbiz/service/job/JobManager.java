@@ -18,8 +18,10 @@
  *******************************************************************************/
 package org.ofbiz.service.job;
 
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -27,6 +29,9 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 import org.apache.tomcat.util.buf.StringUtils;
 import org.ofbiz.base.GeneralConfig;
 import org.ofbiz.base.config.GenericConfigException;
@@ -39,12 +44,22 @@ import org.ofbiz.base.util.UtilValidate;
 import org.ofbiz.entity.Delegator;
 import org.ofbiz.entity.GenericEntityException;
 import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.config.model.Datasource;
+import org.ofbiz.entity.config.model.EntityConfig;
 import org.ofbiz.entity.condition.EntityCondition;
+import org.ofbiz.entity.condition.EntityConditionParam;
 import org.ofbiz.entity.condition.EntityExpr;
 import org.ofbiz.entity.condition.EntityJoinOperator;
 import org.ofbiz.entity.condition.EntityOperator;
+import org.ofbiz.entity.datasource.GenericHelperInfo;
+import org.ofbiz.entity.jdbc.SQLProcessor;
+import org.ofbiz.entity.jdbc.SqlJdbcUtil;
+import org.ofbiz.entity.model.ModelEntity;
+import org.ofbiz.entity.model.ModelFieldTypeReader;
 import org.ofbiz.entity.serialize.XmlSerializer;
+import org.ofbiz.entity.transaction.GenericTransactionException;
 import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.entity.util.DistributedCacheClear;
 import org.ofbiz.entity.util.EntityFilter;
 import org.ofbiz.entity.util.EntityListIterator;
 import org.ofbiz.entity.util.EntityQuery;
@@ -87,6 +102,15 @@ public final class JobManager {
     private static final boolean debugPollLogIntervalVerbose = UtilProperties.getPropertyAsBoolean("service", "jobManager.debug.poll.logInterval.verbose", false);
     private static volatile long debugPollLogLastTimestamp = 0;
     private static final List<String> jobPollMainCondOrderBy = UtilMisc.unmodifiableArrayList("priority DESC NULLS LAST", "runTime"); // SCIPIO: refactored
+    /**
+     * SCIPIO: How polled jobs are claimed: "single" (one conditional update per job), "batch" (one conditional update for
+     * the whole poll) or "skip-locked" (batch, with candidates selected using <code>FOR UPDATE SKIP LOCKED</code>).
+     */
+    private static final String pollClaimMode = UtilProperties.getPropertyValue("service", "jobManager.poll.claimMode", "single");
+    /** SCIPIO: Number of candidate selections per batch claim, for when other instances claim some of the candidates first. */
+    private static final int CLAIM_ATTEMPTS = 3;
+    private static final boolean pollWakeUp = UtilProperties.getPropertyAsBoolean("service", "jobManager.poll.wakeUp", true); // SCIPIO
+    private static final boolean pollWakeUpDistribute = UtilProperties.getPropertyAsBoolean("service", "jobManager.poll.wakeUp.distribute", false); // SCIPIO
 
     private static void assertIsRunning() {
         if (isShutDown) {
@@ -217,6 +241,21 @@ public final class JobManager {
      * This method is called by the {@link JobPoller} polling thread.
      */
     protected List<Job> poll(int limit) {
+        return poll(limit, Collections.emptyMap(), Collections.emptySet());
+    }
+
+    /**
+     * Scans the JobSandbox entity and returns a list of jobs that are due to run (SCIPIO).
+     * <p>
+     * The pools of <code>poolLimits</code> are polled first, each up to its own limit; then all the run pools except
+     * <code>workerGroupPools</code> are polled together, up to <code>limit</code> minus the jobs already polled from
+     * pools that are not in <code>workerGroupPools</code>.</p>
+     * This method is called by the {@link JobPoller} polling thread.
+     * @param limit the maximum number of jobs for the main thread pool
+     * @param poolLimits the maximum number of jobs for the pools polled separately
+     * @param workerGroupPools the pools running on their own worker group, which are not polled with the others
+     */
+    public List<Job> poll(int limit, Map<String, Integer> poolLimits, Collection<String> workerGroupPools) {
         assertIsRunning();
         // The rest of this method logs exceptions and does not throw them.
         // The idea is to keep the JobPoller working even when a database
@@ -247,6 +286,9 @@ public final class JobManager {
         List<EntityExpr> poolsExpr = UtilMisc.toList(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, null));
         if (!pools.isEmpty()) {
             for (String poolName : pools) {
+                if (workerGroupPools.contains(poolName)) { // SCIPIO: polled separately
+                    continue;
+                }
                 poolsExpr.add(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, poolName));
             }
         }
@@ -317,12 +359,25 @@ public final class JobManager {
                 return poll;
             }
 
-            try (EntityListIterator jobsIterator = EntityQuery.use(delegator)
-                    .from("JobSandbox").where(mainCondition)
-                    .orderBy(jobPollMainCondOrderBy)
-                    .maxRows(limit).queryIterator()) { // SCIPIO: maxRows
-                // SCIPIO: factored out into method
-                jobsResult.add(ownAndCollectJobs(dctx, delegator, limit, jobsIterator, poll, null));
+            // SCIPIO: First the pools with their own limits (worker groups and weighted pools), then the other pools
+            int sharedLimit = limit;
+            for (Map.Entry<String, Integer> poolLimit : poolLimits.entrySet()) {
+                if (poolLimit.getValue() <= 0) {
+                    continue;
+                }
+                EntityCondition poolLimitCondition = EntityCondition.makeCondition(UtilMisc.toList(baseCondition,
+                        EntityCondition.makeCondition("poolId", poolLimit.getKey()), EntityCondition.makeCondition("eventId", null)));
+                List<Job> poolPoll = new ArrayList<>(poolLimit.getValue());
+                collectJobs(dctx, poolLimit.getValue(), poolLimitCondition, poolPoll, jobsResult);
+                if (!workerGroupPools.contains(poolLimit.getKey())) {
+                    sharedLimit -= poolPoll.size();
+                }
+                poll.addAll(poolPoll);
+            }
+            if (sharedLimit > 0) {
+                List<Job> sharedPoll = new ArrayList<>(sharedLimit);
+                collectJobs(dctx, sharedLimit, mainCondition, sharedPoll, jobsResult);
+                poll.addAll(sharedPoll);
             }
             //} catch (GenericEntityException e) { // SCIPIO: 2018-08-29: this catch is counter-productive
             //    Debug.logWarning(e, module);
@@ -340,7 +395,7 @@ public final class JobManager {
             return Collections.emptyList();
         }
         boolean noJobs = poll.isEmpty(); // SCIPIO
-        if (noJobs) {
+        if (noJobs && limit > 0) { // SCIPIO: limit 0 when only worker groups have capacity
             // No jobs to run, see if there are any jobs to purge
             Calendar cal = Calendar.getInstance();
             try {
@@ -431,6 +486,167 @@ public final class JobManager {
         return result;
     }
 
+    /**
+     * SCIPIO: Claims up to <code>limit</code> due jobs matching <code>mainCondition</code> into the empty <code>poll</code>
+     * list, using the configured claim mode (<code>jobManager.poll.claimMode</code>).
+     */
+    private void collectJobs(DispatchContext dctx, int limit, EntityCondition mainCondition, List<Job> poll, CollectJobsResult jobsResult) throws GenericEntityException {
+        if ("batch".equals(pollClaimMode) || "skip-locked".equals(pollClaimMode)) {
+            claimAndCollectJobs(dctx, delegator, limit, mainCondition, poll, "skip-locked".equals(pollClaimMode), instanceId);
+        } else {
+            try (EntityListIterator jobsIterator = EntityQuery.use(delegator)
+                    .from("JobSandbox").where(mainCondition)
+                    .orderBy(jobPollMainCondOrderBy)
+                    .maxRows(limit).queryIterator()) { // SCIPIO: maxRows
+                // SCIPIO: factored out into method
+                jobsResult.add(ownAndCollectJobs(dctx, delegator, limit, jobsIterator, poll, null));
+            }
+        }
+    }
+
+    /**
+     * SCIPIO: Claims up to <code>limit</code> due jobs matching <code>mainCondition</code> for the instance
+     * <code>claimInstanceId</code> using a single conditional update, then reads back the claimed jobs and adds them to
+     * <code>poll</code>.
+     * <p>
+     * The candidates are selected first, and only those still unclaimed are updated, so jobs taken by another instance
+     * in between are simply not claimed; the poll then retries with the next candidates, up to three selections in
+     * total. With <code>skipLocked</code>, the candidates are selected with
+     * <code>FOR UPDATE SKIP LOCKED</code> so concurrent instances do not even contend for the same rows; this is only
+     * supported by some databases (PostgreSQL 9.5+, MySQL 8+, MariaDB 10.6+).</p>
+     */
+    public void claimAndCollectJobs(DispatchContext dctx, Delegator delegator, int limit, EntityCondition mainCondition,
+            List<Job> poll, boolean skipLocked, String claimInstanceId) throws GenericEntityException {
+        for (int attempt = 1; attempt <= CLAIM_ATTEMPTS; attempt++) {
+            int maxJobs = (limit < 0) ? -1 : limit - poll.size();
+            if (maxJobs == 0) {
+                return;
+            }
+            List<String> jobIds;
+            if (skipLocked) {
+                jobIds = selectJobIdsSkipLocked(delegator, mainCondition, maxJobs);
+            } else {
+                jobIds = new ArrayList<>();
+                for (GenericValue jobValue : EntityQuery.use(delegator).select("jobId").from("JobSandbox").where(mainCondition)
+                        .orderBy(jobPollMainCondOrderBy).maxRows(maxJobs).queryList()) {
+                    jobIds.add(jobValue.getString("jobId"));
+                }
+            }
+            if (jobIds.isEmpty()) {
+                return;
+            }
+            int claimedCount = claimJobs(dctx, delegator, jobIds, poll, claimInstanceId);
+            // Skip-locked candidates are locked by this poll, so none can be lost to other instances
+            if (skipLocked || claimedCount == jobIds.size()) {
+                return;
+            }
+            if (DEBUG) {
+                Debug.logInfo("Claimed " + claimedCount + " of " + jobIds.size() + " polled jobs (attempt " + attempt
+                        + "); the others were claimed by other instances", module);
+            }
+        }
+    }
+
+    /**
+     * SCIPIO: Claims the still unclaimed jobs of <code>jobIds</code> for <code>claimInstanceId</code> with one conditional
+     * update and adds them to <code>poll</code>; returns the number claimed.
+     */
+    private int claimJobs(DispatchContext dctx, Delegator delegator, List<String> jobIds, List<Job> poll, String claimInstanceId) throws GenericEntityException {
+        // The claimed rows are exactly those now owned by the instance, because the candidates were all unowned and
+        // an instance polls from a single thread.
+        int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", claimInstanceId),
+                EntityCondition.makeCondition(EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds),
+                        EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null)));
+        if (rowsUpdated == 0) {
+            return 0;
+        }
+        List<GenericValue> claimed = EntityQuery.use(delegator).from("JobSandbox")
+                .where(EntityCondition.makeCondition(EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds),
+                        EntityCondition.makeCondition("runByInstanceId", claimInstanceId)))
+                .orderBy(jobPollMainCondOrderBy).queryList();
+        for (GenericValue jobValue : claimed) {
+            poll.add(new PersistedServiceJob(dctx, jobValue, null));
+        }
+        return claimed.size();
+    }
+
+    /**
+     * SCIPIO: Selects the ids of up to <code>maxJobs</code> due jobs with <code>FOR UPDATE SKIP LOCKED</code>, which locks them
+     * until the poll transaction ends and skips those locked by concurrent polls.
+     */
+    protected List<String> selectJobIdsSkipLocked(Delegator delegator, EntityCondition mainCondition, int maxJobs) throws GenericEntityException {
+        GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName("JobSandbox"));
+        Datasource datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+        ModelEntity modelEntity = delegator.getModelEntity("JobSandbox");
+        List<EntityConditionParam> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(modelEntity.getField("jobId").getColName())
+                .append(" FROM ").append(modelEntity.getTableName(datasource))
+                .append(" WHERE ").append(mainCondition.makeWhereString(modelEntity, params, datasource))
+                .append(SqlJdbcUtil.makeOrderByClause(modelEntity, jobPollMainCondOrderBy, datasource));
+        if (maxJobs > 0) {
+            if ("fetch".equals(datasource.getOffsetStyle())) {
+                sql.append(" FETCH FIRST ").append(maxJobs).append(" ROWS ONLY");
+            } else {
+                sql.append(" LIMIT ").append(maxJobs);
+            }
+        }
+        sql.append(" FOR UPDATE SKIP LOCKED");
+        ModelFieldTypeReader modelFieldTypeReader = ModelFieldTypeReader.getModelFieldTypeReader(helperInfo.getHelperBaseName());
+        List<String> jobIds = new ArrayList<>();
+        try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
+            sqlP.prepareStatement(sql.toString());
+            for (EntityConditionParam param : params) {
+                SqlJdbcUtil.setValue(sqlP, param.getModelField(), modelEntity.getEntityName(), param.getFieldValue(), modelFieldTypeReader, delegator, modelEntity);
+            }
+            sqlP.executeQuery();
+            while (sqlP.next()) {
+                jobIds.add(sqlP.getResultSet().getString(1));
+            }
+        } catch (SQLException e) {
+            throw new GenericEntityException("Unable to select JobSandbox jobs to claim: " + e.getMessage(), e);
+        }
+        return jobIds;
+    }
+
+    /**
+     * SCIPIO: Wakes up the job poller of this server, and through the distributed cache clear (JMS) service
+     * <code>distributedWakeUpJobPoller</code> those of the other servers if <code>jobManager.poll.wakeUp.distribute</code>
+     * is set, once the current transaction commits so the pollers can see the new job.
+     */
+    protected void wakeUpPollers() {
+        if (!pollWakeUp) {
+            return;
+        }
+        Runnable wakeUp = () -> {
+            JobPoller.getInstance().wakeUp();
+            if (pollWakeUpDistribute) {
+                DistributedCacheClear dcc = delegator.getDistributedCacheClear();
+                if (dcc != null) {
+                    dcc.runDistributedService("distributedWakeUpJobPoller");
+                }
+            }
+        };
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            wakeUp.run();
+                        }
+                    }
+                });
+                return;
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logWarning("Could not register job poller wake-up on transaction commit, waking up now: " + e.toString(), module);
+        }
+        wakeUp.run();
+    }
+
     private static class CollectJobsResult {
         int ignored = 0;
         public int getIgnored() { return ignored; }
@@ -744,6 +960,9 @@ public final class JobManager {
         } catch (GenericEntityException e) {
             throw new JobManagerException(e.getMessage(), e);
         }
+        if (eventId == null && startTime <= System.currentTimeMillis()) { // SCIPIO: start due jobs without waiting for the next poll
+            wakeUpPollers();
+        }
         return PersistedServiceJob.makeResultJob(getDispatcher().getDispatchContext(), jobV, serviceOptions); // SCIPIO
     }
 
@@ -20,6 +20,7 @@ package org.ofbiz.service.job;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -28,9 +29,11 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -39,6 +42,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAccumulator;
 import java.util.stream.Collectors;
 
+import org.ofbiz.base.concurrent.ExecutionPool;
 import org.ofbiz.base.config.GenericConfigException;
 import org.ofbiz.base.start.Start;
 import org.ofbiz.base.util.Assert;
@@ -49,6 +53,7 @@ import org.ofbiz.service.ModelService;
 import org.ofbiz.service.ServiceUtil;
 import org.ofbiz.service.config.ServiceConfigListener;
 import org.ofbiz.service.config.ServiceConfigUtil;
+import org.ofbiz.service.config.model.RunFromPool;
 import org.ofbiz.service.config.model.ServiceConfig;
 import org.ofbiz.service.config.model.ThreadPool;
 
@@ -64,7 +69,8 @@ public final class JobPoller implements ServiceConfigListener {
     // SCIPIO: Changed these and methods to instance members (bad statics)
     private final AtomicInteger created = new AtomicInteger();
     private final ConcurrentHashMap<String, JobManager> jobManagers = new ConcurrentHashMap<>();
-    private final ThreadPoolExecutor executor = createThreadPoolExecutor();
+    private final JobExecutor executor = createThreadPoolExecutor();
+    private final Map<String, JobExecutor> poolExecutors = createPoolExecutors(); // SCIPIO: per-pool worker groups
     private final Thread jobManagerPollerThread;
 
     // SCIPIO: Debug logging controls
@@ -76,6 +82,20 @@ public final class JobPoller implements ServiceConfigListener {
     private final boolean startupPollSleepWarnIntervalVerbose = UtilProperties.getPropertyAsBoolean("service", "jobManager.debug.poll.startupPollSleepWarnInterval.verbose", false);
     private final int debugJobStatsTopServiceCount = UtilProperties.getPropertyAsInteger("service", "jobManager.debug.stats.topServiceCount", 10);
 
+    // SCIPIO: Poll wake-up and idle backoff
+    private final long idleBackoffMaxWait = UtilProperties.getPropertyAsLong("service", "jobManager.poll.idleBackoff.maxWait", -1);
+    private final WakeUpSignal wakeUpSignal = new WakeUpSignal();
+    private final AtomicLong wakeUpCount = new AtomicLong();
+    private final JobStartLatencyStats jobStartLatencyStats = new JobStartLatencyStats(
+            UtilProperties.getPropertyAsInteger("service", "jobManager.stats.startLatency.sampleSize", 1024));
+
+    // SCIPIO: Virtual thread execution of services marked virtual-thread, with per-service concurrency caps
+    private final boolean virtualThreadsEnabled = UtilProperties.getPropertyAsBoolean("service", "jobManager.virtualThreads.enabled", true)
+            && ExecutionPool.isVirtualThreadsSupported();
+    private final int virtualThreadDefaultMax = UtilProperties.getPropertyAsInteger("service", "jobManager.virtualThreads.defaultMax", 20);
+    private final CappedThreadLauncher virtualThreadLauncher = virtualThreadsEnabled
+            ? new CappedThreadLauncher(ExecutionPool.getVirtualThreadFactory("Scipio-JobVirtual"), virtualThreadDefaultMax) : null;
+
     // SCIPIO: Global service stats, by service name
     private final Map<String, Map<String, GlobalServiceStats>> globalServiceStats = new ConcurrentHashMap<>();
     private final Object globalServiceStatsLock = new Object();
@@ -88,18 +108,62 @@ public final class JobPoller implements ServiceConfigListener {
         return INSTANCE;
     }
 
-    private ThreadPoolExecutor createThreadPoolExecutor() {
+    private JobExecutor createThreadPoolExecutor() {
         try {
             ThreadPool threadPool = getThreadPoolConfig();
-            return new ThreadPoolExecutor(threadPool.getMinThreads(), threadPool.getMaxThreads(), threadPool.getTtl(),
-                    TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(threadPool.getJobs(), createPriorityComparator()), new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+            return new JobExecutor(null, threadPool.getMinThreads(), threadPool.getMaxThreads(), threadPool.getTtl(),
+                    threadPool.getJobs(), new JobInvokerThreadFactory("Scipio-JobQueue-"));
         } catch (GenericConfigException e) {
             Debug.logError(e, "Exception thrown while getting <thread-pool> model, using default <thread-pool> values: ", module);
-            return new ThreadPoolExecutor(ThreadPool.MIN_THREADS, ThreadPool.MAX_THREADS, ThreadPool.THREAD_TTL,
-                    TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(ThreadPool.QUEUE_SIZE, createPriorityComparator()), new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+            return new JobExecutor(null, ThreadPool.MIN_THREADS, ThreadPool.MAX_THREADS, ThreadPool.THREAD_TTL,
+                    ThreadPool.QUEUE_SIZE, new JobInvokerThreadFactory("Scipio-JobQueue-"));
         }
     }
 
+    /**
+     * Creates the executors of the run-from-pools that have their own worker group (SCIPIO).
+     * <p>
+     * NOTE: Worker groups are created once; configuration changes only update their thread counts.</p>
+     */
+    private Map<String, JobExecutor> createPoolExecutors() {
+        Map<String, JobExecutor> poolExecutors = new LinkedHashMap<>();
+        try {
+            ThreadPool threadPool = getThreadPoolConfig();
+            for (RunFromPool runFromPool : threadPool.getRunFromPools()) {
+                if (runFromPool.hasWorkerGroup()) {
+                    poolExecutors.put(runFromPool.getName(), new JobExecutor(runFromPool.getName(), runFromPool.getMinThreads(),
+                            runFromPool.getMaxThreads(), threadPool.getTtl(), runFromPool.getJobs(),
+                            new JobInvokerThreadFactory("Scipio-JobQueue-" + runFromPool.getName() + "-")));
+                }
+            }
+        } catch (GenericConfigException e) {
+            Debug.logError(e, "Exception thrown while getting <thread-pool> model, not creating pool worker groups: ", module);
+        }
+        return Collections.unmodifiableMap(poolExecutors);
+    }
+
+    /**
+     * Returns the executor running the jobs of the given pool: its worker group, or the main executor (SCIPIO).
+     */
+    private JobExecutor getExecutor(String jobPool) {
+        JobExecutor poolExecutor = (jobPool != null) ? poolExecutors.get(jobPool) : null;
+        return (poolExecutor != null) ? poolExecutor : executor;
+    }
+
+    /**
+     * Returns the queued jobs of all the executors, main executor first (SCIPIO).
+     */
+    private List<Runnable> getQueuedTasks() {
+        if (poolExecutors.isEmpty()) {
+            return new ArrayList<>(executor.getQueue());
+        }
+        List<Runnable> tasks = new ArrayList<>(executor.getQueue());
+        for (JobExecutor poolExecutor : poolExecutors.values()) {
+            tasks.addAll(poolExecutor.getQueue());
+        }
+        return tasks;
+    }
+
     private static Comparator<Runnable> createPriorityComparator() {
         return new Comparator<Runnable>() {
 
@@ -160,6 +224,9 @@ public final class JobPoller implements ServiceConfigListener {
             jobManagerPollerThread = null;
         }
         ServiceConfigUtil.registerServiceConfigListener(this);
+        if (!virtualThreadsEnabled && UtilProperties.getPropertyAsBoolean("service", "jobManager.virtualThreads.enabled", true)) { // SCIPIO
+            Debug.logInfo("Virtual threads not supported by this JVM (JDK 21+ required); virtual-thread services will run on job pool threads", module);
+        }
     }
 
     /**
@@ -177,6 +244,20 @@ public final class JobPoller implements ServiceConfigListener {
         // SCIPIO
         poolState.put("remainingCapacity", executor.getQueue().remainingCapacity());
         poolState.put("queueSize", executor.getQueue().size());
+        executor.putQueueWaitStats(poolState);
+        if (!poolExecutors.isEmpty()) {
+            List<Map<String, Object>> workerGroups = new ArrayList<>(poolExecutors.size());
+            for (JobExecutor poolExecutor : poolExecutors.values()) {
+                workerGroups.add(poolExecutor.toMap(new LinkedHashMap<>()));
+            }
+            poolState.put("workerGroups", workerGroups);
+        }
+        if (virtualThreadsEnabled) {
+            poolState.put("virtualThreadRunningCount", virtualThreadLauncher.getRunningCount());
+            poolState.put("virtualThreadWaitingCount", virtualThreadLauncher.getWaitingCount());
+        }
+        poolState.put("wakeUpCount", wakeUpCount.get());
+        poolState.put("jobStartLatency", jobStartLatencyStats.toMap(new LinkedHashMap<>()));
         return poolState;
     }
 
@@ -203,7 +284,7 @@ public final class JobPoller implements ServiceConfigListener {
             if (includeTaskList) {
                 List<Map<String, Object>> taskList = new ArrayList<>();
                 int index = 0;
-                for (Runnable task : executor.getQueue()) {
+                for (Runnable task : getQueuedTasks()) {
                     taskList.add(((Job) task).toTaskInfoMap()); // SCIPIO: Refactored
                     index++;
                     if (maxTasks != null && index >= maxTasks) {
@@ -217,7 +298,7 @@ public final class JobPoller implements ServiceConfigListener {
             Map<String, PoolTaskStats> poolStatsMap = new LinkedHashMap<>();
             Map<String, ServiceTaskStats> serviceStatsMap = new LinkedHashMap<>();
             int index = 0;
-            for (Runnable task : executor.getQueue()) {
+            for (Runnable task : getQueuedTasks()) {
                 Job job = (Job) task;
                 String serviceName = job.getServiceName();
                 if (serviceName != null) {
@@ -365,6 +446,20 @@ public final class JobPoller implements ServiceConfigListener {
             executor.setCorePoolSize(threadPool.getMinThreads());
             executor.setMaximumPoolSize(threadPool.getMaxThreads());
             executor.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+            for (RunFromPool runFromPool : threadPool.getRunFromPools()) { // SCIPIO
+                JobExecutor poolExecutor = poolExecutors.get(runFromPool.getName());
+                if (poolExecutor != null && runFromPool.hasWorkerGroup()) {
+                    // NOTE: Order matters, the core size may not exceed the maximum size
+                    if (runFromPool.getMaxThreads() >= poolExecutor.getCorePoolSize()) {
+                        poolExecutor.setMaximumPoolSize(runFromPool.getMaxThreads());
+                        poolExecutor.setCorePoolSize(runFromPool.getMinThreads());
+                    } else {
+                        poolExecutor.setCorePoolSize(runFromPool.getMinThreads());
+                        poolExecutor.setMaximumPoolSize(runFromPool.getMaxThreads());
+                    }
+                    poolExecutor.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+                }
+            }
         }
     }
 
@@ -385,7 +480,11 @@ public final class JobPoller implements ServiceConfigListener {
     public void queueNow(Job job) throws InvalidJobException {
         job.queue();
         try {
-            executor.execute(job);
+            if (virtualThreadsEnabled && job instanceof GenericServiceJob && ((GenericServiceJob) job).isVirtualThread()) { // SCIPIO
+                executeOnVirtualThread((GenericServiceJob) job);
+                return;
+            }
+            getExecutor(job.getJobPool()).execute(job); // SCIPIO: pool worker groups
         } catch (RejectedExecutionException e) { // SCIPIO: NOTE: This happens normally, as other comments indicate
             if (JobManager.isDebug()) {
                 Debug.log(JobManager.getDebugProblemLevel(), "Job [" + job.toLogId() + "] execution rejected by thread pool, will be dequeued and rescheduled: " + e.toString()
@@ -400,6 +499,70 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    /**
+     * Runs the job on a virtual thread of its own, once a permit of its service is free (SCIPIO).
+     * <p>
+     * Until then the job counts as queued, both for the poller free capacity and for {@link #stop()}, and it is rejected
+     * like on a full queue if the main thread pool queue has no room left for it. Each virtual thread starts without the
+     * plain thread locals of other jobs, so no transaction leaks between jobs, and {@link AbstractJob#run()} cleans up any
+     * transaction left by the job as usual; it does inherit the <code>InheritableThreadLocal</code> values of the thread
+     * queueing the job.</p>
+     */
+    private void executeOnVirtualThread(GenericServiceJob job) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("JobPoller is shut down");
+        }
+        virtualThreadLauncher.execute(job, job.getServiceName(), job.getVirtualThreadMax(), executor.getRemainingCapacity());
+    }
+
+    /**
+     * Wakes up the polling thread so it polls for jobs right away instead of at the end of its current wait (SCIPIO).
+     * <p>
+     * Wake-ups arriving while the thread polls are coalesced into one extra poll.</p>
+     */
+    public void wakeUp() {
+        if (jobManagerPollerThread == null) {
+            return;
+        }
+        wakeUpSignal.wakeUp();
+        wakeUpCount.incrementAndGet();
+    }
+
+    /**
+     * Wake-up signal of the polling thread; a wake-up sent while nobody waits is kept for the next wait (SCIPIO).
+     */
+    public static class WakeUpSignal {
+        private boolean pending = false;
+
+        public synchronized void wakeUp() {
+            pending = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits up to <code>waitTime</code> milliseconds or until {@link #wakeUp()} is called.
+         * @return true if woken up before the wait time elapsed
+         */
+        public synchronized boolean await(long waitTime) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + waitTime;
+            long remaining = waitTime;
+            while (!pending && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            boolean wokenUp = pending;
+            pending = false;
+            return wokenUp;
+        }
+    }
+
+    /**
+     * Returns the job start latency stats, from scheduled run time to execution start of persisted jobs (SCIPIO).
+     */
+    public JobStartLatencyStats getJobStartLatencyStats() {
+        return jobStartLatencyStats;
+    }
+
     /**
      * Stops the <code>JobPoller</code>. This method is called when Scipio shuts down.
      * The <code>JobPoller</code> cannot be restarted.
@@ -410,6 +573,12 @@ public final class JobPoller implements ServiceConfigListener {
             jobManagerPollerThread.interrupt();
         }
         List<Runnable> queuedJobs = executor.shutdownNow();
+        for (JobExecutor poolExecutor : poolExecutors.values()) { // SCIPIO
+            queuedJobs.addAll(poolExecutor.shutdownNow());
+        }
+        if (virtualThreadLauncher != null) { // SCIPIO: jobs still waiting for a virtual thread permit
+            queuedJobs.addAll(virtualThreadLauncher.drainWaiting());
+        }
         for (Runnable task : queuedJobs) {
             Job queuedJob = (Job) task;
             try {
@@ -426,15 +595,240 @@ public final class JobPoller implements ServiceConfigListener {
     }
 
     private class JobInvokerThreadFactory implements ThreadFactory {
+        private final String namePrefix; // SCIPIO
+
+        JobInvokerThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
         @Override
         public Thread newThread(Runnable runnable) {
-            return new Thread(runnable, "Scipio-JobQueue-" + created.getAndIncrement());
+            return new Thread(runnable, namePrefix + created.getAndIncrement());
+        }
+    }
+
+    /**
+     * Starts tasks each on a new thread of its own, typically virtual, with at most a given number running at once per
+     * service (SCIPIO).
+     * <p>
+     * A task that finds no free permit of its service waits for one on its own thread; at most <code>maxWaiting</code>
+     * tasks may wait at once and further ones are rejected. When the maximum of a service changes its permits are
+     * rebuilt, so the tasks started before keep and release the old ones.</p>
+     */
+    public static class CappedThreadLauncher {
+        private final ThreadFactory threadFactory;
+        private final int defaultMax;
+        private final Map<String, ServicePermits> servicePermits = new ConcurrentHashMap<>();
+        private final Set<Runnable> waitingTasks = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger runningCount = new AtomicInteger();
+
+        public CappedThreadLauncher(ThreadFactory threadFactory, int defaultMax) {
+            this.threadFactory = threadFactory;
+            this.defaultMax = defaultMax;
+        }
+
+        /**
+         * Starts the task on a new thread once one of the <code>max</code> permits of the service is free.
+         * @param max the maximum number of tasks of the service running at once, or null for the default
+         * @param maxWaiting the maximum number of tasks of all services waiting for a permit
+         * @throws RejectedExecutionException if no permit is free and <code>maxWaiting</code> tasks already wait
+         */
+        public void execute(Runnable task, String serviceName, Integer max, int maxWaiting) {
+            Semaphore permits = getPermits(serviceName, Math.max(1, (max != null) ? max : defaultMax));
+            boolean acquired = permits.tryAcquire();
+            if (!acquired) {
+                synchronized (waitingTasks) {
+                    if (waitingTasks.size() >= maxWaiting) {
+                        throw new RejectedExecutionException("No thread permit free for service [" + serviceName + "] and "
+                                + waitingTasks.size() + " tasks already waiting");
+                    }
+                    waitingTasks.add(task);
+                }
+            }
+            try {
+                threadFactory.newThread(() -> {
+                    if (!acquired) {
+                        permits.acquireUninterruptibly();
+                        if (!waitingTasks.remove(task)) {
+                            permits.release(); // Drained by drainWaiting()
+                            return;
+                        }
+                    }
+                    runningCount.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        runningCount.decrementAndGet();
+                        permits.release();
+                    }
+                }).start();
+            } catch (RuntimeException | Error e) {
+                if (acquired) {
+                    permits.release();
+                } else {
+                    waitingTasks.remove(task);
+                }
+                throw e;
+            }
+        }
+
+        private Semaphore getPermits(String serviceName, int max) {
+            ServicePermits permits = servicePermits.get(serviceName);
+            if (permits == null || permits.max != max) {
+                permits = servicePermits.compute(serviceName, (key, current) -> (current != null && current.max == max) ? current : new ServicePermits(max));
+            }
+            return permits.semaphore;
+        }
+
+        /**
+         * Removes and returns the tasks still waiting for a permit; they will not run.
+         */
+        public List<Runnable> drainWaiting() {
+            List<Runnable> drained = new ArrayList<>();
+            for (Runnable task : waitingTasks) {
+                if (waitingTasks.remove(task)) {
+                    drained.add(task);
+                }
+            }
+            return drained;
+        }
+
+        public int getRunningCount() {
+            return runningCount.get();
+        }
+
+        public int getWaitingCount() {
+            return waitingTasks.size();
+        }
+
+        private static class ServicePermits {
+            private final int max;
+            private final Semaphore semaphore;
+
+            ServicePermits(int max) {
+                this.max = max;
+                this.semaphore = new Semaphore(max, true);
+            }
         }
     }
 
+    /**
+     * Job thread pool executor, with queue wait time stats (SCIPIO).
+     * <p>
+     * The main executor has no pool name; each run-from-pool with a worker group has its own.</p>
+     */
+    private static class JobExecutor extends ThreadPoolExecutor {
+        private final String poolName;
+        private final int queueSize;
+        private final AtomicLong startedCount = new AtomicLong();
+        private final AtomicLong totalQueueWait = new AtomicLong();
+        private final LongAccumulator maxQueueWait = new LongAccumulator(Long::max, 0);
+
+        JobExecutor(String poolName, int minThreads, int maxThreads, long ttl, int queueSize, ThreadFactory threadFactory) {
+            super(minThreads, maxThreads, ttl, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(queueSize, createPriorityComparator()),
+                    threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            this.poolName = poolName;
+            this.queueSize = queueSize;
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            super.beforeExecute(t, r);
+            if (r instanceof AbstractJob) {
+                long queueTime = ((AbstractJob) r).getQueueTime();
+                if (queueTime > 0) {
+                    long wait = System.currentTimeMillis() - queueTime;
+                    startedCount.incrementAndGet();
+                    totalQueueWait.addAndGet(wait);
+                    maxQueueWait.accumulate(wait);
+                }
+            }
+        }
+
+        int getRemainingCapacity() {
+            return queueSize - getQueue().size();
+        }
+
+        void putQueueWaitStats(Map<String, Object> map) {
+            long startedCount = this.startedCount.get();
+            map.put("averageQueueWait", (startedCount > 0) ? totalQueueWait.get() / startedCount : 0);
+            map.put("maxQueueWait", maxQueueWait.get());
+        }
+
+        Map<String, Object> toMap(Map<String, Object> map) {
+            map.put("pool", poolName);
+            map.put("numberOfCoreInvokerThreads", getCorePoolSize());
+            map.put("currentNumberOfInvokerThreads", getPoolSize());
+            map.put("numberOfActiveInvokerThreads", getActiveCount());
+            map.put("maxNumberOfInvokerThreads", getMaximumPoolSize());
+            map.put("numberOfCompletedTasks", getCompletedTaskCount());
+            map.put("remainingCapacity", getRemainingCapacity());
+            map.put("queueSize", getQueue().size());
+            putQueueWaitStats(map);
+            return map;
+        }
+    }
+
+    /**
+     * Returns the number of jobs to poll per pool, for the pools polled separately from the main thread pool (SCIPIO).
+     * @see #getPoolPollLimits(List, Map, int)
+     */
+    private Map<String, Integer> getPoolPollLimits(int remainingCapacity) {
+        List<RunFromPool> runFromPools;
+        try {
+            runFromPools = getThreadPoolConfig().getRunFromPools();
+        } catch (GenericConfigException e) {
+            Debug.logError(e, "Exception thrown while getting <thread-pool> model, polling pools together: ", module);
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> workerGroupCapacities = new HashMap<>();
+        for (Map.Entry<String, JobExecutor> entry : poolExecutors.entrySet()) {
+            workerGroupCapacities.put(entry.getKey(), entry.getValue().getRemainingCapacity());
+        }
+        return getPoolPollLimits(runFromPools, workerGroupCapacities, remainingCapacity);
+    }
+
+    /**
+     * Returns the number of jobs to poll per pool, for the pools polled separately from the main thread pool (SCIPIO).
+     * <p>
+     * Pools with a worker group, the keys of <code>workerGroupCapacities</code>, get the free capacity of their own
+     * queue. Weighted pools get their weighted share of the main thread pool free capacity, <code>remainingCapacity</code>,
+     * rounded up, but together never more than <code>remainingCapacity</code> (the first pools in order keep theirs); the
+     * unweighted pools together weigh their count (at least 1) and get what is left, together with any unused share.</p>
+     */
+    public static Map<String, Integer> getPoolPollLimits(List<RunFromPool> runFromPools, Map<String, Integer> workerGroupCapacities,
+            int remainingCapacity) {
+        Map<String, Integer> poolLimits = new LinkedHashMap<>();
+        int totalWeight = 0;
+        int unweightedCount = 0;
+        for (RunFromPool runFromPool : runFromPools) {
+            Integer workerGroupCapacity = workerGroupCapacities.get(runFromPool.getName());
+            if (workerGroupCapacity != null) {
+                poolLimits.put(runFromPool.getName(), Math.max(0, workerGroupCapacity));
+            } else if (runFromPool.getWeight() > 0) {
+                totalWeight += runFromPool.getWeight();
+            } else {
+                unweightedCount++;
+            }
+        }
+        if (totalWeight > 0 && remainingCapacity > 0) {
+            totalWeight += Math.max(1, unweightedCount);
+            int unallocated = remainingCapacity;
+            for (RunFromPool runFromPool : runFromPools) {
+                if (runFromPool.getWeight() > 0 && !workerGroupCapacities.containsKey(runFromPool.getName())) {
+                    int share = Math.min(unallocated, (int) Math.ceil((double) remainingCapacity * runFromPool.getWeight() / totalWeight));
+                    poolLimits.put(runFromPool.getName(), share);
+                    unallocated -= share;
+                }
+            }
+        }
+        return poolLimits;
+    }
+
     // Polls all registered JobManagers for jobs to queue.
     private class JobManagerPoller implements Runnable {
         private volatile long lastCapacityFoundTime = 0; // SCIPIO
+        private final IdleBackoff idleBackoff = new IdleBackoff(idleBackoffMaxWait); // SCIPIO
 
         // Do not check for interrupts in this method. The design requires the
         // thread to complete the job manager poll uninterrupted.
@@ -459,7 +853,7 @@ public final class JobPoller implements ServiceConfigListener {
                 while (!executor.isShutdown()) {
                     // SCIPIO: NOTE: The following line was changed for priority patch
                     //int remainingCapacity = executor.getQueue().remainingCapacity();
-                    int remainingCapacity = queueSize() - executor.getQueue().size();
+                    int remainingCapacity = queueSize() - executor.getQueue().size() - (virtualThreadLauncher != null ? virtualThreadLauncher.getWaitingCount() : 0); // SCIPIO: virtual thread jobs waiting for a permit
                     if (JobManager.isDebug() && noCapacityWarnInterval > 0) { // SCIPIO
                         if (remainingCapacity > 0 || lastCapacityFoundTime <= 0) {
                             lastCapacityFoundTime = System.currentTimeMillis();
@@ -473,7 +867,9 @@ public final class JobPoller implements ServiceConfigListener {
                             }
                         }
                     }
-                    if (remainingCapacity > 0) {
+                    boolean jobsFound = false; // SCIPIO
+                    Map<String, Integer> poolLimits = getPoolPollLimits(remainingCapacity); // SCIPIO: worker groups and weighted pools
+                    if (remainingCapacity > 0 || poolLimits.values().stream().anyMatch(poolLimit -> poolLimit > 0)) {
                         // Build "list of lists"
                         Collection<JobManager> jmCollection = jobManagers.values();
                         List<Iterator<Job>> pollResults = new ArrayList<>();
@@ -485,7 +881,7 @@ public final class JobPoller implements ServiceConfigListener {
                                 continue;
                             }
                             jm.reloadCrashedJobs();
-                            pollResults.add(jm.poll(remainingCapacity).iterator());
+                            pollResults.add(jm.poll(Math.max(0, remainingCapacity), poolLimits, poolExecutors.keySet()).iterator());
                         }
                         // Create queue candidate list from "list of lists"
                         List<Job> queueCandidates = new ArrayList<>();
@@ -499,6 +895,7 @@ public final class JobPoller implements ServiceConfigListener {
                                 }
                             }
                         }
+                        jobsFound = !queueCandidates.isEmpty();
                         // The candidate list might be larger than the queue remaining capacity,
                         // but that is okay - the excess jobs will be dequeued and rescheduled.
                         for (Job job : queueCandidates) {
@@ -509,16 +906,22 @@ public final class JobPoller implements ServiceConfigListener {
                             }
                         }
                     }
+                    // SCIPIO: Wait for the next poll, or less if woken up by a newly scheduled job
+                    long waitTime = idleBackoff.nextWaitTime(pollWaitTime(), jobsFound);
+                    boolean wokenUp;
                     if (JobManager.isDebug() && pollSleepWarnInterval > 0) { // SCIPIO
                         long sleepStart = System.currentTimeMillis();
-                        Thread.sleep(pollWaitTime());
+                        wokenUp = wakeUpSignal.await(waitTime);
                         long realSleepTime = System.currentTimeMillis() - sleepStart;
                         if (realSleepTime > pollSleepWarnInterval) {
                             Debug.log(JobManager.getDebugProblemLevel(), "Polling thread sleep exceeded expected time, took "
                                     + realSleepTime + "ms, limit " + pollSleepWarnInterval + "ms" + toLogPoolConfigStr(pollSleepWarnIntervalVerbose), module);
                         }
                     } else {
-                        Thread.sleep(pollWaitTime());
+                        wokenUp = wakeUpSignal.await(waitTime);
+                    }
+                    if (wokenUp) {
+                        idleBackoff.reset();
                     }
                 }
             } catch (InterruptedException e) {
@@ -529,7 +932,45 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    /**
+     * Poll wait time backed off after polls that found no jobs (SCIPIO).
+     */
+    public static class IdleBackoff {
+        private final long maxWait;
+        private long idleWaitTime = 0;
+
+        /**
+         * @param maxWait the most the wait time is backed off to, from <code>jobManager.poll.idleBackoff.maxWait</code>;
+         *                no backoff if not above the poll wait time
+         */
+        public IdleBackoff(long maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        /**
+         * Returns the poll wait time, doubled after each poll that found no jobs up to the max wait.
+         */
+        public long nextWaitTime(long pollWaitTime, boolean jobsFound) {
+            if (jobsFound || maxWait <= pollWaitTime) {
+                idleWaitTime = 0;
+                return pollWaitTime;
+            }
+            idleWaitTime = (idleWaitTime <= 0) ? pollWaitTime : Math.min(idleWaitTime * 2, maxWait);
+            return idleWaitTime;
+        }
+
+        /**
+         * Goes back to the poll wait time, as when woken up for a newly scheduled job.
+         */
+        public void reset() {
+            idleWaitTime = 0;
+        }
+    }
+
     protected CurrentServiceStats registerCurrentServiceCall(String serviceName, AbstractJob job, long startTime) {
+        if (job instanceof PersistedServiceJob) { // SCIPIO: start latency of scheduled jobs
+            jobStartLatencyStats.registerJobStart(startTime - job.getStartTime().getTime());
+        }
         CurrentServiceStats serviceStats = new CurrentServiceStats(serviceName, job, startTime);
         currentServiceStats.put(serviceStats, true);
         return serviceStats;
@@ -799,4 +1240,63 @@ public final class JobPoller implements ServiceConfigListener {
             return map;
         }
     }
+
+    /**
+     * Start latency of persisted jobs, from their scheduled run time to the start of their execution, over the most
+     * recent jobs (SCIPIO).
+     * WARN: Implemented without synchronization between the samples, best-effort.
+     */
+    public static class JobStartLatencyStats implements Serializable {
+        protected final long[] samples;
+        protected final AtomicLong count = new AtomicLong(0);
+        protected final LongAccumulator maxLatency = new LongAccumulator(Long::max, 0);
+
+        protected JobStartLatencyStats(int sampleSize) {
+            this.samples = new long[Math.max(1, sampleSize)];
+        }
+
+        protected void registerJobStart(long latency) {
+            latency = Math.max(0, latency);
+            samples[(int) (count.getAndIncrement() % samples.length)] = latency;
+            maxLatency.accumulate(latency);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMaxLatency() {
+            return maxLatency.get();
+        }
+
+        /**
+         * Returns the latency percentiles of the recent jobs, in milliseconds, or null if no job started yet.
+         */
+        public long[] getPercentiles(double... percentiles) {
+            int size = (int) Math.min(count.get(), samples.length);
+            if (size == 0) {
+                return null;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            long[] result = new long[percentiles.length];
+            for (int i = 0; i < percentiles.length; i++) {
+                int index = (int) Math.ceil(percentiles[i] / 100.0 * size) - 1;
+                result[i] = sorted[Math.min(size - 1, Math.max(0, index))];
+            }
+            return result;
+        }
+
+        public <M extends Map<String, Object>> M toMap(M map) {
+            map.put("count", getCount());
+            long[] percentiles = getPercentiles(50, 90, 99);
+            if (percentiles != null) {
+                map.put("p50", percentiles[0]);
+                map.put("p90", percentiles[1]);
+                map.put("p99", percentiles[2]);
+            }
+            map.put("max", getMaxLatency());
+            return map;
+        }
+    }
 }
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.semaphore;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import javax.transaction.Transaction;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.entity.GenericEntityException;
+import org.ofbiz.entity.config.model.EntityConfig;
+import org.ofbiz.entity.datasource.GenericHelperInfo;
+import org.ofbiz.entity.jdbc.SQLProcessor;
+import org.ofbiz.entity.model.ModelEntity;
+import org.ofbiz.entity.transaction.GenericTransactionException;
+import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.entity.util.EntityQuery;
+import org.ofbiz.service.ModelService;
+import org.ofbiz.service.job.JobManager;
+
+/**
+ * Service semaphore provider that locks the ServiceSemaphore row of the service by updating its holder fields in a
+ * dedicated transaction, kept suspended while the service runs (SCIPIO). An UPDATE is used rather than
+ * <code>SELECT ... FOR UPDATE</code> because some databases (e.g. Derby with read committed) release the lock of a
+ * selected row when its cursor closes.
+ * <p>
+ * Waiting callers block in the database and get the lock as soon as the holder commits, without polling, so this
+ * works across cluster nodes. The row of each service is created when a lock finds it missing and kept, so this
+ * provider must not be mixed with {@link EntityServiceSemaphoreProvider}, which takes any existing row as a held lock.
+ * The wait is bounded by a JDBC query timeout, in whole seconds (at least 1 second, also for
+ * <code>semaphore="fail"</code>). Databases that do not apply query timeouts to lock waits (e.g. Derby) wait for their
+ * own lock timeout instead.</p>
+ */
+public class DbLockServiceSemaphoreProvider implements ServiceSemaphoreProvider {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    /** Lock waits shorter than this are normal lock round trips rather than contention. */
+    private static final long CONTENDED_WAIT_MILLIS = 50;
+
+    /** Timeout of the transactions holding the locks, which must outlast the longest semaphore-protected service. */
+    private static final int LOCK_TRANSACTION_TIMEOUT = UtilProperties.getPropertyAsInteger("service", "semaphore.db-lock.transactionTimeout", 3600);
+
+    @Override
+    public Lock acquire(Delegator delegator, ModelService model, Timestamp lockTime, long waitMillis) throws SemaphoreFailException {
+        Transaction parent = null;
+        boolean beganTx = false;
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                parent = TransactionUtil.suspend();
+            }
+            beganTx = beginLockTransaction();
+            long startTime = System.currentTimeMillis();
+            Boolean locked = lockRow(delegator, model, lockTime, waitMillis);
+            if (Boolean.FALSE.equals(locked)) {
+                // First use of the service: create its row and lock it. The lock transaction is ended first, because the
+                // update of the missing row may hold key locks that would block the insert.
+                TransactionUtil.rollback(beganTx, "ServiceSemaphore: lock row missing", null);
+                createLockRow(delegator, model, lockTime);
+                beganTx = beginLockTransaction();
+                startTime = System.currentTimeMillis();
+                locked = lockRow(delegator, model, lockTime, waitMillis);
+            }
+            if (!Boolean.TRUE.equals(locked)) {
+                TransactionUtil.rollback(beganTx, "ServiceSemaphore: lock not acquired", null);
+                return null;
+            }
+            boolean contended = (System.currentTimeMillis() - startTime) >= CONTENDED_WAIT_MILLIS;
+            return new DbLock(TransactionUtil.suspend(), contended);
+        } catch (GenericTransactionException e) {
+            throw new SemaphoreFailException("Transaction error while locking semaphore of service [" + model.name + "]", e);
+        } finally {
+            if (parent != null) {
+                try {
+                    TransactionUtil.resume(parent);
+                } catch (GenericTransactionException e) {
+                    Debug.logError(e, module);
+                }
+            }
+        }
+    }
+
+    private static boolean beginLockTransaction() throws GenericTransactionException, SemaphoreFailException {
+        boolean beganTx = TransactionUtil.begin(LOCK_TRANSACTION_TIMEOUT);
+        if (!beganTx) {
+            throw new SemaphoreFailException("Cannot obtain unique transaction for semaphore lock");
+        }
+        return beganTx;
+    }
+
+    /**
+     * Updates the holder fields of the service's row in the current transaction, which locks the row until the
+     * transaction ends; returns true if the row is locked, false if the service has no row yet, or null if it timed
+     * out or failed.
+     */
+    protected Boolean lockRow(Delegator delegator, ModelService model, Timestamp lockTime, long waitMillis) {
+        GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName("ServiceSemaphore"));
+        ModelEntity modelEntity = delegator.getModelEntity("ServiceSemaphore");
+        String sql = "UPDATE " + modelEntity.getTableName(EntityConfig.getDatasource(helperInfo.getHelperBaseName()))
+                + " SET " + modelEntity.getField("lockedByInstanceId").getColName() + " = ?, "
+                + modelEntity.getField("lockThread").getColName() + " = ?, "
+                + modelEntity.getField("lockTime").getColName() + " = ?"
+                + " WHERE " + modelEntity.getField("serviceName").getColName() + " = ?";
+        try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
+            sqlP.prepareStatement(sql);
+            sqlP.getPreparedStatement().setQueryTimeout((int) Math.max(1, (waitMillis + 999) / 1000));
+            sqlP.setValue(JobManager.instanceId);
+            sqlP.setValue(Thread.currentThread().getName());
+            sqlP.setValue(lockTime);
+            sqlP.setValue(model.name);
+            return sqlP.executeUpdate() > 0;
+        } catch (GenericEntityException | SQLException e) {
+            Debug.logWarning("Semaphore lock of service [" + model.name + "] not acquired: " + e.getMessage(), module);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the ServiceSemaphore row of the service if missing, in its own transaction; an existing row is fine.
+     * Called only when the lock update found no row, so once per service.
+     */
+    protected void createLockRow(Delegator delegator, ModelService model, Timestamp lockTime) throws SemaphoreFailException {
+        Transaction parent = null;
+        boolean beganTx = false;
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                parent = TransactionUtil.suspend();
+            }
+            beganTx = TransactionUtil.begin();
+            try {
+                if (EntityQuery.use(delegator).from("ServiceSemaphore").where("serviceName", model.name).queryOne() == null) {
+                    delegator.create("ServiceSemaphore", "serviceName", model.name, "lockedByInstanceId", JobManager.instanceId,
+                            "lockThread", Thread.currentThread().getName(), "lockTime", lockTime);
+                }
+                TransactionUtil.commit(beganTx);
+            } catch (GenericEntityException e) {
+                // most likely created concurrently by another caller
+                TransactionUtil.rollback(beganTx, "ServiceSemaphore: lock row not created", null);
+                if (Debug.verboseOn()) {
+                    Debug.logVerbose("Semaphore row of service [" + model.name + "] not created: " + e.getMessage(), module);
+                }
+            }
+        } catch (GenericTransactionException e) {
+            throw new SemaphoreFailException("Transaction error while creating semaphore of service [" + model.name + "]", e);
+        } finally {
+            if (parent != null) {
+                try {
+                    TransactionUtil.resume(parent);
+                } catch (GenericTransactionException e) {
+                    Debug.logError(e, module);
+                }
+            }
+        }
+    }
+
+    protected static class DbLock implements Lock {
+        protected Transaction lockTransaction;
+        protected final boolean contended;
+
+        protected DbLock(Transaction lockTransaction, boolean contended) {
+            this.lockTransaction = lockTransaction;
+            this.contended = contended;
+        }
+
+        @Override
+        public boolean isContended() {
+            return contended;
+        }
+
+        @Override
+        public synchronized void release() throws SemaphoreFailException {
+            if (lockTransaction == null) {
+                return;
+            }
+            Transaction current = null;
+            try {
+                if (TransactionUtil.isTransactionInPlace()) {
+                    current = TransactionUtil.suspend();
+                }
+                TransactionUtil.resume(lockTransaction);
+                lockTransaction = null;
+                TransactionUtil.commit(true);
+            } catch (GenericTransactionException e) {
+                throw new SemaphoreFailException("Transaction error while releasing semaphore lock", e);
+            } finally {
+                if (current != null) {
+                    try {
+                        TransactionUtil.resume(current);
+                    } catch (GenericTransactionException e) {
+                        Debug.logError(e, module);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.semaphore;
+
+import java.sql.Timestamp;
+
+import javax.transaction.Transaction;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.entity.GenericEntityException;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.transaction.GenericTransactionException;
+import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.entity.util.EntityQuery;
+import org.ofbiz.service.ModelService;
+import org.ofbiz.service.job.JobManager;
+
+/**
+ * Service semaphore provider that locks by creating a ServiceSemaphore entity row and, while it exists, polls for it
+ * every <code>semaphore-sleep</code> milliseconds (SCIPIO). This was the only implementation before providers.
+ */
+public class EntityServiceSemaphoreProvider implements ServiceSemaphoreProvider {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    @Override
+    public Lock acquire(Delegator delegator, ModelService model, Timestamp lockTime, long waitMillis) throws SemaphoreFailException {
+        EntityLock lock = new EntityLock(delegator, model, lockTime);
+        if (!lock.checkLockNeedToWait()) {
+            return lock;
+        }
+        lock.contended = true;
+        // get the wait and sleep values
+        long maxWaitCount = waitMillis / model.semaphoreSleep;
+        long sleep = model.semaphoreSleep;
+        for (long wait = 0; wait < maxWaitCount; wait++) {
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Debug.logInfo(e, "Sleep interrupted: ServiceSemaphone.waitOrFail()", module);
+            }
+
+            // try again
+            if (!lock.checkLockNeedToWait()) {
+                return lock;
+            }
+        }
+        return null;
+    }
+
+    protected static class EntityLock implements Lock {
+        protected final Delegator delegator;
+        protected final ModelService model;
+        protected final Timestamp lockTime;
+        protected GenericValue lock;
+        protected boolean contended;
+
+        protected EntityLock(Delegator delegator, ModelService model, Timestamp lockTime) {
+            this.delegator = delegator;
+            this.model = model;
+            this.lockTime = lockTime;
+        }
+
+        @Override
+        public boolean isContended() {
+            return contended;
+        }
+
+        @Override
+        public synchronized void release() throws SemaphoreFailException {
+            // remove the lock file
+            if (lock != null) {
+                dbWrite(lock, true);
+            }
+        }
+
+        protected boolean checkLockNeedToWait() throws SemaphoreFailException {
+            String threadName = Thread.currentThread().getName();
+            GenericValue semaphore;
+
+            try {
+                semaphore = EntityQuery.use(delegator).from("ServiceSemaphore").where("serviceName", model.name).queryOne();
+            } catch (GenericEntityException e) {
+                throw new SemaphoreFailException(e);
+            }
+
+            if (semaphore == null) {
+                semaphore = delegator.makeValue("ServiceSemaphore", "serviceName", model.name, "lockedByInstanceId", JobManager.instanceId, "lockThread", threadName, "lockTime", lockTime);
+
+                // use the special method below so we can reuse the unqiue tx functions
+                try {
+                    dbWrite(semaphore, false);
+                } catch (SemaphoreFailException e) {
+                    // can't write a new semaphore, need to wait
+                    return true;
+                }
+
+                // we own the lock, no waiting
+                return false;
+            }
+            // found a semaphore, need to wait
+            return true;
+        }
+
+        protected synchronized void dbWrite(GenericValue value, boolean delete) throws SemaphoreFailException {
+            Transaction parent = null;
+            boolean beganTx = false;
+            boolean isError = false;
+
+            try {
+                // prepare the suspended transaction
+                if (TransactionUtil.isTransactionInPlace()) {
+                    parent = TransactionUtil.suspend();
+                }
+                beganTx = TransactionUtil.begin();
+                if (!beganTx) {
+                    throw new SemaphoreFailException("Cannot obtain unique transaction for semaphore logging");
+                }
+
+                // store the value
+                try {
+                    if (delete) {
+                        value.refresh();
+                        value.remove();
+                        lock = null;
+                    } else {
+                        lock = value.create();
+                    }
+                } catch (GenericEntityException e) {
+                    // SCIPIO: In 99% of cases this is not an error and this is extremely verbose, so warn with message only for now
+                    //Debug.logError(e, module);
+                    Debug.logWarning("Cannot obtain unique transaction for semaphore logging: " + e.getMessage(), module);
+                    isError = true;
+                    throw new SemaphoreFailException("Cannot obtain unique transaction for semaphore logging");
+                } finally {
+                    if (isError) {
+                        try {
+                            TransactionUtil.rollback(beganTx, "ServiceSemaphore: dbWrite()", new Exception());
+                        } catch (GenericTransactionException e) {
+                            Debug.logError(e, module);
+                        }
+                    }
+                    if (!isError) {
+                        try {
+                            TransactionUtil.commit(beganTx);
+                        } catch (GenericTransactionException e) {
+                            Debug.logError(e, module);
+                        }
+                    }
+                }
+            } catch (GenericTransactionException e) {
+                Debug.logError(e, module);
+            } finally {
+                if (parent != null) {
+                    try {
+                        TransactionUtil.resume(parent);
+                    } catch (GenericTransactionException e) {
+                        Debug.logError(e, module);
+                    }
+                }
+            }
+        }
+    }
+}
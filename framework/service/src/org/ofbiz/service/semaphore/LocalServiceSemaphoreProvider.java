@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.semaphore;
+
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.service.ModelService;
+
+/**
+ * Service semaphore provider using a fair in-memory lock per delegator and service (SCIPIO).
+ * <p>
+ * Waiting callers are woken up as soon as the lock is released, without any database access. The locks are only
+ * visible in this JVM, so this is only for single-node deployments. Like the entity rows, the locks are not
+ * reentrant: a service cannot run itself through a nested call while holding its own lock.</p>
+ */
+public class LocalServiceSemaphoreProvider implements ServiceSemaphoreProvider {
+
+    private final ConcurrentHashMap<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    @Override
+    public Lock acquire(Delegator delegator, ModelService model, Timestamp lockTime, long waitMillis) throws SemaphoreFailException {
+        Semaphore semaphore = semaphores.computeIfAbsent(delegator.getDelegatorName() + "::" + model.name, k -> new Semaphore(1, true));
+        if (semaphore.tryAcquire()) {
+            return new LocalLock(semaphore, false);
+        }
+        if (waitMillis <= 0) {
+            return null;
+        }
+        try {
+            if (semaphore.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                return new LocalLock(semaphore, true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SemaphoreFailException("Interrupted while waiting for semaphore of service [" + model.name + "]", e);
+        }
+        return null;
+    }
+
+    protected static class LocalLock implements Lock {
+        protected final Semaphore semaphore;
+        protected final boolean contended;
+        protected final AtomicBoolean released = new AtomicBoolean();
+
+        protected LocalLock(Semaphore semaphore, boolean contended) {
+            this.semaphore = semaphore;
+            this.contended = contended;
+        }
+
+        @Override
+        public boolean isContended() {
+            return contended;
+        }
+
+        @Override
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+}
@@ -20,21 +20,18 @@ package org.ofbiz.service.semaphore;
 
 import java.sql.Timestamp;
 
-import javax.transaction.Transaction;
-
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.UtilDateTime;
+import org.ofbiz.base.util.UtilProperties;
 import org.ofbiz.entity.Delegator;
-import org.ofbiz.entity.GenericEntityException;
-import org.ofbiz.entity.GenericValue;
-import org.ofbiz.entity.transaction.GenericTransactionException;
-import org.ofbiz.entity.transaction.TransactionUtil;
-import org.ofbiz.entity.util.EntityQuery;
 import org.ofbiz.service.ModelService;
-import org.ofbiz.service.job.JobManager;
 
 /**
  * ServiceSemaphore
+ * <p>
+ * SCIPIO: 2.1.0: The locks are now granted by the {@link ServiceSemaphoreProvider} configured in
+ * <code>service.properties#semaphore.provider</code>, and their contention and wait times are recorded in
+ * {@link ServiceSemaphoreMetrics}.</p>
  */
 public class ServiceSemaphore {
     // TODO: add something to make sure semaphores are cleaned up on failures and when the thread somehow goes away without cleaning it up
@@ -45,11 +42,12 @@ public class ServiceSemaphore {
     public static final int SEMAPHORE_MODE_WAIT = 1;
     public static final int SEMAPHORE_MODE_NONE = 2;
 
+    private static final ServiceSemaphoreProvider provider = makeProvider(UtilProperties.getPropertyValue("service", "semaphore.provider", "entity")); // SCIPIO
+
     protected Delegator delegator;
-    protected GenericValue lock;
+    protected ServiceSemaphoreProvider.Lock lock; // SCIPIO: was GenericValue
     protected ModelService model;
 
-    protected int wait = 0;
     protected int mode = SEMAPHORE_MODE_NONE;
     protected Timestamp lockTime = null;
 
@@ -60,6 +58,29 @@ public class ServiceSemaphore {
         this.lock = null;
     }
 
+    private static ServiceSemaphoreProvider makeProvider(String name) { // SCIPIO
+        switch (name) {
+        case "entity":
+            return new EntityServiceSemaphoreProvider();
+        case "local":
+            return new LocalServiceSemaphoreProvider();
+        case "db-lock":
+            return new DbLockServiceSemaphoreProvider();
+        default:
+            try {
+                return (ServiceSemaphoreProvider) Class.forName(name, true, Thread.currentThread().getContextClassLoader()).getConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                Debug.logError(e, "Invalid service semaphore provider [" + name + "]; using entity", module);
+                return new EntityServiceSemaphoreProvider();
+            }
+        }
+    }
+
+    /** Returns the configured semaphore provider (SCIPIO). */
+    public static ServiceSemaphoreProvider getProvider() {
+        return provider;
+    }
+
     public void acquire() throws SemaphoreWaitException, SemaphoreFailException {
         if (mode == SEMAPHORE_MODE_NONE) {
             return;
@@ -67,9 +88,18 @@ public class ServiceSemaphore {
 
         lockTime = UtilDateTime.nowTimestamp();
 
-        if (this.checkLockNeedToWait()) {
-            waitOrFail();
+        long waitMillis = (mode == SEMAPHORE_MODE_WAIT) ? model.semaphoreWait * 1000L : 0;
+        ServiceSemaphoreProvider.Lock lock = null;
+        try {
+            lock = provider.acquire(delegator, model, lockTime, waitMillis);
+        } finally {
+            ServiceSemaphoreMetrics.getMetrics(model.name).record(lock != null, lock == null || lock.isContended(),
+                    System.currentTimeMillis() - lockTime.getTime());
+        }
+        if (lock == null) {
+            fail();
         }
+        this.lock = lock;
     }
 
     public synchronized void release() throws SemaphoreFailException {
@@ -77,132 +107,22 @@ public class ServiceSemaphore {
             return;
         }
 
-        // remove the lock file
         if (lock != null) {
-            dbWrite(lock, true);
+            lock.release();
+            lock = null;
         }
     }
 
-    private void waitOrFail() throws SemaphoreWaitException, SemaphoreFailException {
+    private void fail() throws SemaphoreWaitException, SemaphoreFailException {
         if (SEMAPHORE_MODE_FAIL == mode) {
             // fail
             throw new SemaphoreFailException("Service [" + model.name + "] is locked");
         } else if (SEMAPHORE_MODE_WAIT == mode) {
-            // get the wait and sleep values
-            long maxWaitCount = ((model.semaphoreWait * 1000) / model.semaphoreSleep);
-            long sleep = model.semaphoreSleep;
-
-            boolean timedOut = true;
-            while (wait < maxWaitCount) {
-                wait++;
-                try {
-                    Thread.sleep(sleep);
-                } catch (InterruptedException e) {
-                    Debug.logInfo(e, "Sleep interrupted: ServiceSemaphone.waitOrFail()", module);
-                }
-
-                // try again
-                if (!checkLockNeedToWait()) {
-                    timedOut = false;
-                    break;
-                }
-            }
-            if (timedOut) {
-                double waitTimeSec = ((System.currentTimeMillis() - lockTime.getTime()) / 1000.0);
-                String errMsg = "Service [" + model.name + "] with wait semaphore exceeded wait timeout, waited [" + waitTimeSec + "], wait started at " + lockTime;
-                throw new SemaphoreWaitException(errMsg);
-            }
-        } else if (SEMAPHORE_MODE_NONE == mode) {
-            Debug.logWarning("Semaphore mode [none] attempted to aquire a lock; but should not have!", module);
+            double waitTimeSec = ((System.currentTimeMillis() - lockTime.getTime()) / 1000.0);
+            String errMsg = "Service [" + model.name + "] with wait semaphore exceeded wait timeout, waited [" + waitTimeSec + "], wait started at " + lockTime;
+            throw new SemaphoreWaitException(errMsg);
         } else {
             throw new SemaphoreFailException("Found invalid Semaphore mode [" + mode + "]");
         }
     }
-
-    private boolean checkLockNeedToWait() throws SemaphoreFailException {
-        String threadName = Thread.currentThread().getName();
-        GenericValue semaphore;
-
-        try {
-            semaphore = EntityQuery.use(delegator).from("ServiceSemaphore").where("serviceName", model.name).queryOne();
-        } catch (GenericEntityException e) {
-            throw new SemaphoreFailException(e);
-        }
-
-        if (semaphore == null) {
-            semaphore = delegator.makeValue("ServiceSemaphore", "serviceName", model.name, "lockedByInstanceId", JobManager.instanceId, "lockThread", threadName, "lockTime", lockTime);
-
-            // use the special method below so we can reuse the unqiue tx functions
-            try {
-                dbWrite(semaphore, false);
-            } catch (SemaphoreFailException e) {
-                // can't write a new semaphore, need to wait
-                return true;
-            }
-
-            // we own the lock, no waiting
-            return false;
-        }
-        // found a semaphore, need to wait
-        return true;
-    }
-
-    private synchronized void dbWrite(GenericValue value, boolean delete) throws SemaphoreFailException {
-        Transaction parent = null;
-        boolean beganTx = false;
-        boolean isError = false;
-
-        try {
-            // prepare the suspended transaction
-            if (TransactionUtil.isTransactionInPlace()) {
-                parent = TransactionUtil.suspend();
-            }
-            beganTx = TransactionUtil.begin();
-            if (!beganTx) {
-                throw new SemaphoreFailException("Cannot obtain unique transaction for semaphore logging");
-            }
-
-            // store the value
-            try {
-                if (delete) {
-                    value.refresh();
-                    value.remove();
-                    lock = null;
-                } else {
-                    lock = value.create();
-                }
-            } catch (GenericEntityException e) {
-                // SCIPIO: In 99% of cases this is not an error and this is extremely verbose, so warn with message only for now
-                //Debug.logError(e, module);
-                Debug.logWarning("Cannot obtain unique transaction for semaphore logging: " + e.getMessage(), module);
-                isError = true;
-                throw new SemaphoreFailException("Cannot obtain unique transaction for semaphore logging");
-            } finally {
-                if (isError) {
-                    try {
-                        TransactionUtil.rollback(beganTx, "ServiceSemaphore: dbWrite()", new Exception());
-                    } catch (GenericTransactionException e) {
-                        Debug.logError(e, module);
-                    }
-                }
-                if (!isError) {
-                    try {
-                        TransactionUtil.commit(beganTx);
-                    } catch (GenericTransactionException e) {
-                        Debug.logError(e, module);
-                    }
-                }
-            }
-        } catch (GenericTransactionException e) {
-            Debug.logError(e, module);
-        } finally {
-            if (parent != null) {
-                try {
-                    TransactionUtil.resume(parent);
-                } catch (GenericTransactionException e) {
-                    Debug.logError(e, module);
-                }
-            }
-        }
-    }
 }
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.semaphore;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention and wait time counters of the semaphore of one service, kept since startup (SCIPIO).
+ */
+public final class ServiceSemaphoreMetrics {
+
+    private static final ConcurrentHashMap<String, ServiceSemaphoreMetrics> metricsByService = new ConcurrentHashMap<>();
+
+    private final String serviceName;
+    private final LongAdder acquiredCount = new LongAdder();
+    private final LongAdder contendedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder totalWaitMillis = new LongAdder();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    private ServiceSemaphoreMetrics(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public static ServiceSemaphoreMetrics getMetrics(String serviceName) {
+        return metricsByService.computeIfAbsent(serviceName, ServiceSemaphoreMetrics::new);
+    }
+
+    /** Returns the metrics of all services whose semaphore was used since startup, by service name. */
+    public static Map<String, ServiceSemaphoreMetrics> getAllMetrics() {
+        return Collections.unmodifiableMap(metricsByService);
+    }
+
+    void record(boolean acquired, boolean contended, long waitMillis) {
+        if (acquired) {
+            acquiredCount.increment();
+        } else {
+            failedCount.increment();
+        }
+        if (contended) {
+            contendedCount.increment();
+        }
+        totalWaitMillis.add(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /** Returns the number of times the lock was acquired. */
+    public long getAcquiredCount() {
+        return acquiredCount.sum();
+    }
+
+    /** Returns the number of lock requests that found the lock held, whether they got it later or not. */
+    public long getContendedCount() {
+        return contendedCount.sum();
+    }
+
+    /** Returns the number of lock requests that failed or timed out. */
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /** Returns the total time spent acquiring the lock, in milliseconds. */
+    public long getTotalWaitMillis() {
+        return totalWaitMillis.sum();
+    }
+
+    /** Returns the longest time spent acquiring the lock, in milliseconds. */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("serviceName", serviceName);
+        map.put("acquiredCount", getAcquiredCount());
+        map.put("contendedCount", getContendedCount());
+        map.put("failedCount", getFailedCount());
+        map.put("totalWaitMillis", getTotalWaitMillis());
+        map.put("maxWaitMillis", getMaxWaitMillis());
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
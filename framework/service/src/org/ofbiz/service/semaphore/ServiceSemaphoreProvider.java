@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.semaphore;
+
+import java.sql.Timestamp;
+
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.service.ModelService;
+
+/**
+ * Backend of {@link ServiceSemaphore} that grants the per-service locks (SCIPIO).
+ * <p>
+ * Selected by <code>service.properties#semaphore.provider</code>: <code>entity</code> (default, ServiceSemaphore
+ * entity rows with sleep-polling), <code>local</code> (JVM-local fair locks, single-node only), <code>db-lock</code>
+ * (blocking row lock taken by an UPDATE of the ServiceSemaphore row, for clusters), or the name of a class
+ * implementing this interface with a public no-argument constructor. All nodes sharing a database must use the same
+ * provider.</p>
+ */
+public interface ServiceSemaphoreProvider {
+
+    /**
+     * Acquires the lock of the given service, waiting up to <code>waitMillis</code> for it if it is held (0 for no wait).
+     * Returns null if the lock could not be acquired in that time.
+     */
+    Lock acquire(Delegator delegator, ModelService model, Timestamp lockTime, long waitMillis) throws SemaphoreFailException;
+
+    /**
+     * A held service lock.
+     */
+    interface Lock {
+        /** Returns true if the lock was held by someone else when requested, so the caller had to wait. */
+        boolean isContended();
+
+        /** Releases the lock; does nothing if already released. */
+        void release() throws SemaphoreFailException;
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.ofbiz.base.util.UtilDateTime;
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.condition.EntityCondition;
+import org.ofbiz.entity.condition.EntityOperator;
+import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.entity.util.EntityQuery;
+import org.ofbiz.service.job.Job;
+import org.ofbiz.service.job.JobManager;
+import org.ofbiz.service.testtools.OFBizTestCase;
+
+/**
+ * Tests the batch claim of polled jobs by concurrent instances (SCIPIO).
+ */
+public class JobClaimTests extends OFBizTestCase {
+
+    private static final String POOL_ID = "testClaimPool";
+    private static final int JOB_COUNT = 20;
+
+    public JobClaimTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        Timestamp runTime = UtilDateTime.nowTimestamp();
+        List<GenericValue> jobs = new ArrayList<>(JOB_COUNT);
+        for (int i = 0; i < JOB_COUNT; i++) {
+            jobs.add(delegator.makeValue("JobSandbox", "jobId", "TEST_CLAIM_" + i, "jobName", "Claim test job " + i,
+                    "runTime", runTime, "poolId", POOL_ID, "serviceName", "testScv"));
+        }
+        delegator.storeAll(jobs);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delegator.removeByAnd("JobSandbox", "poolId", POOL_ID);
+    }
+
+    private List<Job> claim(JobManager jobManager, int limit, String claimInstanceId) throws Exception {
+        EntityCondition mainCondition = EntityCondition.makeCondition(UtilMisc.toList(
+                EntityCondition.makeCondition("poolId", POOL_ID),
+                EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null)));
+        List<Job> poll = new ArrayList<>(limit);
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            jobManager.claimAndCollectJobs(dispatcher.getDispatchContext(), delegator, limit, mainCondition, poll, false, claimInstanceId);
+            TransactionUtil.commit(beganTransaction);
+        } catch (Exception e) {
+            TransactionUtil.rollback(beganTransaction, "Job claim test failed", e);
+            throw e;
+        }
+        return poll;
+    }
+
+    private Set<String> getClaimedJobIds(String claimInstanceId) throws Exception {
+        Set<String> jobIds = new HashSet<>();
+        for (GenericValue jobValue : EntityQuery.use(delegator).from("JobSandbox")
+                .where("poolId", POOL_ID, "runByInstanceId", claimInstanceId).queryList()) {
+            jobIds.add(jobValue.getString("jobId"));
+        }
+        return jobIds;
+    }
+
+    /**
+     * Two claimers race for the same candidates; the one that loses them (depending on the database, at the update
+     * or already at the candidate selection) must go on with the next candidates, so both fill their limit with
+     * disjoint jobs.
+     */
+    public void testConcurrentClaim() throws Exception {
+        JobManager jobManager = dispatcher.getJobManager();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Job>>> results = new ArrayList<>();
+            for (String claimInstanceId : UtilMisc.toList("test-claimer-1", "test-claimer-2")) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return claim(jobManager, JOB_COUNT / 2, claimInstanceId);
+                }));
+            }
+            start.countDown();
+            List<Job> poll1 = results.get(0).get(60, TimeUnit.SECONDS);
+            List<Job> poll2 = results.get(1).get(60, TimeUnit.SECONDS);
+            assertEquals("Jobs polled by claimer 1", JOB_COUNT / 2, poll1.size());
+            assertEquals("Jobs polled by claimer 2", JOB_COUNT / 2, poll2.size());
+
+            Set<String> claimed1 = getClaimedJobIds("test-claimer-1");
+            Set<String> claimed2 = getClaimedJobIds("test-claimer-2");
+            assertEquals("Jobs owned by claimer 1", JOB_COUNT / 2, claimed1.size());
+            assertEquals("Jobs owned by claimer 2", JOB_COUNT / 2, claimed2.size());
+            for (Job job : poll1) {
+                assertTrue("Polled job " + job.getJobId() + " owned by claimer 1", claimed1.contains(job.getJobId()));
+            }
+            for (Job job : poll2) {
+                assertTrue("Polled job " + job.getJobId() + " owned by claimer 2", claimed2.contains(job.getJobId()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
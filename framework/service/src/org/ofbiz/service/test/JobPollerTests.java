@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.ofbiz.base.concurrent.ExecutionPool;
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.entity.util.EntityQuery;
+import org.ofbiz.service.ServiceOptions;
+import org.ofbiz.service.job.JobPoller;
+import org.ofbiz.service.job.JobPoller.CappedThreadLauncher;
+import org.ofbiz.service.job.JobPoller.IdleBackoff;
+import org.ofbiz.service.job.JobPoller.JobStartLatencyStats;
+import org.ofbiz.service.job.JobPoller.WakeUpSignal;
+import org.ofbiz.service.testtools.OFBizTestCase;
+
+/**
+ * Tests the JobPoller job launching and polling helpers (SCIPIO).
+ */
+public class JobPollerTests extends OFBizTestCase {
+
+    private static final long WAIT_TIMEOUT = 10000;
+    private static final String WAKE_UP_POOL = "testWakeUpPool"; // Not run from, so the scheduled jobs never run
+
+    public JobPollerTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (GenericValue job : EntityQuery.use(delegator).from("JobSandbox").where("poolId", WAKE_UP_POOL).queryList()) {
+            String runtimeDataId = job.getString("runtimeDataId");
+            job.remove();
+            if (runtimeDataId != null) {
+                delegator.removeByAnd("RuntimeData", UtilMisc.toMap("runtimeDataId", runtimeDataId));
+            }
+        }
+        super.tearDown();
+    }
+
+    private static void waitFor(String message, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Task blocking until released, recording how many tasks ran and the most running at once.
+     */
+    private static class BlockingTask implements Runnable {
+        private final CountDownLatch release;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final AtomicInteger ranCount;
+
+        BlockingTask(CountDownLatch release, AtomicInteger running, AtomicInteger maxRunning, AtomicInteger ranCount) {
+            this.release = release;
+            this.running = running;
+            this.maxRunning = maxRunning;
+            this.ranCount = ranCount;
+        }
+
+        @Override
+        public void run() {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+                ranCount.incrementAndGet();
+            }
+        }
+    }
+
+    public void testVirtualThreadPermitCap() throws Exception {
+        CappedThreadLauncher launcher = new CappedThreadLauncher(ExecutionPool.getVirtualThreadFactory("Scipio-TestJobVirtual"), 2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger ranCount = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            launcher.execute(new BlockingTask(release, running, maxRunning, ranCount), "testScv", null, 10);
+        }
+        waitFor("two tasks running", () -> running.get() == 2);
+        assertEquals("waiting tasks", 3, launcher.getWaitingCount());
+        assertEquals("running tasks", 2, launcher.getRunningCount());
+        // Another service has its own permits
+        CountDownLatch otherRelease = new CountDownLatch(1);
+        AtomicInteger otherRunning = new AtomicInteger();
+        launcher.execute(new BlockingTask(otherRelease, otherRunning, new AtomicInteger(), new AtomicInteger()), "testScvOther", 1, 10);
+        waitFor("other service task running", () -> otherRunning.get() == 1);
+        otherRelease.countDown();
+        release.countDown();
+        waitFor("all tasks ran", () -> ranCount.get() == 5);
+        assertEquals("most tasks running at once", 2, maxRunning.get());
+        waitFor("no task running", () -> launcher.getRunningCount() == 0);
+        assertEquals("waiting tasks", 0, launcher.getWaitingCount());
+    }
+
+    public void testVirtualThreadWaitingLimit() throws Exception {
+        CappedThreadLauncher launcher = new CappedThreadLauncher(ExecutionPool.getVirtualThreadFactory("Scipio-TestJobVirtual"), 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger ranCount = new AtomicInteger();
+        launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", null, 2);
+        waitFor("first task running", () -> running.get() == 1);
+        launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", null, 2);
+        launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", null, 2);
+        try {
+            launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", null, 2);
+            fail("Task beyond the waiting limit was not rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals("waiting tasks", 2, launcher.getWaitingCount());
+        // Drained tasks never run, like the jobs dequeued on shutdown
+        List<Runnable> drained = launcher.drainWaiting();
+        assertEquals("drained tasks", 2, drained.size());
+        release.countDown();
+        waitFor("no task running", () -> launcher.getRunningCount() == 0);
+        Thread.sleep(100);
+        assertEquals("tasks ran", 1, ranCount.get());
+    }
+
+    public void testVirtualThreadMaxChange() throws Exception {
+        CappedThreadLauncher launcher = new CappedThreadLauncher(ExecutionPool.getVirtualThreadFactory("Scipio-TestJobVirtual"), 5);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger ranCount = new AtomicInteger();
+        launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", 1, 10);
+        waitFor("first task running", () -> running.get() == 1);
+        launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", 1, 10);
+        assertEquals("waiting tasks under max 1", 1, launcher.getWaitingCount());
+        // A raised maximum (changed service definition) applies to the next tasks right away
+        launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", 3, 10);
+        launcher.execute(new BlockingTask(release, running, new AtomicInteger(), ranCount), "testScv", 3, 10);
+        waitFor("tasks under max 3 running", () -> running.get() == 3);
+        assertEquals("waiting tasks", 1, launcher.getWaitingCount());
+        release.countDown();
+        waitFor("all tasks ran", () -> ranCount.get() == 4);
+    }
+
+    public void testWakeUpSignal() throws Exception {
+        WakeUpSignal signal = new WakeUpSignal();
+        long start = System.currentTimeMillis();
+        assertFalse("not woken up on timeout", signal.await(50));
+        assertTrue("waited the wait time", System.currentTimeMillis() - start >= 50);
+
+        // A wake-up sent before the wait ends the next wait right away, once
+        signal.wakeUp();
+        start = System.currentTimeMillis();
+        assertTrue("pending wake-up", signal.await(WAIT_TIMEOUT));
+        assertTrue("pending wake-up returned right away", System.currentTimeMillis() - start < WAIT_TIMEOUT / 2);
+        assertFalse("wake-up consumed", signal.await(10));
+
+        // A wake-up during the wait cuts it short
+        Thread waker = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            signal.wakeUp();
+        });
+        start = System.currentTimeMillis();
+        waker.start();
+        assertTrue("woken up during the wait", signal.await(WAIT_TIMEOUT));
+        assertTrue("wait cut short", System.currentTimeMillis() - start < WAIT_TIMEOUT / 2);
+        waker.join();
+    }
+
+    public void testIdleBackoff() {
+        IdleBackoff backoff = new IdleBackoff(1000);
+        assertEquals("first idle poll", 100, backoff.nextWaitTime(100, false));
+        assertEquals("second idle poll", 200, backoff.nextWaitTime(100, false));
+        assertEquals("third idle poll", 400, backoff.nextWaitTime(100, false));
+        assertEquals("fourth idle poll", 800, backoff.nextWaitTime(100, false));
+        assertEquals("capped at max wait", 1000, backoff.nextWaitTime(100, false));
+        assertEquals("stays at max wait", 1000, backoff.nextWaitTime(100, false));
+        assertEquals("jobs found", 100, backoff.nextWaitTime(100, true));
+        assertEquals("backoff restarted after jobs found", 100, backoff.nextWaitTime(100, false));
+        assertEquals("backoff grows again", 200, backoff.nextWaitTime(100, false));
+        backoff.reset();
+        assertEquals("backoff restarted after wake-up", 100, backoff.nextWaitTime(100, false));
+
+        IdleBackoff disabled = new IdleBackoff(-1);
+        assertEquals("no backoff when disabled", 100, disabled.nextWaitTime(100, false));
+        assertEquals("no backoff when disabled", 100, disabled.nextWaitTime(100, false));
+        IdleBackoff belowPollWait = new IdleBackoff(50);
+        assertEquals("no backoff when max wait below poll wait", 100, belowPollWait.nextWaitTime(100, false));
+        assertEquals("no backoff when max wait below poll wait", 100, belowPollWait.nextWaitTime(100, false));
+    }
+
+    private static long getWakeUpCount() {
+        return ((Number) JobPoller.getInstance().getGeneralPoolState().get("wakeUpCount")).longValue();
+    }
+
+    private void scheduleDueJob() throws Exception {
+        dispatcher.getJobManager().schedule(null, "testScv", new HashMap<String, Object>(),
+                ServiceOptions.asyncPersist().jobPool(WAKE_UP_POOL).startTime(System.currentTimeMillis()));
+    }
+
+    public void testWakeUpAfterCommit() throws Exception {
+        long wakeUpCount = getWakeUpCount();
+        boolean beganTransaction = TransactionUtil.begin();
+        assertTrue("began transaction", beganTransaction);
+        try {
+            scheduleDueJob();
+            assertEquals("no wake-up before rollback", wakeUpCount, getWakeUpCount());
+        } finally {
+            TransactionUtil.rollback(beganTransaction, "Testing wake-up on rollback", null);
+        }
+        assertEquals("no wake-up after rollback", wakeUpCount, getWakeUpCount());
+
+        beganTransaction = TransactionUtil.begin();
+        try {
+            scheduleDueJob();
+            assertEquals("no wake-up before commit", wakeUpCount, getWakeUpCount());
+            TransactionUtil.commit(beganTransaction);
+        } catch (Exception e) {
+            TransactionUtil.rollback(beganTransaction, "Testing wake-up on commit", e);
+            throw e;
+        }
+        assertTrue("wake-up after commit", getWakeUpCount() > wakeUpCount);
+    }
+
+    /**
+     * Exposes the sample registration for testing.
+     */
+    private static class TestJobStartLatencyStats extends JobStartLatencyStats {
+        TestJobStartLatencyStats(int sampleSize) {
+            super(sampleSize);
+        }
+
+        @Override
+        protected void registerJobStart(long latency) {
+            super.registerJobStart(latency);
+        }
+    }
+
+    public void testJobStartLatencyPercentiles() {
+        TestJobStartLatencyStats stats = new TestJobStartLatencyStats(100);
+        assertNull("no percentiles without jobs", stats.getPercentiles(50));
+        assertFalse("no p50 without jobs", stats.toMap(new HashMap<String, Object>()).containsKey("p50"));
+        for (int i = 100; i >= 1; i--) {
+            stats.registerJobStart(i);
+        }
+        long[] percentiles = stats.getPercentiles(0, 50, 90, 99, 100);
+        assertEquals("p0", 1, percentiles[0]);
+        assertEquals("p50", 50, percentiles[1]);
+        assertEquals("p90", 90, percentiles[2]);
+        assertEquals("p99", 99, percentiles[3]);
+        assertEquals("p100", 100, percentiles[4]);
+        assertEquals("count", 100, stats.getCount());
+        assertEquals("max", 100, stats.getMaxLatency());
+
+        // Only the most recent jobs count toward the percentiles, but the max is kept
+        for (int i = 0; i < 100; i++) {
+            stats.registerJobStart(10);
+        }
+        assertEquals("p99 of recent jobs", 10, stats.getPercentiles(99)[0]);
+        assertEquals("count", 200, stats.getCount());
+        assertEquals("max of all jobs", 100, stats.getMaxLatency());
+
+        TestJobStartLatencyStats small = new TestJobStartLatencyStats(10);
+        small.registerJobStart(-5); // Started before its scheduled time
+        small.registerJobStart(7);
+        assertEquals("negative latency counts as 0", 0, small.getPercentiles(50)[0]);
+        assertEquals("p100 of two jobs", 7, small.getPercentiles(100)[0]);
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ofbiz.base.util.UtilDateTime;
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.base.util.UtilXml;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.service.config.ServiceConfigException;
+import org.ofbiz.service.config.model.RunFromPool;
+import org.ofbiz.service.config.model.ServiceConfig;
+import org.ofbiz.service.job.Job;
+import org.ofbiz.service.job.JobPoller;
+import org.ofbiz.service.testtools.OFBizTestCase;
+
+/**
+ * Tests the run-from-pool worker group settings, the per-pool poll limits of weighted pools and worker groups, and
+ * the routing of polled jobs to their worker group pool (SCIPIO).
+ */
+public class JobPoolPollTests extends OFBizTestCase {
+
+    private static final String WORKER_POOL_ID = "testWorkerGroupPool";
+    private static final int JOB_COUNT = 3;
+
+    public JobPoolPollTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delegator.removeByAnd("JobSandbox", "poolId", WORKER_POOL_ID);
+    }
+
+    /**
+     * Reads the run-from-pool elements of a thread-pool, given as XML.
+     */
+    private static List<RunFromPool> readRunFromPools(String runFromPoolsXml) throws Exception {
+        String xml = "<service-config><service-engine name=\"default\"><authorization service-name=\"userLogin\"/>"
+                + "<thread-pool send-to-pool=\"pool\" jobs=\"100\">" + runFromPoolsXml + "</thread-pool></service-engine></service-config>";
+        return ServiceConfig.create(UtilXml.readXmlDocument(xml, false).getDocumentElement()).getServiceEngine("default")
+                .getThreadPool().getRunFromPools();
+    }
+
+    private static int sum(Map<String, Integer> poolLimits) {
+        int sum = 0;
+        for (int poolLimit : poolLimits.values()) {
+            sum += poolLimit;
+        }
+        return sum;
+    }
+
+    public void testWorkerGroupThreads() throws Exception {
+        List<RunFromPool> runFromPools = readRunFromPools("<run-from-pool name=\"plain\"/>"
+                + "<run-from-pool name=\"group\" max-threads=\"4\"/>"
+                + "<run-from-pool name=\"sized\" min-threads=\"2\" max-threads=\"3\" jobs=\"7\"/>");
+        assertFalse("No worker group without max-threads", runFromPools.get(0).hasWorkerGroup());
+        assertEquals("No min-threads without a worker group", 0, runFromPools.get(0).getMinThreads());
+        assertTrue("Worker group", runFromPools.get(1).hasWorkerGroup());
+        assertEquals("Default min-threads of a worker group", 1, runFromPools.get(1).getMinThreads());
+        assertEquals("max-threads", 4, runFromPools.get(1).getMaxThreads());
+        assertEquals("min-threads", 2, runFromPools.get(2).getMinThreads());
+        assertEquals("jobs", 7, runFromPools.get(2).getJobs());
+        for (String invalid : new String[] { "min-threads=\"5\" max-threads=\"4\"", "min-threads=\"0\" max-threads=\"4\"",
+                "max-threads=\"-1\"", "max-threads=\"x\"" }) {
+            try {
+                readRunFromPools("<run-from-pool name=\"invalid\" " + invalid + "/>");
+                fail("Invalid run-from-pool accepted: " + invalid);
+            } catch (ServiceConfigException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testWeightedShares() throws Exception {
+        List<RunFromPool> runFromPools = readRunFromPools("<run-from-pool name=\"heavy\" weight=\"3\"/>"
+                + "<run-from-pool name=\"light\" weight=\"1\"/><run-from-pool name=\"other\"/>");
+        Map<String, Integer> poolLimits = JobPoller.getPoolPollLimits(runFromPools, Collections.emptyMap(), 50);
+        // total weight 3 + 1 + 1 for the unweighted pool
+        assertEquals("Heavy share", Integer.valueOf(30), poolLimits.get("heavy"));
+        assertEquals("Light share", Integer.valueOf(10), poolLimits.get("light"));
+        assertFalse("Unweighted pools polled with the main pool", poolLimits.containsKey("other"));
+
+        assertTrue("No shares without capacity", JobPoller.getPoolPollLimits(runFromPools, Collections.emptyMap(), 0).isEmpty());
+        assertTrue("No shares without weighted pools", JobPoller.getPoolPollLimits(readRunFromPools("<run-from-pool name=\"other\"/>"),
+                Collections.emptyMap(), 50).isEmpty());
+    }
+
+    /**
+     * Rounded up, the shares could add up to more than the free capacity; they must not.
+     */
+    public void testWeightedSharesWithinCapacity() throws Exception {
+        List<RunFromPool> runFromPools = readRunFromPools("<run-from-pool name=\"a\" weight=\"1\"/><run-from-pool name=\"b\" weight=\"1\"/>"
+                + "<run-from-pool name=\"c\" weight=\"1\"/><run-from-pool name=\"other\"/>");
+        for (int remainingCapacity = 1; remainingCapacity <= 20; remainingCapacity++) {
+            Map<String, Integer> poolLimits = JobPoller.getPoolPollLimits(runFromPools, Collections.emptyMap(), remainingCapacity);
+            assertTrue("Shares within capacity " + remainingCapacity + ": " + poolLimits, sum(poolLimits) <= remainingCapacity);
+            assertTrue("First share of capacity " + remainingCapacity, poolLimits.get("a") >= 1);
+        }
+        Map<String, Integer> poolLimits = JobPoller.getPoolPollLimits(runFromPools, Collections.emptyMap(), 2);
+        assertEquals("Shares of a small capacity", UtilMisc.toMap("a", 1, "b", 1, "c", 0), poolLimits);
+    }
+
+    public void testWorkerGroupLimits() throws Exception {
+        List<RunFromPool> runFromPools = readRunFromPools("<run-from-pool name=\"group\" max-threads=\"2\" weight=\"5\"/>"
+                + "<run-from-pool name=\"weighted\" weight=\"1\"/>");
+        Map<String, Integer> workerGroupCapacities = new HashMap<>();
+        workerGroupCapacities.put("group", 8);
+        Map<String, Integer> poolLimits = JobPoller.getPoolPollLimits(runFromPools, workerGroupCapacities, 10);
+        assertEquals("Worker group gets its own queue capacity, not a share", Integer.valueOf(8), poolLimits.get("group"));
+        assertEquals("Weighted share without the worker group", Integer.valueOf(5), poolLimits.get("weighted"));
+        workerGroupCapacities.put("group", -1);
+        assertEquals("Full worker group queue", Integer.valueOf(0), JobPoller.getPoolPollLimits(runFromPools, workerGroupCapacities, 0).get("group"));
+    }
+
+    public void testWorkerGroupRouting() throws Exception {
+        Timestamp runTime = UtilDateTime.nowTimestamp();
+        List<GenericValue> jobs = new ArrayList<>(JOB_COUNT);
+        for (int i = 0; i < JOB_COUNT; i++) {
+            jobs.add(delegator.makeValue("JobSandbox", "jobId", "TEST_WORKER_GROUP_" + i, "jobName", "Worker group test job " + i,
+                    "runTime", runTime, "poolId", WORKER_POOL_ID, "serviceName", "testScv"));
+        }
+        delegator.storeAll(jobs);
+
+        // no main pool capacity: only the worker group pool is polled, up to its own limit
+        List<Job> poll = dispatcher.getJobManager().poll(0, UtilMisc.toMap(WORKER_POOL_ID, JOB_COUNT - 1), UtilMisc.toList(WORKER_POOL_ID));
+        List<Job> workerGroupPoll = new ArrayList<>();
+        for (Job job : poll) {
+            if (job.getJobId().startsWith("TEST_WORKER_GROUP_")) {
+                workerGroupPoll.add(job);
+            }
+        }
+        assertEquals("Jobs polled for the worker group", JOB_COUNT - 1, workerGroupPoll.size());
+        for (Job job : workerGroupPoll) {
+            assertEquals("Pool of job " + job.getJobId(), WORKER_POOL_ID, job.getJobPool());
+        }
+    }
+}
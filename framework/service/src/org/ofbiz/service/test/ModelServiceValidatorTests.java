@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.ofbiz.base.test.GenericTestCaseBase;
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.service.ModelParam;
+import org.ofbiz.service.ModelService;
+import org.ofbiz.service.ServiceUtil;
+import org.ofbiz.service.ServiceValidationException;
+
+/**
+ * Checks that the compiled IN/OUT validation reports the same errors, in the same order, as the uncompiled
+ * ModelService.validate(Map, Map, boolean, ModelService, String, Locale), and compares their timings (SCIPIO).
+ */
+public class ModelServiceValidatorTests extends GenericTestCaseBase {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    private static final int TIMING_COUNT = 100000;
+
+    public ModelServiceValidatorTests(String name) {
+        super(name);
+    }
+
+    private static ModelParam makeParam(String name, String type, boolean optional) {
+        ModelParam param = new ModelParam();
+        param.name = name;
+        param.type = type;
+        param.mode = ModelService.IN_PARAM;
+        param.optional = optional;
+        param.validators = new ArrayList<>();
+        return param;
+    }
+
+    private static ModelService makeModel() {
+        ModelService model = new ModelService();
+        model.name = "testValidation";
+        model.addParam(makeParam("requiredA", "String", false));
+        model.addParam(makeParam("requiredB", "Integer", false));
+        model.addParam(makeParam("requiredC", "java.util.List", false));
+        model.addParam(makeParam("optionalA", "String", true));
+        model.addParam(makeParam("optionalB", "java.math.BigDecimal", true));
+        ModelParam email = makeParam("email", "String", true);
+        email.addValidator("org.ofbiz.base.util.UtilValidate", "isEmail", "Invalid email");
+        model.addParam(email);
+        ModelParam typed = makeParam("typed", "Long", true);
+        typed.addValidator("org.ofbiz.base.util.UtilValidate", null, "Typed must be a Long");
+        model.addParam(typed);
+        ModelParam broken = makeParam("broken", "String", true);
+        broken.addValidator("org.ofbiz.base.util.UtilValidate", "noSuchValidationMethod", "Broken validator");
+        model.addParam(broken);
+        return model;
+    }
+
+    /**
+     * The uncompiled IN validation, as ModelService.validate(Map, String, Locale, boolean) did it before the
+     * params were compiled: split the context into required and optional keys and check each with the static validate.
+     */
+    private static void validateUncompiled(ModelService model, Map<String, Object> context, Locale locale) throws ServiceValidationException {
+        Map<String, String> requiredInfo = new HashMap<>();
+        Map<String, String> optionalInfo = new HashMap<>();
+        for (ModelParam modelParam : model.getModelParamList()) {
+            if (modelParam.optional) {
+                optionalInfo.put(modelParam.name, modelParam.type);
+            } else {
+                requiredInfo.put(modelParam.name, modelParam.type);
+            }
+        }
+        Map<String, Object> requiredTest = new HashMap<>(context);
+        Map<String, Object> optionalTest = new HashMap<>();
+        List<String> requiredButNull = new ArrayList<>();
+        for (String key : new ArrayList<>(requiredTest.keySet())) {
+            Object value = requiredTest.get(key);
+            if (!requiredInfo.containsKey(key)) {
+                requiredTest.remove(key);
+                optionalTest.put(key, value);
+            } else if (value == null) {
+                requiredButNull.add(key);
+            }
+        }
+        if (requiredButNull.size() > 0) {
+            List<String> missingMsg = new ArrayList<>();
+            for (String missingKey : requiredButNull) {
+                missingMsg.add(UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale)
+                        + " [" + model.name + "." + missingKey + "]");
+            }
+            throw new ServiceValidationException(missingMsg, model, requiredButNull, null, ModelService.IN_PARAM);
+        }
+        ModelService.validate(requiredInfo, requiredTest, true, model, ModelService.IN_PARAM, locale);
+        ModelService.validate(optionalInfo, optionalTest, false, model, ModelService.IN_PARAM, locale);
+    }
+
+    private static List<String> getMessages(ModelService model, Map<String, Object> context, boolean compiled) {
+        try {
+            if (compiled) {
+                model.validate(context, ModelService.IN_PARAM, Locale.ENGLISH, false);
+            } else {
+                validateUncompiled(model, context, Locale.ENGLISH);
+            }
+        } catch (ServiceValidationException e) {
+            return e.getMessageList();
+        }
+        return null;
+    }
+
+    private static Map<String, Object> makeValidContext() {
+        return UtilMisc.toMap("requiredA", "a", "requiredB", 1, "requiredC", new ArrayList<>());
+    }
+
+    /**
+     * Checks that both validations report the same messages for the context and returns them.
+     */
+    private List<String> checkParity(ModelService model, Map<String, Object> context) {
+        List<String> uncompiled = getMessages(model, context, false);
+        List<String> compiled = getMessages(model, context, true);
+        if (uncompiled == null) {
+            assertNull("Compiled validation passed for " + context.keySet(), compiled);
+        } else {
+            assertEquals("Compiled validation messages for " + context.keySet(), uncompiled, compiled);
+        }
+        return compiled;
+    }
+
+    public void testValid() throws Exception {
+        ModelService model = makeModel();
+        Map<String, Object> context = makeValidContext();
+        context.put("optionalA", "b");
+        context.put("email", "test@example.com");
+        context.put("typed", 1L);
+        assertNull("Valid context", checkParity(model, context));
+    }
+
+    public void testMissing() throws Exception {
+        ModelService model = makeModel();
+        Map<String, Object> context = makeValidContext();
+        context.remove("requiredC");
+        context.remove("requiredA");
+        context.put("unknown", "x"); // missing params are reported before unknown ones
+        String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", Locale.ENGLISH);
+        assertEquals("Missing messages, sorted by name", UtilMisc.toList(errMsg + " [IN] [testValidation.requiredA]", errMsg + " [IN] [testValidation.requiredC]"),
+                checkParity(model, context));
+
+        context = makeValidContext();
+        context.put("requiredB", null);
+        assertEquals("Required but null message", UtilMisc.toList(errMsg + " [testValidation.requiredB]"), checkParity(model, context));
+    }
+
+    public void testExtra() throws Exception {
+        ModelService model = makeModel();
+        Map<String, Object> context = makeValidContext();
+        context.put("zExtra", "z");
+        context.put("aExtra", "a");
+        context.put("optionalB", "wrong type"); // unknown params are reported before optional type errors
+        assertEquals("Extra messages, sorted by name", UtilMisc.toList("Unknown parameter found: [testValidation.aExtra]", "Unknown parameter found: [testValidation.zExtra]"),
+                checkParity(model, context));
+    }
+
+    public void testType() throws Exception {
+        ModelService model = makeModel();
+        Map<String, Object> context = makeValidContext();
+        context.put("requiredB", "not an Integer");
+        context.put("optionalB", "not a BigDecimal"); // optional types are checked only once the required ones pass
+        assertEquals("Required type message", UtilMisc.toList("Type check failed for field [testValidation.requiredB]; expected type is [Integer]; actual type is [java.lang.String]"),
+                checkParity(model, context));
+
+        context = makeValidContext();
+        context.put("optionalA", 1);
+        context.put("optionalB", "not a BigDecimal");
+        List<String> messages = checkParity(model, context);
+        assertEquals("Optional type messages", 2, messages.size());
+        assertTrue("Optional type message optionalA", messages.contains("Type check failed for field [testValidation.optionalA]; expected type is [String]; actual type is [java.lang.Integer]"));
+        assertTrue("Optional type message optionalB", messages.contains("Type check failed for field [testValidation.optionalB]; expected type is [java.math.BigDecimal]; actual type is [java.lang.String]"));
+    }
+
+    public void testCustomValidators() throws Exception {
+        ModelService model = makeModel();
+        Map<String, Object> context = makeValidContext();
+        context.put("email", "not an email");
+        assertEquals("Validator method message", UtilMisc.toList("Invalid email"), checkParity(model, context));
+
+        context = makeValidContext();
+        context.put("typed", "not a Long");
+        assertEquals("Validator type check message", UtilMisc.toList("Typed must be a Long"), checkParity(model, context));
+
+        context = makeValidContext();
+        context.put("broken", "x");
+        assertEquals("Unresolved validator method message", UtilMisc.toList("Broken validator"), checkParity(model, context));
+    }
+
+    /*
+     * Benchmark: validates the same contexts with the uncompiled and the compiled validation and logs the timings
+     */
+    public void testTimingComparedToUncompiled() throws Exception {
+        ModelService model = makeModel();
+        Map<String, Object> context = makeValidContext();
+        context.put("optionalA", "b");
+        context.put("email", "test@example.com");
+        context.put("typed", 1L);
+        // warm up both paths
+        for (int i = 0; i < TIMING_COUNT / 10; i++) {
+            validateUncompiled(model, context, Locale.ENGLISH);
+            model.validate(context, ModelService.IN_PARAM, Locale.ENGLISH, false);
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < TIMING_COUNT; i++) {
+            validateUncompiled(model, context, Locale.ENGLISH);
+        }
+        long totalNanosUncompiled = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        for (int i = 0; i < TIMING_COUNT; i++) {
+            model.validate(context, ModelService.IN_PARAM, Locale.ENGLISH, false);
+        }
+        long totalNanosCompiled = System.nanoTime() - startTime;
+        Debug.logInfo("Validated " + TIMING_COUNT + " contexts uncompiled in " + (totalNanosUncompiled / 1000000) + " ms and compiled in "
+                + (totalNanosCompiled / 1000000) + " ms", module);
+    }
+}
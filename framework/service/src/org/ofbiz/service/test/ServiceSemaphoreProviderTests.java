@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.service.test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.ofbiz.base.util.UtilDateTime;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.condition.EntityCondition;
+import org.ofbiz.entity.condition.EntityOperator;
+import org.ofbiz.entity.config.model.EntityConfig;
+import org.ofbiz.entity.datasource.GenericHelperInfo;
+import org.ofbiz.entity.util.EntityQuery;
+import org.ofbiz.service.ModelService;
+import org.ofbiz.service.semaphore.DbLockServiceSemaphoreProvider;
+import org.ofbiz.service.semaphore.EntityServiceSemaphoreProvider;
+import org.ofbiz.service.semaphore.LocalServiceSemaphoreProvider;
+import org.ofbiz.service.semaphore.ServiceSemaphoreProvider;
+import org.ofbiz.service.testtools.OFBizTestCase;
+
+/**
+ * Tests the ServiceSemaphore providers: exclusion, no-wait failure, waiting for a release and release idempotence (SCIPIO).
+ */
+public class ServiceSemaphoreProviderTests extends OFBizTestCase {
+
+    private ExecutorService executor;
+
+    public ServiceSemaphoreProviderTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        delegator.removeByCondition("ServiceSemaphore", EntityCondition.makeCondition("serviceName", EntityOperator.LIKE, "testSemaphore%"));
+    }
+
+    private boolean isDerby() {
+        GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName("ServiceSemaphore"));
+        return "derby".equals(EntityConfig.getDatasource(helperInfo.getHelperBaseName()).getFieldTypeName());
+    }
+
+    private static ModelService makeModel(String name) {
+        ModelService model = new ModelService();
+        model.name = name;
+        model.semaphoreSleep = 50;
+        return model;
+    }
+
+    /**
+     * Holds the lock, checks that a no-wait acquire fails, then releases it while another thread waits for it.
+     */
+    private void checkProvider(ServiceSemaphoreProvider provider, ModelService model, boolean checkNoWait) throws Exception {
+        ServiceSemaphoreProvider.Lock lock = provider.acquire(delegator, model, UtilDateTime.nowTimestamp(), 0);
+        assertNotNull("First lock acquired", lock);
+        assertFalse("First lock not contended", lock.isContended());
+
+        if (checkNoWait) {
+            Future<ServiceSemaphoreProvider.Lock> noWait = executor.submit(() -> provider.acquire(delegator, model, UtilDateTime.nowTimestamp(), 0));
+            assertNull("Held lock not acquired without waiting", noWait.get(30, TimeUnit.SECONDS));
+        }
+
+        Future<ServiceSemaphoreProvider.Lock> waiting = executor.submit(() -> provider.acquire(delegator, model, UtilDateTime.nowTimestamp(), 10000));
+        Thread.sleep(200);
+        assertFalse("Waiter blocked while the lock is held", waiting.isDone());
+        lock.release();
+        lock.release(); // no-op
+        ServiceSemaphoreProvider.Lock waitedLock = waiting.get(30, TimeUnit.SECONDS);
+        assertNotNull("Waiter acquired the released lock", waitedLock);
+        assertTrue("Waiter lock contended", waitedLock.isContended());
+        executor.submit(() -> {
+            waitedLock.release();
+            return null;
+        }).get(30, TimeUnit.SECONDS);
+
+        lock = provider.acquire(delegator, model, UtilDateTime.nowTimestamp(), 0);
+        assertNotNull("Lock acquired again after release", lock);
+        lock.release();
+    }
+
+    public void testLocalProvider() throws Exception {
+        checkProvider(new LocalServiceSemaphoreProvider(), makeModel("testSemaphoreLocal"), true);
+    }
+
+    public void testEntityProvider() throws Exception {
+        ModelService model = makeModel("testSemaphoreEntity");
+        checkProvider(new EntityServiceSemaphoreProvider(), model, true);
+        assertNull("Released entity lock row removed", EntityQuery.use(delegator).from("ServiceSemaphore").where("serviceName", model.name).queryOne());
+    }
+
+    public void testDbLockProvider() throws Exception {
+        ModelService model = makeModel("testSemaphoreDbLock");
+        DbLockServiceSemaphoreProvider provider = new DbLockServiceSemaphoreProvider();
+        // Derby does not apply the query timeout to lock waits, so a no-wait acquire would wait for derby.locks.waitTimeout
+        checkProvider(provider, model, !isDerby());
+        GenericValue row = EntityQuery.use(delegator).from("ServiceSemaphore").where("serviceName", model.name).queryOne();
+        assertNotNull("Lock row kept after release", row);
+
+        // The row is created only when missing, so later locks only update it
+        ServiceSemaphoreProvider.Lock lock = provider.acquire(delegator, model, UtilDateTime.nowTimestamp(), 0);
+        lock.release();
+        assertEquals("Lock row not recreated", row.getTimestamp("createdStamp"),
+                EntityQuery.use(delegator).from("ServiceSemaphore").where("serviceName", model.name).queryOne().getTimestamp("createdStamp"));
+
+        // A removed row is created again by the next lock
+        delegator.removeValue(row);
+        lock = provider.acquire(delegator, model, UtilDateTime.nowTimestamp(), 0);
+        assertNotNull("Lock acquired after the row was removed", lock);
+        lock.release();
+        assertNotNull("Lock row created again", EntityQuery.use(delegator).from("ServiceSemaphore").where("serviceName", model.name).queryOne());
+    }
+}
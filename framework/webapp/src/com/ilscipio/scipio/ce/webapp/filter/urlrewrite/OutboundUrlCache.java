@@ -0,0 +1,190 @@
+package com.ilscipio.scipio.ce.webapp.filter.urlrewrite;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.base.util.cache.UtilCache;
+import org.ofbiz.webapp.FullWebappInfo;
+import org.ofbiz.webapp.website.WebSiteProperties;
+
+/**
+ * SCIPIO: Bounded LRU cache of outbound-rule results of the {@link ScipioUrlRewriter} implementations,
+ * with timing counters.
+ * <p>
+ * A result is keyed by exactly these rule inputs (see {@link #makeKey}):
+ * <ul>
+ * <li>the urlrewrite conf location, which selects the rules;</li>
+ * <li>the webapp of the conf (URLREWRITE_CONF_WEBAPP): server id, context path, webSiteId and webapp path prefix
+ * with its url-build flag; the server id and context path also fix the control servlet path and mapping the rules
+ * read through UrlFilterHelper;</li>
+ * <li>the webapp the URL points to (OUT_URL_WEBAPP), with the same fields;</li>
+ * <li>the URL.</li>
+ * </ul>
+ * The stock urlrewrite.xml rules depend on nothing else. Anything else is not in the key: the locale, the session
+ * and userLogin, headers, the request secure flag and host (unless already in the URL), and other request or context
+ * attributes; if your outbound-rules depend on any of these, set <code>urlrewrite.outbound.cache=false</code> in
+ * url.properties.
+ * <p>
+ * The same-webapp <code>response.encodeURL</code> of links (through UrlRewriteFilter, see {@link #encodeURL}) is cached
+ * under the same key with the {@link #RESPONSE_CONF} location, unless <code>urlrewrite.outbound.cache.response=false</code>.
+ * Because the container adds the session id between the pre- and post-encode rules, results that go through
+ * a real response are only cached while the session id cannot end up in the URL (no session, or a session from a cookie,
+ * see {@link #isSessionUrlEncodingPossible}).
+ * <p>
+ * Added 2026-10.
+ */
+public final class OutboundUrlCache {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    /**
+     * The conf location in the keys of the same-webapp <code>response.encodeURL</code> results, whose rules are those
+     * of the UrlRewriteFilter of the conf webapp.
+     */
+    public static final String RESPONSE_CONF = "response:encodeURL";
+
+    private static final boolean enabled = UtilProperties.getPropertyAsBoolean("url", "urlrewrite.outbound.cache", true);
+    private static final boolean responseEnabled = enabled && UtilProperties.getPropertyAsBoolean("url", "urlrewrite.outbound.cache.response", true);
+    private static final UtilCache<String, String> urlCache = UtilCache.createUtilCache("scipio.urlrewrite.outbound",
+            UtilProperties.getPropertyAsInteger("url", "urlrewrite.outbound.cache.sizeLimit", 20000), 0, false);
+
+    private static final LongAdder lookupCount = new LongAdder();
+    private static final LongAdder hitCount = new LongAdder();
+    private static final LongAdder rewriteCount = new LongAdder();
+    private static final LongAdder rewriteNanos = new LongAdder();
+
+    private OutboundUrlCache() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static boolean isResponseEnabled() {
+        return responseEnabled;
+    }
+
+    /**
+     * Returns true if <code>response.encodeURL</code> may add the session id to the URL for this request, that is
+     * if there is a session that did not come from a cookie; such results must not be cached.
+     */
+    public static boolean isSessionUrlEncodingPossible(HttpServletRequest request) {
+        return request.getSession(false) != null && !request.isRequestedSessionIdFromCookie();
+    }
+
+    /**
+     * Returns the cache key for the URL, or null if not enabled.
+     * <p>
+     * The key covers the conf location, then for the conf webapp and the URL webapp each their server id, context path,
+     * webSiteId and webapp path prefix with its url-build flag, then the URL; nothing else (see class description).
+     */
+    public static String makeKey(String urlConfPath, FullWebappInfo confWebappInfo, FullWebappInfo urlWebappInfo, String url) {
+        if (!enabled || url == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(url.length() + 128);
+        sb.append(urlConfPath);
+        sb.append('\u0001');
+        appendWebappKey(sb, confWebappInfo);
+        sb.append('\u0001');
+        appendWebappKey(sb, urlWebappInfo);
+        sb.append('\u0001');
+        sb.append(url);
+        return sb.toString();
+    }
+
+    private static void appendWebappKey(StringBuilder sb, FullWebappInfo webappInfo) {
+        if (webappInfo == null) {
+            return;
+        }
+        sb.append(webappInfo.getServerId()).append(':').append(webappInfo.getContextPath());
+        if (webappInfo.getWebSiteId() != null) {
+            sb.append('#').append(webappInfo.getWebSiteId());
+        }
+        WebSiteProperties webSiteProps = webappInfo.getWebSiteProperties();
+        if (webSiteProps != null && webSiteProps.getWebappPathPrefix() != null) {
+            sb.append('|').append(webSiteProps.getWebappPathPrefix()).append(webSiteProps.isWebappPathPrefixUrlBuild() ? "+" : "-");
+        }
+    }
+
+    /**
+     * Same-webapp <code>response.encodeURL</code> of a link, through the outbound-rules of the UrlRewriteFilter of
+     * the current webapp, using the cache when the session id cannot end up in the URL.
+     * <p>
+     * The caller must have set {@link com.ilscipio.scipio.ce.webapp.filter.UrlFilterHelper#OUT_URL_WEBAPP} to
+     * urlWebappInfo. If currentWebappInfo is null, it is looked up from the request.
+     */
+    public static String encodeURL(HttpServletRequest request, HttpServletResponse response, FullWebappInfo currentWebappInfo,
+            FullWebappInfo urlWebappInfo, String url) {
+        if (!responseEnabled || url == null || isSessionUrlEncodingPossible(request)) {
+            return response.encodeURL(url);
+        }
+        if (currentWebappInfo == null) {
+            try {
+                currentWebappInfo = FullWebappInfo.fromRequest(request);
+            } catch (Exception e) {
+                Debug.logWarning("Could not determine the current webapp of the request; not caching the encoded URL: " + e.toString(), module);
+                return response.encodeURL(url);
+            }
+        }
+        String key = makeKey(RESPONSE_CONF, currentWebappInfo, urlWebappInfo, url);
+        String encodedUrl = get(key);
+        if (encodedUrl != null) {
+            return encodedUrl;
+        }
+        long startTime = System.nanoTime();
+        encodedUrl = response.encodeURL(url);
+        put(key, encodedUrl, System.nanoTime() - startTime);
+        return encodedUrl;
+    }
+
+    /**
+     * Returns the rewritten URL for the key, or null if not cached (or key null).
+     */
+    public static String get(String key) {
+        if (key == null) {
+            return null;
+        }
+        lookupCount.increment();
+        String url = urlCache.get(key);
+        if (url != null) {
+            hitCount.increment();
+        }
+        return url;
+    }
+
+    /**
+     * Records the time taken to rewrite an URL through the outbound-rules, and caches the result if key not null.
+     */
+    public static void put(String key, String rewrittenUrl, long nanos) {
+        rewriteCount.increment();
+        rewriteNanos.add(nanos);
+        if (key != null && rewrittenUrl != null) {
+            urlCache.put(key, rewrittenUrl);
+        }
+    }
+
+    public static void clear() {
+        urlCache.clear();
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long rewrites = rewriteCount.sum();
+        long nanos = rewriteNanos.sum();
+        stats.put("enabled", enabled);
+        stats.put("size", urlCache.size());
+        stats.put("lookupCount", lookupCount.sum());
+        stats.put("hitCount", hitCount.sum());
+        stats.put("rewriteCount", rewrites);
+        stats.put("rewriteTimeNanos", nanos);
+        stats.put("avgRewriteTimeMicros", (rewrites > 0) ? (nanos / 1000.0) / rewrites : 0.0);
+        return stats;
+    }
+}
@@ -14,6 +14,7 @@ import org.tuckey.web.filters.urlrewrite.UrlRewriteWrappedResponse;
 import org.tuckey.web.filters.urlrewrite.UrlRewriter;
 
 import com.ilscipio.scipio.ce.webapp.filter.UrlFilterHelper;
+import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.OutboundUrlCache;
 import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.ScipioUrlRewriter;
 import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.UrlConfUtil;
 
@@ -96,11 +97,21 @@ public class LocalUrlRewriter extends ScipioUrlRewriter {
 
     //@Override
     protected String processOutboundUrl(String url) {
+        return processOutboundUrl(url, (String) null);
+    }
+
+    /**
+     * SCIPIO: Runs the outbound-rules on the URL and caches the result under the cache key, if not null.
+     */
+    protected String processOutboundUrl(String url, String cacheKey) {
         if (Debug.verboseOn()) {
             Debug.logVerbose("urlrewrite: processing outbound url for " + url, module);
         }
         try {
-            return tuckResponse.encodeURL(url);
+            long startTime = System.nanoTime();
+            String encodedUrl = tuckResponse.encodeURL(url);
+            OutboundUrlCache.put(cacheKey, encodedUrl, System.nanoTime() - startTime);
+            return encodedUrl;
         } catch(Exception e) {
             Debug.logError(e, "Error encoding url '"
                     + url + "' using outbound-rules from " + urlConfPath + ": " + e.getMessage(), module);
@@ -113,10 +124,15 @@ public class LocalUrlRewriter extends ScipioUrlRewriter {
         // TODO: REVIEW: I wish we didn't have to set/unset the context at every process call,
         // but there is a risk of circular reference causing issues due to the context holding
         // caching containing our LocalUrlRewriter instance, so we can't keep reference to context safely?...
+        String cacheKey = OutboundUrlCache.makeKey(urlConfPath, getContainer().getWebappInfo(), urlWebappInfo, url);
+        String cachedUrl = OutboundUrlCache.get(cacheKey);
+        if (cachedUrl != null) {
+            return cachedUrl;
+        }
         try {
             getContainer().getRequest().setAttribute(UrlFilterHelper.SOURCE_CONTEXT, context);
             getContainer().getRequest().setAttribute(UrlFilterHelper.OUT_URL_WEBAPP, urlWebappInfo);
-            return processOutboundUrl(url);
+            return processOutboundUrl(url, cacheKey);
         } finally {
             // no need to remove, because will be re-set at every call
             //getContainer().getRequest().removeAttribute(UrlFilterHelper.SOURCE_CONTEXT);
@@ -129,10 +145,16 @@ public class LocalUrlRewriter extends ScipioUrlRewriter {
         // TODO: REVIEW: I wish we didn't have to set/unset the request at every process call,
         // but there is a risk of circular reference causing issues due to the request holding
         // caching containing our LocalUrlRewriter instance, so we can't keep reference to request safely?...
+        // SCIPIO: always cacheable: the emulated response never adds a session id, so the result is the rule output only
+        String cacheKey = OutboundUrlCache.makeKey(urlConfPath, getContainer().getWebappInfo(), urlWebappInfo, url);
+        String cachedUrl = OutboundUrlCache.get(cacheKey);
+        if (cachedUrl != null) {
+            return cachedUrl;
+        }
         try {
             getContainer().getRequest().setAttribute(UrlFilterHelper.SOURCE_REQUEST, request);
             getContainer().getRequest().setAttribute(UrlFilterHelper.OUT_URL_WEBAPP, urlWebappInfo);
-            return processOutboundUrl(url);
+            return processOutboundUrl(url, cacheKey);
         } finally {
             // no need to remove, because will be re-set at every call
             //getContainer().getRequest().removeAttribute(UrlFilterHelper.SOURCE_REQUEST);
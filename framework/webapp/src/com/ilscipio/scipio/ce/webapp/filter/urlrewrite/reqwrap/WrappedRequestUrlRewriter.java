@@ -13,6 +13,7 @@ import org.tuckey.web.filters.urlrewrite.UrlRewriteWrappedResponse;
 import org.tuckey.web.filters.urlrewrite.UrlRewriter;
 
 import com.ilscipio.scipio.ce.webapp.filter.UrlFilterHelper;
+import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.OutboundUrlCache;
 import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.ScipioUrlRewriter;
 import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.UrlConfUtil;
 
@@ -68,19 +69,28 @@ public class WrappedRequestUrlRewriter extends ScipioUrlRewriter {
 
     @Override
     public String processOutboundUrl(String url, FullWebappInfo urlWebappInfo, HttpServletRequest request, HttpServletResponse response) {
+        // SCIPIO: the result goes through response.encodeURL, so only cache when it cannot add a session id to the URL
+        String cacheKey = OutboundUrlCache.isSessionUrlEncodingPossible(request) ? null : OutboundUrlCache.makeKey(urlConfPath, webappInfo, urlWebappInfo, url);
+        String cachedUrl = OutboundUrlCache.get(cacheKey);
+        if (cachedUrl != null) {
+            return cachedUrl;
+        }
         if (Debug.verboseOn()) {
             Debug.logVerbose("urlrewrite: processing outbound url for " + url, module);
         }
         try {
+            long startTime = System.nanoTime();
             HttpServletRequest wrappedRequest = new WrappedHttpServletRequest(request);
 
             // NOTE: because attribs are buffered, don't need to unset this in finally block
             wrappedRequest.setAttribute(UrlFilterHelper.URLREWRITE_CONF_WEBAPP, webappInfo);
             wrappedRequest.setAttribute(UrlFilterHelper.OUT_URL_WEBAPP, urlWebappInfo);
 
-            return new UrlRewriteWrappedResponse(response,
+            String encodedUrl = new UrlRewriteWrappedResponse(response,
                     wrappedRequest,
                     tuckRewriter).encodeURL(url);
+            OutboundUrlCache.put(cacheKey, encodedUrl, System.nanoTime() - startTime);
+            return encodedUrl;
         } catch(Exception e) {
             Debug.logError(e, "Error encoding url '"
                     + url + "' using outbound-rules from " + urlConfPath + ": " + e.getMessage(), module);
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.ilscipio.scipio.ce.webapp.filter.urlrewrite.test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.service.testtools.OFBizTestCase;
+import org.ofbiz.webapp.ExtWebappInfo;
+import org.ofbiz.webapp.FullWebappInfo;
+import org.ofbiz.webapp.renderer.RenderEnvType;
+import org.tuckey.web.filters.urlrewrite.UrlRewriteWrappedResponse;
+import org.tuckey.web.filters.urlrewrite.UrlRewriter;
+
+import com.ilscipio.scipio.ce.webapp.filter.UrlFilterHelper;
+import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.OutboundUrlCache;
+import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.UrlConfUtil;
+import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.local.LocalServletContainer;
+
+/**
+ * Tests the keys of the outbound URL cache and the caching of the same-webapp response.encodeURL, and compares
+ * the timings of cached and uncached encodes through the outbound-rules of a webapp (SCIPIO).
+ */
+public class OutboundUrlCacheTests extends OFBizTestCase {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    private static final int TIMING_COUNT = 20000;
+    private static final int URL_COUNT = 200;
+
+    public OutboundUrlCacheTests(String name) {
+        super(name);
+    }
+
+    /**
+     * Makes a request that has no session (session null), or a session from a cookie or from the URL.
+     */
+    private static HttpServletRequest makeRequest(String session) {
+        HttpSession httpSession = (session != null) ? (HttpSession) Proxy.newProxyInstance(OutboundUrlCacheTests.class.getClassLoader(),
+                new Class<?>[] { HttpSession.class }, (proxy, method, args) -> null) : null;
+        return (HttpServletRequest) Proxy.newProxyInstance(OutboundUrlCacheTests.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getSession":
+                        return httpSession;
+                    case "isRequestedSessionIdFromCookie":
+                        return "cookie".equals(session);
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Response whose encodeURL counts its calls and, like the container, adds the session id unless it came
+     * from a cookie.
+     */
+    private static class CountingResponse {
+        int encodeCount = 0;
+        final HttpServletResponse response;
+
+        CountingResponse(String session) {
+            response = (HttpServletResponse) Proxy.newProxyInstance(OutboundUrlCacheTests.class.getClassLoader(),
+                    new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                        if ("encodeURL".equals(method.getName())) {
+                            encodeCount++;
+                            return "/rewritten" + args[0] + ("url".equals(session) ? ";jsessionid=S" + encodeCount : "");
+                        }
+                        return null;
+                    });
+        }
+    }
+
+    private FullWebappInfo getWebappInfo(String contextPath) {
+        return FullWebappInfo.fromWebapp(ExtWebappInfo.fromContextPath(null, contextPath), delegator);
+    }
+
+    private static String makeUniqueUrl(String name) {
+        return "/control/" + name + "?t=" + System.nanoTime();
+    }
+
+    public void testKeyInputs() throws Exception {
+        FullWebappInfo admin = getWebappInfo("/admin");
+        FullWebappInfo party = getWebappInfo("/partymgr");
+        String url = "/control/main";
+        String key = OutboundUrlCache.makeKey("conf.xml", admin, admin, url);
+        assertEquals("Same inputs", key, OutboundUrlCache.makeKey("conf.xml", getWebappInfo("/admin"), admin, url));
+        assertFalse("Other conf", key.equals(OutboundUrlCache.makeKey("other.xml", admin, admin, url)));
+        assertFalse("Other conf webapp", key.equals(OutboundUrlCache.makeKey("conf.xml", party, admin, url)));
+        assertFalse("Other URL webapp", key.equals(OutboundUrlCache.makeKey("conf.xml", admin, party, url)));
+        assertFalse("Other URL", key.equals(OutboundUrlCache.makeKey("conf.xml", admin, admin, url + "2")));
+        assertTrue("Key contains the conf webapp context path", key.contains(":/admin"));
+        assertNull("No key for a null URL", OutboundUrlCache.makeKey("conf.xml", admin, admin, null));
+    }
+
+    public void testSessionUrlEncodingPossible() throws Exception {
+        assertFalse("No session", OutboundUrlCache.isSessionUrlEncodingPossible(makeRequest(null)));
+        assertFalse("Cookie session", OutboundUrlCache.isSessionUrlEncodingPossible(makeRequest("cookie")));
+        assertTrue("URL session", OutboundUrlCache.isSessionUrlEncodingPossible(makeRequest("url")));
+    }
+
+    public void testResponseEncodeCached() throws Exception {
+        if (!OutboundUrlCache.isResponseEnabled()) {
+            return;
+        }
+        FullWebappInfo admin = getWebappInfo("/admin");
+        FullWebappInfo party = getWebappInfo("/partymgr");
+        for (String session : new String[] { null, "cookie" }) {
+            CountingResponse response = new CountingResponse(session);
+            HttpServletRequest request = makeRequest(session);
+            String url = makeUniqueUrl("cached");
+            String encodedUrl = OutboundUrlCache.encodeURL(request, response.response, admin, admin, url);
+            assertEquals("Encoded URL (session " + session + ")", "/rewritten" + url, encodedUrl);
+            assertEquals("Cached encode (session " + session + ")", encodedUrl, OutboundUrlCache.encodeURL(request, response.response, admin, admin, url));
+            assertEquals("Encode calls (session " + session + ")", 1, response.encodeCount);
+            OutboundUrlCache.encodeURL(request, response.response, admin, party, url);
+            assertEquals("Encode calls for another target webapp (session " + session + ")", 2, response.encodeCount);
+        }
+    }
+
+    public void testResponseEncodeUrlSessionNotCached() throws Exception {
+        FullWebappInfo admin = getWebappInfo("/admin");
+        CountingResponse response = new CountingResponse("url");
+        HttpServletRequest request = makeRequest("url");
+        String url = makeUniqueUrl("session");
+        assertEquals("First encode", "/rewritten" + url + ";jsessionid=S1", OutboundUrlCache.encodeURL(request, response.response, admin, admin, url));
+        assertEquals("Second encode", "/rewritten" + url + ";jsessionid=S2", OutboundUrlCache.encodeURL(request, response.response, admin, admin, url));
+        assertEquals("Encode calls", 2, response.encodeCount);
+
+        // a cookie-session request after them does not get their session id
+        CountingResponse cookieResponse = new CountingResponse("cookie");
+        assertEquals("Cookie session encode", "/rewritten" + url, OutboundUrlCache.encodeURL(makeRequest("cookie"), cookieResponse.response, admin, admin, url));
+    }
+
+    /*
+     * Benchmark: encodes the same links through the outbound-rules of the shop webapp with and without the cache
+     * and logs the timings
+     */
+    public void testResponseEncodeTimingComparedToUncached() throws Exception {
+        FullWebappInfo shop;
+        try {
+            shop = getWebappInfo("/shop");
+        } catch (IllegalArgumentException e) {
+            Debug.logInfo("No /shop webapp; skipping outbound-rule timing", module);
+            return;
+        }
+        Map<String, Object> context = new HashMap<>();
+        context.put("locale", Locale.ENGLISH);
+        context.put("delegator", delegator);
+        context.put("dispatcher", dispatcher);
+        LocalServletContainer container = LocalServletContainer.fromContext(shop, context, RenderEnvType.STATIC);
+        container.getRequest().setAttribute(UrlFilterHelper.SOURCE_CONTEXT, context);
+        container.getRequest().setAttribute(UrlFilterHelper.OUT_URL_WEBAPP, shop);
+        HttpServletResponse tuckResponse = new UrlRewriteWrappedResponse(container.getResponse(), container.getRequest(),
+                new UrlRewriter(UrlConfUtil.getConfFromWebapp(shop.getExtWebappInfo())));
+        HttpServletRequest request = makeRequest("cookie");
+        String[] urls = new String[URL_COUNT];
+        String urlPrefix = makeUniqueUrl("timing");
+        for (int i = 0; i < URL_COUNT; i++) {
+            urls[i] = urlPrefix + "&i=" + i;
+        }
+        // warm up both paths
+        for (int i = 0; i < TIMING_COUNT / 10; i++) {
+            String url = urls[i % URL_COUNT];
+            assertEquals("Cached encode", tuckResponse.encodeURL(url), OutboundUrlCache.encodeURL(request, tuckResponse, shop, shop, url));
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < TIMING_COUNT; i++) {
+            tuckResponse.encodeURL(urls[i % URL_COUNT]);
+        }
+        long totalNanosUncached = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        for (int i = 0; i < TIMING_COUNT; i++) {
+            OutboundUrlCache.encodeURL(request, tuckResponse, shop, shop, urls[i % URL_COUNT]);
+        }
+        long totalNanosCached = System.nanoTime() - startTime;
+        Debug.logInfo("Encoded " + TIMING_COUNT + " links through the outbound-rules of /shop uncached in " + (totalNanosUncached / 1000000)
+                + " ms and cached in " + (totalNanosCached / 1000000) + " ms", module);
+    }
+}
@@ -53,6 +53,7 @@ import org.ofbiz.security.Security;
 import org.ofbiz.service.LocalDispatcher;
 import org.ofbiz.webapp.renderer.RenderTargetUtil;
 import org.ofbiz.webapp.stats.ServerHitBin;
+import org.ofbiz.webapp.stats.StatsWriter;
 import org.ofbiz.webapp.stats.VisitHandler;
 
 import freemarker.ext.servlet.ServletContextHashModel;
@@ -411,6 +412,8 @@ public class ControlServlet extends HttpServlet {
      */
     @Override
     public void destroy() {
+        // SCIPIO: write queued Visit/ServerHit records while the entity engine is still up
+        StatsWriter.drain();
         super.destroy();
     }
 
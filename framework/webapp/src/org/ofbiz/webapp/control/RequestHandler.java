@@ -92,6 +92,7 @@ import org.ofbiz.webapp.website.WebSiteProperties;
 import org.ofbiz.webapp.website.WebSiteWorker;
 
 import com.ilscipio.scipio.ce.webapp.filter.UrlFilterHelper;
+import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.OutboundUrlCache;
 import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.ScipioUrlRewriter;
 
 /**
@@ -2562,7 +2563,7 @@ public class RequestHandler {
                 // OUT_URL_WEBAPP invalid! For now we assume this is not the case, otherwise the lookups
                 // in UrlFilterHelper may become prohibitive...
                 request.setAttribute(UrlFilterHelper.OUT_URL_WEBAPP, targetWebappInfo);
-                encodedUrl = response.encodeURL(newURL.toString());
+                encodedUrl = OutboundUrlCache.encodeURL(request, response, currentWebappInfo, targetWebappInfo, newURL.toString());
                 if (interWebapp) {
                     // SCIPIO: SPECIAL: Since urlrewrite.xml is what normally delegates the inter-webapp rewriting
                     // (through response.encodeURL above and urlrewrite.xml invokes UrlFilterHelper.doInterWebappUrlRewrite),
@@ -0,0 +1,395 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.webapp.stats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.ofbiz.base.metrics.Metrics;
+import org.ofbiz.base.metrics.MetricsFactory;
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.StringUtil;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.base.util.cache.UtilCache;
+import org.ofbiz.entity.connection.DBCPConnectionFactory;
+import org.ofbiz.service.job.JobPoller;
+
+import com.ilscipio.scipio.ce.webapp.filter.urlrewrite.OutboundUrlCache;
+
+/**
+ * Exports runtime metrics in the Prometheus text exposition format, version 0.0.4, which OpenMetrics scrapers also
+ * accept (SCIPIO).
+ * <p>
+ * Covers UtilCache counters, the job poller thread pools, {@link MetricsFactory} metrics, the since-start
+ * {@link ServerHitBin} stats (as summaries with latency quantiles), the DBCP connection pools and the urlrewrite
+ * outbound-rule timings. Disabled unless <code>stats.metrics.enabled=true</code> in serverstats.properties; requests must come from
+ * <code>stats.metrics.allowedAddresses</code> and, if <code>stats.metrics.token</code> is set, carry it as a bearer
+ * token. Each scrape is written into its own buffer and sent once complete, so a failed export sends only an error status.</p>
+ */
+@SuppressWarnings("serial")
+public class MetricsServlet extends HttpServlet {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.95, 0.99 };
+    private static final double[] PERCENTILES = { 50, 90, 95, 99 };
+    private static final String[] QUANTILE_LABELS = { "0.5", "0.9", "0.95", "0.99" };
+    private static final String[] HIT_TYPE_LABELS = { "", "request", "event", "view", "entity", "service" };
+
+    private boolean enabled;
+    private String token;
+    private Set<String> allowedAddresses;
+    private boolean hitsPerId;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        enabled = UtilProperties.getPropertyAsBoolean("serverstats", "stats.metrics.enabled", false);
+        token = UtilProperties.getPropertyValue("serverstats", "stats.metrics.token", "");
+        allowedAddresses = StringUtil.splitRegex(new HashSet<>(),
+                UtilProperties.getPropertyValue("serverstats", "stats.metrics.allowedAddresses", ""), ",", null, true, false);
+        hitsPerId = UtilProperties.getPropertyAsBoolean("serverstats", "stats.metrics.hits.perId", true);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!enabled) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!isAllowed(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        Output out = new Output();
+        try {
+            writeMetrics(out);
+        } catch (Exception e) {
+            Debug.logError(e, "Could not export metrics", module);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal error"); // WARN: DO NOT send details, for security reasons
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        out.writeTo(response.getWriter());
+    }
+
+    private boolean isAllowed(HttpServletRequest request) {
+        if (!allowedAddresses.isEmpty() && !allowedAddresses.contains(request.getRemoteAddr())) {
+            return false;
+        }
+        if (!token.isEmpty()) {
+            String authorization = request.getHeader("Authorization");
+            if (authorization == null || !authorization.startsWith("Bearer ")) {
+                return false;
+            }
+            return MessageDigest.isEqual(token.getBytes(), authorization.substring("Bearer ".length()).trim().getBytes());
+        }
+        return true;
+    }
+
+    protected void writeMetrics(Output out) {
+        writeCacheMetrics(out);
+        writeJobPollerMetrics(out);
+        writeServiceMetrics(out);
+        writeHitMetrics(out);
+        writeDataSourceMetrics(out);
+        writeStatsWriterMetrics(out);
+        writeUrlRewriteMetrics(out);
+    }
+
+    protected void writeCacheMetrics(Output out) {
+        out.family("scipio_cache_hits_total", "counter", "UtilCache hits");
+        for (UtilCache<?, ?> cache : UtilCache.getUtilCaches()) {
+            out.sample("scipio_cache_hits_total", "cache", cache.getName(), cache.getHitCount());
+        }
+        out.family("scipio_cache_misses_total", "counter", "UtilCache misses by reason");
+        for (UtilCache<?, ?> cache : UtilCache.getUtilCaches()) {
+            out.sample("scipio_cache_misses_total", "cache", cache.getName(), "reason", "notfound", cache.getMissCountNotFound());
+            out.sample("scipio_cache_misses_total", "cache", cache.getName(), "reason", "expired", cache.getMissCountExpired());
+            out.sample("scipio_cache_misses_total", "cache", cache.getName(), "reason", "softref", cache.getMissCountSoftRef());
+        }
+        out.family("scipio_cache_evictions_total", "counter", "UtilCache entries evicted by the size limit");
+        for (UtilCache<?, ?> cache : UtilCache.getUtilCaches()) {
+            out.sample("scipio_cache_evictions_total", "cache", cache.getName(), cache.getEvictionCount());
+        }
+        out.family("scipio_cache_loads_total", "counter", "UtilCache values loaded by getOrLoad");
+        for (UtilCache<?, ?> cache : UtilCache.getUtilCaches()) {
+            out.sample("scipio_cache_loads_total", "cache", cache.getName(), cache.getLoadCount());
+        }
+        out.family("scipio_cache_size", "gauge", "UtilCache entries in memory");
+        for (UtilCache<?, ?> cache : UtilCache.getUtilCaches()) {
+            out.sample("scipio_cache_size", "cache", cache.getName(), cache.size());
+        }
+        out.family("scipio_cache_size_limit", "gauge", "UtilCache size limit, 0 if unlimited");
+        for (UtilCache<?, ?> cache : UtilCache.getUtilCaches()) {
+            out.sample("scipio_cache_size_limit", "cache", cache.getName(), cache.getSizeLimit());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void writeJobPollerMetrics(Output out) {
+        JobPoller jobPoller = JobPoller.getInstance();
+        Map<String, Object> poolState = jobPoller.getGeneralPoolState();
+        List<Map<String, Object>> workerGroups = (List<Map<String, Object>>) poolState.get("workerGroups");
+        writeJobPoolMetric(out, "scipio_job_threads_active", "gauge", "Job pool threads running a job", "numberOfActiveInvokerThreads", poolState, workerGroups);
+        writeJobPoolMetric(out, "scipio_job_threads", "gauge", "Job pool threads", "currentNumberOfInvokerThreads", poolState, workerGroups);
+        writeJobPoolMetric(out, "scipio_job_threads_max", "gauge", "Job pool maximum threads", "maxNumberOfInvokerThreads", poolState, workerGroups);
+        writeJobPoolMetric(out, "scipio_job_queue_size", "gauge", "Jobs queued for a job pool thread", "queueSize", poolState, workerGroups);
+        writeJobPoolMetric(out, "scipio_job_queue_remaining", "gauge", "Free job queue slots", "remainingCapacity", poolState, workerGroups);
+        writeJobPoolMetric(out, "scipio_job_completed_total", "counter", "Jobs completed by a job pool thread", "numberOfCompletedTasks", poolState, workerGroups);
+        writeJobPoolMetric(out, "scipio_job_queue_wait_avg_milliseconds", "gauge", "Average job queue wait", "averageQueueWait", poolState, workerGroups);
+        writeJobPoolMetric(out, "scipio_job_queue_wait_max_milliseconds", "gauge", "Maximum job queue wait", "maxQueueWait", poolState, workerGroups);
+        if (poolState.get("virtualThreadRunningCount") != null) {
+            out.family("scipio_job_virtual_threads_active", "gauge", "Jobs running on virtual threads");
+            out.sample("scipio_job_virtual_threads_active", toDouble(poolState.get("virtualThreadRunningCount")));
+            out.family("scipio_job_virtual_threads_waiting", "gauge", "Jobs waiting for a virtual-thread service permit");
+            out.sample("scipio_job_virtual_threads_waiting", toDouble(poolState.get("virtualThreadWaitingCount")));
+        }
+        JobPoller.JobStartLatencyStats latencyStats = jobPoller.getJobStartLatencyStats();
+        out.family("scipio_job_start_latency_milliseconds", "summary", "Delay from scheduled run time to start of persisted jobs, quantiles over recent jobs");
+        long[] percentiles = latencyStats.getPercentiles(PERCENTILES);
+        if (percentiles != null) {
+            for (int i = 0; i < QUANTILES.length; i++) {
+                out.sample("scipio_job_start_latency_milliseconds", "quantile", QUANTILE_LABELS[i], percentiles[i]);
+            }
+        }
+        out.sample("scipio_job_start_latency_milliseconds_count", latencyStats.getCount());
+    }
+
+    private static void writeJobPoolMetric(Output out, String name, String type, String help, String key,
+            Map<String, Object> poolState, List<Map<String, Object>> workerGroups) {
+        out.family(name, type, help);
+        out.sample(name, "pool", "", toDouble(poolState.get(key)));
+        if (workerGroups != null) {
+            for (Map<String, Object> workerGroup : workerGroups) {
+                out.sample(name, "pool", (String) workerGroup.get("pool"), toDouble(workerGroup.get(key)));
+            }
+        }
+    }
+
+    protected void writeServiceMetrics(Output out) {
+        out.family("scipio_metric_service_rate_milliseconds", "gauge", "MetricsFactory moving average service time");
+        for (Metrics metrics : MetricsFactory.getMetrics()) {
+            out.sample("scipio_metric_service_rate_milliseconds", "name", metrics.getName(), metrics.getServiceRate());
+        }
+        out.family("scipio_metric_threshold_milliseconds", "gauge", "MetricsFactory threshold");
+        for (Metrics metrics : MetricsFactory.getMetrics()) {
+            out.sample("scipio_metric_threshold_milliseconds", "name", metrics.getName(), metrics.getThreshold());
+        }
+        out.family("scipio_metric_events_total", "counter", "MetricsFactory events");
+        for (Metrics metrics : MetricsFactory.getMetrics()) {
+            out.sample("scipio_metric_events_total", "name", metrics.getName(), metrics.getTotalEvents());
+        }
+    }
+
+    protected void writeHitMetrics(Output out) {
+        out.family("scipio_hit_duration_seconds", "summary", "Request, event, view, entity and service hits since start");
+        writeHitBins(out, ServerHitBin.REQUEST, ServerHitBin.requestSinceStarted);
+        writeHitBins(out, ServerHitBin.EVENT, ServerHitBin.eventSinceStarted);
+        writeHitBins(out, ServerHitBin.VIEW, ServerHitBin.viewSinceStarted);
+        writeHitBins(out, ServerHitBin.ENTITY, ServerHitBin.entitySinceStarted);
+        writeHitBins(out, ServerHitBin.SERVICE, ServerHitBin.serviceSinceStarted);
+    }
+
+    private void writeHitBins(Output out, int type, Map<String, ServerHitBin> bins) {
+        String typeLabel = HIT_TYPE_LABELS[type];
+        for (ServerHitBin bin : bins.values()) {
+            String id = bin.getId();
+            if (!hitsPerId && !id.startsWith("GLOBAL")) {
+                continue;
+            }
+            long[] percentiles = bin.getPercentileTimes(PERCENTILES);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                out.sample("scipio_hit_duration_seconds", "type", typeLabel, "id", id, "quantile", QUANTILE_LABELS[i], percentiles[i] / 1000.0);
+            }
+            out.sample("scipio_hit_duration_seconds_sum", "type", typeLabel, "id", id, bin.getTotalRunningTime() / 1000.0);
+            out.sample("scipio_hit_duration_seconds_count", "type", typeLabel, "id", id, bin.getNumberHits());
+        }
+    }
+
+    protected void writeDataSourceMetrics(Output out) {
+        Set<String> names = DBCPConnectionFactory.getDataSourceNames();
+        Map<String, Map<String, Object>> infos = new LinkedHashMap<>();
+        for (String name : names) {
+            infos.put(name, DBCPConnectionFactory.getDataSourceInfo(name));
+        }
+        // the samples of a family must follow its own HELP and TYPE lines
+        out.family("scipio_db_pool_connections", "gauge", "Database pool connections by state");
+        for (Map.Entry<String, Map<String, Object>> entry : infos.entrySet()) {
+            out.sample("scipio_db_pool_connections", "datasource", entry.getKey(), "state", "active", toDouble(entry.getValue().get("poolNumActive")));
+            out.sample("scipio_db_pool_connections", "datasource", entry.getKey(), "state", "idle", toDouble(entry.getValue().get("poolNumIdle")));
+        }
+        out.family("scipio_db_pool_connections_max", "gauge", "Database pool maximum connections");
+        for (Map.Entry<String, Map<String, Object>> entry : infos.entrySet()) {
+            if (entry.getValue().get("poolMaxActive") != null) {
+                out.sample("scipio_db_pool_connections_max", "datasource", entry.getKey(), toDouble(entry.getValue().get("poolMaxActive")));
+            }
+        }
+    }
+
+    protected void writeStatsWriterMetrics(Output out) {
+        if (!StatsWriter.isEnabled()) {
+            return;
+        }
+        Map<String, Object> stats = StatsWriter.getStats();
+        out.family("scipio_stats_writer_queued", "gauge", "Stats records waiting to be written");
+        out.sample("scipio_stats_writer_queued", toDouble(stats.get("queued")));
+        out.family("scipio_stats_writer_records_total", "counter", "Stats records by outcome");
+        out.sample("scipio_stats_writer_records_total", "outcome", "written", toDouble(stats.get("writtenCount")));
+        out.sample("scipio_stats_writer_records_total", "outcome", "failed", toDouble(stats.get("failedCount")));
+        out.sample("scipio_stats_writer_records_total", "outcome", "dropped", toDouble(stats.get("droppedCount")));
+    }
+
+    protected void writeUrlRewriteMetrics(Output out) {
+        // cache hits and size are in the scipio_cache_* metrics of the scipio.urlrewrite.outbound cache
+        Map<String, Object> stats = OutboundUrlCache.getStats();
+        out.family("scipio_urlrewrite_outbound_rewrites_total", "counter", "URLs run through the urlrewrite outbound-rules");
+        out.sample("scipio_urlrewrite_outbound_rewrites_total", toDouble(stats.get("rewriteCount")));
+        out.family("scipio_urlrewrite_outbound_rewrite_seconds_total", "counter", "Time spent running the urlrewrite outbound-rules");
+        out.sample("scipio_urlrewrite_outbound_rewrite_seconds_total", toDouble(stats.get("rewriteTimeNanos")) / 1e9);
+    }
+
+    private static double toDouble(Object value) {
+        return (value instanceof Number) ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * Text format buffer of one scrape.
+     */
+    public static class Output {
+        private final StringBuilder sb = new StringBuilder(16384);
+
+        public void writeTo(Writer writer) throws IOException {
+            int length = sb.length();
+            char[] chunk = new char[Math.min(length, 8192)];
+            for (int start = 0; start < length; start += chunk.length) {
+                int end = Math.min(length, start + chunk.length);
+                sb.getChars(start, end, chunk, 0);
+                writer.write(chunk, 0, end - start);
+            }
+            writer.flush();
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+
+        public void family(String name, String type, String help) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+
+        public void sample(String name, double value) {
+            sb.append(name);
+            value(value);
+        }
+
+        public void sample(String name, long value) {
+            sb.append(name).append(' ').append(value).append('\n');
+        }
+
+        public void sample(String name, String label, String labelValue, double value) {
+            sb.append(name).append('{');
+            label(label, labelValue);
+            sb.append('}');
+            value(value);
+        }
+
+        public void sample(String name, String label, String labelValue, long value) {
+            sb.append(name).append('{');
+            label(label, labelValue);
+            sb.append("} ").append(value).append('\n');
+        }
+
+        public void sample(String name, String label1, String labelValue1, String label2, String labelValue2, double value) {
+            sb.append(name).append('{');
+            label(label1, labelValue1);
+            sb.append(',');
+            label(label2, labelValue2);
+            sb.append('}');
+            value(value);
+        }
+
+        public void sample(String name, String label1, String labelValue1, String label2, String labelValue2, long value) {
+            sb.append(name).append('{');
+            label(label1, labelValue1);
+            sb.append(',');
+            label(label2, labelValue2);
+            sb.append("} ").append(value).append('\n');
+        }
+
+        public void sample(String name, String label1, String labelValue1, String label2, String labelValue2,
+                String label3, String labelValue3, double value) {
+            sb.append(name).append('{');
+            label(label1, labelValue1);
+            sb.append(',');
+            label(label2, labelValue2);
+            sb.append(',');
+            label(label3, labelValue3);
+            sb.append('}');
+            value(value);
+        }
+
+        private void label(String label, String value) {
+            sb.append(label).append("=\"");
+            if (value != null) {
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '\\' || c == '"') {
+                        sb.append('\\').append(c);
+                    } else if (c == '\n') {
+                        sb.append("\\n");
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+            sb.append('"');
+        }
+
+        private void value(double value) {
+            sb.append(' ');
+            if (Double.isNaN(value)) {
+                sb.append("NaN");
+            } else if (Double.isInfinite(value)) {
+                sb.append((value > 0) ? "+Inf" : "-Inf");
+            } else if (value == (long) value) {
+                sb.append((long) value);
+            } else {
+                sb.append(value);
+            }
+            sb.append('\n');
+        }
+    }
+}
@@ -21,6 +21,8 @@ package org.ofbiz.webapp.stats;
 import java.net.InetAddress;
 import java.util.Date;
 import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
@@ -28,6 +30,7 @@ import java.util.concurrent.ConcurrentMap;
 import javax.servlet.http.HttpServletRequest;
 
 import org.ofbiz.base.GeneralConfig;
+import org.ofbiz.base.metrics.LatencyHistogram;
 import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.UtilHttp;
 import org.ofbiz.base.util.UtilProperties;
@@ -233,7 +236,7 @@ public class ServerHitBin {
                         serverHitBin.set("serverHostName", address.getHostName());
                     }
                     try {
-                        delegator.createSetNextSeqId(serverHitBin);
+                        StatsWriter.createSetNextSeqId(serverHitBin); // SCIPIO: may be written in background
                     } catch (GenericEntityException e) {
                         Debug.logError(e, "Could not save ServerHitBin:", module);
                     }
@@ -334,10 +337,8 @@ public class ServerHitBin {
     private final long startTime;
     private final long endTime;
 
-    private long numberHits;
-    private long totalRunningTime;
-    private long minTime;
-    private long maxTime;
+    // SCIPIO: striped counters and latency percentiles, recorded without locking
+    private final LatencyHistogram histogram = new LatencyHistogram();
 
     private ServerHitBin(String id, int type, boolean limitLength, Delegator delegator) {
         this.id = id;
@@ -352,10 +353,6 @@ public class ServerHitBin {
         } else {
             this.endTime = 0;
         }
-        this.numberHits = 0;
-        this.totalRunningTime = 0;
-        this.minTime = Long.MAX_VALUE;
-        this.maxTime = 0;
     }
 
     private ServerHitBin(ServerHitBin oldBin, long startTime) {
@@ -372,10 +369,6 @@ public class ServerHitBin {
         } else {
             this.endTime = 0;
         }
-        this.numberHits = 0;
-        this.totalRunningTime = 0;
-        this.minTime = Long.MAX_VALUE;
-        this.maxTime = 0;
     }
 
     public Delegator getDelegator() {
@@ -421,20 +414,20 @@ public class ServerHitBin {
         return (this.getBinLength()) / 60000.0;
     }
 
-    public synchronized long getNumberHits() {
-        return this.numberHits;
+    public long getNumberHits() {
+        return this.histogram.getCount();
     }
 
-    public synchronized long getMinTime() {
-        return this.minTime;
+    public long getMinTime() {
+        return this.histogram.getMin();
     }
 
-    public synchronized long getMaxTime() {
-        return this.maxTime;
+    public long getMaxTime() {
+        return this.histogram.getMax();
     }
 
-    public synchronized long getTotalRunningTime() {
-        return this.totalRunningTime;
+    public long getTotalRunningTime() {
+        return this.histogram.getTotal();
     }
 
     public double getMinTimeSeconds() {
@@ -445,7 +438,7 @@ public class ServerHitBin {
         return (this.getMaxTime()) / 1000.0;
     }
 
-    public synchronized double getAvgTime() {
+    public double getAvgTime() {
         return ((double) this.getTotalRunningTime()) / ((double) this.getNumberHits());
     }
 
@@ -453,18 +446,62 @@ public class ServerHitBin {
         return this.getAvgTime() / 1000.0;
     }
 
+    /** SCIPIO: Returns the running time in milliseconds below or at which the given percentage of hits fall (within about 6%). */
+    public long getPercentileTime(double percentile) {
+        return this.histogram.getPercentile(percentile);
+    }
+
+    /** SCIPIO: Returns the running times in milliseconds for each of the given percentages. */
+    public long[] getPercentileTimes(double... percentiles) {
+        return this.histogram.getPercentiles(percentiles);
+    }
+
+    public double getP50TimeSeconds() {
+        return this.getPercentileTime(50) / 1000.0;
+    }
+
+    public double getP95TimeSeconds() {
+        return this.getPercentileTime(95) / 1000.0;
+    }
+
+    public double getP99TimeSeconds() {
+        return this.getPercentileTime(99) / 1000.0;
+    }
+
+    /** SCIPIO: Returns the latency histogram of the bin, in milliseconds. */
+    public LatencyHistogram getHistogram() {
+        return this.histogram;
+    }
+
     /** return the hits per minute using the entire length of the bin as returned by getBinLengthMinutes() */
     public double getHitsPerMinute() {
         return this.getNumberHits() / this.getBinLengthMinutes();
     }
 
-    private synchronized void addHit(long runningTime) {
-        this.numberHits++;
-        this.totalRunningTime += runningTime;
-        if (runningTime < this.minTime)
-            this.minTime = runningTime;
-        if (runningTime > this.maxTime)
-            this.maxTime = runningTime;
+    /** SCIPIO: Returns the bin stats as a plain map of numbers, for machine-readable output; times are in milliseconds. */
+    public Map<String, Object> toMap() {
+        long[] percentiles = this.getPercentileTimes(50, 90, 95, 99);
+        long numberHits = this.getNumberHits();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", this.id);
+        map.put("type", typeIds[this.type]);
+        map.put("startTime", this.getStartTime());
+        map.put("endTime", this.getEndTime());
+        map.put("numberHits", numberHits);
+        map.put("totalTimeMillis", this.getTotalRunningTime());
+        map.put("minTimeMillis", (numberHits > 0) ? this.getMinTime() : 0);
+        map.put("avgTimeMillis", (numberHits > 0) ? this.getAvgTime() : 0.0);
+        map.put("maxTimeMillis", this.getMaxTime());
+        map.put("p50TimeMillis", percentiles[0]);
+        map.put("p90TimeMillis", percentiles[1]);
+        map.put("p95TimeMillis", percentiles[2]);
+        map.put("p99TimeMillis", percentiles[3]);
+        map.put("hitsPerMinute", this.getHitsPerMinute());
+        return map;
+    }
+
+    private void addHit(long runningTime) {
+        this.histogram.record(runningTime); // SCIPIO: lock-free
     }
 
     private void saveHit(HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) throws GenericEntityException {
@@ -494,14 +531,17 @@ public class ServerHitBin {
                 return;
             }
             String visitId = visit.getString("visitId");
-            visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
-            if (visit == null) {
-                // GenericValue stored in client session does not exist in database.
-                Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", module);
-                return;
-            }
+            // SCIPIO: With background writes the Visit may still be queued (ahead of this hit), so it is not looked up
+            if (!StatsWriter.isEnabled()) {
+                visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
+                if (visit == null) {
+                    // GenericValue stored in client session does not exist in database.
+                    Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", module);
+                    return;
+                }
 
-            Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName=" + this.delegator.getDelegatorName(), module);
+                Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName=" + this.delegator.getDelegatorName(), module);
+            }
 
             GenericValue serverHit = delegator.makeValue("ServerHit");
 
@@ -555,7 +595,9 @@ public class ServerHitBin {
             // So prevent entity engine from logging errors; it throws GenericEntityException anyway.
             // TODO?: in future this should be optimized/replaced using Delegator/GenericValue/SqlProcessor logging options. 
             //serverHit.create();
-            if (Debug.verboseOn()) {
+            if (StatsWriter.isEnabled()) { // SCIPIO: written in background; duplicates are skipped there
+                StatsWriter.create(serverHit);
+            } else if (Debug.verboseOn()) {
                 serverHit.create();
             } else {
                 try {
@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.webapp.stats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ofbiz.base.concurrent.ExecutionPool;
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.entity.GenericEntityException;
+import org.ofbiz.entity.GenericValue;
+
+/**
+ * Write-behind persistence of Visitor, Visit, ServerHit and ServerHitBin records, enabled by
+ * <code>stats.persist.async</code> in serverstats.properties (SCIPIO).
+ * <p>
+ * Request threads only assign sequence ids and queue copies of the values in a bounded lock-free queue; a background
+ * writer drains it every <code>stats.persist.async.flushInterval</code> milliseconds, or sooner once a batch is full,
+ * inserting rows with {@link Delegator#createAll(List, int)} JDBC batches. Within a batch, Visitor and Visit inserts go
+ * before updates and before the ServerHit and ServerHitBin rows that reference them, so queue order satisfies the
+ * foreign keys. When the queue is full, <code>stats.persist.async.overflow</code> decides whether to drop the record,
+ * block the request thread up to <code>stats.persist.async.blockTimeout</code> milliseconds for space, or write one
+ * batch of the oldest records on the request thread to make space. Whatever is queued is written by {@link #drain()}
+ * when the webapps stop.</p>
+ */
+public final class StatsWriter {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK,
+        SYNC;
+    }
+
+    private static final boolean enabled = UtilProperties.getPropertyAsBoolean("serverstats", "stats.persist.async", false);
+    private static final int queueSize = UtilProperties.getPropertyAsInteger("serverstats", "stats.persist.async.queueSize", 10000);
+    private static final int batchSize = UtilProperties.getPropertyAsInteger("serverstats", "stats.persist.async.batchSize", 200);
+    private static final long flushInterval = UtilProperties.getPropertyAsLong("serverstats", "stats.persist.async.flushInterval", 1000);
+    private static final long blockTimeout = UtilProperties.getPropertyAsLong("serverstats", "stats.persist.async.blockTimeout", 50);
+    private static final OverflowPolicy overflowPolicy = readOverflowPolicy();
+
+    private static final ScheduledExecutorService executor = enabled ? ExecutionPool.getScheduledExecutor(null, "Scipio-stats-writer", 1, 0, true) : null;
+    private static final WriteQueue writeQueue = new WriteQueue(queueSize, batchSize, blockTimeout, overflowPolicy, executor);
+
+    static {
+        if (enabled) {
+            executor.scheduleWithFixedDelay(writeQueue::writeQueued, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+            Debug.logInfo("Writing stats records in background (queueSize: " + queueSize + ", batchSize: " + batchSize
+                    + ", overflow: " + overflowPolicy + ")", module);
+        }
+    }
+
+    private StatsWriter() {
+    }
+
+    /**
+     * Returns true if stats records are written in the background; if false, callers persist them themselves.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the insert of a copy of the value, which must have its primary key set; if not enabled, inserts it now.
+     */
+    public static void create(GenericValue value) {
+        if (!enabled) {
+            writeQueue.write(value, true);
+            return;
+        }
+        writeQueue.create(value);
+    }
+
+    /**
+     * Queues the update of a copy of the value; if not enabled, updates it now.
+     */
+    public static void store(GenericValue value) {
+        if (!enabled) {
+            writeQueue.write(value, false);
+            return;
+        }
+        writeQueue.store(value);
+    }
+
+    /**
+     * Assigns the next sequence id to the value and queues its insert; if not enabled, inserts it now.
+     */
+    public static GenericValue createSetNextSeqId(GenericValue value) throws GenericEntityException {
+        if (!enabled) {
+            return value.getDelegator().createSetNextSeqId(value);
+        }
+        value.setNextSeqId();
+        writeQueue.create(value);
+        return value;
+    }
+
+    /**
+     * Writes everything queued so far on the calling thread; used on shutdown.
+     */
+    public static void drain() {
+        if (!enabled) {
+            return;
+        }
+        int count = writeQueue.getQueued();
+        if (count > 0) {
+            Debug.logInfo("Writing " + count + " queued stats records", module);
+        }
+        writeQueue.writeQueued();
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.putAll(writeQueue.getStats());
+        return stats;
+    }
+
+    private static OverflowPolicy readOverflowPolicy() {
+        String value = UtilProperties.getPropertyValue("serverstats", "stats.persist.async.overflow", "drop");
+        try {
+            return OverflowPolicy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Debug.logWarning("Invalid stats.persist.async.overflow [" + value + "]; using drop", module);
+            return OverflowPolicy.DROP;
+        }
+    }
+
+    /**
+     * The bounded queue of stats writes and its batch writer; {@link StatsWriter} keeps one configured from
+     * serverstats.properties.
+     */
+    public static class WriteQueue {
+        private final int queueSize;
+        private final int batchSize;
+        private final long blockTimeout;
+        private final OverflowPolicy overflowPolicy;
+        private final Executor flushExecutor;
+
+        private final ConcurrentLinkedQueue<Operation> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong writtenCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final AtomicLong droppedCount = new AtomicLong();
+        private final AtomicLong syncCount = new AtomicLong();
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+        private final Object writeLock = new Object();
+
+        /**
+         * @param flushExecutor runs the flush requested once a batch is full or, for {@link OverflowPolicy#BLOCK}, when
+         *                      the queue is full; may be null if the queue is only written by {@link #writeQueued()}
+         */
+        public WriteQueue(int queueSize, int batchSize, long blockTimeout, OverflowPolicy overflowPolicy, Executor flushExecutor) {
+            this.queueSize = queueSize;
+            this.batchSize = batchSize;
+            this.blockTimeout = blockTimeout;
+            this.overflowPolicy = overflowPolicy;
+            this.flushExecutor = flushExecutor;
+        }
+
+        /**
+         * Queues the insert of a copy of the value, which must have its primary key set.
+         */
+        public void create(GenericValue value) {
+            submit(new Operation(value, true));
+        }
+
+        /**
+         * Queues the update of a copy of the value.
+         */
+        public void store(GenericValue value) {
+            submit(new Operation(value, false));
+        }
+
+        public int getQueued() {
+            return queued.get();
+        }
+
+        public Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("overflowPolicy", overflowPolicy.toString());
+            stats.put("queueSize", queueSize);
+            stats.put("queued", queued.get());
+            stats.put("writtenCount", writtenCount.get());
+            stats.put("failedCount", failedCount.get());
+            stats.put("droppedCount", droppedCount.get());
+            stats.put("syncCount", syncCount.get());
+            return stats;
+        }
+
+        private void submit(Operation op) {
+            if (tryOffer(op)) {
+                if (queued.get() >= batchSize) {
+                    requestFlush();
+                }
+                return;
+            }
+            switch (overflowPolicy) {
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+                requestFlush();
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    if (tryOffer(op)) {
+                        return;
+                    }
+                }
+                droppedCount.incrementAndGet();
+                break;
+            case SYNC:
+                // write one batch of the oldest records to make space, then queue this one behind the records it references;
+                // the request thread never writes more than a batch, plus this record if other threads took the space
+                syncCount.incrementAndGet();
+                writeQueuedBatch();
+                if (!tryOffer(op)) {
+                    write(op.value, op.create);
+                }
+                break;
+            default:
+                droppedCount.incrementAndGet();
+                break;
+            }
+        }
+
+        private boolean tryOffer(Operation op) {
+            if (queued.incrementAndGet() > queueSize) {
+                queued.decrementAndGet();
+                return false;
+            }
+            queue.offer(op);
+            return true;
+        }
+
+        private void requestFlush() {
+            if (flushExecutor != null && flushRequested.compareAndSet(false, true)) {
+                flushExecutor.execute(this::writeQueued);
+            }
+        }
+
+        /**
+         * Writes everything queued so far on the calling thread, one batch at a time.
+         */
+        public void writeQueued() {
+            flushRequested.set(false);
+            while (writeQueuedBatch()) {
+                ;
+            }
+        }
+
+        /**
+         * Writes up to one batch of the oldest queued records on the calling thread; returns false if the queue was empty.
+         */
+        private boolean writeQueuedBatch() {
+            // batches are taken and written under the lock, so queue order is kept between writer threads
+            synchronized (writeLock) {
+                List<Operation> batch = new ArrayList<>(batchSize);
+                Operation op;
+                while (batch.size() < batchSize && (op = queue.poll()) != null) {
+                    batch.add(op);
+                }
+                if (batch.isEmpty()) {
+                    return false;
+                }
+                queued.addAndGet(-batch.size());
+                try {
+                    writeBatch(batch);
+                } catch (Exception e) {
+                    Debug.logError(e, "Could not write " + batch.size() + " stats records", module);
+                    failedCount.addAndGet(batch.size());
+                }
+                return true;
+            }
+        }
+
+        private void writeBatch(List<Operation> batch) {
+            Map<String, List<Operation>> opsByDelegator = new LinkedHashMap<>();
+            for (Operation op : batch) {
+                opsByDelegator.computeIfAbsent(op.value.getDelegator().getDelegatorName(), k -> new ArrayList<>()).add(op);
+            }
+            for (List<Operation> ops : opsByDelegator.values()) {
+                ops.sort(Comparator.comparingInt(op -> op.stage)); // stable
+                Delegator delegator = ops.get(0).value.getDelegator();
+                int start = 0;
+                while (start < ops.size()) {
+                    Operation first = ops.get(start);
+                    int end = start + 1;
+                    while (end < ops.size() && ops.get(end).create == first.create && ops.get(end).stage == first.stage) {
+                        end++;
+                    }
+                    List<GenericValue> values = new ArrayList<>(end - start);
+                    for (Operation op : ops.subList(start, end)) {
+                        values.add(op.value);
+                    }
+                    writeValues(delegator, values, first.create);
+                    start = end;
+                }
+            }
+        }
+
+        /**
+         * Writes values of one write stage in queue order: Visitor inserts, Visit inserts, updates, then the rows
+         * referencing them.
+         */
+        protected void writeValues(Delegator delegator, List<GenericValue> values, boolean create) {
+            if (create) {
+                createAll(delegator, values);
+            } else {
+                for (GenericValue value : values) {
+                    write(value, false);
+                }
+            }
+        }
+
+        private void createAll(Delegator delegator, List<GenericValue> values) {
+            try {
+                Debug.setThreadLevelDisableWarningError();
+                try {
+                    delegator.createAll(values, batchSize);
+                } finally {
+                    Debug.restoreThreadLevelAllow();
+                }
+                writtenCount.addAndGet(values.size());
+            } catch (GenericEntityException e) {
+                // most often a duplicate ServerHit key (same visit, content and start time); insert one by one so only those are lost
+                if (Debug.verboseOn()) {
+                    Debug.logVerbose("Stats batch insert failed, inserting " + values.size() + " records one by one: " + e.toString(), module);
+                }
+                for (GenericValue value : values) {
+                    write(value, true);
+                }
+            }
+        }
+
+        /**
+         * Inserts or updates the value now, counting it as written or failed.
+         */
+        protected void write(GenericValue value, boolean create) {
+            try {
+                Debug.setThreadLevelDisableWarningError();
+                try {
+                    if (create) {
+                        value.create();
+                    } else {
+                        value.store();
+                    }
+                } finally {
+                    Debug.restoreThreadLevelAllow();
+                }
+                writtenCount.incrementAndGet();
+            } catch (GenericEntityException e) {
+                failedCount.incrementAndGet();
+                if (Debug.verboseOn()) {
+                    Debug.logVerbose("Could not write " + value.getEntityName() + " record: " + e.toString(), module);
+                }
+            }
+        }
+    }
+
+    private static class Operation {
+        final GenericValue value;
+        final boolean create;
+        /** Write order within a batch: Visitor inserts, Visit inserts, updates, then the rows referencing them */
+        final int stage;
+
+        Operation(GenericValue value, boolean create) {
+            this.value = (GenericValue) value.clone();
+            this.create = create;
+            if (!create) {
+                this.stage = 2;
+            } else if ("Visitor".equals(value.getEntityName())) {
+                this.stage = 0;
+            } else if ("Visit".equals(value.getEntityName())) {
+                this.stage = 1;
+            } else {
+                this.stage = 3;
+            }
+        }
+    }
+}
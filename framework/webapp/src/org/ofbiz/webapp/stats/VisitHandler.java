@@ -72,10 +72,14 @@ public class VisitHandler {
             if (modelUserLogin.isField("partyId")) {
                 visitor.set("partyId", userLogin.get("partyId"));
             }
-            try {
-                visitor.store();
-            } catch (GenericEntityException e) {
-                Debug.logError(e, "Could not update visitor: ", module);
+            if (StatsWriter.isEnabled()) { // SCIPIO: written in background
+                StatsWriter.store(visitor);
+            } else {
+                try {
+                    visitor.store();
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, "Could not update visitor: ", module);
+                }
             }
         }
 
@@ -92,10 +96,14 @@ public class VisitHandler {
                 visit.set("visitorId", visitor.get("visitorId"));
             }
 
-            try {
-                visit.store();
-            } catch (GenericEntityException e) {
-                Debug.logError(e, "Could not update visit: ", module);
+            if (StatsWriter.isEnabled()) { // SCIPIO: written in background
+                StatsWriter.store(visit);
+            } else {
+                try {
+                    visit.store();
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, "Could not update visit: ", module);
+                }
             }
         }
     }
@@ -191,7 +199,7 @@ public class VisitHandler {
                             }
 
                             try {
-                                visit = delegator.createSetNextSeqId(visit);
+                                visit = StatsWriter.createSetNextSeqId(visit); // SCIPIO: may be written in background
                                 session.setAttribute("visit", visit);
                             } catch (GenericEntityException e) {
                                 Debug.logError(e, "Could not create new visit:", module);
@@ -251,7 +259,7 @@ public class VisitHandler {
                                 // no visitor cookie? create visitor and send back cookie too
                                 visitor = delegator.makeValue("Visitor");
                                 try {
-                                    delegator.createSetNextSeqId(visitor);
+                                    StatsWriter.createSetNextSeqId(visitor); // SCIPIO: may be written in background
                                 } catch (GenericEntityException e) {
                                     Debug.logError(e, "Could not create new visitor:", module);
                                     visitor = null;
@@ -262,7 +270,7 @@ public class VisitHandler {
                                     if (visitor == null) {
                                         // looks like we have an ID that doesn't exist in our database, so we'll create a new one
                                         visitor = delegator.makeValue("Visitor");
-                                        visitor = delegator.createSetNextSeqId(visitor);
+                                        visitor = StatsWriter.createSetNextSeqId(visitor); // SCIPIO: may be written in background
                                         if (Debug.infoOn()) {
                                             String visitorId = visitor != null ? visitor.getString("visitorId") : "empty visitor";
                                             Debug.logInfo("The visitorId [" + cookieVisitorId + "] found in cookie was invalid, creating new Visitor with ID [" + visitorId + "]", module);
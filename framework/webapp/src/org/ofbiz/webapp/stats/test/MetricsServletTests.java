@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.webapp.stats.test;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ofbiz.base.test.GenericTestCaseBase;
+import org.ofbiz.webapp.stats.MetricsServlet;
+
+/**
+ * Tests the text exposition format written by MetricsServlet (SCIPIO).
+ */
+public class MetricsServletTests extends GenericTestCaseBase {
+
+    public MetricsServletTests(String name) {
+        super(name);
+    }
+
+    /**
+     * Exposes the metric writers of the servlet.
+     */
+    private static class TestMetricsServlet extends MetricsServlet {
+        String write(boolean dataSourcesOnly) {
+            Output out = new Output();
+            if (dataSourcesOnly) {
+                writeDataSourceMetrics(out);
+            } else {
+                writeMetrics(out);
+            }
+            return out.toString();
+        }
+    }
+
+    public void testLabelEscaping() throws Exception {
+        MetricsServlet.Output out = new MetricsServlet.Output();
+        out.sample("m", "a", "back\\slash \"quoted\"\nnew line", 1L);
+        out.sample("m", "a", null, "b", "plain", 2L);
+        assertEquals("Escaped label values", "m{a=\"back\\\\slash \\\"quoted\\\"\\nnew line\"} 1\n"
+                + "m{a=\"\",b=\"plain\"} 2\n", out.toString());
+    }
+
+    public void testNumberFormatting() throws Exception {
+        MetricsServlet.Output out = new MetricsServlet.Output();
+        out.sample("m", 3.0);
+        out.sample("m", 0.25);
+        out.sample("m", -7L);
+        out.sample("m", Double.NaN);
+        out.sample("m", Double.POSITIVE_INFINITY);
+        out.sample("m", Double.NEGATIVE_INFINITY);
+        out.sample("m", "a", "x", 1e20);
+        assertEquals("Formatted values", "m 3\nm 0.25\nm -7\nm NaN\nm +Inf\nm -Inf\nm{a=\"x\"} 1.0E20\n", out.toString());
+        for (String line : out.toString().split("\n")) {
+            String value = line.substring(line.lastIndexOf(' ') + 1);
+            if (!value.endsWith("Inf")) {
+                Double.parseDouble(value);
+            }
+        }
+    }
+
+    public void testFamilyAndWriteTo() throws Exception {
+        MetricsServlet.Output out = new MetricsServlet.Output();
+        out.family("m_total", "counter", "Test counter");
+        StringBuilder expected = new StringBuilder("# HELP m_total Test counter\n# TYPE m_total counter\n");
+        // more than one write chunk
+        for (int i = 0; i < 2000; i++) {
+            out.sample("m_total", "i", Integer.toString(i), (long) i);
+            expected.append("m_total{i=\"").append(i).append("\"} ").append(i).append('\n');
+        }
+        StringWriter writer = new StringWriter();
+        out.writeTo(writer);
+        assertEquals("Written output", expected.toString(), writer.toString());
+    }
+
+    /**
+     * Checks that each sample follows the HELP and TYPE lines of its own family and that no family is declared twice.
+     */
+    private static void checkFamilies(String text) {
+        Set<String> families = new HashSet<>();
+        String family = null;
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("# HELP ")) {
+                family = line.substring("# HELP ".length(), line.indexOf(' ', "# HELP ".length()));
+                assertTrue("Family " + family + " declared once", families.add(family));
+            } else if (line.startsWith("# TYPE ")) {
+                assertTrue("TYPE line of family " + family, line.startsWith("# TYPE " + family + " "));
+            } else {
+                int end = line.indexOf('{');
+                String name = line.substring(0, (end >= 0) ? end : line.indexOf(' '));
+                assertNotNull("Sample " + name + " after a family", family);
+                assertTrue("Sample " + name + " in family " + family, name.equals(family) || name.equals(family + "_sum") || name.equals(family + "_count"));
+            }
+        }
+    }
+
+    public void testDataSourceFamilies() throws Exception {
+        String text = new TestMetricsServlet().write(true);
+        assertTrue("Data source pool samples", text.contains("scipio_db_pool_connections{datasource="));
+        checkFamilies(text);
+    }
+
+    public void testAllFamilies() throws Exception {
+        checkFamilies(new TestMetricsServlet().write(false));
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.webapp.stats.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.entity.Delegator;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.testtools.EntityTestCase;
+import org.ofbiz.webapp.stats.StatsWriter;
+
+/**
+ * Tests the write order and the overflow policies of the stats write queue, recording the writes instead of
+ * running them (SCIPIO).
+ */
+public class StatsWriterTests extends EntityTestCase {
+
+    public StatsWriterTests(String name) {
+        super(name);
+    }
+
+    /**
+     * Records each write stage as "create|store Entity:pk ...", and each single write as "create|store Entity:pk".
+     */
+    private static class RecordingWriteQueue extends StatsWriter.WriteQueue {
+        final List<String> writes = new ArrayList<>();
+
+        RecordingWriteQueue(int queueSize, int batchSize, long blockTimeout, StatsWriter.OverflowPolicy overflowPolicy, ExecutorService flushExecutor) {
+            super(queueSize, batchSize, blockTimeout, overflowPolicy, flushExecutor);
+        }
+
+        @Override
+        protected synchronized void writeValues(Delegator delegator, List<GenericValue> values, boolean create) {
+            StringBuilder sb = new StringBuilder(create ? "create" : "store");
+            for (GenericValue value : values) {
+                sb.append(' ').append(toString(value));
+            }
+            writes.add(sb.toString());
+        }
+
+        @Override
+        protected synchronized void write(GenericValue value, boolean create) {
+            writes.add((create ? "create " : "store ") + toString(value));
+        }
+
+        synchronized List<String> getWrites() {
+            return new ArrayList<>(writes);
+        }
+
+        private static String toString(GenericValue value) {
+            return value.getEntityName() + ":" + value.getShortPk();
+        }
+    }
+
+    private GenericValue makeVisit(String visitId) {
+        return delegator.makeValue("Visit", "visitId", visitId);
+    }
+
+    public void testStageOrdering() throws Exception {
+        RecordingWriteQueue writeQueue = new RecordingWriteQueue(100, 100, 0, StatsWriter.OverflowPolicy.DROP, null);
+        writeQueue.create(delegator.makeValue("ServerHit", "visitId", "V1", "contentId", "C1", "hitStartDateTime", null));
+        writeQueue.store(makeVisit("V0"));
+        writeQueue.create(makeVisit("V1"));
+        writeQueue.create(delegator.makeValue("ServerHitBin", "serverHitBinId", "B1"));
+        writeQueue.create(delegator.makeValue("Visitor", "visitorId", "U1"));
+        writeQueue.create(makeVisit("V2"));
+        writeQueue.writeQueued();
+        List<String> writes = writeQueue.getWrites();
+        assertEquals("Write stages", 4, writes.size());
+        assertEquals("Visitor inserts first", "create Visitor:U1", writes.get(0));
+        assertEquals("Visit inserts in queue order", "create Visit:V1 Visit:V2", writes.get(1));
+        assertEquals("Updates after the inserts", "store Visit:V0", writes.get(2));
+        assertTrue("Referencing rows last in queue order", writes.get(3).startsWith("create ServerHit:") && writes.get(3).endsWith(" ServerHitBin:B1"));
+        assertEquals("Nothing left queued", 0, writeQueue.getQueued());
+    }
+
+    public void testDropOverflow() throws Exception {
+        RecordingWriteQueue writeQueue = new RecordingWriteQueue(2, 10, 0, StatsWriter.OverflowPolicy.DROP, null);
+        for (int i = 0; i < 3; i++) {
+            writeQueue.create(makeVisit("V" + i));
+        }
+        assertEquals("Queued", 2, writeQueue.getQueued());
+        assertEquals("Dropped", 1L, writeQueue.getStats().get("droppedCount"));
+        writeQueue.writeQueued();
+        assertEquals("Written", UtilMisc.toList("create Visit:V0 Visit:V1"), writeQueue.getWrites());
+    }
+
+    public void testBlockOverflow() throws Exception {
+        // without a writer to make space, the record is dropped once the block timeout passes
+        RecordingWriteQueue writeQueue = new RecordingWriteQueue(2, 10, 20, StatsWriter.OverflowPolicy.BLOCK, null);
+        for (int i = 0; i < 3; i++) {
+            writeQueue.create(makeVisit("V" + i));
+        }
+        assertEquals("Dropped after the block timeout", 1L, writeQueue.getStats().get("droppedCount"));
+
+        // with a writer, the blocked record is queued once the writer makes space
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            writeQueue = new RecordingWriteQueue(2, 10, 10000, StatsWriter.OverflowPolicy.BLOCK, executor);
+            for (int i = 0; i < 3; i++) {
+                writeQueue.create(makeVisit("V" + i));
+            }
+            assertEquals("Not dropped", 0L, writeQueue.getStats().get("droppedCount"));
+            writeQueue.writeQueued();
+            assertEquals("Written in order", "create Visit:V0 Visit:V1 create Visit:V2", String.join(" ", writeQueue.getWrites()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testSyncOverflow() throws Exception {
+        RecordingWriteQueue writeQueue = new RecordingWriteQueue(5, 2, 0, StatsWriter.OverflowPolicy.SYNC, null);
+        for (int i = 0; i < 6; i++) {
+            writeQueue.create(makeVisit("V" + i));
+        }
+        // the request thread writes only the oldest batch, then queues its record behind the rest
+        assertEquals("Written by the request thread", UtilMisc.toList("create Visit:V0 Visit:V1"), writeQueue.getWrites());
+        assertEquals("Queued", 4, writeQueue.getQueued());
+        assertEquals("Sync count", 1L, writeQueue.getStats().get("syncCount"));
+        assertEquals("Dropped", 0L, writeQueue.getStats().get("droppedCount"));
+        writeQueue.writeQueued();
+        assertEquals("All written in order", UtilMisc.toList("create Visit:V0 Visit:V1", "create Visit:V2 Visit:V3", "create Visit:V4 Visit:V5"),
+                writeQueue.getWrites());
+    }
+}
@@ -18,14 +18,11 @@
  */
 package org.ofbiz.webtools;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
@@ -75,12 +72,10 @@ import org.ofbiz.entity.model.ModelReader;
 import org.ofbiz.entity.model.ModelRelation;
 import org.ofbiz.entity.model.ModelUtil;
 import org.ofbiz.entity.model.ModelViewEntity;
-import org.ofbiz.entity.transaction.TransactionUtil;
 import org.ofbiz.entity.util.EntityDataAssert;
 import org.ofbiz.entity.util.EntityDataLoader;
-import org.ofbiz.entity.util.EntityListIterator;
-import org.ofbiz.entity.util.EntityQuery;
 import org.ofbiz.entity.util.EntitySaxReader;
+import org.ofbiz.entity.util.EntityStreamExporter;
 import org.ofbiz.entityext.EntityGroupUtil;
 import org.ofbiz.security.Security;
 import org.ofbiz.service.DispatchContext;
@@ -594,6 +589,22 @@ public class WebToolsServices {
         if (txTimeout == null) {
             txTimeout = 7200;
         }
+        // SCIPIO: streaming export options
+        EntityStreamExporter.Format format;
+        try {
+            format = EntityStreamExporter.Format.fromString((String) context.get("format"));
+        } catch (IllegalArgumentException e) {
+            return ServiceUtil.returnError("Invalid export format: " + context.get("format"));
+        }
+        if (format == null) {
+            format = EntityStreamExporter.Format.XML;
+        }
+        String fileExtension = (format == EntityStreamExporter.Format.JSON_LINES) ? "jsonl" : format.name().toLowerCase();
+        Integer fetchSize = (Integer) context.get("fetchSize");
+        Integer pageSize = (Integer) context.get("pageSize");
+        if (pageSize == null) {
+            pageSize = 1000;
+        }
 
         List<String> results = new LinkedList<String>();
 
@@ -614,62 +625,41 @@ public class WebToolsServices {
                 int fileNumber = 1;
 
                 for (String curEntityName: passedEntityNames) {
-                    long numberWritten = 0;
-                    EntityListIterator values = null;
-
-                    try {
-                        ModelEntity me = delegator.getModelEntity(curEntityName);
-                        if (me instanceof ModelViewEntity) {
-                            results.add("["+fileNumber +"] [vvv] " + curEntityName + " skipping view entity");
-                            continue;
-                        }
+                    ModelEntity me = delegator.getModelEntity(curEntityName);
+                    if (me instanceof ModelViewEntity) {
+                        results.add("["+fileNumber +"] [vvv] " + curEntityName + " skipping view entity");
+                        continue;
+                    }
 
-                        boolean beganTx = TransactionUtil.begin();
-                        // some databases don't support cursors, or other problems may happen, so if there is an error here log it and move on to get as much as possible
-                        try {
-                            List<EntityCondition> conds = new LinkedList<EntityCondition>();
-                            if (UtilValidate.isNotEmpty(fromDate)) {
-                                conds.add(EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
-                            }
-                            values = EntityQuery.use(delegator).from(curEntityName).where(conds).orderBy(me.getPkFieldNames()).queryIterator();
-                        } catch (Exception entityEx) {
-                            results.add("["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + entityEx);
-                            continue;
+                    // SCIPIO: Stream rows to the file by primary key pages (keyset), each page in its own transaction,
+                    // instead of committing a transaction under an open cursor every 500 rows
+                    File outFile = new File(outdir, curEntityName + "." + fileExtension);
+                    long numberWritten = 0;
+                    try (FileOutputStream out = new FileOutputStream(outFile)) {
+                        EntityStreamExporter exporter = new EntityStreamExporter(delegator, format, out)
+                                .setTransactionTimeout(txTimeout)
+                                .setPageSize(me.getPkFieldNames().isEmpty() ? 0 : pageSize);
+                        if (fetchSize != null) {
+                            exporter.setFetchSize(fetchSize);
                         }
-
-                        //Don't bother writing the file if there's nothing
-                        //to put into it
-                        GenericValue value = values.next();
-                        if (value != null) {
-                            PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(outdir, curEntityName +".xml")), "UTF-8")));
-                            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                            writer.println("<entity-engine-xml>");
-
-                            do {
-                                value.writeXmlText(writer, "");
-                                numberWritten++;
-                                if (numberWritten % 500 == 0) {
-                                    TransactionUtil.commit(beganTx);
-                                    beganTx = TransactionUtil.begin();
-                                }
-                            } while ((value = values.next()) != null);
-                            writer.println("</entity-engine-xml>");
-                            writer.close();
-                            results.add("["+fileNumber +"] [" + numberWritten + "] " + curEntityName + " wrote " + numberWritten + " records");
-                        } else {
-                            results.add("["+fileNumber +"] [---] " + curEntityName + " has no records, not writing file");
+                        EntityCondition cond = null;
+                        if (UtilValidate.isNotEmpty(fromDate)) {
+                            cond = EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate);
                         }
-                        values.close();
-                        TransactionUtil.commit(beganTx);
+                        // some databases don't support cursors, or other problems may happen, so if there is an error here log it and move on to get as much as possible
+                        numberWritten = exporter.export(curEntityName, cond);
+                        exporter.finish();
                     } catch (Exception ex) {
-                        if (values != null) {
-                            try {
-                                values.close();
-                            } catch (Exception exc) {
-                                //Debug.warning();
-                            }
-                        }
                         results.add("["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + ex);
+                        fileNumber++;
+                        continue;
+                    }
+                    //Don't bother keeping the file if there's nothing in it
+                    if (numberWritten > 0) {
+                        results.add("["+fileNumber +"] [" + numberWritten + "] " + curEntityName + " wrote " + numberWritten + " records");
+                    } else {
+                        outFile.delete();
+                        results.add("["+fileNumber +"] [---] " + curEntityName + " has no records, not writing file");
                     }
                     fileNumber++;
                 }
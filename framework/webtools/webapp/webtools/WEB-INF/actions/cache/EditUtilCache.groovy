@@ -38,6 +38,9 @@ if (cacheName) {
         cache.missCountSoftRef = UtilFormatOut.formatQuantity(utilCache.getMissCountSoftRef());
         cache.removeHitCount = UtilFormatOut.formatQuantity(utilCache.getRemoveHitCount());
         cache.removeMissCount = UtilFormatOut.formatQuantity(utilCache.getRemoveMissCount());
+        cache.evictionCount = UtilFormatOut.formatQuantity(utilCache.getEvictionCount()); // SCIPIO
+        cache.storeType = utilCache.getStoreType(); // SCIPIO
+        cache.offHeapMemory = utilCache.getOffHeapSizeInBytes(); // SCIPIO
         cache.maxInMemory = utilCache.getMaxInMemory(); // SCIPIO: this causes issues: UtilFormatOut.formatQuantity(utilCache.getMaxInMemory());
         cache.expireTime = utilCache.getExpireTime(); // SCIPIO: this causes issues: UtilFormatOut.formatQuantity(utilCache.getExpireTime());
         cache.useSoftReference = utilCache.getUseSoftReference().toString();
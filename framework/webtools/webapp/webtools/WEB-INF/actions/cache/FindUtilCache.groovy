@@ -50,6 +50,9 @@ names.each { cacheName ->
         cache.missCountSoftRef = UtilFormatOut.formatQuantity(utilCache.getMissCountSoftRef());
         cache.removeHitCount = UtilFormatOut.formatQuantity(utilCache.getRemoveHitCount());
         cache.removeMissCount = UtilFormatOut.formatQuantity(utilCache.getRemoveMissCount());
+        cache.evictionCount = UtilFormatOut.formatQuantity(utilCache.getEvictionCount()); // SCIPIO
+        cache.storeType = utilCache.getStoreType(); // SCIPIO
+        cache.offHeapMemory = utilCache.getOffHeapSizeInBytes(); // SCIPIO
         cache.maxInMemory = UtilFormatOut.formatQuantity(utilCache.getMaxInMemory());
         cache.expireTime = UtilFormatOut.formatQuantity(utilCache.getExpireTime());
         cache.useSoftReference = utilCache.getUseSoftReference().toString();
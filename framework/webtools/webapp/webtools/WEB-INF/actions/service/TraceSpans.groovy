@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.ofbiz.base.trace.Tracer;
+
+// SCIPIO: Service call tracing spans
+context.traceStats = Tracer.getStats();
+context.rootSpans = Tracer.getRootSpans(100).collect { it.toMap() };
+
+traceId = parameters.traceId;
+if (traceId) {
+    context.traceId = traceId;
+    spans = Tracer.getSpans(traceId);
+    spanIds = spans.collect { it.getSpanId() } as Set;
+    childrenByParentId = [:];
+    rootSpans = [];
+    spans.each { span ->
+        // spans whose parent was already overwritten in the buffer are shown as roots
+        parentId = span.getParent()?.getSpanId();
+        if (parentId != null && spanIds.contains(parentId)) {
+            childrenByParentId.get(parentId, []).add(span);
+        } else {
+            rootSpans.add(span);
+        }
+    }
+    traceSpanList = [];
+    addSpans = null;
+    addSpans = { spanList, depth ->
+        spanList.each { span ->
+            spanMap = span.toMap();
+            spanMap.depth = depth;
+            traceSpanList.add(spanMap);
+            addSpans(childrenByParentId.get(span.getSpanId(), []), depth + 1);
+        }
+    };
+    addSpans(rootSpans, 0);
+    context.traceSpanList = traceSpanList;
+}
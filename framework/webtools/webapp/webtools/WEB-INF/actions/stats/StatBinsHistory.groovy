@@ -51,6 +51,10 @@ if (binList) {
             requestIdMap.minTime = UtilFormatOut.formatQuantity(bin.getMinTimeSeconds());
             requestIdMap.avgTime = UtilFormatOut.formatQuantity(bin.getAvgTimeSeconds());
             requestIdMap.maxTime = UtilFormatOut.formatQuantity(bin.getMaxTimeSeconds());
+            percentiles = bin.getPercentileTimes(50, 95, 99);
+            requestIdMap.p50Time = UtilFormatOut.formatQuantity(percentiles[0] / 1000.0);
+            requestIdMap.p95Time = UtilFormatOut.formatQuantity(percentiles[1] / 1000.0);
+            requestIdMap.p99Time = UtilFormatOut.formatQuantity(percentiles[2] / 1000.0);
             requestIdMap.hitsPerMin = UtilFormatOut.formatQuantity(bin.getHitsPerMinute());
             requestList.add(requestIdMap);
         }
@@ -47,6 +47,10 @@ while (iterator.hasNext()) {
         requestIdMap.minTime = UtilFormatOut.formatQuantity(bin.getMinTimeSeconds());
         requestIdMap.avgTime = UtilFormatOut.formatQuantity(bin.getAvgTimeSeconds());
         requestIdMap.maxTime = UtilFormatOut.formatQuantity(bin.getMaxTimeSeconds());
+        percentiles = bin.getPercentileTimes(50, 95, 99);
+        requestIdMap.p50Time = UtilFormatOut.formatQuantity(percentiles[0] / 1000.0);
+        requestIdMap.p95Time = UtilFormatOut.formatQuantity(percentiles[1] / 1000.0);
+        requestIdMap.p99Time = UtilFormatOut.formatQuantity(percentiles[2] / 1000.0);
         requestIdMap.hitsPerMin = UtilFormatOut.formatQuantity(bin.getHitsPerMinute());
         requestList.add(requestIdMap);
     }
@@ -70,6 +74,10 @@ while (iterator.hasNext()) {
         requestIdMap.minTime = UtilFormatOut.formatQuantity(bin.getMinTimeSeconds());
         requestIdMap.avgTime = UtilFormatOut.formatQuantity(bin.getAvgTimeSeconds());
         requestIdMap.maxTime = UtilFormatOut.formatQuantity(bin.getMaxTimeSeconds());
+        percentiles = bin.getPercentileTimes(50, 95, 99);
+        requestIdMap.p50Time = UtilFormatOut.formatQuantity(percentiles[0] / 1000.0);
+        requestIdMap.p95Time = UtilFormatOut.formatQuantity(percentiles[1] / 1000.0);
+        requestIdMap.p99Time = UtilFormatOut.formatQuantity(percentiles[2] / 1000.0);
         requestIdMap.hitsPerMin = UtilFormatOut.formatQuantity(bin.getHitsPerMinute());
         eventList.add(requestIdMap);
     }
@@ -94,6 +102,10 @@ while (iterator.hasNext()) {
         requestIdMap.minTime = UtilFormatOut.formatQuantity(bin.getMinTimeSeconds());
         requestIdMap.avgTime = UtilFormatOut.formatQuantity(bin.getAvgTimeSeconds());
         requestIdMap.maxTime = UtilFormatOut.formatQuantity(bin.getMaxTimeSeconds());
+        percentiles = bin.getPercentileTimes(50, 95, 99);
+        requestIdMap.p50Time = UtilFormatOut.formatQuantity(percentiles[0] / 1000.0);
+        requestIdMap.p95Time = UtilFormatOut.formatQuantity(percentiles[1] / 1000.0);
+        requestIdMap.p99Time = UtilFormatOut.formatQuantity(percentiles[2] / 1000.0);
         requestIdMap.hitsPerMin = UtilFormatOut.formatQuantity(bin.getHitsPerMinute());
         viewList.add(requestIdMap);
     }
@@ -0,0 +1,76 @@
+<#-- SCIPIO: Service call tracing spans (org.ofbiz.base.trace.Tracer) -->
+<@section title="Settings">
+  <@form name="updateTraceSettings" action=makePageUrl("updateTraceSettings") method="post">
+    <@field type="select" name="enabled" label="Enabled">
+      <@field type="option" value="true" selected=(traceStats.enabled!false)>${uiLabelMap.CommonYes}</@field>
+      <@field type="option" value="false" selected=!(traceStats.enabled!false)>${uiLabelMap.CommonNo}</@field>
+    </@field>
+    <@field type="text" name="sampleRate" value=(traceStats.sampleRate!1.0)?c label="Sample Rate"/>
+    <@field type="checkbox" name="clear" value="true" checked=false label="Clear Recorded Spans"/>
+    <@field type="submit" text=uiLabelMap.CommonUpdate/>
+  </@form>
+  <p>Recorded: ${traceStats.recordedCount!0} (buffer size: ${traceStats.bufferSize!0})<#if traceStats.fileSink?has_content>;
+    file: ${traceStats.fileSink} (dropped: ${traceStats.fileDroppedCount!0})</#if></p>
+  <@menu type="button">
+    <@menuitem type="link" href=makePageUrl("traceSpansOtlpJson") text="Export All (OTLP JSON)" class="+${styles.action_nav!} ${styles.action_export!}"/>
+  </@menu>
+</@section>
+
+<#if traceSpanList??>
+<@section title="Trace ${traceId}">
+  <@menu type="button">
+    <@menuitem type="link" href=makePageUrl("traceSpansOtlpJson?traceId=" + raw(traceId)) text="Export Trace (OTLP JSON)" class="+${styles.action_nav!} ${styles.action_export!}"/>
+  </@menu>
+  <@table type="data-list" responsive=true>
+    <@thead>
+      <@tr>
+        <@th>name</@th>
+        <@th width="10%">type</@th>
+        <@th width="10%">durationMs</@th>
+        <@th width="15%">thread</@th>
+        <@th width="25%">attributes</@th>
+      </@tr>
+    </@thead>
+    <@tbody>
+      <#list traceSpanList as span>
+        <@tr>
+          <@td><span style="padding-left:${span.depth * 1.5}em;"><#if span.error><strong>${span.name}</strong> (${span.errorMessage!})<#else>${span.name}</#if></span></@td>
+          <@td width="10%">${span.type!}</@td>
+          <@td width="10%">${span.durationMs?string("0.###")}</@td>
+          <@td width="15%">${span.threadName!}</@td>
+          <@td width="25%"><#if span.attributes?has_content><#list span.attributes?keys as key>${key}=${span.attributes[key]!}<#sep>, </#list></#if></@td>
+        </@tr>
+      </#list>
+    </@tbody>
+  </@table>
+</@section>
+</#if>
+
+<@section title="Recent Traces">
+  <@table type="data-list" responsive=true>
+    <@thead>
+      <@tr>
+        <@th>name</@th>
+        <@th width="25%">traceId</@th>
+        <@th width="15%">startTime</@th>
+        <@th width="10%">durationMs</@th>
+        <@th width="10%">error</@th>
+      </@tr>
+    </@thead>
+    <@tbody>
+      <#if rootSpans?has_content>
+        <#list rootSpans as span>
+          <@tr>
+            <@td>${span.name}</@td>
+            <@td width="25%"><a href="<@pageUrl uri='TraceSpans?traceId='+raw(span.traceId)/>">${span.traceId}</a></@td>
+            <@td width="15%">${UtilDateTime.getTimestamp(span.startTime)}</@td>
+            <@td width="10%">${span.durationMs?string("0.###")}</@td>
+            <@td width="10%"><#if span.error>${span.errorMessage!"Y"}</#if></@td>
+          </@tr>
+        </#list>
+      <#else>
+        <@tr><@td colspan="5">${getLabel('CommonNone', 'CommonUiLabels')}</@td></@tr>
+      </#if>
+    </@tbody>
+  </@table>
+</@section>
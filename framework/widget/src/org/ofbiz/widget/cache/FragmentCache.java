@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.base.util.cache.UtilCache;
+import org.ofbiz.entity.GenericEntity;
+import org.ofbiz.entity.cache.Cache;
+import org.ofbiz.widget.model.ModelScreenWidget;
+
+/**
+ * Screen fragment output cache, used by widgets having the <code>cache-key</code> attribute (SCIPIO).
+ * <p>
+ * Fragments are stored in one UtilCache per screen, named <code>widgetcache.fragment.[location]#[screen]</code>, so
+ * size limit, expiry and store can be set in cache.properties under that name or <code>widgetcache.fragment</code>.
+ * <p>
+ * Invalidation is by tag: each fragment records the value of a global sequence when its rendering started, and is
+ * stale once any of its tags was invalidated later. Entity cache clears, done by the delegator on every write of a
+ * cacheable entity, invalidate the tags <code>[Entity]</code>, <code>[Entity]:[pk]</code> (single-field primary keys)
+ * and <code>[Entity].[pkField]:[value]</code> for the written row, or every tag of the entity when a whole entity or
+ * condition is cleared. The row tags are only tracked for entities that a cached fragment has a tag of; a write of any
+ * other entity invalidates its tags as a whole, which only affects fragments still rendering. Only tags ever
+ * invalidated are tracked; past <code>widget.fragmentCache.maxTags</code> they are dropped and all fragments
+ * invalidated at once.
+ * <p>
+ * Hole widgets (<code>cache-hole="true"</code>) rendered inside a fragment being cached leave a marker in the output
+ * instead, and are rendered live in the current context each time the fragment is output (see {@link FragmentOutput}).
+ * <p>
+ * On a cache hit, only the holes render: the actions of the fragment widget and of the widgets inside it do not run,
+ * so the holes render without the fields those actions set, and so does the rest of the screen. Holes must depend
+ * only on the context around the fragment.
+ */
+public class FragmentCache extends AbstractCache {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    public static final char HOLE_BEGIN = '\uE000';
+    public static final char HOLE_END = '\uE001';
+
+    private static final boolean enabled = UtilProperties.getPropertyAsBoolean("widget", "widget.fragmentCache.enabled", true);
+    private static final int sizeLimit = UtilProperties.getPropertyAsInteger("widget", "widget.fragmentCache.sizeLimit", 2000);
+    private static final int maxTags = UtilProperties.getPropertyAsInteger("widget", "widget.fragmentCache.maxTags", 100000);
+
+    private static final FragmentCache INSTANCE = new FragmentCache();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile long floorSeq = 0;
+    private final Map<String, Long> tagClearSeqs = new ConcurrentHashMap<>();
+    private final Map<String, Long> entityClearSeqs = new ConcurrentHashMap<>();
+    private final Set<String> taggedEntityNames = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Capture> currentCapture = new ThreadLocal<>();
+
+    protected FragmentCache() {
+        super("fragment");
+        Cache.addClearListener(this::noteEntityClear);
+    }
+
+    public static FragmentCache getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public FragmentOutput get(String screenName, String key) {
+        UtilCache<String, FragmentOutput> fragmentCache = getCache(screenName);
+        if (fragmentCache == null) {
+            return null;
+        }
+        FragmentOutput output = fragmentCache.get(key);
+        if (output != null && !isValid(output)) {
+            fragmentCache.remove(key);
+            return null;
+        }
+        return output;
+    }
+
+    /**
+     * Caches the output; ttlMillis 0 uses the cache expire time.
+     */
+    public void put(String screenName, String key, FragmentOutput output, long ttlMillis) {
+        UtilCache<String, FragmentOutput> fragmentCache = getOrCreateFragmentCache(screenName);
+        for (String tag : output.getTags()) {
+            taggedEntityNames.add(getTagEntityName(tag));
+        }
+        if (ttlMillis > 0) {
+            fragmentCache.put(key, output, ttlMillis);
+        } else {
+            fragmentCache.put(key, output);
+        }
+    }
+
+    protected UtilCache<String, FragmentOutput> getOrCreateFragmentCache(String screenName) {
+        String name = getCacheName(screenName);
+        return UtilCache.getOrCreateUtilCache(name, sizeLimit, 0, 0, true, name, "widgetcache.fragment");
+    }
+
+    /**
+     * Returns the sequence value to record on a fragment before rendering it.
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    public boolean isValid(FragmentOutput output) {
+        long seq = output.getSequence();
+        if (floorSeq > seq) {
+            return false;
+        }
+        for (String tag : output.getTags()) {
+            Long clearSeq = tagClearSeqs.get(tag);
+            if (clearSeq != null && clearSeq > seq) {
+                return false;
+            }
+            clearSeq = entityClearSeqs.get(getTagEntityName(tag));
+            if (clearSeq != null && clearSeq > seq) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invalidates the fragments having the tag.
+     */
+    public void invalidateTag(String tag) {
+        putClearSeq(tagClearSeqs, tag);
+    }
+
+    /**
+     * Invalidates the fragments having any tag of the entity (or other tag prefix before ':' or '.').
+     */
+    public void invalidateEntity(String entityName) {
+        putClearSeq(entityClearSeqs, entityName);
+    }
+
+    /**
+     * Returns the number of tags invalidated since all fragments were last invalidated.
+     */
+    public int getInvalidatedTagCount() {
+        return tagClearSeqs.size();
+    }
+
+    public void invalidateAll() {
+        // clear first, so a tag invalidated meanwhile is at worst covered by the new floor
+        tagClearSeqs.clear();
+        entityClearSeqs.clear();
+        floorSeq = sequence.incrementAndGet();
+    }
+
+    private void putClearSeq(Map<String, Long> clearSeqs, String name) {
+        long seq = sequence.incrementAndGet();
+        clearSeqs.merge(name, seq, Math::max);
+        if (clearSeqs.size() > maxTags) {
+            Debug.logInfo("Fragment cache invalidated tag count exceeds " + maxTags + "; invalidating all fragments", module);
+            invalidateAll();
+        }
+    }
+
+    static String getTagEntityName(String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (c == ':' || c == '.') {
+                return tag.substring(0, i);
+            }
+        }
+        return tag;
+    }
+
+    private void noteEntityClear(String delegatorName, String entityName, GenericEntity entity) {
+        if (entityName == null) {
+            invalidateAll();
+            return;
+        }
+        if (entity == null || !taggedEntityNames.contains(entityName)) {
+            // without cached fragments tagged with the entity, only fragments still rendering can be affected
+            invalidateEntity(entityName);
+            return;
+        }
+        List<String> pkFieldNames = entity.getModelEntity().getPkFieldNames();
+        List<String> tags = new ArrayList<>(pkFieldNames.size() + 2);
+        for (String pkFieldName : pkFieldNames) {
+            Object value = entity.get(pkFieldName);
+            if (value == null) {
+                // partial key (clearCacheLineFlexible): the affected rows are not known
+                invalidateEntity(entityName);
+                return;
+            }
+            tags.add(entityName + "." + pkFieldName + ":" + value);
+        }
+        if (pkFieldNames.size() == 1) {
+            tags.add(entityName + ":" + entity.get(pkFieldNames.get(0)));
+        }
+        tags.add(entityName);
+        for (String tag : tags) {
+            invalidateTag(tag);
+        }
+    }
+
+    /**
+     * Starts capturing the holes rendered on this thread; must be passed to {@link #endCapture(Capture)} in a finally block.
+     */
+    Capture beginCapture() {
+        Capture capture = new Capture(currentCapture.get());
+        currentCapture.set(capture);
+        return capture;
+    }
+
+    void endCapture(Capture capture) {
+        if (capture.parent != null) {
+            currentCapture.set(capture.parent);
+        } else {
+            currentCapture.remove();
+        }
+    }
+
+    /**
+     * If a fragment is being cached on this thread, writes a marker for the hole widget and returns true; otherwise
+     * returns false and the caller renders the widget.
+     */
+    public boolean writeHole(ModelScreenWidget widget, Appendable writer) throws IOException {
+        Capture capture = currentCapture.get();
+        if (capture == null) {
+            return false;
+        }
+        writer.append(HOLE_BEGIN).append(Integer.toString(capture.holes.size())).append(HOLE_END);
+        capture.holes.add(widget);
+        return true;
+    }
+
+    static final class Capture {
+        final Capture parent;
+        final List<ModelScreenWidget> holes = new ArrayList<>();
+
+        Capture(Capture parent) {
+            this.parent = parent;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.cache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.GeneralException;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.base.util.UtilValidate;
+import org.ofbiz.base.util.string.FlexibleStringExpander;
+import org.ofbiz.widget.model.ModelScreen;
+import org.ofbiz.widget.model.ModelScreenWidget;
+import org.ofbiz.widget.renderer.ScreenStringRenderer;
+import org.w3c.dom.Element;
+
+/**
+ * Fragment cache settings of a screen widget, read from its <code>cache-key</code>, <code>cache-ttl</code>,
+ * <code>cache-tags</code> and <code>cache-hole</code> attributes (SCIPIO).
+ * <p>
+ * See {@link FragmentCache}.
+ */
+@SuppressWarnings("serial")
+public class FragmentCachePolicy implements Serializable {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    private static final long defaultTtl = UtilProperties.getPropertyAsLong("widget", "widget.fragmentCache.ttl", 600);
+
+    private final String screenName;
+    private final String keyPrefix;
+    private final FlexibleStringExpander keyExdr;
+    private final List<FlexibleStringExpander> tagExdrs;
+    private final long ttlMillis;
+    private final boolean hole;
+
+    protected FragmentCachePolicy(ModelScreenWidget widget, Element widgetElement) {
+        ModelScreen modelScreen = widget.getModelScreen();
+        this.screenName = modelScreen.getSourceLocation() + "#" + modelScreen.getName();
+        // identifies the widget within the screen
+        this.keyPrefix = widget.getStartLine() + ":" + widget.getStartColumn() + ":" + widget.getTagName() + ":" + widget.getName() + "|";
+        String key = widgetElement.getAttribute("cache-key");
+        this.keyExdr = key.isEmpty() ? null : FlexibleStringExpander.getInstance(key);
+        List<FlexibleStringExpander> tagExdrs = new ArrayList<>();
+        for (String tag : widgetElement.getAttribute("cache-tags").split(",")) {
+            tag = tag.trim();
+            if (!tag.isEmpty()) {
+                tagExdrs.add(FlexibleStringExpander.getInstance(tag));
+            }
+        }
+        this.tagExdrs = tagExdrs.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(tagExdrs);
+        long ttl = defaultTtl;
+        String ttlString = widgetElement.getAttribute("cache-ttl");
+        if (!ttlString.isEmpty()) {
+            try {
+                ttl = Long.parseLong(ttlString);
+            } catch (NumberFormatException e) {
+                Debug.logError("Invalid cache-ttl [" + ttlString + "]" + widget.getLogWidgetLocationString() + "; using " + defaultTtl, module);
+            }
+        }
+        this.ttlMillis = ttl * 1000;
+        this.hole = "true".equals(widgetElement.getAttribute("cache-hole"));
+    }
+
+    /**
+     * Returns the policy for the widget element, or null if it has no cache-key or cache-hole or the fragment cache is disabled.
+     */
+    public static FragmentCachePolicy fromElement(ModelScreenWidget widget, Element widgetElement) {
+        if (!FragmentCache.isEnabled() || widget.getModelScreen() == null
+                || (widgetElement.getAttribute("cache-key").isEmpty() && !"true".equals(widgetElement.getAttribute("cache-hole")))) {
+            return null;
+        }
+        return new FragmentCachePolicy(widget, widgetElement);
+    }
+
+    public boolean isHole() {
+        return hole;
+    }
+
+    /**
+     * Renders the widget through the fragment cache; the renderer renders it uncached.
+     * <p>
+     * On a hit the renderer is not called, so the actions of the widget do not run; only the holes render, in this context.
+     */
+    public void render(ModelScreenWidget widget, Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer,
+            WidgetRenderer renderer) throws GeneralException, IOException {
+        FragmentCache fragmentCache = FragmentCache.getInstance();
+        if (hole && fragmentCache.writeHole(widget, writer)) {
+            return;
+        }
+        if (keyExdr == null) {
+            renderer.render(writer);
+            return;
+        }
+        String key = keyPrefix + keyExdr.expandString(context);
+        FragmentOutput output = fragmentCache.get(screenName, key);
+        if (output == null) {
+            List<String> tags = getTags(context);
+            long sequence = fragmentCache.getSequence();
+            FragmentCache.Capture capture = fragmentCache.beginCapture();
+            StringWriter sw = new StringWriter();
+            try {
+                renderer.render(sw);
+            } finally {
+                fragmentCache.endCapture(capture);
+            }
+            output = FragmentOutput.fromRendered(sw.toString(), capture.holes, tags, sequence);
+            if (output.isComplete()) {
+                fragmentCache.put(screenName, key, output, ttlMillis);
+            } else {
+                Debug.logWarning("Fragment output is missing hole markers" + widget.getLogWidgetLocationString() + "; not caching it", module);
+            }
+        }
+        output.render(writer, context, screenStringRenderer);
+    }
+
+    private List<String> getTags(Map<String, Object> context) {
+        if (tagExdrs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> tags = new ArrayList<>(tagExdrs.size());
+        for (FlexibleStringExpander tagExdr : tagExdrs) {
+            String tag = tagExdr.expandString(context);
+            if (UtilValidate.isNotEmpty(tag)) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Renders a widget to a writer, without the fragment cache.
+     */
+    @FunctionalInterface
+    public interface WidgetRenderer {
+        void render(Appendable writer) throws GeneralException, IOException;
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.ofbiz.base.util.GeneralException;
+import org.ofbiz.widget.model.ModelScreenWidget;
+import org.ofbiz.widget.renderer.ScreenStringRenderer;
+
+/**
+ * Cached output of a screen fragment: static text, with the hole widgets to render live in between (SCIPIO).
+ */
+public class FragmentOutput {
+
+    private final Object[] parts; // String or ModelScreenWidget
+    private final List<String> tags;
+    private final long sequence;
+    private final boolean complete;
+
+    protected FragmentOutput(Object[] parts, List<String> tags, long sequence, boolean complete) {
+        this.parts = parts;
+        this.tags = tags;
+        this.sequence = sequence;
+        this.complete = complete;
+    }
+
+    /**
+     * Splits the rendered output at the hole markers written by {@link FragmentCache#writeHole}: HOLE_BEGIN, the index of
+     * the hole in holes, HOLE_END. The result is not complete (not to be cached) if a marker is unterminated, unknown,
+     * repeated or missing.
+     */
+    public static FragmentOutput fromRendered(String output, List<ModelScreenWidget> holes, List<String> tags, long sequence) {
+        if (holes.isEmpty()) {
+            return new FragmentOutput(new Object[] { output }, tags, sequence, output.indexOf(FragmentCache.HOLE_BEGIN) < 0);
+        }
+        List<Object> parts = new ArrayList<>(holes.size() * 2 + 1);
+        BitSet found = new BitSet(holes.size());
+        boolean complete = true;
+        int copied = 0;
+        int begin = output.indexOf(FragmentCache.HOLE_BEGIN);
+        while (begin >= 0) {
+            int end = output.indexOf(FragmentCache.HOLE_END, begin + 1);
+            if (end < 0) {
+                complete = false;
+                break;
+            }
+            int index;
+            try {
+                index = Integer.parseInt(output.substring(begin + 1, end));
+            } catch (NumberFormatException e) {
+                index = -1;
+            }
+            if (index < 0 || index >= holes.size() || found.get(index)) {
+                // not one of ours, or written twice by a template: keep as text, but do not cache
+                complete = false;
+                begin = output.indexOf(FragmentCache.HOLE_BEGIN, begin + 1);
+                continue;
+            }
+            found.set(index);
+            if (begin > copied) {
+                parts.add(output.substring(copied, begin));
+            }
+            parts.add(holes.get(index));
+            copied = end + 1;
+            begin = output.indexOf(FragmentCache.HOLE_BEGIN, copied);
+        }
+        if (copied < output.length()) {
+            parts.add(output.substring(copied));
+        }
+        // a missing marker means a hole was rendered somewhere its output got lost (e.g. escaped or discarded)
+        complete = complete && found.cardinality() == holes.size();
+        return new FragmentOutput(parts.toArray(), tags, sequence, complete);
+    }
+
+    /**
+     * Writes the output, rendering the holes in the given context.
+     */
+    public void render(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
+        for (Object part : parts) {
+            if (part instanceof String) {
+                writer.append((String) part);
+            } else {
+                ((ModelScreenWidget) part).renderWidgetString(writer, context, screenStringRenderer);
+            }
+        }
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns true if every hole was found once in the output, so it can be cached.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                sb.append((String) part);
+            }
+        }
+        return sb.toString();
+    }
+}
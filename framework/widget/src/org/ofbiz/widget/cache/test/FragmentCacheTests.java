@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.cache.test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.base.util.UtilXml;
+import org.ofbiz.base.util.collections.MapStack;
+import org.ofbiz.entity.testtools.EntityTestCase;
+import org.ofbiz.widget.cache.FragmentCache;
+import org.ofbiz.widget.cache.FragmentOutput;
+import org.ofbiz.widget.model.ModelScreen;
+import org.ofbiz.widget.model.ModelScreenWidget;
+import org.ofbiz.widget.model.ModelScreens;
+import org.ofbiz.widget.renderer.ScreenStringRenderer;
+
+/**
+ * Tests the hole marker splitting of fragment outputs, the composition of nested fragments and holes, and the
+ * sequence-based tag invalidation of the fragment cache (SCIPIO).
+ */
+public class FragmentCacheTests extends EntityTestCase {
+
+    private static final String SCREENS_LOCATION = "component://widget/testdef/FragmentCacheTests.xml";
+    private static final String SCREENS = "<screens>"
+            + "<screen name=\"Holes\"><section><widgets>"
+            + "<label text=\"[a ${n}]\"/><label text=\"[b ${n}]\"/>"
+            + "</widgets></section></screen>"
+            + "<screen name=\"Fragment\"><section><widgets>"
+            + "<section name=\"Outer\" cache-key=\"outer-${productId}\" cache-tags=\"Product:${productId}\">"
+            + "<actions><set field=\"fromActions\" value=\"set\"/>"
+            + "<set field=\"invalidated\" value=\"${groovy: if (invalidate) org.ofbiz.widget.cache.FragmentCache.getInstance().invalidateTag('Product:' + productId); return ''}\"/></actions>"
+            + "<widgets>"
+            + "<label text=\"[outer ${renderCount}]\"/>"
+            + "<section name=\"OuterHole\" cache-hole=\"true\"><widgets><label text=\"[hole ${cartSize} ${fromActions}]\"/></widgets></section>"
+            + "<section name=\"Inner\" cache-key=\"inner-${productId}\"><widgets>"
+            + "<label text=\"[inner ${renderCount}]\"/>"
+            + "<section name=\"InnerHole\" cache-hole=\"true\"><widgets><label text=\"[inner hole ${cartSize}]\"/></widgets></section>"
+            + "</widgets></section>"
+            + "</widgets></section>"
+            + "</widgets></section></screen>"
+            + "</screens>";
+
+    private static ModelScreens modelScreens;
+
+    public FragmentCacheTests(String name) {
+        super(name);
+    }
+
+    private static synchronized ModelScreens getModelScreens() throws Exception {
+        if (modelScreens == null) {
+            modelScreens = new ModelScreens(UtilXml.readXmlDocument(SCREENS, false, true).getDocumentElement(), SCREENS_LOCATION, false);
+        }
+        return modelScreens;
+    }
+
+    /**
+     * Renderer that only writes the text of labels.
+     */
+    private static ScreenStringRenderer makeLabelRenderer() {
+        return (ScreenStringRenderer) Proxy.newProxyInstance(FragmentCacheTests.class.getClassLoader(),
+                new Class<?>[] { ScreenStringRenderer.class }, (proxy, method, args) -> {
+                    if ("renderLabel".equals(method.getName())) {
+                        ModelScreenWidget.Label label = (ModelScreenWidget.Label) args[2];
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> context = (Map<String, Object>) args[1];
+                        ((Appendable) args[0]).append(label.getText(context));
+                    }
+                    return null;
+                });
+    }
+
+    private static String render(ModelScreen modelScreen, Map<String, Object> fields) throws Exception {
+        MapStack<String> context = MapStack.create();
+        context.putAll(fields);
+        StringBuilder sb = new StringBuilder();
+        modelScreen.getSection().renderWidgetString(sb, context, makeLabelRenderer());
+        return sb.toString();
+    }
+
+    private static String renderFragment(String productId, int renderCount, int cartSize) throws Exception {
+        return renderFragment(productId, renderCount, cartSize, false);
+    }
+
+    private static String renderFragment(String productId, int renderCount, int cartSize, boolean invalidate) throws Exception {
+        return render(getModelScreens().get("Fragment"), UtilMisc.toMap("productId", productId, "renderCount", renderCount,
+                "cartSize", cartSize, "invalidate", invalidate));
+    }
+
+    private static String makeMarker(int index) {
+        return FragmentCache.HOLE_BEGIN + Integer.toString(index) + FragmentCache.HOLE_END;
+    }
+
+    /**
+     * Returns the label widgets of the Holes screen, to use as holes.
+     */
+    private static List<ModelScreenWidget> getHoles() throws Exception {
+        return new ArrayList<>(getModelScreens().get("Holes").getSection().getSubWidgets());
+    }
+
+    private static String renderOutput(FragmentOutput output) throws Exception {
+        MapStack<String> context = MapStack.create();
+        context.put("n", 7);
+        StringBuilder sb = new StringBuilder();
+        output.render(sb, context, makeLabelRenderer());
+        return sb.toString();
+    }
+
+    public void testMarkerSplitting() throws Exception {
+        List<ModelScreenWidget> holes = getHoles();
+        List<String> tags = UtilMisc.toList("T");
+        // holes in any order, at the edges
+        FragmentOutput output = FragmentOutput.fromRendered(makeMarker(1) + "x" + makeMarker(0) + "y", holes, tags, 5);
+        assertTrue("Complete", output.isComplete());
+        assertEquals("Rendered", "[b 7]x[a 7]y", renderOutput(output));
+        assertEquals("Static text", "xy", output.toString());
+        assertEquals("Tags", tags, output.getTags());
+        assertEquals("Sequence", 5, output.getSequence());
+
+        output = FragmentOutput.fromRendered("x" + makeMarker(0) + makeMarker(1), holes, tags, 5);
+        assertTrue("Adjacent markers complete", output.isComplete());
+        assertEquals("Adjacent markers rendered", "x[a 7][b 7]", renderOutput(output));
+
+        assertTrue("No holes", FragmentOutput.fromRendered("plain", new ArrayList<>(), tags, 0).isComplete());
+    }
+
+    public void testIncompleteMarkers() throws Exception {
+        List<ModelScreenWidget> holes = getHoles();
+        List<String> tags = new ArrayList<>();
+        assertFalse("Missing marker", FragmentOutput.fromRendered("x" + makeMarker(0), holes, tags, 0).isComplete());
+        assertFalse("Repeated marker", FragmentOutput.fromRendered(makeMarker(0) + makeMarker(1) + makeMarker(0), holes, tags, 0).isComplete());
+        assertFalse("Unknown marker", FragmentOutput.fromRendered(makeMarker(0) + makeMarker(1) + makeMarker(2), holes, tags, 0).isComplete());
+        assertFalse("Unterminated marker", FragmentOutput.fromRendered(makeMarker(0) + FragmentCache.HOLE_BEGIN + "1", holes, tags, 0).isComplete());
+        assertFalse("Stray marker without holes", FragmentOutput.fromRendered("x" + makeMarker(0), new ArrayList<>(), tags, 0).isComplete());
+
+        // an unknown marker is kept as text
+        FragmentOutput output = FragmentOutput.fromRendered(makeMarker(0) + "x" + makeMarker(9) + makeMarker(1), holes, tags, 0);
+        assertEquals("Unknown marker kept", "[a 7]x" + makeMarker(9) + "[b 7]", renderOutput(output));
+    }
+
+    public void testNestedHoles() throws Exception {
+        String productId = "NESTED-" + System.nanoTime();
+        assertEquals("First render", "[outer 1][hole 10 set][inner 1][inner hole 10]", renderFragment(productId, 1, 10));
+        // both fragments cached: only the holes, outer and inner, render in the new context
+        assertEquals("Cached render", "[outer 1][hole 20 ][inner 1][inner hole 20]", renderFragment(productId, 2, 20));
+
+        // the outer fragment re-renders, but the inner one is still cached and composes its hole into it
+        FragmentCache.getInstance().invalidateTag("Product:" + productId);
+        assertEquals("Outer re-render", "[outer 3][hole 30 set][inner 1][inner hole 30]", renderFragment(productId, 3, 30));
+        assertEquals("Cached after the outer re-render", "[outer 3][hole 40 ][inner 1][inner hole 40]", renderFragment(productId, 4, 40));
+    }
+
+    /**
+     * The fragment actions set fromActions: the hole sees it when the fragment renders, but not on a hit, where those
+     * actions do not run.
+     */
+    public void testHoleContextWithoutFragmentActions() throws Exception {
+        String productId = "ACTIONS-" + System.nanoTime();
+        assertEquals("Miss", "[outer 1][hole 1 set][inner 1][inner hole 1]", renderFragment(productId, 1, 1));
+        assertEquals("Hit", "[outer 1][hole 2 ][inner 1][inner hole 2]", renderFragment(productId, 2, 2));
+    }
+
+    public void testTagInvalidation() throws Exception {
+        String productId = "TAGS-" + System.nanoTime();
+        renderFragment(productId, 1, 0);
+        FragmentCache.getInstance().invalidateTag("Product:OTHER-" + productId);
+        assertTrue("Other tag keeps the fragment", renderFragment(productId, 2, 0).startsWith("[outer 1]"));
+        FragmentCache.getInstance().invalidateEntity("Product");
+        assertTrue("Entity invalidation", renderFragment(productId, 3, 0).startsWith("[outer 3]"));
+        assertTrue("Cached again", renderFragment(productId, 4, 0).startsWith("[outer 3]"));
+    }
+
+    /**
+     * A tag invalidated while the fragment renders makes it stale at once, because its sequence was taken before.
+     */
+    public void testInvalidationDuringRender() throws Exception {
+        String productId = "DURING-" + System.nanoTime();
+        assertTrue("Render invalidating its own tag", renderFragment(productId, 1, 0, true).startsWith("[outer 1]"));
+        assertTrue("Stale after the render", renderFragment(productId, 2, 0).startsWith("[outer 2]"));
+        assertTrue("Cached", renderFragment(productId, 3, 0).startsWith("[outer 2]"));
+    }
+
+    public void testEntityCacheClear() throws Exception {
+        String productId = "CLEAR-" + System.nanoTime();
+        renderFragment(productId, 1, 0);
+        delegator.clearCacheLine("Product", "productId", "OTHER-" + productId);
+        assertTrue("Other row keeps the fragment", renderFragment(productId, 2, 0).startsWith("[outer 1]"));
+        delegator.clearCacheLine("Product", "productId", productId);
+        assertTrue("Row clear invalidates the fragment", renderFragment(productId, 3, 0).startsWith("[outer 3]"));
+    }
+
+    /**
+     * Writes of an entity that no cached fragment has a tag of do not track tags per row.
+     */
+    public void testUntaggedEntityClear() throws Exception {
+        FragmentCache fragmentCache = FragmentCache.getInstance();
+        int tagCount = fragmentCache.getInvalidatedTagCount();
+        for (int i = 0; i < 100; i++) {
+            delegator.clearCacheLine("TestingType", "testingTypeId", "FCACHE-" + i);
+        }
+        assertEquals("Invalidated tags", tagCount, fragmentCache.getInvalidatedTagCount());
+    }
+}
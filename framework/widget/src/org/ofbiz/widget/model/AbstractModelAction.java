@@ -21,13 +21,24 @@ package org.ofbiz.widget.model;
 import java.io.Serializable;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
 
+import org.ofbiz.base.concurrent.ExecutionPool;
 import org.ofbiz.base.util.*;
 import org.ofbiz.base.util.UtilXml.ElementHelper;
 import org.ofbiz.base.util.collections.FlexibleMapAccessor;
+import org.ofbiz.base.util.collections.MapContext;
+import org.ofbiz.base.util.collections.RenderMapStack;
 import org.ofbiz.base.util.collections.ResourceBundleMapWrapper;
 import org.ofbiz.base.util.string.FlexibleStringExpander;
 import org.ofbiz.entity.Delegator;
@@ -37,6 +48,7 @@ import org.ofbiz.entity.finder.ByAndFinder;
 import org.ofbiz.entity.finder.ByConditionFinder;
 import org.ofbiz.entity.finder.EntityFinderUtil;
 import org.ofbiz.entity.finder.PrimaryKeyFinder;
+import org.ofbiz.entity.transaction.TransactionUtil;
 import org.ofbiz.entity.util.EntityUtilProperties;
 import org.ofbiz.minilang.MiniLangException;
 import org.ofbiz.minilang.MiniLangUtil;
@@ -111,6 +123,8 @@ public abstract class AbstractModelAction implements Serializable, ModelAction {
             return new ThrowException(modelWidget, actionElement);
         } else if ("if".equals(nodeName)) { // SCIPIO: new
             return new MasterIf(modelWidget, actionElement);
+        } else if (Parallel.TAG_NAME.equals(nodeName)) { // SCIPIO: new
+            return new Parallel(modelWidget, actionElement);
         } else if (IncludeActions.isIncludeActions(actionElement)) { // SCIPIO: new
             return IncludeActions.newInstance(modelWidget, actionElement);
         } else {
@@ -1943,4 +1957,328 @@ public abstract class AbstractModelAction implements Serializable, ModelAction {
         }
     }
 
+    /**
+     * SCIPIO: Models the &lt;parallel&gt; element, which runs independent data-fetching actions concurrently and
+     * waits for all of them before continuing.
+     * <p>
+     * Each action runs against its own child stack of the context, seeing the fields set before the block but not the
+     * results of the other actions; once all complete, the fields each one set are copied to the context in document
+     * order, so the outcome is the same as in sequence as long as no action reads the results of another. The first
+     * action runs on the current thread, the others on a shared pool of <code>widget.actions.parallel.threads</code>
+     * threads, or on the current thread as well if the pool has not started them by the time it is free.
+     * <p>
+     * Only read-only actions that declare their result field are allowed: entity-one, entity-and, entity-condition
+     * (without use-iterator), get-related-one, get-related, property-map (not global) and service with a literal
+     * service-name and a result-map. Anything else, script included, fails when the screen is read. A service must also
+     * declare <code>use-transaction="false"</code>, which is checked against its definition on the first run of the block,
+     * as the service definitions are not available when the screen is read.
+     * <p>
+     * The actions run in sequence instead when a transaction is in place on the current thread (the pool threads would
+     * not see its uncommitted data and could block on its locks), when two of them declare the same result field, or
+     * when <code>widget.actions.parallel.enabled</code> is false.
+     * <p>
+     * The time saved, the total time of the actions less the time of the block, is recorded per screen (see {@link #getStats()})
+     * and exported by <code>org.ofbiz.widget.stats.WidgetMetricsServlet</code>.
+     *
+     * @see <code>widget-common.xsd</code>
+     */
+    public static class Parallel extends AbstractModelAction {
+        public static final String TAG_NAME = "parallel";
+
+        /** Read-only actions allowed in the block, by tag name, with the attribute naming their result field */
+        private static final Map<String, String> ACTION_RESULT_ATTRS;
+        static {
+            Map<String, String> resultAttrs = new HashMap<>();
+            resultAttrs.put("entity-one", "value-field");
+            resultAttrs.put("entity-and", "list");
+            resultAttrs.put("entity-condition", "list");
+            resultAttrs.put("get-related-one", "to-value-field");
+            resultAttrs.put("get-related", "list");
+            resultAttrs.put("property-map", "map-name");
+            resultAttrs.put("service", "result-map");
+            ACTION_RESULT_ATTRS = Collections.unmodifiableMap(resultAttrs);
+        }
+
+        private static final boolean enabled = UtilProperties.getPropertyAsBoolean("widget", "widget.actions.parallel.enabled", true);
+        private static final long defaultTimeout = UtilProperties.getPropertyAsLong("widget", "widget.actions.parallel.timeout", 30000);
+        private static final int threadCount = UtilProperties.getPropertyAsInteger("widget", "widget.actions.parallel.threads",
+                Runtime.getRuntime().availableProcessors() * 2);
+        private static final boolean logTimes = UtilProperties.getPropertyAsBoolean("widget", "widget.actions.parallel.log", false);
+
+        private static volatile ExecutorService executor;
+        private static final Map<String, Stats> statsMap = new ConcurrentHashMap<>();
+
+        private final List<ModelAction> subOps;
+        private final boolean parallel;
+        private final long timeout;
+        private final String statsName;
+        private final List<String> serviceNames;
+        private volatile boolean servicesChecked = false;
+
+        public Parallel(ModelWidget modelWidget, Element element) {
+            super(modelWidget, element);
+            Set<String> resultFields = new HashSet<>();
+            List<String> serviceNames = new ArrayList<>();
+            boolean conflict = false;
+            for (Element subElement : UtilXml.childElementList(element)) {
+                String nodeName = UtilXml.getNodeNameIgnorePrefix(subElement);
+                String resultAttr = ACTION_RESULT_ATTRS.get(nodeName);
+                if (resultAttr == null) {
+                    throw new IllegalArgumentException("Action element not supported in " + TAG_NAME + ": " + subElement.getNodeName()
+                            + " (only read-only actions: " + String.join(", ", new TreeSet<>(ACTION_RESULT_ATTRS.keySet())) + ")"
+                            + getLogDirectiveLocationString());
+                }
+                if (UtilXml.firstChildElement(subElement, "use-iterator") != null) {
+                    throw new IllegalArgumentException(TAG_NAME + ": use-iterator not supported in " + nodeName
+                            + " (the iterator would stay open on a pool thread)" + getLogDirectiveLocationString());
+                }
+                if ("true".equals(subElement.getAttribute("global"))) {
+                    throw new IllegalArgumentException(TAG_NAME + ": global not supported in " + nodeName
+                            + " (the actions must not change the global context)" + getLogDirectiveLocationString());
+                }
+                String resultField = getRootFieldName(subElement.getAttribute(resultAttr));
+                if (resultField.isEmpty()) {
+                    throw new IllegalArgumentException(TAG_NAME + ": " + nodeName + " must declare its result field (" + resultAttr + ")"
+                            + getLogDirectiveLocationString());
+                }
+                if ("service".equals(nodeName)) {
+                    String serviceName = subElement.getAttribute("service-name");
+                    if (FlexibleStringExpander.containsExpression(FlexibleStringExpander.getInstance(serviceName))) {
+                        throw new IllegalArgumentException(TAG_NAME + ": service-name must not be an expression [" + serviceName + "]"
+                                + getLogDirectiveLocationString());
+                    }
+                    serviceNames.add(serviceName);
+                }
+                if (!resultFields.add(resultField)) {
+                    Debug.logWarning(TAG_NAME + ": more than one action sets field [" + resultField + "]; they will run in sequence"
+                            + getLogDirectiveLocationString(), module);
+                    conflict = true;
+                }
+            }
+            this.subOps = AbstractModelAction.readSubActions(modelWidget, element);
+            this.parallel = !conflict && subOps.size() > 1;
+            long timeout = defaultTimeout;
+            String timeoutString = element.getAttribute("timeout");
+            if (!timeoutString.isEmpty()) {
+                try {
+                    timeout = Long.parseLong(timeoutString);
+                } catch (NumberFormatException e) {
+                    Debug.logError(TAG_NAME + ": invalid timeout [" + timeoutString + "]; using " + defaultTimeout
+                            + getLogDirectiveLocationString(), module);
+                }
+            }
+            this.timeout = timeout;
+            this.statsName = (modelWidget != null) ? modelWidget.getFullLocationAndName() : "unknown";
+            this.serviceNames = serviceNames.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(serviceNames);
+        }
+
+        private static String getRootFieldName(String fieldName) {
+            fieldName = fieldName.trim();
+            for (int i = 0; i < fieldName.length(); i++) {
+                char c = fieldName.charAt(i);
+                if (c == '.' || c == '[') {
+                    return fieldName.substring(0, i);
+                }
+            }
+            return fieldName;
+        }
+
+        @Override
+        public void accept(ModelActionVisitor visitor) throws Exception {
+            for (ModelAction subOp : subOps) {
+                subOp.accept(visitor);
+            }
+        }
+
+        @Override
+        public void runAction(Map<String, Object> context) throws GeneralException {
+            checkServices(context);
+            if (!parallel || !enabled) {
+                AbstractModelAction.runSubActionsEx(this.subOps, context);
+                return;
+            }
+            if (TransactionUtil.isTransactionInPlaceSafe()) {
+                AbstractModelAction.runSubActionsEx(this.subOps, context);
+                statsMap.computeIfAbsent(statsName, name -> new Stats()).recordSequential();
+                return;
+            }
+            long startTime = System.nanoTime();
+            int count = subOps.size();
+            List<MapContext<String, Object>> localContexts = new ArrayList<>(count);
+            List<Future<Long>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                MapContext<String, Object> localContext = makeLocalContext(context);
+                localContexts.add(localContext);
+                futures.add((i > 0) ? submit(subOps.get(i), localContext) : null);
+            }
+            long actionNanos = 0;
+            try {
+                actionNanos += runTimed(subOps.get(0), localContexts.get(0));
+                long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeout);
+                for (int i = 1; i < count; i++) {
+                    Future<Long> future = futures.get(i);
+                    if (future == null || future.cancel(false)) {
+                        // rejected, or not started yet: run it here rather than wait for the pool
+                        actionNanos += runTimed(subOps.get(i), localContexts.get(i));
+                    } else {
+                        actionNanos += getResult(future, deadline);
+                    }
+                }
+            } finally {
+                for (Future<Long> future : futures) {
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                }
+            }
+            for (MapContext<String, Object> localContext : localContexts) {
+                context.putAll(localContext.getCurrentMap());
+            }
+            long elapsedNanos = System.nanoTime() - startTime;
+            statsMap.computeIfAbsent(statsName, name -> new Stats()).record(actionNanos, elapsedNanos);
+            if (logTimes) {
+                Debug.logInfo(TAG_NAME + ": ran " + count + " actions in " + (elapsedNanos / 1000000) + "ms, saving "
+                        + ((actionNanos - elapsedNanos) / 1000000) + "ms" + getLogDirectiveLocationString(), module);
+            }
+        }
+
+        /**
+         * Checks, once, that the services of the block declare no transaction, as they would otherwise write or hold
+         * locks in a transaction of their own on the pool threads.
+         */
+        private void checkServices(Map<String, Object> context) throws GeneralException {
+            if (servicesChecked || serviceNames.isEmpty()) {
+                return;
+            }
+            LocalDispatcher dispatcher = WidgetWorker.getDispatcher(context);
+            if (dispatcher == null) {
+                throw new GeneralException(TAG_NAME + ": no dispatcher in context to check the services" + getLogDirectiveLocationString());
+            }
+            for (String serviceName : serviceNames) {
+                ModelService modelService = dispatcher.getDispatchContext().getModelService(serviceName);
+                if (modelService.useTransaction || modelService.requireNewTransaction) {
+                    throw new GeneralException(TAG_NAME + ": service [" + serviceName + "] uses a transaction; only services declaring"
+                            + " use-transaction=\"false\" are allowed" + getLogDirectiveLocationString());
+                }
+            }
+            servicesChecked = true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static MapContext<String, Object> makeLocalContext(Map<String, Object> context) {
+            if (context instanceof MapContext) {
+                return ((MapContext<String, Object>) context).standAloneChildStack();
+            }
+            RenderMapStack localContext = RenderMapStack.createRenderContext(context);
+            localContext.push();
+            return localContext;
+        }
+
+        private static Future<Long> submit(ModelAction action, Map<String, Object> localContext) {
+            try {
+                return getExecutor().submit(() -> runTimed(action, localContext));
+            } catch (RejectedExecutionException e) {
+                return null;
+            }
+        }
+
+        private static long runTimed(ModelAction action, Map<String, Object> context) throws GeneralException {
+            long startTime = System.nanoTime();
+            action.runAction(context);
+            return System.nanoTime() - startTime;
+        }
+
+        private long getResult(Future<Long> future, long deadline) throws GeneralException {
+            try {
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof GeneralException) {
+                    throw (GeneralException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new GeneralException(cause);
+            } catch (TimeoutException e) {
+                throw new GeneralException(TAG_NAME + ": actions did not complete within " + timeout + "ms" + getLogDirectiveLocationString(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GeneralException(TAG_NAME + ": interrupted waiting for actions" + getLogDirectiveLocationString(), e);
+            }
+        }
+
+        private static ExecutorService getExecutor() {
+            ExecutorService executor = Parallel.executor;
+            if (executor == null) {
+                synchronized (Parallel.class) {
+                    executor = Parallel.executor;
+                    if (executor == null) {
+                        executor = ExecutionPool.getScheduledExecutor(null, "Scipio-screen-actions", threadCount, 60, false);
+                        Parallel.executor = executor;
+                    }
+                }
+            }
+            return executor;
+        }
+
+        /**
+         * Returns the run count and times of the parallel blocks, by screen (or other widget) location and name; the
+         * sequentialCount is of the runs in sequence because a transaction was in place.
+         */
+        public static Map<String, Map<String, Object>> getStats() {
+            Map<String, Map<String, Object>> stats = new TreeMap<>();
+            for (Map.Entry<String, Stats> entry : statsMap.entrySet()) {
+                stats.put(entry.getKey(), entry.getValue().toMap());
+            }
+            return stats;
+        }
+
+        public List<ModelAction> getSubOps() {
+            return subOps;
+        }
+
+        public boolean isParallel() {
+            return parallel;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        private static final class Stats {
+            final LongAdder runCount = new LongAdder();
+            final LongAdder sequentialCount = new LongAdder();
+            final LongAdder actionNanos = new LongAdder();
+            final LongAdder elapsedNanos = new LongAdder();
+
+            void record(long actionNanos, long elapsedNanos) {
+                this.runCount.increment();
+                this.actionNanos.add(actionNanos);
+                this.elapsedNanos.add(elapsedNanos);
+            }
+
+            void recordSequential() {
+                this.sequentialCount.increment();
+            }
+
+            Map<String, Object> toMap() {
+                long runs = runCount.sum();
+                long action = actionNanos.sum();
+                long elapsed = elapsedNanos.sum();
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("runCount", runs);
+                stats.put("sequentialCount", sequentialCount.sum());
+                stats.put("actionTimeNanos", action);
+                stats.put("elapsedTimeNanos", elapsed);
+                stats.put("actionTimeMillis", action / 1000000);
+                stats.put("elapsedTimeMillis", elapsed / 1000000);
+                stats.put("savedTimeMillis", (action - elapsed) / 1000000);
+                stats.put("avgSavedTimeMillis", (runs > 0) ? ((action - elapsed) / 1000000.0) / runs : 0.0);
+                return stats;
+            }
+        }
+    }
+
 }
@@ -173,6 +173,7 @@ public abstract class ModelForm extends ModelWidget implements ModelWidget.IdAtt
     private final FlexibleStringExpander paginateNextLabel;
     private final FlexibleStringExpander paginatePreviousLabel;
     private final FlexibleStringExpander paginateSizeField;
+    private final FlexibleStringExpander paginateSeekField; // SCIPIO
     private final String paginateStyle;
     private final FlexibleStringExpander paginateTarget;
     private final String paginateTargetAnchor;
@@ -678,6 +679,12 @@ public abstract class ModelForm extends ModelWidget implements ModelWidget.IdAtt
             paginateSizeField = parentModel.paginateSizeField;
         }
         this.paginateSizeField = paginateSizeField;
+        FlexibleStringExpander paginateSeekField = FlexibleStringExpander.getInstance(formElement
+                .getAttribute("paginate-seek-field"));
+        if (paginateSeekField.isEmpty() && parentModel != null) {
+            paginateSeekField = parentModel.paginateSeekField;
+        }
+        this.paginateSeekField = paginateSeekField;
         FlexibleStringExpander overrideListSize = FlexibleStringExpander.getInstance(formElement
                 .getAttribute("override-list-size"));
         if (overrideListSize.isEmpty() && parentModel != null) {
@@ -1595,6 +1602,18 @@ public abstract class ModelForm extends ModelWidget implements ModelWidget.IdAtt
         return field;
     }
 
+    /**
+     * SCIPIO: Returns the name of the parameter that receives the seek key of the next page (keyset pagination),
+     * or empty if keyset pagination is not enabled for this form.
+     */
+    public String getPaginateSeekField() {
+        return paginateSeekField.getOriginal();
+    }
+
+    public String getPaginateSeekField(Map<String, Object> context) {
+        return this.paginateSeekField.expandString(context);
+    }
+
     public String getPaginateStyle() {
         return this.paginateStyle;
     }
@@ -47,6 +47,7 @@ import org.ofbiz.entity.util.EntityQuery;
 import org.ofbiz.webapp.renderer.RenderContextFetcher;
 import org.ofbiz.widget.WidgetFactory;
 import org.ofbiz.widget.WidgetWorker;
+import org.ofbiz.widget.cache.FragmentCachePolicy;
 import org.ofbiz.widget.model.CommonWidgetModels.AutoEntityParameters;
 import org.ofbiz.widget.model.CommonWidgetModels.AutoServiceParameters;
 import org.ofbiz.widget.model.CommonWidgetModels.Image;
@@ -61,6 +62,7 @@ import org.ofbiz.widget.renderer.MenuRenderState;
 import org.ofbiz.widget.renderer.MenuStringRenderer;
 import org.ofbiz.widget.renderer.WidgetRenderOptions;
 import org.ofbiz.widget.renderer.ScreenRenderer;
+import org.ofbiz.widget.renderer.ScreenStreamWriter;
 import org.ofbiz.widget.renderer.ScreenStringRenderer;
 import org.ofbiz.widget.renderer.TreeStringRenderer;
 import org.ofbiz.widget.renderer.WidgetRenderTargetExpr;
@@ -85,6 +87,10 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
      * Added 2017-05-04.
      */
     private final ContainsExpr.ContainsExprHolder containsExpr;
+    /**
+     * SCIPIO: Fragment cache settings, from the cache-key and cache-hole attributes, or null. Added 2026-10.
+     */
+    private final FragmentCachePolicy fragmentCachePolicy;
 
     public ModelScreenWidget(ModelScreen modelScreen, Element widgetElement) {
         super(widgetElement);
@@ -94,6 +100,7 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
         }
         // SCIPIO: new
         this.containsExpr = ContainsExpr.ContainsExprHolder.getInstanceOrDefault(widgetElement.getAttribute("contains"), widgetElement);
+        this.fragmentCachePolicy = FragmentCachePolicy.fromElement(this, widgetElement);
     }
 
     /**
@@ -124,7 +131,13 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
             return;
         }
         try {
-            renderWidgetStringCore(execInfo.getWriterForElementRender(), context, screenStringRenderer);
+            // SCIPIO: fragment cache, not used for targeted rendering, which discards most output
+            if (fragmentCachePolicy != null && !renderTargetState.isEnabled()) {
+                fragmentCachePolicy.render(this, execInfo.getWriterForElementRender(), context, screenStringRenderer,
+                        w -> renderWidgetStringCore(w, context, screenStringRenderer));
+            } else {
+                renderWidgetStringCore(execInfo.getWriterForElementRender(), context, screenStringRenderer);
+            }
         } finally {
             execInfo.handleFinished(context); // SCIPIO: return logic
         }
@@ -165,6 +178,13 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
         return this.modelScreen;
     }
 
+    /**
+     * SCIPIO: Returns the fragment cache settings of this widget, or null if not cached.
+     */
+    public FragmentCachePolicy getFragmentCachePolicy() {
+        return fragmentCachePolicy;
+    }
+
     /**
      * SCIPIO: Returns the complex contains-expression. Never null.
      */
@@ -449,6 +469,8 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
         private final boolean actionsOnly; // SCIPIO: extra flag hint
         private final List<ModelAction> catchActions; // SCIPIO: Added 2019-05-17
         private final List<ModelAction> finallyActions; // SCIPIO: Added 2019-05-17
+        private final boolean defer; // SCIPIO: streaming: render on a worker thread
+        private final boolean flush; // SCIPIO: streaming: send output to client after render
 
         public Section(ModelScreen modelScreen, Element sectionElement) {
             this(modelScreen, sectionElement, false);
@@ -539,6 +561,8 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
             }
             this.isMainSection = isMainSection;
             this.shareScopeExdr = FlexibleStringExpander.getInstance(sectionElement.getAttribute("share-scope"));
+            this.defer = "true".equals(sectionElement.getAttribute("defer"));
+            this.flush = "true".equals(sectionElement.getAttribute("flush"));
 
             // SCIPIO: Warn about this case, which should basically be considered an error.
             // 2018-10-17: Because too much code used this pattern, now only print as warning if this is the main section;
@@ -581,6 +605,10 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
 
         @Override
         public void renderWidgetStringCore(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException { // SCIPIO: renamed to *Core
+            // SCIPIO: streaming: render on a worker thread, output is emitted in order by the stream writer
+            if (this.defer && ScreenStreamWriter.defer(this, writer, context)) {
+                return;
+            }
             // SCIPIO: share-scope
             boolean protectScope = !shareScope(context);
             if (protectScope) {
@@ -658,6 +686,10 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
                         AbstractModelAction.runSubActionsEx(this.finallyActions, context);
                     }
                 }
+                // SCIPIO: streaming: send everything so far to the client (not on error, so error pages still work)
+                if (this.flush) {
+                    ScreenStreamWriter.flush(writer, context);
+                }
             } finally {
                 // SCIPIO: share-scope
                 if (protectScope) {
@@ -704,6 +736,14 @@ public abstract class ModelScreenWidget extends ModelWidget implements ContainsE
             return !"false".equals(shareScopeString);
         }
 
+        public boolean isDefer() { // SCIPIO
+            return defer;
+        }
+
+        public boolean isFlush() { // SCIPIO
+            return flush;
+        }
+
         @Override
         public String getWidgetType() { // SCIPIO
             return TAG_NAME;
@@ -591,6 +591,7 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
         visitAttribute("paginate-target-anchor", modelForm.getPaginateTargetAnchor());
         visitAttribute("paginate-index-field", modelForm.getPaginateIndexField());
         visitAttribute("paginate-size-field", modelForm.getPaginateSizeField());
+        visitAttribute("paginate-seek-field", modelForm.getPaginateSeekField());
         visitAttribute("override-list-size", modelForm.getOverrideListSize());
         visitAttribute("paginate-first-label", modelForm.getPaginateFirstLabel());
         visitAttribute("paginate-previous-label", modelForm.getPaginatePreviousLabel());
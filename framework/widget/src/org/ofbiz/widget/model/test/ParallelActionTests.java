@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.model.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.ofbiz.base.util.GeneralException;
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.base.util.UtilXml;
+import org.ofbiz.base.util.collections.MapStack;
+import org.ofbiz.entity.GenericValue;
+import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.service.testtools.OFBizTestCase;
+import org.ofbiz.widget.model.AbstractModelAction;
+import org.ofbiz.widget.model.ModelAction;
+import org.ofbiz.widget.model.ModelActionVisitor;
+import org.ofbiz.widget.model.XmlWidgetActionVisitor;
+import org.ofbiz.widget.stats.WidgetMetricsServlet;
+
+/**
+ * Tests the &lt;parallel&gt; screen action: the document order of its results, the fallback to sequence on result
+ * conflicts and under a transaction, the propagation of action errors, the rejection of unsafe actions, and the
+ * export of its stats (SCIPIO).
+ */
+public class ParallelActionTests extends OFBizTestCase {
+
+    /** The second lookup reads the result of the first, so it only finds its value when they run in sequence */
+    private static final String DEPENDENT_LOOKUPS = "<parallel>"
+            + "<entity-one entity-name=\"TestingType\" value-field=\"typeA\" auto-field-map=\"false\"><field-map field-name=\"testingTypeId\" value=\"PARALLEL_A\"/></entity-one>"
+            + "<entity-one entity-name=\"TestingType\" value-field=\"typeB\" auto-field-map=\"false\"><field-map field-name=\"testingTypeId\" value=\"${typeA.description}\"/></entity-one>"
+            + "<entity-and entity-name=\"TestingType\" list=\"typesB\"><field-map field-name=\"testingTypeId\" value=\"PARALLEL_B\"/></entity-and>"
+            + "</parallel>";
+
+    public ParallelActionTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        delegator.createOrStore(delegator.makeValue("TestingType", "testingTypeId", "PARALLEL_A", "description", "PARALLEL_B"));
+        delegator.createOrStore(delegator.makeValue("TestingType", "testingTypeId", "PARALLEL_B", "description", "Parallel B"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delegator.removeByAnd("TestingType", UtilMisc.toMap("testingTypeId", "PARALLEL_A"));
+        delegator.removeByAnd("TestingType", UtilMisc.toMap("testingTypeId", "PARALLEL_B"));
+        super.tearDown();
+    }
+
+    private static ModelAction readAction(String xml) throws Exception {
+        return AbstractModelAction.newInstance(null, UtilXml.readXmlDocument(xml, false, true).getDocumentElement());
+    }
+
+    private MapStack<String> makeContext() {
+        MapStack<String> context = MapStack.create();
+        context.put("delegator", delegator);
+        context.put("dispatcher", dispatcher);
+        context.put("locale", Locale.ENGLISH);
+        return context;
+    }
+
+    private static void assertRejected(String message, String xml) throws Exception {
+        try {
+            readAction(xml);
+            fail(message + " not rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static long getStat(String key) {
+        Map<String, Object> stats = AbstractModelAction.Parallel.getStats().get("unknown");
+        return (stats != null) ? (Long) stats.get(key) : 0;
+    }
+
+    public void testParallelResultsInDocumentOrder() throws Exception {
+        AbstractModelAction.Parallel parallel = (AbstractModelAction.Parallel) readAction(DEPENDENT_LOOKUPS);
+        assertTrue("Parallel", parallel.isParallel());
+        long runCount = getStat("runCount");
+        MapStack<String> context = makeContext();
+        context.put("typeB", "before");
+        parallel.runAction(context);
+        assertEquals("First result", "PARALLEL_A", ((GenericValue) context.get("typeA")).getString("testingTypeId"));
+        // the second action did not see the first result, and its null result replaced the field set before the block
+        assertTrue("Second result set", context.containsKey("typeB"));
+        assertNull("Second result without the first", context.get("typeB"));
+        assertEquals("Third result", 1, ((List<?>) context.get("typesB")).size());
+        assertEquals("Run recorded", runCount + 1, getStat("runCount"));
+    }
+
+    public void testSequentialInTransaction() throws Exception {
+        AbstractModelAction.Parallel parallel = (AbstractModelAction.Parallel) readAction(DEPENDENT_LOOKUPS);
+        long sequentialCount = getStat("sequentialCount");
+        MapStack<String> context = makeContext();
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            parallel.runAction(context);
+        } finally {
+            TransactionUtil.rollback(beganTransaction, "Parallel action test", null);
+        }
+        assertEquals("Second result with the first", "PARALLEL_B", ((GenericValue) context.get("typeB")).getString("testingTypeId"));
+        assertEquals("Sequential run recorded", sequentialCount + 1, getStat("sequentialCount"));
+    }
+
+    public void testConflictFallback() throws Exception {
+        AbstractModelAction.Parallel parallel = (AbstractModelAction.Parallel) readAction("<parallel>"
+                + "<entity-one entity-name=\"TestingType\" value-field=\"type\" auto-field-map=\"false\"><field-map field-name=\"testingTypeId\" value=\"PARALLEL_A\"/></entity-one>"
+                + "<entity-one entity-name=\"TestingType\" value-field=\"type\" auto-field-map=\"false\"><field-map field-name=\"testingTypeId\" value=\"${type.description}\"/></entity-one>"
+                + "</parallel>");
+        assertFalse("Parallel with the same result field", parallel.isParallel());
+        MapStack<String> context = makeContext();
+        parallel.runAction(context);
+        // in sequence, the second action sees the result of the first and its own result wins
+        assertEquals("Last result", "PARALLEL_B", ((GenericValue) context.get("type")).getString("testingTypeId"));
+    }
+
+    public void testErrorPropagation() throws Exception {
+        AbstractModelAction.Parallel parallel = (AbstractModelAction.Parallel) readAction("<parallel>"
+                + "<entity-one entity-name=\"TestingType\" value-field=\"typeA\" auto-field-map=\"false\"><field-map field-name=\"testingTypeId\" value=\"PARALLEL_A\"/></entity-one>"
+                + "<entity-one entity-name=\"${missingEntity}\" value-field=\"missing\" auto-field-map=\"false\"><field-map field-name=\"id\" value=\"X\"/></entity-one>"
+                + "</parallel>");
+        MapStack<String> context = makeContext();
+        context.put("missingEntity", "ParallelActionTestsMissing");
+        try {
+            parallel.runAction(context);
+            fail("Action error not thrown");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Action error", e.getMessage().contains("ParallelActionTestsMissing"));
+        }
+        assertFalse("No results after an error", context.containsKey("typeA"));
+    }
+
+    public void testUnsafeActionsRejected() throws Exception {
+        assertRejected("script", "<parallel><script location=\"component://widget/script/Test.groovy\"/>"
+                + "<entity-one entity-name=\"TestingType\" value-field=\"typeA\"/></parallel>");
+        assertRejected("set", "<parallel><set field=\"a\" value=\"b\"/></parallel>");
+        assertRejected("use-iterator", "<parallel><entity-condition entity-name=\"TestingType\" list=\"types\"><use-iterator/></entity-condition></parallel>");
+        assertRejected("global", "<parallel><property-map resource=\"CommonUiLabels\" map-name=\"uiLabels\" global=\"true\"/></parallel>");
+        assertRejected("service without result-map", "<parallel><service service-name=\"effectiveDateEcaCondition\"/></parallel>");
+        assertRejected("service-name expression", "<parallel><service service-name=\"${serviceName}\" result-map=\"result\"/></parallel>");
+    }
+
+    public void testServiceTransactionRejected() throws Exception {
+        ModelAction parallel = readAction("<parallel><service service-name=\"echoService\" result-map=\"echo\"/>"
+                + "<entity-one entity-name=\"TestingType\" value-field=\"typeA\"/></parallel>");
+        try {
+            parallel.runAction(makeContext());
+            fail("Service with a transaction not rejected");
+        } catch (GeneralException e) {
+            assertTrue("Service error", e.getMessage().contains("echoService"));
+        }
+    }
+
+    public void testService() throws Exception {
+        AbstractModelAction.Parallel parallel = (AbstractModelAction.Parallel) readAction("<parallel>"
+                + "<service service-name=\"effectiveDateEcaCondition\" result-map=\"condition\"><field-map field-name=\"serviceContext\" from-field=\"serviceContext\"/>"
+                + "<field-map field-name=\"serviceName\" value=\"test\"/></service>"
+                + "<entity-one entity-name=\"TestingType\" value-field=\"typeA\" auto-field-map=\"false\"><field-map field-name=\"testingTypeId\" value=\"PARALLEL_A\"/></entity-one>"
+                + "</parallel>");
+        MapStack<String> context = makeContext();
+        context.put("serviceContext", new HashMap<String, Object>());
+        for (int i = 0; i < 2; i++) {
+            parallel.runAction(context);
+            assertEquals("Service result", Boolean.TRUE, ((Map<?, ?>) context.get("condition")).get("conditionReply"));
+            assertNotNull("Entity result", context.get("typeA"));
+        }
+    }
+
+    public void testVisitSubActions() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        ModelActionVisitor visitor = new XmlWidgetActionVisitor(sb);
+        readAction(DEPENDENT_LOOKUPS).accept(visitor);
+        List<String> visited = new ArrayList<>();
+        for (String tag : new String[] { "<entity-one", "<entity-and" }) {
+            for (int i = sb.indexOf(tag); i >= 0; i = sb.indexOf(tag, i + 1)) {
+                visited.add(tag);
+            }
+        }
+        assertEquals("Visited sub-actions", UtilMisc.toList("<entity-one", "<entity-one", "<entity-and"), visited);
+    }
+
+    /**
+     * Exposes the parallel action metrics of the servlet.
+     */
+    private static class TestMetricsServlet extends WidgetMetricsServlet {
+        String write() {
+            Output out = new Output();
+            writeParallelActionMetrics(out);
+            return out.toString();
+        }
+    }
+
+    public void testMetrics() throws Exception {
+        readAction(DEPENDENT_LOOKUPS).runAction(makeContext());
+        String text = new TestMetricsServlet().write();
+        assertTrue("Runs", text.contains("scipio_widget_parallel_runs_total{widget=\"unknown\"} "));
+        assertTrue("Sequential runs", text.contains("# TYPE scipio_widget_parallel_sequential_runs_total counter"));
+        assertTrue("Elapsed time", text.contains("scipio_widget_parallel_elapsed_seconds_total{widget=\"unknown\"} "));
+    }
+}
@@ -38,6 +38,7 @@ import org.ofbiz.base.util.UtilMisc;
 import org.ofbiz.base.util.UtilValidate;
 import org.ofbiz.base.util.collections.MapStack;
 import org.ofbiz.base.util.collections.MapState;
+import org.ofbiz.base.util.collections.PagedList;
 import org.ofbiz.base.util.collections.RenderMapStack;
 import org.ofbiz.entity.GenericEntity;
 import org.ofbiz.entity.GenericEntityException;
@@ -1092,6 +1093,8 @@ public class FormRenderer {
                 iter = (Iterator<?>) obj;
             } else if (obj instanceof List<?>) {
                 iter = ((List<?>) obj).listIterator();
+            } else if (obj instanceof PagedList<?>) { // SCIPIO: holds only the current page (e.g. KeysetPagedList)
+                iter = ((PagedList<?>) obj).iterator();
             }
 
             // set low and high index
@@ -1102,7 +1105,7 @@ public class FormRenderer {
             int highIndex = (Integer) context.get("highIndex");
 
             // we're passed a subset of the list, so use (0, viewSize) range
-            if (modelForm.isOverridenListSize()) {
+            if (Paginator.isListSubset(modelForm, obj)) { // SCIPIO: also PagedList
                 lowIndex = 0;
                 highIndex = (Integer) context.get("viewSize");
             }
@@ -1341,7 +1344,7 @@ public class FormRenderer {
             if ((itemIndex + 1) < highIndex) {
                 highIndex = itemIndex + 1;
                 // if list size is overridden, use full listSize
-                context.put("highIndex", modelForm.isOverridenListSize() ? listSize : highIndex);
+                context.put("highIndex", Paginator.isListSubset(modelForm, obj) ? listSize : highIndex);
             }
             context.put("actualPageSize", highIndex - lowIndex);
         } finally {
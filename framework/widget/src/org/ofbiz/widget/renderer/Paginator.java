@@ -28,6 +28,7 @@ import org.ofbiz.base.util.Debug;
 import org.ofbiz.base.util.UtilGenerics;
 import org.ofbiz.base.util.UtilProperties;
 import org.ofbiz.base.util.UtilValidate;
+import org.ofbiz.base.util.collections.KeysetPagedList;
 import org.ofbiz.base.util.collections.PagedList;
 import org.ofbiz.entity.GenericEntityException;
 import org.ofbiz.entity.util.EntityListIterator;
@@ -101,6 +102,26 @@ public final class Paginator {
         context.put("highIndex", highIndex);
     }
 
+    /**
+     * SCIPIO: Returns true if the list holds only the current page rather than the full list: if the form overrides
+     * the list size, or if the list is a {@link PagedList}.
+     */
+    public static boolean isListSubset(ModelForm modelForm, Object entryList) {
+        return modelForm.isOverridenListSize() || (entryList instanceof PagedList<?>);
+    }
+
+    /**
+     * SCIPIO: Returns the seek key of the next page if the list is a {@link KeysetPagedList} and the form
+     * enables keyset pagination (paginate-seek-field), otherwise null.
+     */
+    public static String getNextSeekKey(ModelForm modelForm, Map<String, Object> context) {
+        if (modelForm.getPaginateSeekField(context).isEmpty() || UtilValidate.isEmpty(modelForm.getListName())) {
+            return null;
+        }
+        Object entryList = context.get(modelForm.getListName());
+        return (entryList instanceof KeysetPagedList<?>) ? ((KeysetPagedList<?>) entryList).getNextSeekKey() : null;
+    }
+
     public static int getListSize(Map<String, Object> context) {
         Integer value = (Integer) context.get("listSize");
         return value != null ? value : 0;
@@ -207,7 +228,7 @@ public final class Paginator {
         int highIndex = (Integer) context.get("highIndex");
 
         // we're passed a subset of the list, so use (0, viewSize) range
-        if (modelForm.isOverridenListSize()) {
+        if (isListSubset(modelForm, obj)) { // SCIPIO: also PagedList
             lowIndex = 0;
             highIndex = (Integer) context.get("viewSize");
         }
@@ -228,7 +249,7 @@ public final class Paginator {
         if ((itemIndex + 1) < highIndex) {
             highIndex = itemIndex + 1;
             // if list size is overridden, use full listSize
-            context.put("highIndex", modelForm.isOverridenListSize() ? listSize : highIndex);
+            context.put("highIndex", isListSubset(modelForm, obj) ? listSize : highIndex);
         }
         context.put("actualPageSize", highIndex - lowIndex);
 
@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.renderer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.ofbiz.base.concurrent.ExecutionPool;
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.GeneralException;
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.base.util.collections.RenderMapStack;
+import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.widget.model.ModelScreenWidget;
+
+/**
+ * Response writer for streaming screen rendering, enabled by <code>widget.render.stream.enabled</code> in
+ * widget.properties or the <code>scpRenderStream</code> request attribute (SCIPIO).
+ * <p>
+ * Output is written through to the response, and sent to the client at the sections marked <code>flush="true"</code>
+ * (such as the page head in the common decorator), or at every macro call if <code>widget.ftl.render.io.autoFlush</code>
+ * is set. Sections marked <code>defer="true"</code> are rendered on a worker thread, with a copy of the context and their
+ * own renderers, while the rest of the page renders; the output that follows them is buffered until they complete, so
+ * the page is emitted in order. A section is only deferred when it writes directly to this writer, so never inside
+ * a cached fragment or captured FTL output, and never while a transaction is in place on the rendering thread, which the
+ * worker thread would not see (it is rendered inline instead). Deferred sections must not change the context for what
+ * follows, nor the response, and nothing after the first flush may set headers, cookies or redirect.
+ */
+public class ScreenStreamWriter extends Writer {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    public static final String CONTEXT_FIELD = "scpScreenStreamWriter";
+    public static final String REQUEST_ATTR = "scpRenderStream";
+
+    private static final boolean enabled = UtilProperties.getPropertyAsBoolean("widget", "widget.render.stream.enabled", false);
+    private static final long deferTimeout = UtilProperties.getPropertyAsLong("widget", "widget.render.stream.deferTimeout", 30000);
+    private static final int threadCount = UtilProperties.getPropertyAsInteger("widget", "widget.render.stream.threads",
+            Runtime.getRuntime().availableProcessors() * 2);
+
+    private static volatile ExecutorService executor;
+
+    private final Writer target;
+    private final RendererFactory rendererFactory;
+    /** Pending output, in order: Future of a deferred section, or StringBuilder of the output written after it */
+    private final ArrayDeque<Object> pending = new ArrayDeque<>();
+    private StringBuilder tail;
+
+    public ScreenStreamWriter(Writer target, RendererFactory rendererFactory) {
+        this.target = target;
+        this.rendererFactory = rendererFactory;
+    }
+
+    /**
+     * Returns true if streaming is enabled for the request.
+     */
+    public static boolean isEnabled(HttpServletRequest request) {
+        Object attr = request.getAttribute(REQUEST_ATTR);
+        if (attr != null) {
+            return Boolean.TRUE.equals(attr) || "true".equals(attr);
+        }
+        return enabled;
+    }
+
+    /**
+     * Returns the stream writer of the render if the given writer is it, otherwise null.
+     */
+    public static ScreenStreamWriter getStreamWriter(Appendable writer, Map<String, Object> context) {
+        Object streamWriter = context.get(CONTEXT_FIELD);
+        return (streamWriter != null && streamWriter == writer) ? (ScreenStreamWriter) streamWriter : null;
+    }
+
+    /**
+     * Starts rendering the widget on a worker thread if the writer is the stream writer and no transaction is in place;
+     * returns false if the caller should render it inline.
+     */
+    public static boolean defer(ModelScreenWidget widget, Appendable writer, Map<String, Object> context) {
+        ScreenStreamWriter streamWriter = getStreamWriter(writer, context);
+        return (streamWriter != null) && streamWriter.defer(widget, context);
+    }
+
+    /**
+     * Sends the output so far to the client if the writer is the stream writer.
+     */
+    public static void flush(Appendable writer, Map<String, Object> context) throws IOException {
+        ScreenStreamWriter streamWriter = getStreamWriter(writer, context);
+        if (streamWriter != null) {
+            streamWriter.flush();
+        }
+    }
+
+    protected boolean defer(ModelScreenWidget widget, Map<String, Object> context) {
+        if (TransactionUtil.isTransactionInPlaceSafe()) {
+            // the worker thread would read outside the transaction (and its uncommitted writes)
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Transaction in place; rendering deferred section" + widget.getLogWidgetLocationString() + " inline", module);
+            }
+            return false;
+        }
+        RenderMapStack deferredContext = copyContext(context);
+        Future<String> future;
+        try {
+            future = getExecutor().submit(() -> {
+                StringWriter sw = new StringWriter();
+                ScreenStringRenderer screenStringRenderer = rendererFactory.createRenderers(deferredContext, sw);
+                deferredContext.put("screens", ScreenRenderer.makeWithEnvAwareFetching(sw, deferredContext, screenStringRenderer));
+                widget.renderWidgetString(sw, deferredContext, screenStringRenderer);
+                return sw.toString();
+            });
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        pending.add(future);
+        tail = new StringBuilder();
+        pending.add(tail);
+        return true;
+    }
+
+    private static RenderMapStack copyContext(Map<String, Object> context) {
+        Map<String, Object> values = new HashMap<>();
+        for (String key : context.keySet()) {
+            values.put(key, context.get(key));
+        }
+        values.remove(CONTEXT_FIELD);
+        RenderMapStack deferredContext = RenderMapStack.createRenderContext(values);
+        deferredContext.push();
+        return deferredContext;
+    }
+
+    private static ExecutorService getExecutor() {
+        ExecutorService executor = ScreenStreamWriter.executor;
+        if (executor == null) {
+            synchronized (ScreenStreamWriter.class) {
+                executor = ScreenStreamWriter.executor;
+                if (executor == null) {
+                    executor = ExecutionPool.getScheduledExecutor(null, "Scipio-screen-render", threadCount, 60, false);
+                    ScreenStreamWriter.executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (tail == null) {
+            target.write(cbuf, off, len);
+        } else {
+            tail.append(cbuf, off, len);
+            drainCompleted();
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (tail == null) {
+            target.write(str, off, len);
+        } else {
+            tail.append(str, off, off + len);
+            drainCompleted();
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (tail == null) {
+            target.write(c);
+        } else {
+            tail.append((char) c);
+        }
+    }
+
+    private void drainCompleted() throws IOException {
+        Object head = pending.peekFirst();
+        if (head instanceof Future && ((Future<?>) head).isDone()) {
+            drain(false);
+        }
+    }
+
+    /**
+     * Writes the pending output up to the first deferred section not yet done, or all of it if wait is true.
+     */
+    protected void drain(boolean wait) throws IOException {
+        while (!pending.isEmpty()) {
+            Object head = pending.peekFirst();
+            if (head instanceof Future) {
+                @SuppressWarnings("unchecked")
+                Future<String> future = (Future<String>) head;
+                if (!wait && !future.isDone()) {
+                    return;
+                }
+                target.write(getResult(future));
+                pending.removeFirst();
+            } else {
+                StringBuilder sb = (StringBuilder) head;
+                target.append(sb);
+                sb.setLength(0);
+                if (pending.size() == 1) {
+                    // caught up: write through again
+                    pending.clear();
+                    tail = null;
+                    return;
+                }
+                pending.removeFirst();
+            }
+        }
+    }
+
+    private static String getResult(Future<String> future) throws IOException {
+        try {
+            return future.get(deferTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new IOException("Error rendering deferred section: " + cause, cause);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IOException("Deferred section did not render within " + deferTimeout + "ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for deferred section", e);
+        }
+    }
+
+    /**
+     * Writes all pending output, waiting for the deferred sections; called at the end of the render.
+     */
+    public void finish() throws IOException {
+        drain(true);
+    }
+
+    /**
+     * Cancels the deferred sections not yet written; called when the render fails.
+     */
+    public void cancel() {
+        for (Object part : pending) {
+            if (part instanceof Future) {
+                ((Future<?>) part).cancel(true);
+            }
+        }
+        pending.clear();
+        tail = null;
+    }
+
+    /**
+     * Writes the pending output completed so far and flushes the response to the client.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain(false);
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    /**
+     * Creates the screen, form, menu and tree renderers for a deferred section render, storing the latter in the context.
+     */
+    @FunctionalInterface
+    public interface RendererFactory {
+        ScreenStringRenderer createRenderers(Map<String, Object> context, Writer writer) throws GeneralException, IOException;
+    }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.renderer.macro;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ofbiz.base.util.UtilProperties;
+import org.ofbiz.base.util.cache.UtilCache;
+import org.ofbiz.base.util.template.FreeMarkerWorker;
+
+import freemarker.core.Environment;
+import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Runs the macro calls built by the macro screen, form, menu and tree renderers through cached call-site templates,
+ * instead of parsing a new Template for every call (SCIPIO).
+ * <p>
+ * The string and number literals of a call such as <code>&lt;@renderLabel text=r"Name" index=3 /&gt;</code> are taken
+ * out and replaced by variable references, giving <code>&lt;@renderLabel text=_mcArg0 index=_mcArg1 /&gt;</code>; that
+ * call site is parsed once and cached, and the literal values are set as global variables of the render Environment for
+ * each call. Rows of a list form thus reuse the same few templates, whatever their row indexes; calls without literals
+ * are cached as they are, while calls with interpolated literals are still parsed each time. Disabled by <code>widget.macro.callTemplateCache=false</code> in
+ * widget.properties.</p>
+ */
+public final class MacroCallTemplates {
+
+    private static final String ARG_PREFIX = "_mcArg";
+    private static final String[] argNames = new String[64];
+    static {
+        for (int i = 0; i < argNames.length; i++) {
+            argNames[i] = ARG_PREFIX + i;
+        }
+    }
+
+    private static final boolean enabled = UtilProperties.getPropertyAsBoolean("widget", "widget.macro.callTemplateCache", true);
+    private static final UtilCache<String, Template> callTemplates = UtilCache.createUtilCache("widget.macro.callTemplates", 5000, 0, false);
+
+    private MacroCallTemplates() {
+    }
+
+    /**
+     * Runs the macro call, a string of FTL, in the given Environment.
+     */
+    public static void executeMacro(String macro, Environment environment) throws TemplateException, IOException {
+        CallSite callSite = enabled ? CallSite.parse(macro) : null;
+        if (callSite == null) {
+            FreeMarkerWorker.includeTemplate(parseTemplate(macro), environment);
+            return;
+        }
+        Template template = callTemplates.get(callSite.source);
+        if (template == null) {
+            template = parseTemplate(callSite.source);
+            callTemplates.put(callSite.source, template);
+        }
+        List<String> args = callSite.args;
+        for (int i = 0; i < args.size(); i++) {
+            if (callSite.isNumberArg(i)) {
+                // same number type as the parsed literal
+                environment.setGlobalVariable(argNames[i], new SimpleNumber(environment.getArithmeticEngine().toNumber(args.get(i))));
+            } else {
+                environment.setGlobalVariable(argNames[i], new SimpleScalar(args.get(i)));
+            }
+        }
+        try {
+            FreeMarkerWorker.includeTemplate(template, environment);
+        } finally {
+            // the arguments are evaluated before the macro runs, so nested calls reusing the names do not interfere
+            for (int i = 0; i < args.size(); i++) {
+                environment.getGlobalNamespace().remove(argNames[i]);
+            }
+        }
+    }
+
+    private static Template parseTemplate(String source) throws IOException {
+        return new Template("widgetMacroCall", new StringReader(source), FreeMarkerWorker.getDefaultOfbizConfig());
+    }
+
+    /**
+     * A macro call with its string and number literal values taken out.
+     */
+    public static final class CallSite {
+        final String source;
+        final List<String> args;
+        final long numberArgs;
+
+        private CallSite(String source, List<String> args, long numberArgs) {
+            this.source = source;
+            this.args = args;
+            this.numberArgs = numberArgs;
+        }
+
+        /**
+         * Returns the macro call with its literals replaced by variable references.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the values of the literals, in order; number literals as written.
+         */
+        public List<String> getArgs() {
+            return args;
+        }
+
+        /**
+         * Returns true if the literal at the given index is a number literal.
+         */
+        public boolean isNumberArg(int index) {
+            return (numberArgs & (1L << index)) != 0;
+        }
+
+        /**
+         * Returns the call site of the macro call, or null if it cannot be handled: an unterminated literal, a
+         * non-raw literal with an interpolation or an invalid escape, or more than 64 literals.
+         */
+        public static CallSite parse(String macro) {
+            StringBuilder sb = null;
+            List<String> args = null;
+            long numberArgs = 0;
+            int length = macro.length();
+            int copied = 0;
+            int i = 0;
+            while (i < length) {
+                char c = macro.charAt(i);
+                int start;
+                String value;
+                boolean number = false;
+                if (c == '"' || c == '\'') {
+                    boolean raw = (i > 0 && macro.charAt(i - 1) == 'r' && (i < 2 || !Character.isJavaIdentifierPart(macro.charAt(i - 2))));
+                    start = raw ? i - 1 : i;
+                    int end = findLiteralEnd(macro, i + 1, c, raw);
+                    if (end < 0) {
+                        return null;
+                    }
+                    value = getLiteralValue(macro.substring(i + 1, end), raw);
+                    if (value == null) {
+                        return null;
+                    }
+                    i = end + 1;
+                } else if (isDigit(c) && (i == 0 || !Character.isJavaIdentifierPart(macro.charAt(i - 1)))) {
+                    // a number literal, not the digits of a name such as hour1
+                    start = i;
+                    i = findNumberEnd(macro, i);
+                    value = macro.substring(start, i);
+                    number = true;
+                } else {
+                    i++;
+                    continue;
+                }
+                if (args == null) {
+                    sb = new StringBuilder(length);
+                    args = new ArrayList<>();
+                } else if (args.size() >= argNames.length) {
+                    return null;
+                }
+                if (number) {
+                    numberArgs |= 1L << args.size();
+                }
+                sb.append(macro, copied, start).append(argNames[args.size()]);
+                args.add(value);
+                copied = i;
+            }
+            if (args == null) {
+                return new CallSite(macro, Collections.emptyList(), 0);
+            }
+            sb.append(macro, copied, length);
+            return new CallSite(sb.toString(), args, numberArgs);
+        }
+
+        private static int findNumberEnd(String macro, int from) {
+            int i = skipDigits(macro, from);
+            // a decimal point followed by a digit, but not a range such as 1..5
+            if (i + 1 < macro.length() && macro.charAt(i) == '.' && isDigit(macro.charAt(i + 1))) {
+                i = skipDigits(macro, i + 1);
+            }
+            return i;
+        }
+
+        private static int skipDigits(String macro, int from) {
+            int i = from;
+            while (i < macro.length() && isDigit(macro.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static int findLiteralEnd(String macro, int from, char quote, boolean raw) {
+            for (int i = from; i < macro.length(); i++) {
+                char c = macro.charAt(i);
+                if (c == quote) {
+                    return i;
+                } else if (c == '\\' && !raw) {
+                    i++;
+                }
+            }
+            return -1;
+        }
+
+        private static String getLiteralValue(String content, boolean raw) {
+            if (raw) {
+                return content;
+            }
+            if (content.contains("${") || content.contains("#{")) {
+                return null;
+            }
+            if (content.indexOf('\\') < 0) {
+                return content;
+            }
+            try {
+                return StringUtil.FTLStringLiteralDec(content);
+            } catch (freemarker.core.ParseException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -19,10 +19,7 @@
 package org.ofbiz.widget.renderer.macro;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
-import java.rmi.server.UID;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -178,10 +175,7 @@ public final class MacroFormRenderer implements FormStringRenderer {
     private void executeMacro(Appendable writer, String macro) throws IOException { // SCIPIO: modified for exception
         try {
             Environment environment = getEnvironment(writer);
-            Reader templateReader = new StringReader(macro);
-            Template template = new Template(new UID().toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-            templateReader.close();
-            FreeMarkerWorker.includeTemplate(template, environment); // SCIPIO: use FreeMarkerWorker instead of Environment directly
+            MacroCallTemplates.executeMacro(macro, environment); // SCIPIO: reuse parsed call-site templates
         } catch (TemplateException | IOException e) {
             Debug.logError(e, "Error rendering screen thru ftl macro: " + macro, module);
             handleError(writer, e); // SCIPIO
@@ -2611,6 +2605,12 @@ public final class MacroFormRenderer implements FormStringRenderer {
         Set<String> paramNames = new HashSet<>();
         paramNames.add(viewIndexParam);
         paramNames.add(viewSizeParam);
+        // SCIPIO: keyset pagination: only the Next link carries the seek key
+        String seekParam = modelForm.getPaginateSeekField(context);
+        if (!seekParam.isEmpty()) {
+            paramNames.add(seekParam);
+        }
+        String nextSeekKey = Paginator.getNextSeekKey(modelForm, context);
         queryString = UtilHttp.stripNamedParamsFromQueryString(queryString, paramNames);
         String anchor = "";
         String paginateAnchor = modelForm.getPaginateTargetAnchor();
@@ -2723,10 +2723,14 @@ public final class MacroFormRenderer implements FormStringRenderer {
         }
         // Next button
         if (highIndex < listSize) {
+            String seekParamText = "";
+            if (nextSeekKey != null) {
+                seekParamText = (ajaxEnabled ? "&" : "&amp;") + seekParam + "=" + UtilCodec.getUrlEncoder().encode(nextSeekKey);
+            }
             if (ajaxEnabled) {
-                ajaxNextUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + (viewIndex + 1) + anchor, context);
+                ajaxNextUrl = createAjaxParamsFromUpdateAreas(updateAreas, prepLinkText + (viewIndex + 1) + seekParamText + anchor, context);
             } else {
-                linkText = prepLinkText + (viewIndex + 1) + anchor;
+                linkText = prepLinkText + (viewIndex + 1) + seekParamText + anchor;
                 nextUrl = rh.makeLink(this.request, this.response, urlPath + linkText);
             }
         }
@@ -19,8 +19,6 @@
 package org.ofbiz.widget.renderer.macro;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.HashMap;
@@ -83,7 +81,6 @@ public class MacroMenuRenderer implements MenuStringRenderer {
         renderEntryMacroNameMap = map;
     }
 
-    private int macroCount = 999;
     private final Map<Appendable, Environment> environments = new HashMap<>();
     private final Template macroLibrary;
     private final HttpServletRequest request;
@@ -164,12 +161,7 @@ public class MacroMenuRenderer implements MenuStringRenderer {
 
     private void executeMacro(Appendable writer, String macro) throws IOException, TemplateException {
         Environment environment = getEnvironment(writer);
-        Reader templateReader = new StringReader(macro);
-        macroCount++;
-        String templateName = toString().concat("_") + macroCount;
-        Template template = new Template(templateName, templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-        templateReader.close();
-        FreeMarkerWorker.includeTemplate(template, environment); // SCIPIO: use FreeMarkerWorker instead of Environment
+        MacroCallTemplates.executeMacro(macro, environment); // SCIPIO: reuse parsed call-site templates
     }
 
     /**
@@ -19,8 +19,6 @@
 package org.ofbiz.widget.renderer.macro;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.HashMap;
@@ -156,11 +154,7 @@ public class MacroScreenRenderer implements ScreenStringRenderer {
 
         try {
             Environment environment = getEnvironment(writer);
-            Reader templateReader = new StringReader(macro);
-            // FIXME: I am using a Date as an hack to provide a unique name for the template...
-            Template template = new Template((new java.util.Date()).toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
-            templateReader.close();
-            FreeMarkerWorker.includeTemplate(template, environment); // SCIPIO: use FreeMarkerWorker instead of Environment
+            MacroCallTemplates.executeMacro(macro, environment); // SCIPIO: reuse parsed call-site templates
         } catch (TemplateException | IOException e) {
             Debug.logError(e, "Error rendering screen macro [" + macro + "] thru ftl", module);
             handleError(writer, e); // SCIPIO
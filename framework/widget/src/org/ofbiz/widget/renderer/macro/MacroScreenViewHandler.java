@@ -43,6 +43,7 @@ import org.ofbiz.webapp.view.ViewHandlerExt;
 import org.ofbiz.widget.renderer.FormStringRenderer;
 import org.ofbiz.widget.renderer.MenuStringRenderer;
 import org.ofbiz.widget.renderer.ScreenRenderer;
+import org.ofbiz.widget.renderer.ScreenStreamWriter;
 import org.ofbiz.widget.renderer.ScreenStringRenderer;
 import org.ofbiz.widget.renderer.TreeStringRenderer;
 import org.ofbiz.widget.renderer.VisualThemeWorker;
@@ -67,6 +68,15 @@ public class MacroScreenViewHandler extends AbstractViewHandler implements ViewH
      */
     public static ScreenStringRenderer loadRenderers(HttpServletRequest request, HttpServletResponse response,
             String name, Map<String, Object> context, Writer writer) throws GeneralException, TemplateException, IOException {
+        return loadRenderers(request, response, name, context, writer, true);
+    }
+
+    /**
+     * SCIPIO: Loads the renderers; if setRequestAttributes is false, they are only stored in the context (for
+     * renders running alongside the main one, see {@link ScreenStreamWriter}).
+     */
+    public static ScreenStringRenderer loadRenderers(HttpServletRequest request, HttpServletResponse response,
+            String name, Map<String, Object> context, Writer writer, boolean setRequestAttributes) throws GeneralException, TemplateException, IOException {
         // SCIPIO: need this name early, check if html
         String screenRendererName = UtilProperties.getPropertyValue("widget", name + ".name");
 
@@ -107,18 +117,24 @@ public class MacroScreenViewHandler extends AbstractViewHandler implements ViewH
         if (UtilValidate.isNotEmpty(formMacroLibraryPath)) {
             FormStringRenderer formStringRenderer = new MacroFormRenderer(screenRendererName, formMacroLibraryPath, request, response);
             context.put("formStringRenderer", formStringRenderer);
-            request.setAttribute("formStringRenderer", formStringRenderer);
+            if (setRequestAttributes) {
+                request.setAttribute("formStringRenderer", formStringRenderer);
+            }
         }
         if (UtilValidate.isNotEmpty(treeMacroLibraryPath)) {
             @SuppressWarnings("deprecation")
             TreeStringRenderer treeStringRenderer = new MacroTreeRenderer(screenRendererName, treeMacroLibraryPath, writer);
             context.put("treeStringRenderer", treeStringRenderer);
-            request.setAttribute("treeStringRenderer", treeStringRenderer);
+            if (setRequestAttributes) {
+                request.setAttribute("treeStringRenderer", treeStringRenderer);
+            }
         }
         if (UtilValidate.isNotEmpty(menuMacroLibraryPath)) {
             MenuStringRenderer menuStringRenderer = new MacroMenuRenderer(screenRendererName, menuMacroLibraryPath, request, response);
             context.put("menuStringRenderer", menuStringRenderer);
-            request.setAttribute("menuStringRenderer", menuStringRenderer);
+            if (setRequestAttributes) {
+                request.setAttribute("menuStringRenderer", menuStringRenderer);
+            }
         }
         return screenStringRenderer;
     }
@@ -150,9 +166,24 @@ public class MacroScreenViewHandler extends AbstractViewHandler implements ViewH
             }
             MapStack<String> context = RenderMapStack.createRenderContext(); // SCIPIO: Dedicated context class: MapStack.create()
             ScreenRenderer.populateContextForRequest(context, null, request, response, servletContext);
+            ScreenStreamWriter streamWriter = null; // SCIPIO
             try { // SCIPIO: Added try/finally block
                 // SCIPIO: 2017-05-09: targeted rendering prep. NOTE: populateContextForRequest call set up the RenderTargetState object.
-                writer = WidgetRenderTargetExpr.getRenderTargetState(context).prepareWriter(writer, context);
+                WidgetRenderTargetExpr.WidgetRenderTargetState renderTargetState = WidgetRenderTargetExpr.getRenderTargetState(context);
+                writer = renderTargetState.prepareWriter(writer, context);
+
+                // SCIPIO: streaming mode (not with targeted rendering, which discards most output)
+                if (!renderTargetState.isEnabled() && ScreenStreamWriter.isEnabled(request)) {
+                    streamWriter = new ScreenStreamWriter(writer, (deferredContext, deferredWriter) -> {
+                        try {
+                            return loadRenderers(request, response, getName(), deferredContext, deferredWriter, false);
+                        } catch (TemplateException e) {
+                            throw new GeneralException("Error initializing screen renderer", e);
+                        }
+                    });
+                    writer = streamWriter;
+                    context.put(ScreenStreamWriter.CONTEXT_FIELD, streamWriter);
+                }
 
                 ScreenStringRenderer screenStringRenderer = loadRenderers(request, response, context, writer);
                 ScreenRenderer screens = ScreenRenderer.makeWithEnvAwareFetching(writer, context, screenStringRenderer);
@@ -168,8 +199,14 @@ public class MacroScreenViewHandler extends AbstractViewHandler implements ViewH
                 screenStringRenderer.renderScreenBegin(writer, context);
                 screens.render(page);
                 screenStringRenderer.renderScreenEnd(writer, context);
+                if (streamWriter != null) {
+                    streamWriter.finish();
+                }
                 writer.flush();
             } finally {
+                if (streamWriter != null) {
+                    streamWriter.cancel(); // SCIPIO: no-op unless the render failed
+                }
                 context.pop(); // SCIPIO: Added pop()
                 if (context.stackSize() > 1) { // SCIPIO
                     Debug.logWarning("Unmatched push() calls at render end: stack size (" + context.stackSize()
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.renderer.macro.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ofbiz.base.test.GenericTestCaseBase;
+import org.ofbiz.base.util.Debug;
+import org.ofbiz.base.util.UtilMisc;
+import org.ofbiz.base.util.template.FreeMarkerWorker;
+import org.ofbiz.base.util.template.FtlScriptFormatter;
+import org.ofbiz.widget.renderer.macro.MacroCallTemplates;
+
+import freemarker.core.Environment;
+import freemarker.template.Template;
+
+/**
+ * Tests the call-site lexer of MacroCallTemplates, checks that cached call sites render the same output as parsing
+ * each call, and compares their timings for a large list form (SCIPIO).
+ */
+public class MacroCallTemplatesTests extends GenericTestCaseBase {
+
+    private static final Debug.OfbizLogger module = Debug.getOfbizLogger(java.lang.invoke.MethodHandles.lookup().lookupClass());
+
+    private static final String CSV_FORM_LIBRARY = "component://widget/templates/csvFormMacroLibrary.ftl";
+    private static final String TEST_LIBRARY = "<#macro show a b=\"\" c={} d=false extraArgs...>"
+            + "[${a?is_string?c}|${a}|${b?length}|<#list c?keys as k>${k}=${c[k]};</#list>|${d?c}|"
+            + "<#list extraArgs?keys as k>${k}=${extraArgs[k]};</#list>]</#macro>";
+    private static final int ROW_COUNT = 2000;
+
+    private final FtlScriptFormatter ftlFmt = new FtlScriptFormatter();
+
+    public MacroCallTemplatesTests(String name) {
+        super(name);
+    }
+
+    private static void assertCallSite(String macro, String expectedSource, List<String> expectedArgs) {
+        MacroCallTemplates.CallSite callSite = MacroCallTemplates.CallSite.parse(macro);
+        assertNotNull("Call site of " + macro, callSite);
+        assertEquals("Source of " + macro, expectedSource, callSite.getSource());
+        assertEquals("Args of " + macro, expectedArgs, callSite.getArgs());
+    }
+
+    public void testRawAndEscapedLiterals() throws Exception {
+        assertCallSite("<@m a=r\"x\\ny\" b=\"x\\ny\" c=\"q\\\"q\" />", "<@m a=_mcArg0 b=_mcArg1 c=_mcArg2 />",
+                UtilMisc.toList("x\\ny", "x\ny", "q\"q"));
+        // raw literals end at the first quote: backslashes do not escape in them
+        assertCallSite("<@m a=r\"x\\\" b=\"y\" />", "<@m a=_mcArg0 b=_mcArg1 />", UtilMisc.toList("x\\", "y"));
+        assertCallSite("<@m />", "<@m />", new ArrayList<String>());
+        assertNull("Unterminated literal", MacroCallTemplates.CallSite.parse("<@m a=\"x />"));
+        assertNull("Invalid escape", MacroCallTemplates.CallSite.parse("<@m a=\"x\\qy\" />"));
+    }
+
+    public void testInterpolations() throws Exception {
+        assertNull("Interpolation", MacroCallTemplates.CallSite.parse("<@m a=\"x${y}\" />"));
+        assertNull("Numerical interpolation", MacroCallTemplates.CallSite.parse("<@m a=\"x#{y}\" />"));
+        assertNull("Escaped dollar before a brace", MacroCallTemplates.CallSite.parse("<@m a=\"x\\${y}\" />"));
+        // the escaped brace of FtlScriptFormatter.makeStringValue is plain text
+        assertCallSite("<@m a=\"x$\\{y}\" />", "<@m a=_mcArg0 />", UtilMisc.toList("x${y}"));
+        assertCallSite("<@m a=r\"x${y}#{z}\" />", "<@m a=_mcArg0 />", UtilMisc.toList("x${y}#{z}"));
+    }
+
+    public void testSingleQuotes() throws Exception {
+        assertCallSite("<@m a='it\\'s' b='say \"hi\"' c=\"it's\" />", "<@m a=_mcArg0 b=_mcArg1 c=_mcArg2 />",
+                UtilMisc.toList("it's", "say \"hi\"", "it's"));
+        assertCallSite("<@m a=r'x\\' />", "<@m a=_mcArg0 />", UtilMisc.toList("x\\"));
+    }
+
+    public void testRawPrefix() throws Exception {
+        // an r ending a name is not a raw prefix
+        assertCallSite("<@m attr=\"a\\nb\" for=r\"c\\nd\" />", "<@m attr=_mcArg0 for=_mcArg1 />", UtilMisc.toList("a\nb", "c\\nd"));
+        assertCallSite("<@m a=[r\"x\\n\",\"y\\n\"] />", "<@m a=[_mcArg0,_mcArg1] />", UtilMisc.toList("x\\n", "y\n"));
+    }
+
+    public void testNumberLiterals() throws Exception {
+        String macro = "<@m itemIndex=12 hour1=3 span=1.5 range=1..5 neg=-2 label=\"row 7\" />";
+        assertCallSite(macro, "<@m itemIndex=_mcArg0 hour1=_mcArg1 span=_mcArg2 range=_mcArg3.._mcArg4 neg=-_mcArg5 label=_mcArg6 />",
+                UtilMisc.toList("12", "3", "1.5", "1", "5", "2", "row 7"));
+        MacroCallTemplates.CallSite callSite = MacroCallTemplates.CallSite.parse(macro);
+        for (int i = 0; i < 6; i++) {
+            assertTrue("Number literal " + i, callSite.isNumberArg(i));
+        }
+        assertFalse("String literal", callSite.isNumberArg(6));
+    }
+
+    public void testArgLimit() throws Exception {
+        StringBuilder macro = new StringBuilder("<@m");
+        for (int i = 0; i < 64; i++) {
+            macro.append(" a").append(i).append("=r\"").append(i).append('"');
+        }
+        MacroCallTemplates.CallSite callSite = MacroCallTemplates.CallSite.parse(macro + " />");
+        assertNotNull("64 literals", callSite);
+        assertEquals("64 literal values", 64, callSite.getArgs().size());
+        assertEquals("Last literal value", "63", callSite.getArgs().get(63));
+        macro.append(" a64=\"64\" />");
+        assertNull("More than 64 literals", MacroCallTemplates.CallSite.parse(macro.toString()));
+    }
+
+    /**
+     * Renders the macro calls after the library, through the call-site cache or by parsing each call as the renderers
+     * did before, and returns the output.
+     */
+    private static String render(Template library, List<String> macros, boolean cached) throws Exception {
+        StringWriter writer = new StringWriter();
+        Environment environment = FreeMarkerWorker.renderTemplate(library, new HashMap<String, Object>(), writer);
+        for (String macro : macros) {
+            if (cached) {
+                MacroCallTemplates.executeMacro(macro, environment);
+            } else {
+                FreeMarkerWorker.includeTemplate(new Template("widgetMacroCall", new StringReader(macro), FreeMarkerWorker.getDefaultOfbizConfig()), environment);
+            }
+        }
+        return writer.toString();
+    }
+
+    /**
+     * The macro calls a list form renders for its rows, built the way MacroFormRenderer builds them.
+     */
+    private List<String> makeListFormMacros(int rowCount) {
+        List<String> macros = new ArrayList<>(rowCount * 8);
+        for (int i = 0; i < rowCount; i++) {
+            macros.add("<@renderFormatItemRowOpen formName=" + ftlFmt.makeStringLiteral("ListTest") + " itemIndex=" + i
+                    + " altRowStyles=\"\" evenRowStyle=" + ftlFmt.makeStringLiteral("even") + " oddRowStyle=" + ftlFmt.makeStringLiteral("odd") + " />");
+            String[] values = { "Row " + i, "Quoted \"" + i + "\"", "Back\\slash ${notCode} #{" + i + "}", "it's " + i };
+            for (int j = 0; j < values.length; j++) {
+                String fieldName = "field" + j;
+                macros.add("<@renderFormatItemRowCellOpen fieldName=" + ftlFmt.makeStringLiteral(fieldName) + " style=\"\" positionSpan=1 />");
+                if (j % 2 == 0) {
+                    macros.add("<@renderDisplayField type=" + ftlFmt.makeStringLiteral("text") + " imageLocation=\"\" idName=\"\" description="
+                            + ftlFmt.makeStringLiteral(values[j]) + " title=\"\" class=\"\" alert=" + ftlFmt.makeStringLiteral("false") + " />");
+                } else {
+                    macros.add("<@renderTextField name=" + ftlFmt.makeStringLiteral(fieldName + "_o_" + i) + " className=\"\" alert=\"false\" value="
+                            + ftlFmt.makeStringLiteral(values[j]) + " textSize=\"25\" maxlength=\"\" id=" + ftlFmt.makeStringLiteral("ListTest_" + fieldName + "_" + i)
+                            + " event=\"\" action=\"\" disabled=false clientAutocomplete=\"\" ajaxUrl=\"\" ajaxEnabled=false mask=\"\" />");
+                }
+                macros.add("<@renderFormatItemRowCellClose fieldName=" + ftlFmt.makeStringLiteral(fieldName) + " />");
+            }
+            macros.add("<@renderFormatItemRowClose formName=" + ftlFmt.makeStringLiteral("ListTest") + " />");
+        }
+        return macros;
+    }
+
+    public void testCachedOutputIdentical() throws Exception {
+        Template library = new Template("testLibrary", new StringReader(TEST_LIBRARY), FreeMarkerWorker.getDefaultOfbizConfig());
+        List<String> macros = UtilMisc.toList(
+                "<@show a=r\"plain\" b=\"q\\\"uote\" c={\"k1\":r\"v1\", \"k2\":\"v\\\\2\"} d=true extra=r\"e\" />",
+                "<@show a='single' b='it\\'s' />",
+                "<@show a=\"int ${1 + 1}\" />",
+                "<@show a=\"$\\{notCode}\" b=r\"${notCode}\" />",
+                "<@show a=r\"x\"?upper_case b=r\"y\" + \"z\" />",
+                "<@show a=r\"\" b=\"\" />",
+                "<@show a=3 b=\"x\" extra=2.50 />",
+                "<@show a=(1 + 2) * 3 / 4 b=\"ab\"[0..0] extra=-1 />");
+        String cachedOutput = render(library, macros, true);
+        assertEquals("Cached output", render(library, macros, false), cachedOutput);
+        // again, from the cached call sites
+        assertEquals("Output from cached call sites", cachedOutput, render(library, macros, true));
+
+        Template csvLibrary = FreeMarkerWorker.getTemplate(CSV_FORM_LIBRARY);
+        List<String> listMacros = makeListFormMacros(20);
+        assertEquals("Cached list form output", render(csvLibrary, listMacros, false), render(csvLibrary, listMacros, true));
+    }
+
+    /**
+     * A list form uses the same call sites whatever its row count, so its rows do not fill the call template cache.
+     */
+    public void testListFormCallSiteCount() throws Exception {
+        Set<String> sources = new HashSet<>();
+        for (String macro : makeListFormMacros(10)) {
+            sources.add(MacroCallTemplates.CallSite.parse(macro).getSource());
+        }
+        int callSiteCount = sources.size();
+        for (String macro : makeListFormMacros(ROW_COUNT)) {
+            sources.add(MacroCallTemplates.CallSite.parse(macro).getSource());
+        }
+        assertEquals("Call sites of " + ROW_COUNT + " rows", callSiteCount, sources.size());
+    }
+
+    /*
+     * Benchmark: renders the same list form macro calls by parsing each call and through the call-site cache and logs the timings
+     */
+    public void testListFormTimingComparedToUncached() throws Exception {
+        Template csvLibrary = FreeMarkerWorker.getTemplate(CSV_FORM_LIBRARY);
+        List<String> macros = makeListFormMacros(ROW_COUNT);
+        // warm up both paths
+        render(csvLibrary, macros.subList(0, macros.size() / 10), false);
+        render(csvLibrary, macros.subList(0, macros.size() / 10), true);
+
+        long startTime = System.nanoTime();
+        String uncachedOutput = render(csvLibrary, macros, false);
+        long totalNanosUncached = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        String cachedOutput = render(csvLibrary, macros, true);
+        long totalNanosCached = System.nanoTime() - startTime;
+        Debug.logInfo("Rendered a list form of " + ROW_COUNT + " rows (" + macros.size() + " macro calls) parsing each call in "
+                + (totalNanosUncached / 1000000) + " ms and with cached call sites in " + (totalNanosCached / 1000000) + " ms", module);
+        assertEquals("Cached list form output", uncachedOutput, cachedOutput);
+    }
+}
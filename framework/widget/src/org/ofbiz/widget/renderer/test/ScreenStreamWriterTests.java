@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.renderer.test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.ofbiz.base.test.GenericTestCaseBase;
+import org.ofbiz.base.util.UtilXml;
+import org.ofbiz.base.util.collections.MapStack;
+import org.ofbiz.entity.transaction.TransactionUtil;
+import org.ofbiz.widget.model.ModelScreenWidget;
+import org.ofbiz.widget.model.ModelScreens;
+import org.ofbiz.widget.renderer.ScreenStreamWriter;
+import org.ofbiz.widget.renderer.ScreenStringRenderer;
+
+/**
+ * Tests the output order of deferred sections written through ScreenStreamWriter to a plain writer, the cancel of
+ * pending sections, and the inline fallback under a transaction (SCIPIO).
+ */
+public class ScreenStreamWriterTests extends GenericTestCaseBase {
+
+    private static final String SCREENS = "<screens>"
+            + "<screen name=\"One\"><section><widgets><label text=\"[one]\"/></widgets></section></screen>"
+            + "<screen name=\"Two\"><section><widgets><label text=\"[two]\"/></widgets></section></screen>"
+            + "<screen name=\"Fail\"><section><widgets><label text=\"[fail]\"/></widgets></section></screen>"
+            + "</screens>";
+
+    private static ModelScreens modelScreens;
+
+    /** Label texts whose render waits for the latch */
+    private final Map<String, CountDownLatch> latches = new ConcurrentHashMap<>();
+
+    public ScreenStreamWriterTests(String name) {
+        super(name);
+    }
+
+    private static synchronized ModelScreenWidget getSection(String screenName) throws Exception {
+        if (modelScreens == null) {
+            modelScreens = new ModelScreens(UtilXml.readXmlDocument(SCREENS, false, true).getDocumentElement(),
+                    "component://widget/testdef/ScreenStreamWriterTests.xml", false);
+        }
+        return modelScreens.get(screenName).getSection();
+    }
+
+    /**
+     * Renderer that only writes the text of labels, once their latch (if any) is released; fails on "[fail]".
+     */
+    private ScreenStringRenderer makeLabelRenderer() {
+        return (ScreenStringRenderer) Proxy.newProxyInstance(ScreenStreamWriterTests.class.getClassLoader(),
+                new Class<?>[] { ScreenStringRenderer.class }, (proxy, method, args) -> {
+                    if ("renderLabel".equals(method.getName())) {
+                        @SuppressWarnings("unchecked")
+                        String text = ((ModelScreenWidget.Label) args[2]).getText((Map<String, Object>) args[1]);
+                        CountDownLatch latch = latches.get(text);
+                        if (latch != null) {
+                            latch.await();
+                        }
+                        if ("[fail]".equals(text)) {
+                            throw new IOException("Test label failure");
+                        }
+                        ((Appendable) args[0]).append(text);
+                    }
+                    return null;
+                });
+    }
+
+    private ScreenStreamWriter makeStreamWriter(StringWriter target, MapStack<String> context) {
+        ScreenStreamWriter streamWriter = new ScreenStreamWriter(target, (deferredContext, deferredWriter) -> makeLabelRenderer());
+        context.put(ScreenStreamWriter.CONTEXT_FIELD, streamWriter);
+        return streamWriter;
+    }
+
+    private CountDownLatch addLatch(String text) {
+        CountDownLatch latch = new CountDownLatch(1);
+        latches.put(text, latch);
+        return latch;
+    }
+
+    /**
+     * Flushes until the target has the expected output, which depends on the deferred sections completing.
+     */
+    private static void awaitOutput(ScreenStreamWriter streamWriter, StringWriter target, String expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!expected.equals(target.toString()) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            streamWriter.flush();
+        }
+        assertEquals("Output", expected, target.toString());
+    }
+
+    public void testDeferOrdering() throws Exception {
+        StringWriter target = new StringWriter();
+        MapStack<String> context = MapStack.create();
+        ScreenStreamWriter streamWriter = makeStreamWriter(target, context);
+        CountDownLatch latchOne = addLatch("[one]");
+        CountDownLatch latchTwo = addLatch("[two]");
+
+        streamWriter.write("a");
+        assertTrue("Deferred one", ScreenStreamWriter.defer(getSection("One"), streamWriter, context));
+        streamWriter.write("b");
+        assertTrue("Deferred two", ScreenStreamWriter.defer(getSection("Two"), streamWriter, context));
+        streamWriter.write("c");
+        assertEquals("Written through before the first deferred section", "a", target.toString());
+
+        // the second section completing first does not let its output overtake the first
+        latchTwo.countDown();
+        Thread.sleep(50);
+        streamWriter.flush();
+        assertEquals("Waiting for the first deferred section", "a", target.toString());
+
+        latchOne.countDown();
+        awaitOutput(streamWriter, target, "a[one]b[two]c");
+        streamWriter.write("d");
+        assertEquals("Written through once caught up", "a[one]b[two]cd", target.toString());
+        streamWriter.finish();
+        assertEquals("Finished", "a[one]b[two]cd", target.toString());
+    }
+
+    public void testDrainUpToPendingSection() throws Exception {
+        StringWriter target = new StringWriter();
+        MapStack<String> context = MapStack.create();
+        ScreenStreamWriter streamWriter = makeStreamWriter(target, context);
+        CountDownLatch latchTwo = addLatch("[two]");
+
+        streamWriter.write("a");
+        ScreenStreamWriter.defer(getSection("One"), streamWriter, context);
+        streamWriter.write("b");
+        ScreenStreamWriter.defer(getSection("Two"), streamWriter, context);
+        streamWriter.write("c");
+        awaitOutput(streamWriter, target, "a[one]b");
+
+        latchTwo.countDown();
+        streamWriter.finish();
+        assertEquals("Finished", "a[one]b[two]c", target.toString());
+    }
+
+    public void testCancel() throws Exception {
+        StringWriter target = new StringWriter();
+        MapStack<String> context = MapStack.create();
+        ScreenStreamWriter streamWriter = makeStreamWriter(target, context);
+        addLatch("[one]"); // never released: the cancel interrupts it
+
+        streamWriter.write("a");
+        ScreenStreamWriter.defer(getSection("One"), streamWriter, context);
+        streamWriter.write("b");
+        streamWriter.cancel();
+        streamWriter.write("c");
+        streamWriter.finish();
+        assertEquals("Pending output dropped, later output written through", "ac", target.toString());
+    }
+
+    public void testDeferredError() throws Exception {
+        StringWriter target = new StringWriter();
+        MapStack<String> context = MapStack.create();
+        ScreenStreamWriter streamWriter = makeStreamWriter(target, context);
+
+        streamWriter.write("a");
+        ScreenStreamWriter.defer(getSection("Fail"), streamWriter, context);
+        streamWriter.write("b");
+        try {
+            streamWriter.finish();
+            fail("Deferred section error not thrown");
+        } catch (IOException e) {
+            assertTrue("Deferred section error", e.getMessage().contains("Test label failure"));
+        }
+        assertEquals("Output before the failed section", "a", target.toString());
+    }
+
+    public void testNoDeferInTransaction() throws Exception {
+        StringWriter target = new StringWriter();
+        MapStack<String> context = MapStack.create();
+        ScreenStreamWriter streamWriter = makeStreamWriter(target, context);
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            assertTrue("Transaction in place", TransactionUtil.isTransactionInPlace());
+            assertFalse("Deferred in a transaction", ScreenStreamWriter.defer(getSection("One"), streamWriter, context));
+        } finally {
+            TransactionUtil.rollback(beganTransaction, "Screen stream writer test", null);
+        }
+        assertTrue("Deferred after the transaction", ScreenStreamWriter.defer(getSection("One"), streamWriter, context));
+        streamWriter.finish();
+        assertEquals("Output", "[one]", target.toString());
+
+        assertFalse("Not deferred to another writer", ScreenStreamWriter.defer(getSection("One"), new StringWriter(), context));
+    }
+}
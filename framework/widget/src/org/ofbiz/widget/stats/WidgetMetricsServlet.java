@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.ofbiz.widget.stats;
+
+import java.util.Map;
+
+import org.ofbiz.webapp.stats.MetricsServlet;
+import org.ofbiz.widget.model.AbstractModelAction;
+
+/**
+ * Adds the widget metrics, which the webapp component cannot reach, to those of {@link MetricsServlet}: the runs and
+ * times of the screen &lt;parallel&gt; action blocks, by screen (SCIPIO).
+ */
+@SuppressWarnings("serial")
+public class WidgetMetricsServlet extends MetricsServlet {
+
+    @Override
+    protected void writeMetrics(Output out) {
+        super.writeMetrics(out);
+        writeParallelActionMetrics(out);
+    }
+
+    protected void writeParallelActionMetrics(Output out) {
+        Map<String, Map<String, Object>> stats = AbstractModelAction.Parallel.getStats();
+        out.family("scipio_widget_parallel_runs_total", "counter", "Screen parallel action blocks run concurrently");
+        for (Map.Entry<String, Map<String, Object>> entry : stats.entrySet()) {
+            out.sample("scipio_widget_parallel_runs_total", "widget", entry.getKey(), toDouble(entry.getValue().get("runCount")));
+        }
+        out.family("scipio_widget_parallel_sequential_runs_total", "counter", "Screen parallel action blocks run in sequence because a transaction was in place");
+        for (Map.Entry<String, Map<String, Object>> entry : stats.entrySet()) {
+            out.sample("scipio_widget_parallel_sequential_runs_total", "widget", entry.getKey(), toDouble(entry.getValue().get("sequentialCount")));
+        }
+        out.family("scipio_widget_parallel_action_seconds_total", "counter", "Total time of the actions of the concurrent parallel blocks");
+        for (Map.Entry<String, Map<String, Object>> entry : stats.entrySet()) {
+            out.sample("scipio_widget_parallel_action_seconds_total", "widget", entry.getKey(), toDouble(entry.getValue().get("actionTimeNanos")) / 1e9);
+        }
+        out.family("scipio_widget_parallel_elapsed_seconds_total", "counter", "Elapsed time of the concurrent parallel blocks");
+        for (Map.Entry<String, Map<String, Object>> entry : stats.entrySet()) {
+            out.sample("scipio_widget_parallel_elapsed_seconds_total", "widget", entry.getKey(), toDouble(entry.getValue().get("elapsedTimeNanos")) / 1e9);
+        }
+    }
+
+    private static double toDouble(Object value) {
+        return (value instanceof Number) ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}